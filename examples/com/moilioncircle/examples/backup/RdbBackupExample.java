@@ -22,7 +22,7 @@ import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.EventListener;
 import com.moilioncircle.redis.replicator.event.PostRdbSyncEvent;
 import com.moilioncircle.redis.replicator.event.PreRdbSyncEvent;
-import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbVisitor;
 
 import java.io.BufferedOutputStream;
@@ -41,11 +41,11 @@ public class RdbBackupExample {
     public static void main(String[] args) throws IOException, URISyntaxException {
 
         final OutputStream out = new BufferedOutputStream(new FileOutputStream(new File("/path/to/dump.rdb")));
-        final RawByteListener rawByteListener = new RawByteListener() {
+        final RawByteTap rawByteTap = new RawByteTap() {
             @Override
-            public void handle(byte... rawBytes) {
+            public void handle(byte[] bytes, int offset, int length) {
                 try {
-                    out.write(rawBytes);
+                    out.write(bytes, offset, length);
                 } catch (IOException ignore) {
                 }
             }
@@ -58,11 +58,11 @@ public class RdbBackupExample {
             @Override
             public void onEvent(Replicator replicator, Event event) {
                 if (event instanceof PreRdbSyncEvent) {
-                    replicator.addRawByteListener(rawByteListener);
+                    replicator.addRawByteTap(rawByteTap);
                 }
     
                 if (event instanceof PostRdbSyncEvent) {
-                    replicator.removeRawByteListener(rawByteListener);
+                    replicator.removeRawByteTap(rawByteTap);
                     try {
                         out.close();
                         replicator.close();
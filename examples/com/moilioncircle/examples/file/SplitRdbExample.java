@@ -25,7 +25,7 @@ import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.EventListener;
 import com.moilioncircle.redis.replicator.event.PostRdbSyncEvent;
 import com.moilioncircle.redis.replicator.io.CRCOutputStream;
-import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 import com.moilioncircle.redis.replicator.rdb.datatype.AuxField;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
 import com.moilioncircle.redis.replicator.util.ByteBuilder;
@@ -65,9 +65,9 @@ public class SplitRdbExample {
         final Tuple2<byte[], ByteBuilder> tuple = new Tuple2<>();
         tuple.setT2(ByteBuilder.allocate(128));
 
-        final RawByteListener rawByteListener = new RawByteListener() {
+        final RawByteTap rawByteTap = new RawByteTap() {
             @Override
-            public void handle(byte... rawBytes) {
+            public void handle(byte[] bytes, int offset, int length) {
                 if (tuple.getT1() != null) {
                     try {
                         // write file by key hashcode sharding
@@ -92,11 +92,11 @@ public class SplitRdbExample {
                     tuple.setT1(null);
                     tuple.setT2(ByteBuilder.allocate(128));
                 }
-                for (byte b : rawBytes) tuple.getT2().put(b);
+                tuple.getT2().put(bytes, offset, length);
             }
         };
 
-        replicator.addRawByteListener(rawByteListener);
+        replicator.addRawByteTap(rawByteTap);
 
         replicator.addEventListener(new EventListener() {
             @SuppressWarnings("unchecked")
@@ -17,32 +17,20 @@
 package com.moilioncircle.examples.migration;
 
 import com.moilioncircle.redis.replicator.CloseListener;
-import com.moilioncircle.redis.replicator.Configuration;
 import com.moilioncircle.redis.replicator.RedisReplicator;
 import com.moilioncircle.redis.replicator.RedisURI;
 import com.moilioncircle.redis.replicator.Replicator;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
-import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
 import com.moilioncircle.redis.replicator.cmd.parser.DefaultCommandParser;
 import com.moilioncircle.redis.replicator.cmd.parser.PingParser;
 import com.moilioncircle.redis.replicator.cmd.parser.ReplConfParser;
 import com.moilioncircle.redis.replicator.event.Event;
-import com.moilioncircle.redis.replicator.event.EventListener;
-import com.moilioncircle.redis.replicator.rdb.datatype.DB;
 import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
-import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
-import com.moilioncircle.redis.replicator.util.Strings;
-import redis.clients.jedis.Client;
-import redis.clients.jedis.Protocol;
+import com.moilioncircle.redis.replicator.sink.RedisSink;
+import com.moilioncircle.redis.replicator.sink.SinkErrorListener;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static redis.clients.jedis.Protocol.Command.AUTH;
-import static redis.clients.jedis.Protocol.Command.RESTORE;
-import static redis.clients.jedis.Protocol.Command.SELECT;
-import static redis.clients.jedis.Protocol.toByteArray;
 
 /**
  * @author Leon Chen
@@ -62,60 +50,29 @@ public class MigrationExample {
      * We running following steps to sync two redis.
      * 1. Get rdb stream from source redis.
      * 2. Convert source rdb stream to redis dump format.
-     * 3. Use Jedis RESTORE command to restore that dump format to target redis.
+     * 3. Pipeline RESTORE commands of that dump format to target redis.
      * 4. Get aof stream from source redis and sync to target redis.
      */
     public static void sync(String sourceUri, String targetUri) throws IOException, URISyntaxException {
         RedisURI suri = new RedisURI(sourceUri);
         RedisURI turi = new RedisURI(targetUri);
-        final ExampleClient target = new ExampleClient(turi.getHost(), turi.getPort());
-        Configuration tconfig = Configuration.valueOf(turi);
-        if (tconfig.getAuthPassword() != null) {
-            Object auth = target.send(AUTH, tconfig.getAuthPassword().getBytes());
-            System.out.println("AUTH:" + auth);
-        }
-        final AtomicInteger dbnum = new AtomicInteger(-1);
-        Replicator r = dress(new RedisReplicator(suri));
-
-        r.addEventListener(new EventListener() {
+        final RedisSink sink = new RedisSink(turi);
+        sink.addErrorListener(new SinkErrorListener() {
             @Override
-            public void onEvent(Replicator replicator, Event event) {
-                if (event instanceof DumpKeyValuePair) {
-                    DumpKeyValuePair dkv = (DumpKeyValuePair) event;
-                    // Step1: select db
-                    DB db = dkv.getDb();
-                    int index;
-                    if (db != null && (index = (int) db.getDbNumber()) != dbnum.get()) {
-                        target.send(SELECT, toByteArray(index));
-                        dbnum.set(index);
-                        System.out.println("SELECT:" + index);
-                    }
-
-                    // Step2: restore dump data
-                    if (dkv.getExpiredMs() == null) {
-                        Object r = target.restore(dkv.getKey(), 0L, dkv.getValue(), true);
-                        System.out.println(r);
-                    } else {
-                        long ms = dkv.getExpiredMs() - System.currentTimeMillis();
-                        if (ms <= 0) return;
-                        Object r = target.restore(dkv.getKey(), ms, dkv.getValue(), true);
-                        System.out.println(r);
-                    }
-                }
-
-                if (event instanceof DefaultCommand) {
-                    // Step3: sync aof command
-                    DefaultCommand dc = (DefaultCommand) event;
-                    Object r = target.send(dc.getCommand(), dc.getArgs());
-                    System.out.println(r);
-                }
+            public void handle(RedisSink sink, Event event, String error) {
+                System.out.println(event + ":" + error);
             }
         });
+        Replicator r = dress(new RedisReplicator(suri));
+        r.addEventListener(sink);
 
         r.addCloseListener(new CloseListener() {
             @Override
             public void handle(Replicator replicator) {
-                target.close();
+                try {
+                    sink.close();
+                } catch (IOException ignore) {
+                }
             }
         });
         r.open();
@@ -210,40 +167,4 @@ public class MigrationExample {
         r.addCommandParser(CommandName.name("XTRIM"), new DefaultCommandParser());
         return r;
     }
-
-    /*
-     * Jedis is not a reliable redis client.
-     * For simplicity we use Jedis to show this example.
-     * In production you need to replace following code to yours.
-     */
-    public static class ExampleClient extends Client {
-
-        public ExampleClient(final String host, final int port) {
-            super(host, port);
-            setConnectionTimeout(10000);
-            setSoTimeout(10000);
-        }
-
-        public Object send(Protocol.Command cmd, final byte[]... args) {
-            sendCommand(cmd, args);
-            Object r = getOne();
-            if (r instanceof byte[]) {
-                return Strings.toString(r);
-            } else {
-                return r;
-            }
-        }
-
-        public Object send(final byte[] cmd, final byte[]... args) {
-            return send(Protocol.Command.valueOf(Strings.toString(cmd).toUpperCase()), args);
-        }
-
-        public Object restore(byte[] key, long expired, byte[] dumped, boolean replace) {
-            if (!replace) {
-                return send(RESTORE, key, toByteArray(expired), dumped);
-            } else {
-                return send(RESTORE, key, toByteArray(expired), dumped, "REPLACE".getBytes());
-            }
-        }
-    }
 }
@@ -16,9 +16,16 @@
 
 package com.moilioncircle.redis.replicator;
 
+import com.moilioncircle.redis.replicator.checkpoint.Checkpoint;
+import com.moilioncircle.redis.replicator.checkpoint.CheckpointStore;
 import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandFilter;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
+import com.moilioncircle.redis.replicator.cmd.CommandParserTable;
+import com.moilioncircle.redis.replicator.cmd.FastReplyParser;
+import com.moilioncircle.redis.replicator.cmd.RedisCodec;
+import com.moilioncircle.redis.replicator.cmd.ReplyParser;
 import com.moilioncircle.redis.replicator.cmd.parser.AppendParser;
 import com.moilioncircle.redis.replicator.cmd.parser.BRPopLPushParser;
 import com.moilioncircle.redis.replicator.cmd.parser.BitFieldParser;
@@ -103,14 +110,22 @@ import com.moilioncircle.redis.replicator.cmd.parser.ZRemRangeByRankParser;
 import com.moilioncircle.redis.replicator.cmd.parser.ZRemRangeByScoreParser;
 import com.moilioncircle.redis.replicator.cmd.parser.ZUnionStoreParser;
 import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.io.MappedFileInputStream;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.RdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.datatype.Module;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleKey;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
@@ -125,12 +140,19 @@ import static com.moilioncircle.redis.replicator.Status.DISCONNECTING;
  * @since 2.1.0
  */
 public abstract class AbstractReplicator extends AbstractReplicatorListener implements Replicator {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractReplicator.class);
+    private static final ThreadLocal<OffsetTracker.Ack> delivering = new ThreadLocal<>();
     protected Configuration configuration;
     protected RedisInputStream inputStream;
     protected RdbVisitor rdbVisitor = new DefaultRdbVisitor(this);
+    protected volatile CommandFilter commandFilter;
+    protected volatile PartitionedEventDispatcher dispatcher;
+    protected volatile OffsetTracker tracker;
+    protected long lastCheckpoint;
     protected final AtomicReference<Status> connected = new AtomicReference<>(DISCONNECTED);
     protected final Map<ModuleKey, ModuleParser<? extends Module>> modules = new ConcurrentHashMap<>();
     protected final Map<CommandName, CommandParser<? extends Command>> commands = new ConcurrentHashMap<>();
+    protected final CommandParserTable commandTable = new CommandParserTable();
 
     @Override
     public CommandParser<? extends Command> getCommandParser(CommandName command) {
@@ -140,13 +162,25 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
     @Override
     public <T extends Command> void addCommandParser(CommandName command, CommandParser<T> parser) {
         commands.put(command, parser);
+        commandTable.put(command, parser);
     }
 
     @Override
     public CommandParser<? extends Command> removeCommandParser(CommandName command) {
+        commandTable.remove(command);
         return commands.remove(command);
     }
 
+    @Override
+    public void setCommandFilter(CommandFilter filter) {
+        this.commandFilter = filter;
+    }
+
+    @Override
+    public CommandFilter getCommandFilter() {
+        return commandFilter;
+    }
+
     @Override
     public ModuleParser<? extends Module> getModuleParser(String moduleName, int moduleVersion) {
         return modules.get(ModuleKey.key(moduleName, moduleVersion));
@@ -162,7 +196,133 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
         return modules.remove(ModuleKey.key(moduleName, moduleVersion));
     }
 
+    /**
+     * @param in redis input stream
+     * @return reply parser of the command stream
+     * @since 3.0.0
+     */
+    protected ReplyParser newReplyParser(RedisInputStream in) {
+        FastReplyParser parser;
+        if (configuration.isUseLazyCommand()) parser = new FastReplyParser(in, new RedisCodec(), true);
+        else if (configuration.isUseFastReplyParser() || commandFilter != null) parser = new FastReplyParser(in, new RedisCodec());
+        else return new ReplyParser(in, new RedisCodec());
+        parser.setCommandFilter(commandFilter);
+        return parser;
+    }
+
+    @Override
+    public boolean addRawByteTap(RawByteTap tap) {
+        RedisInputStream in = this.inputStream;
+        if (in != null) in.startCapture(tap);
+        return super.addRawByteTap(tap);
+    }
+
+    @Override
+    public boolean removeRawByteTap(RawByteTap tap) {
+        RedisInputStream in = this.inputStream;
+        if (in != null) in.stopCapture(tap);
+        return super.removeRawByteTap(tap);
+    }
+
+    /**
+     * @param file          rdb or aof file
+     * @param configuration configuration
+     * @return memory mapped stream if {@link Configuration#isUseMappedFile()}
+     * @throws FileNotFoundException if the file does not exist
+     * @since 3.0.0
+     */
+    protected static InputStream open(File file, Configuration configuration) throws FileNotFoundException {
+        if (configuration.isUseMappedFile()) return new MappedFileInputStream(file);
+        return new FileInputStream(file);
+    }
+
     public void submitEvent(Event event) {
+        submitEvent(event, null);
+    }
+
+    /**
+     * @param event event
+     * @param ack   acked once the listeners processed the event. null if the event is not tracked
+     * @since 3.0.0
+     */
+    public void submitEvent(Event event, OffsetTracker.Ack ack) {
+        RedisInputStream in = this.inputStream;
+        if (in != null) in.flushCapture();
+        if (configuration != null && configuration.getEventDispatchLanes() > 0) {
+            if (dispatcher == null) {
+                dispatcher = new PartitionedEventDispatcher(this, configuration.getEventDispatchLanes(), configuration.getEventDispatchQueueSize());
+            }
+            dispatcher.dispatch(event, ack);
+        } else {
+            doEventListener(event, ack);
+        }
+    }
+
+    @Override
+    public OffsetTracker.Ack deferAck() {
+        OffsetTracker.Ack ack = delivering.get();
+        return ack == null ? null : ack.retain();
+    }
+
+    @Override
+    public int[] getEventQueueDepths() {
+        PartitionedEventDispatcher dispatcher = this.dispatcher;
+        return dispatcher == null ? new int[0] : dispatcher.getQueueDepths();
+    }
+
+    /**
+     * save the psync position to the checkpoint store. called on the parser thread, so that every event
+     * before the position is already delivered to the listeners. with listener ack the position is the
+     * watermark of the processed events.
+     *
+     * @param force ignore the checkpoint interval
+     * @since 3.0.0
+     */
+    protected void checkpoint(boolean force) {
+        CheckpointStore store = configuration.getCheckpointStore();
+        if (store == null) return;
+        long now = System.currentTimeMillis();
+        if (!force && now - lastCheckpoint < configuration.getCheckpointInterval()) return;
+        lastCheckpoint = now;
+        OffsetTracker tracker = this.tracker;
+        Checkpoint checkpoint;
+        if (tracker != null) {
+            checkpoint = tracker.toCheckpoint(configuration.getReplId());
+        } else {
+            PartitionedEventDispatcher dispatcher = this.dispatcher;
+            if (dispatcher != null) dispatcher.await();
+            checkpoint = new Checkpoint(configuration.getReplId(), configuration.getReplOffset(), configuration.getReplStreamDB());
+        }
+        try {
+            store.save(checkpoint);
+        } catch (IOException e) {
+            logger.warn("failed to save {}", checkpoint, e);
+        }
+    }
+
+    /**
+     * deliver the event and ack it when the listeners return, see {@link #deferAck()}
+     *
+     * @param event event
+     * @param ack   ack of the event. null if the event is not tracked
+     * @since 3.0.0
+     */
+    protected void doEventListener(Event event, OffsetTracker.Ack ack) {
+        if (ack == null) {
+            doEventListener(event);
+            return;
+        }
+        delivering.set(ack);
+        try {
+            doEventListener(event);
+        } finally {
+            delivering.remove();
+        }
+        // not reached if the delivery failed with an io error
+        ack.ack();
+    }
+
+    protected void doEventListener(Event event) {
         try {
             doEventListener(this, event);
         } catch (UncheckedIOException e) {
@@ -173,6 +333,22 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
         }
     }
 
+    @Override
+    protected void doCloseListener(Replicator replicator) {
+        // deliver the queued events before close listeners
+        PartitionedEventDispatcher dispatcher = this.dispatcher;
+        if (dispatcher != null) {
+            this.dispatcher = null;
+            try {
+                dispatcher.close(configuration.getConnectionTimeout());
+            } catch (UncheckedIOException e) {
+                // interrupted, the queued events are not acked
+                logger.warn("event dispatcher closed before the queued events are delivered");
+            }
+        }
+        super.doCloseListener(replicator);
+    }
+
     @Override
     public boolean verbose() {
         return configuration != null && configuration.isVerbose();
@@ -295,6 +471,7 @@ public abstract class AbstractReplicator extends AbstractReplicatorListener impl
         try {
             if (inputStream != null) {
                 this.inputStream.setRawByteListeners(null);
+                this.inputStream.setRawByteTaps(null);
                 inputStream.close();
             }
         } catch (IOException ignore) {
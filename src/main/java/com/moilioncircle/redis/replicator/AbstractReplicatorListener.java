@@ -19,6 +19,7 @@ package com.moilioncircle.redis.replicator;
 import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.EventListener;
 import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -31,6 +32,7 @@ public class AbstractReplicatorListener implements ReplicatorListener {
     protected final List<CloseListener> closeListeners = new CopyOnWriteArrayList<>();
     protected final List<EventListener> eventListeners = new CopyOnWriteArrayList<>();
     protected final List<RawByteListener> rawByteListeners = new CopyOnWriteArrayList<>();
+    protected final List<RawByteTap> rawByteTaps = new CopyOnWriteArrayList<>();
     protected final List<ExceptionListener> exceptionListeners = new CopyOnWriteArrayList<>();
 
     @Override
@@ -53,6 +55,16 @@ public class AbstractReplicatorListener implements ReplicatorListener {
         return this.rawByteListeners.remove(listener);
     }
 
+    @Override
+    public boolean addRawByteTap(RawByteTap tap) {
+        return this.rawByteTaps.add(tap);
+    }
+
+    @Override
+    public boolean removeRawByteTap(RawByteTap tap) {
+        return this.rawByteTaps.remove(tap);
+    }
+
     @Override
     public boolean addCloseListener(CloseListener listener) {
         return closeListeners.add(listener);
@@ -16,6 +16,10 @@
 
 package com.moilioncircle.redis.replicator;
 
+import com.moilioncircle.redis.replicator.checkpoint.CheckpointStore;
+import com.moilioncircle.redis.replicator.checkpoint.FileCheckpointStore;
+import com.moilioncircle.redis.replicator.util.Clock;
+
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocketFactory;
@@ -114,6 +118,119 @@ public class Configuration {
      */
     private boolean useDefaultExceptionListener = true;
 
+    /**
+     * parse command stream using {@link com.moilioncircle.redis.replicator.cmd.FastReplyParser}
+     *
+     * @since 3.0.0
+     */
+    private boolean useFastReplyParser = false;
+
+    /**
+     * submit {@link com.moilioncircle.redis.replicator.cmd.impl.LazyCommand} that only parse the command on demand
+     *
+     * @since 3.0.0
+     */
+    private boolean useLazyCommand = false;
+
+    /**
+     * number of event dispatch lanes. 0 means events are dispatched on the parser thread
+     *
+     * @since 3.0.0
+     */
+    private int eventDispatchLanes = 0;
+
+    /**
+     * capacity of each event dispatch lane
+     *
+     * @since 3.0.0
+     */
+    private int eventDispatchQueueSize = 1024;
+
+    /**
+     * spool the FULLRESYNC rdb and the command stream received while parsing it to this directory.
+     * null means the rdb is parsed directly from the socket
+     *
+     * @since 3.0.0
+     */
+    private String rdbSpoolDirectory = null;
+
+    /**
+     * persist psync position and seed it on startup. null means disabled
+     *
+     * @since 3.0.0
+     */
+    private CheckpointStore checkpointStore = null;
+
+    /**
+     * min interval (unit : millis) between two checkpoints
+     *
+     * @since 3.0.0
+     */
+    private int checkpointInterval = 1000;
+
+    /**
+     * ack and checkpoint the offset of the events that the listeners confirmed instead of the parsed offset
+     *
+     * @since 3.0.0
+     */
+    private boolean listenerAck = false;
+
+    /**
+     * max number of unconfirmed events when {@link #listenerAck}. the parser waits when the window is full
+     *
+     * @since 3.0.0
+     */
+    private int listenerAckWindow = 65536;
+
+    /**
+     * skip the rdb records that have already expired without decoding them
+     *
+     * @since 3.0.0
+     */
+    private boolean skipExpiredKeys = false;
+
+    /**
+     * emit an {@code ExpiredKeySkippedEvent} for each skipped expired record
+     *
+     * @since 3.0.0
+     */
+    private boolean notifySkippedExpiredKeys = false;
+
+    /**
+     * clock of the expiry checks
+     *
+     * @since 3.0.0
+     */
+    private Clock clock = Clock.SYSTEM;
+
+    /**
+     * decode an rdb file with this many threads. 0 means sequential
+     *
+     * @since 3.0.0
+     */
+    private int rdbParallelism = 0;
+
+    /**
+     * emit the events of a parallel rdb decoding in file order
+     *
+     * @since 3.0.0
+     */
+    private boolean rdbParallelOrdered = true;
+
+    /**
+     * read rdb and aof files through memory mapping
+     *
+     * @since 3.0.0
+     */
+    private boolean useMappedFile = false;
+
+    /**
+     * compute the rdb checksum while parsing and report it in {@code PostRdbSyncEvent}
+     *
+     * @since 3.0.0
+     */
+    private boolean verifyRdbChecksum = false;
+
     /**
      * open ssl connection
      */
@@ -298,6 +415,166 @@ public class Configuration {
         return this;
     }
 
+    public boolean isUseFastReplyParser() {
+        return useFastReplyParser;
+    }
+
+    public Configuration setUseFastReplyParser(boolean useFastReplyParser) {
+        this.useFastReplyParser = useFastReplyParser;
+        return this;
+    }
+
+    public boolean isUseLazyCommand() {
+        return useLazyCommand;
+    }
+
+    public Configuration setUseLazyCommand(boolean useLazyCommand) {
+        this.useLazyCommand = useLazyCommand;
+        return this;
+    }
+
+    public int getEventDispatchLanes() {
+        return eventDispatchLanes;
+    }
+
+    public Configuration setEventDispatchLanes(int eventDispatchLanes) {
+        this.eventDispatchLanes = eventDispatchLanes;
+        return this;
+    }
+
+    public int getEventDispatchQueueSize() {
+        return eventDispatchQueueSize;
+    }
+
+    public Configuration setEventDispatchQueueSize(int eventDispatchQueueSize) {
+        this.eventDispatchQueueSize = eventDispatchQueueSize;
+        return this;
+    }
+
+    public String getRdbSpoolDirectory() {
+        return rdbSpoolDirectory;
+    }
+
+    public Configuration setRdbSpoolDirectory(String rdbSpoolDirectory) {
+        this.rdbSpoolDirectory = rdbSpoolDirectory;
+        return this;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    public Configuration setCheckpointStore(CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+        return this;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public Configuration setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public boolean isListenerAck() {
+        return listenerAck;
+    }
+
+    /**
+     * with listener ack, {@code REPLCONF ACK} and the checkpoint carry the low watermark of the events that every
+     * event listener has processed. an event is processed when the listeners return, unless a listener calls
+     * {@link Replicator#deferAck()} and confirms it later. a reconnect continues from the watermark, so the events
+     * after it are delivered again.
+     *
+     * @param listenerAck listener ack
+     * @return this
+     */
+    public Configuration setListenerAck(boolean listenerAck) {
+        this.listenerAck = listenerAck;
+        return this;
+    }
+
+    public int getListenerAckWindow() {
+        return listenerAckWindow;
+    }
+
+    public Configuration setListenerAckWindow(int listenerAckWindow) {
+        this.listenerAckWindow = listenerAckWindow;
+        return this;
+    }
+
+    public boolean isSkipExpiredKeys() {
+        return skipExpiredKeys;
+    }
+
+    /**
+     * the expiry of an rdb record is checked against {@link #getClock()} as soon as it is read. an expired
+     * record is skipped without decoding its key and value.
+     *
+     * @param skipExpiredKeys skip expired keys
+     * @return this
+     */
+    public Configuration setSkipExpiredKeys(boolean skipExpiredKeys) {
+        this.skipExpiredKeys = skipExpiredKeys;
+        return this;
+    }
+
+    public boolean isNotifySkippedExpiredKeys() {
+        return notifySkippedExpiredKeys;
+    }
+
+    public Configuration setNotifySkippedExpiredKeys(boolean notifySkippedExpiredKeys) {
+        this.notifySkippedExpiredKeys = notifySkippedExpiredKeys;
+        return this;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public Configuration setClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public int getRdbParallelism() {
+        return rdbParallelism;
+    }
+
+    public Configuration setRdbParallelism(int rdbParallelism) {
+        this.rdbParallelism = rdbParallelism;
+        return this;
+    }
+
+    public boolean isRdbParallelOrdered() {
+        return rdbParallelOrdered;
+    }
+
+    public Configuration setRdbParallelOrdered(boolean rdbParallelOrdered) {
+        this.rdbParallelOrdered = rdbParallelOrdered;
+        return this;
+    }
+
+    public boolean isUseMappedFile() {
+        return useMappedFile;
+    }
+
+    public Configuration setUseMappedFile(boolean useMappedFile) {
+        this.useMappedFile = useMappedFile;
+        return this;
+    }
+
+    public boolean isVerifyRdbChecksum() {
+        return verifyRdbChecksum;
+    }
+
+    public Configuration setVerifyRdbChecksum(boolean verifyRdbChecksum) {
+        this.verifyRdbChecksum = verifyRdbChecksum;
+        return this;
+    }
+
     public int getRetryTimeInterval() {
         return retryTimeInterval;
     }
@@ -388,6 +665,51 @@ public class Configuration {
         if (parameters.containsKey("useDefaultExceptionListener")) {
             configuration.setUseDefaultExceptionListener(getBool(parameters.get("useDefaultExceptionListener"), false));
         }
+        if (parameters.containsKey("useFastReplyParser")) {
+            configuration.setUseFastReplyParser(getBool(parameters.get("useFastReplyParser"), false));
+        }
+        if (parameters.containsKey("useLazyCommand")) {
+            configuration.setUseLazyCommand(getBool(parameters.get("useLazyCommand"), false));
+        }
+        if (parameters.containsKey("eventDispatchLanes")) {
+            configuration.setEventDispatchLanes(getInt(parameters.get("eventDispatchLanes"), 0));
+        }
+        if (parameters.containsKey("eventDispatchQueueSize")) {
+            configuration.setEventDispatchQueueSize(getInt(parameters.get("eventDispatchQueueSize"), 1024));
+        }
+        if (parameters.containsKey("rdbSpoolDirectory")) {
+            configuration.setRdbSpoolDirectory(parameters.get("rdbSpoolDirectory"));
+        }
+        if (parameters.containsKey("checkpointFile")) {
+            configuration.setCheckpointStore(new FileCheckpointStore(parameters.get("checkpointFile")));
+        }
+        if (parameters.containsKey("checkpointInterval")) {
+            configuration.setCheckpointInterval(getInt(parameters.get("checkpointInterval"), 1000));
+        }
+        if (parameters.containsKey("listenerAck")) {
+            configuration.setListenerAck(getBool(parameters.get("listenerAck"), false));
+        }
+        if (parameters.containsKey("listenerAckWindow")) {
+            configuration.setListenerAckWindow(getInt(parameters.get("listenerAckWindow"), 65536));
+        }
+        if (parameters.containsKey("skipExpiredKeys")) {
+            configuration.setSkipExpiredKeys(getBool(parameters.get("skipExpiredKeys"), false));
+        }
+        if (parameters.containsKey("notifySkippedExpiredKeys")) {
+            configuration.setNotifySkippedExpiredKeys(getBool(parameters.get("notifySkippedExpiredKeys"), false));
+        }
+        if (parameters.containsKey("rdbParallelism")) {
+            configuration.setRdbParallelism(getInt(parameters.get("rdbParallelism"), 0));
+        }
+        if (parameters.containsKey("rdbParallelOrdered")) {
+            configuration.setRdbParallelOrdered(getBool(parameters.get("rdbParallelOrdered"), true));
+        }
+        if (parameters.containsKey("useMappedFile")) {
+            configuration.setUseMappedFile(getBool(parameters.get("useMappedFile"), false));
+        }
+        if (parameters.containsKey("verifyRdbChecksum")) {
+            configuration.setVerifyRdbChecksum(getBool(parameters.get("verifyRdbChecksum"), false));
+        }
         if (parameters.containsKey("ssl")) {
             configuration.setSsl(getBool(parameters.get("ssl"), false));
         }
@@ -450,6 +772,22 @@ public class Configuration {
                 ", verbose=" + verbose +
                 ", heartbeatPeriod=" + heartbeatPeriod +
                 ", useDefaultExceptionListener=" + useDefaultExceptionListener +
+                ", useFastReplyParser=" + useFastReplyParser +
+                ", useLazyCommand=" + useLazyCommand +
+                ", eventDispatchLanes=" + eventDispatchLanes +
+                ", eventDispatchQueueSize=" + eventDispatchQueueSize +
+                ", rdbSpoolDirectory='" + rdbSpoolDirectory + '\'' +
+                ", checkpointStore=" + checkpointStore +
+                ", checkpointInterval=" + checkpointInterval +
+                ", listenerAck=" + listenerAck +
+                ", listenerAckWindow=" + listenerAckWindow +
+                ", skipExpiredKeys=" + skipExpiredKeys +
+                ", notifySkippedExpiredKeys=" + notifySkippedExpiredKeys +
+                ", clock=" + clock +
+                ", rdbParallelism=" + rdbParallelism +
+                ", rdbParallelOrdered=" + rdbParallelOrdered +
+                ", useMappedFile=" + useMappedFile +
+                ", verifyRdbChecksum=" + verifyRdbChecksum +
                 ", ssl=" + ssl +
                 ", sslSocketFactory=" + sslSocketFactory +
                 ", sslParameters=" + sslParameters +
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.moilioncircle.redis.replicator.util.Concurrents.terminateQuietly;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Drives the command streams of many {@link RedisSocketReplicator}s with a few selector threads.
+ * <p>
+ * The handshake, {@code PSYNC} and the rdb transfer of a master run in blocking mode on a bounded sync pool,
+ * they are short and the rdb parser pulls its input. Once the command stream starts, the socket channel is
+ * switched to non-blocking mode and registered with an event loop that decodes the commands with a
+ * {@link com.moilioncircle.redis.replicator.cmd.ReplyDecoder} and submits the events. The heartbeats of all the
+ * replicators share one scheduler. A broken stream is reconnected on the sync pool.
+ * <p>
+ * The event listeners are called on the event loop, a slow listener delays the other masters of its loop.
+ * The commands are parsed eagerly. {@link Configuration#getAsyncCachedBytes()} is not used, the event loop reads
+ * ahead. Ssl and {@link Configuration#getRdbSpoolDirectory()} keep the command stream in blocking mode, such a
+ * replicator runs on a thread of its own instead of the sync pool, so that it never holds a sync thread.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class NioReplicationEngine implements Closeable {
+
+    protected static final Logger logger = LoggerFactory.getLogger(NioReplicationEngine.class);
+
+    private final EventLoop[] loops;
+    private final ExecutorService syncs;
+    private final ThreadFactory blocking = factory("replication-blocking-");
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public NioReplicationEngine() throws IOException {
+        this(Runtime.getRuntime().availableProcessors(), 4);
+    }
+
+    /**
+     * @param loops       number of event loop threads
+     * @param syncThreads number of masters that run the handshake and the rdb transfer at the same time
+     * @throws IOException if a selector can not be opened
+     */
+    public NioReplicationEngine(int loops, int syncThreads) throws IOException {
+        if (loops <= 0) throw new IllegalArgumentException("illegal argument loops: " + loops);
+        if (syncThreads <= 0) throw new IllegalArgumentException("illegal argument syncThreads: " + syncThreads);
+        this.syncs = Executors.newFixedThreadPool(syncThreads, factory("replication-sync-"));
+        this.scheduler = Executors.newScheduledThreadPool(1, factory("replication-heartbeat-"));
+        this.loops = new EventLoop[loops];
+        ThreadFactory factory = factory("replication-loop-");
+        for (int i = 0; i < loops; i++) {
+            this.loops[i] = new EventLoop();
+            factory.newThread(this.loops[i]).start();
+        }
+    }
+
+    /**
+     * @param host          host
+     * @param port          port
+     * @param configuration configuration
+     * @return a replicator driven by this engine
+     */
+    public RedisSocketReplicator newReplicator(String host, int port, Configuration configuration) {
+        return new RedisSocketReplicator(host, port, configuration, this);
+    }
+
+    /**
+     * start the replicator without blocking the caller. {@link Replicator#open()} blocks until the replicator is closed
+     *
+     * @param replicator a replicator created by {@link #newReplicator(String, int, Configuration)}
+     */
+    public void start(RedisSocketReplicator replicator) {
+        replicator.start();
+    }
+
+    /**
+     * @return the scheduler of the heartbeats
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * close the replicators on the event loops and stop the threads
+     */
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) loop.close();
+        syncs.shutdown();
+        terminateQuietly(syncs, 5000, MILLISECONDS);
+        scheduler.shutdownNow();
+    }
+
+    void execute(Runnable task) {
+        syncs.execute(task);
+    }
+
+    /**
+     * run a replicator that stays in blocking mode on a thread of its own
+     *
+     * @param task replication task
+     * @throws RejectedExecutionException if the engine is closed
+     */
+    void spawn(Runnable task) {
+        if (syncs.isShutdown()) throw new RejectedExecutionException("engine closed.");
+        blocking.newThread(task).start();
+    }
+
+    void register(final NioSession session) {
+        final EventLoop loop = loops[(next.getAndIncrement() & 0x7FFFFFFF) % loops.length];
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                session.register(loop.selector, loop);
+            }
+        });
+    }
+
+    private static ThreadFactory factory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger idx = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + idx.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static class EventLoop implements Runnable, Executor {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed;
+
+        private EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        private void close() {
+            closed = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long checked = System.currentTimeMillis();
+            while (!closed) {
+                try {
+                    selector.select(1000);
+                } catch (IOException e) {
+                    logger.error("select failed. {}", e.getMessage());
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    ((NioSession) key.attachment()).ready(key);
+                }
+                long now = System.currentTimeMillis();
+                if (now - checked < 1000) continue;
+                checked = now;
+                for (SelectionKey key : new ArrayList<>(selector.keys())) ((NioSession) key.attachment()).check(now);
+            }
+            for (SelectionKey key : new ArrayList<>(selector.keys())) ((NioSession) key.attachment()).close();
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+                /*NOP*/
+            }
+        }
+    }
+}
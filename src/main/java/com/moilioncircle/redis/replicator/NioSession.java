@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.CommandFilter;
+import com.moilioncircle.redis.replicator.cmd.CommandFrame;
+import com.moilioncircle.redis.replicator.cmd.CommandParserTable;
+import com.moilioncircle.redis.replicator.cmd.RedisCodec;
+import com.moilioncircle.redis.replicator.cmd.ReplyDecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import static com.moilioncircle.redis.replicator.Status.CONNECTED;
+import static com.moilioncircle.redis.replicator.cmd.FastReplyParser.FILTERED;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+
+/**
+ * The non-blocking command stream of a {@link RedisSocketReplicator} on an event loop of {@link NioReplicationEngine}.
+ * Everything but {@link #output()} and {@link #wakeup()} runs on the event loop.
+ * <p>
+ * The command filter and the lazy command mode of the replicator are applied to the decoded commands the same
+ * way {@link com.moilioncircle.redis.replicator.cmd.FastReplyParser} applies them to the blocking stream.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+class NioSession {
+
+    private static final byte[] PING = "PING".getBytes();
+    private static final byte[] SELECT = "SELECT".getBytes();
+    private static final byte[] REPLCONF = "REPLCONF".getBytes();
+
+    private final RedisSocketReplicator replicator;
+    private final SocketChannel channel;
+    private final ByteBuffer buffer;
+    private final ReplyDecoder decoder = new ReplyDecoder();
+    private final Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<>();
+    private final long timeout;
+    private final CommandFilter filter;
+    private final RedisCodec codec;
+    private byte[] leftover;
+    private int db;
+    private volatile Executor loop;
+    private SelectionKey key;
+    private long lastRead;
+    private boolean ended;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            if (ended) return;
+            try {
+                flush();
+            } catch (IOException e) {
+                end(e);
+            }
+        }
+    };
+
+    private final Runnable check = new Runnable() {
+        @Override
+        public void run() {
+            check(System.currentTimeMillis());
+        }
+    };
+
+    /**
+     * @param replicator replicator
+     * @param channel    connected channel
+     * @param leftover   bytes of the command stream that were read in blocking mode
+     */
+    NioSession(RedisSocketReplicator replicator, SocketChannel channel, byte[] leftover) {
+        this.replicator = replicator;
+        this.channel = channel;
+        this.leftover = leftover;
+        this.timeout = replicator.getConfiguration().getReadTimeout();
+        this.buffer = ByteBuffer.allocate(replicator.getConfiguration().getBufferSize());
+        this.filter = replicator.getCommandFilter();
+        this.codec = replicator.getConfiguration().isUseLazyCommand() ? new RedisCodec() : null;
+        this.db = replicator.getConfiguration().getReplStreamDB();
+    }
+
+    /**
+     * @return output stream of the heartbeats and acks. the bytes are written by the event loop on flush
+     */
+    OutputStream output() {
+        return new OutputStream() {
+            private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+            @Override
+            public synchronized void write(int b) {
+                pending.write(b);
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                pending.write(b, off, len);
+            }
+
+            @Override
+            public synchronized void flush() throws IOException {
+                if (pending.size() == 0) return;
+                writes.add(ByteBuffer.wrap(pending.toByteArray()));
+                pending.reset();
+                Executor loop = NioSession.this.loop;
+                if (loop != null) loop.execute(flush);
+            }
+        };
+    }
+
+    /**
+     * check the replicator status on the event loop, e.g. after {@link Replicator#close()}
+     */
+    void wakeup() {
+        Executor loop = this.loop;
+        if (loop != null) loop.execute(check);
+    }
+
+    void register(Selector selector, Executor loop) {
+        try {
+            channel.configureBlocking(false);
+            this.key = channel.register(selector, OP_READ, this);
+            this.loop = loop;
+            this.lastRead = System.currentTimeMillis();
+            byte[] bytes = leftover;
+            leftover = null;
+            if (bytes.length > 0) {
+                replicator.tap(bytes, 0, bytes.length);
+                process(ByteBuffer.wrap(bytes));
+            }
+            if (!ended) flush();
+            check(lastRead);
+        } catch (IOException | RuntimeException e) {
+            end(e);
+        }
+    }
+
+    void ready(SelectionKey key) {
+        try {
+            if (key.isWritable()) flush();
+            if (key.isReadable()) read();
+        } catch (IOException | RuntimeException e) {
+            end(e);
+        }
+    }
+
+    /**
+     * end the session if the replicator is closed or the master is silent for longer than the read timeout
+     */
+    void check(long now) {
+        if (ended) return;
+        if (replicator.getStatus() != CONNECTED) end(null);
+        else if (timeout > 0 && now - lastRead > timeout) end(new SocketTimeoutException("Read timed out"));
+    }
+
+    /**
+     * the event loop is closing
+     */
+    void close() {
+        try {
+            replicator.close();
+        } catch (IOException ignore) {
+            /*NOP*/
+        }
+        end(null);
+    }
+
+    private void read() throws IOException {
+        buffer.clear();
+        int n = channel.read(buffer);
+        if (n == -1) throw new EOFException("end of file or end of stream.");
+        if (n == 0) return;
+        lastRead = System.currentTimeMillis();
+        buffer.flip();
+        replicator.tap(buffer.array(), 0, n);
+        process(buffer);
+    }
+
+    private void process(ByteBuffer buffer) {
+        while (!ended && decoder.decode(buffer)) {
+            replicator.onCommand(command(decoder.getReply()), decoder.getLength());
+            if (replicator.getStatus() != CONNECTED) end(null);
+        }
+    }
+
+    /**
+     * @param reply decoded reply
+     * @return {@link com.moilioncircle.redis.replicator.cmd.FastReplyParser#FILTERED} if the command is rejected by the command filter,
+     * a {@link CommandFrame} in lazy mode, otherwise the reply
+     */
+    private Object command(Object reply) {
+        if (!(reply instanceof Object[])) return reply;
+        Object[] ary = (Object[]) reply;
+        for (Object arg : ary) if (arg != null && !(arg instanceof byte[])) return reply;
+        if (ary.length == 0 || ary[0] == null) return reply;
+        byte[] name = (byte[]) ary[0];
+        if (filter != null) {
+            if (CommandParserTable.equals(SELECT, name, 0, name.length) && ary.length > 1) db = toInt((byte[]) ary[1]);
+            // the replication heartbeat and the db of the stream are never filtered
+            boolean control = CommandParserTable.equals(PING, name, 0, name.length)
+                    || CommandParserTable.equals(REPLCONF, name, 0, name.length)
+                    || CommandParserTable.equals(SELECT, name, 0, name.length);
+            boolean accept = control || filter.acceptCommand(name, 0, name.length) && filter.acceptDb(db);
+            if (accept && !control && ary.length > 1 && filter.hasKey(name, 0, name.length)) {
+                byte[] key = (byte[]) ary[1];
+                accept = key == null || filter.acceptKey(key, 0, key.length);
+            }
+            if (!accept) return FILTERED;
+        }
+        if (codec == null) return reply;
+        CommandFrame frame = new CommandFrame(ary.length, codec);
+        for (int i = 0; i < ary.length; i++) {
+            byte[] arg = (byte[]) ary[i];
+            if (arg != null) frame.set(i, arg, 0, arg.length);
+        }
+        return frame;
+    }
+
+    private static int toInt(byte[] bytes) {
+        if (bytes == null) return -1;
+        int r = 0;
+        for (byte c : bytes) {
+            if (c < '0' || c > '9') return -1;
+            r = r * 10 + (c - '0');
+        }
+        return r;
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer head;
+        while ((head = writes.peek()) != null) {
+            channel.write(head);
+            if (head.hasRemaining()) {
+                key.interestOps(OP_READ | OP_WRITE);
+                return;
+            }
+            writes.poll();
+        }
+        key.interestOps(OP_READ);
+    }
+
+    private void end(Throwable reason) {
+        if (ended) return;
+        ended = true;
+        if (key != null) key.cancel();
+        replicator.detachedClose(reason);
+    }
+}
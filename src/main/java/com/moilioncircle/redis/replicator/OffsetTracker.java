@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.checkpoint.Checkpoint;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Low watermark of the replication offset: the end offset of the longest prefix of the command stream whose
+ * events are all acked. The events may be acked in any order and on any thread.
+ * <p>
+ * The pending events are kept in a ring of {@code capacity} slots. {@link #track(long, int)} is called by the
+ * parser thread in stream order, it waits for a slot if the ring is full. The watermark is advanced by the
+ * readers, an ack never locks.
+ *
+ * @author Leon Chen
+ * @see Configuration#setListenerAck(boolean)
+ * @since 3.0.0
+ */
+public class OffsetTracker {
+
+    private final int mask;
+    private final long[] ends;
+    private final int[] dbs;
+    /**
+     * {@code -(seq + 1)} while the event of the slot is pending, {@code seq} once it is acked
+     */
+    private final AtomicLongArray states;
+    private final AtomicBoolean advancing = new AtomicBoolean();
+
+    private volatile long head;
+    private volatile long tail;
+    private volatile Mark mark;
+    private long lastEnd;
+
+    /**
+     * @param capacity max number of pending events, rounded up to a power of 2
+     * @param offset   initial watermark
+     * @param db       db of the stream at the initial watermark
+     */
+    public OffsetTracker(int capacity, long offset, int db) {
+        if (capacity <= 0) throw new IllegalArgumentException("illegal argument capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.mask = size - 1;
+        this.ends = new long[size];
+        this.dbs = new int[size];
+        this.states = new AtomicLongArray(size);
+        reset(offset, db);
+    }
+
+    /**
+     * track the next event of the stream. parser thread only
+     *
+     * @param end end offset of the event
+     * @param db  db of the stream after the event
+     * @return ack of the event
+     */
+    public Ack track(long end, int db) {
+        long seq = tail;
+        while (seq - head > mask) {
+            advance();
+            if (seq - head > mask) LockSupport.parkNanos(100000L);
+        }
+        int slot = (int) seq & mask;
+        ends[slot] = end;
+        dbs[slot] = db;
+        states.set(slot, -(seq + 1));
+        lastEnd = end;
+        tail = seq + 1;
+        return new Ack(this, seq, end);
+    }
+
+    /**
+     * continue the tracking at the offset of a new command stream. the pending events are dropped if the stream
+     * does not continue from the last tracked event, e.g. after a full resync. parser thread only
+     *
+     * @param offset offset of the stream
+     * @param db     db of the stream
+     */
+    public void resume(long offset, int db) {
+        if (offset != lastEnd) reset(offset, db);
+    }
+
+    /**
+     * drop the pending events and continue the tracking at the watermark, the stream is requested again from
+     * the watermark. parser thread only
+     */
+    public void rewind() {
+        advance();
+        Mark mark = this.mark;
+        reset(mark.offset, mark.db);
+    }
+
+    /**
+     * @return the watermark offset
+     */
+    public long getOffset() {
+        advance();
+        return mark.offset;
+    }
+
+    /**
+     * @param replId repl id of the stream
+     * @return checkpoint of the watermark
+     */
+    public Checkpoint toCheckpoint(String replId) {
+        advance();
+        Mark mark = this.mark;
+        return new Checkpoint(replId, mark.offset, mark.db);
+    }
+
+    /**
+     * @return number of tracked events that are not behind the watermark yet
+     */
+    public int getPending() {
+        return (int) (tail - head);
+    }
+
+    private void reset(long offset, int db) {
+        while (!advancing.compareAndSet(false, true)) Thread.yield();
+        try {
+            // the acks of the dropped events do not match their slots any more
+            this.head = tail;
+            this.mark = new Mark(offset, db);
+            this.lastEnd = offset;
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    private void done(long seq) {
+        states.compareAndSet((int) seq & mask, -(seq + 1), seq);
+    }
+
+    /**
+     * move the watermark over the acked events. skipped if another thread is advancing
+     */
+    private void advance() {
+        if (!advancing.compareAndSet(false, true)) return;
+        try {
+            long h = head, t = tail;
+            if (h == t || states.get((int) h & mask) != h) return;
+            int slot;
+            do {
+                slot = (int) h & mask;
+                h++;
+            } while (h != t && states.get((int) h & mask) == h);
+            this.mark = new Mark(ends[slot], dbs[slot]);
+            this.head = h;
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    private static class Mark {
+        private final long offset;
+        private final int db;
+
+        private Mark(long offset, int db) {
+            this.offset = offset;
+            this.db = db;
+        }
+    }
+
+    /**
+     * Completion of a tracked event. The event is behind the watermark once every holder called {@link #ack()}.
+     */
+    public static class Ack {
+
+        private static final AtomicIntegerFieldUpdater<Ack> REFS = AtomicIntegerFieldUpdater.newUpdater(Ack.class, "refs");
+
+        private final OffsetTracker tracker;
+        private final long seq;
+        private final long offset;
+        private volatile int refs = 1;
+
+        private Ack(OffsetTracker tracker, long seq, long offset) {
+            this.tracker = tracker;
+            this.seq = seq;
+            this.offset = offset;
+        }
+
+        /**
+         * @return end offset of the event
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * confirm that the event is processed. extra calls are ignored
+         */
+        public void ack() {
+            int refs;
+            do {
+                refs = this.refs;
+                if (refs <= 0) return;
+            } while (!REFS.compareAndSet(this, refs, refs - 1));
+            if (refs == 1) tracker.done(seq);
+        }
+
+        /**
+         * @return this ack with one more holder
+         */
+        Ack retain() {
+            REFS.incrementAndGet(this);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.CommandFrame;
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.moilioncircle.redis.replicator.util.Concurrents.terminateQuietly;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Dispatches events to N worker lanes with bounded queues.
+ * <p>
+ * Events of one key ({@link KeyValuePair}, {@link GenericKeyCommand} and single key {@link LazyCommand})
+ * always go to the same lane, so they are delivered in stream order. Every other event
+ * (e.g. {@code RENAME}, {@code MSET}, {@code FLUSHALL}, {@code SELECT}, sync events) is a barrier:
+ * it waits for all the lanes to drain and is delivered on the parser thread. A {@link KeyValuePair} whose value
+ * is read from the stream while it is consumed (an {@link Iterator} or an {@link InputStream}, e.g. of
+ * {@link com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor}) is a barrier too.
+ * <p>
+ * A full lane blocks the parser thread. Event listeners and exception listeners are called concurrently.
+ *
+ * @author Leon Chen
+ * @see Configuration#setEventDispatchLanes(int)
+ * @since 3.0.0
+ */
+public class PartitionedEventDispatcher {
+
+    private static final byte[][] KEYED = upper(
+            "SET", "SETEX", "SETNX", "PSETEX", "APPEND", "SETRANGE", "SETBIT", "GETSET", "BITFIELD",
+            "INCR", "DECR", "INCRBY", "DECRBY", "EXPIRE", "EXPIREAT", "PEXPIRE", "PEXPIREAT", "PERSIST", "RESTORE",
+            "HSET", "HSETNX", "HMSET", "HDEL", "HINCRBY",
+            "LPUSH", "LPUSHX", "RPUSH", "RPUSHX", "LPOP", "RPOP", "LSET", "LREM", "LTRIM", "LINSERT",
+            "SADD", "SREM", "PFADD", "GEOADD",
+            "ZADD", "ZINCRBY", "ZREM", "ZREMRANGEBYLEX", "ZREMRANGEBYRANK", "ZREMRANGEBYSCORE", "ZPOPMAX", "ZPOPMIN",
+            "XADD", "XACK", "XCLAIM", "XDEL", "XTRIM");
+
+    private final Lane[] lanes;
+    private final ExecutorService executor;
+    private final AbstractReplicator replicator;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile UncheckedIOException error;
+
+    public PartitionedEventDispatcher(AbstractReplicator replicator, int lanes, int queueSize) {
+        this.replicator = replicator;
+        this.lanes = new Lane[lanes];
+        this.executor = Executors.newFixedThreadPool(lanes, new ThreadFactory() {
+            private final AtomicInteger idx = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "event-dispatcher-" + idx.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(queueSize);
+            this.executor.execute(this.lanes[i]);
+        }
+    }
+
+    /**
+     * @param event event
+     * @throws UncheckedIOException thrown by an event listener on a lane
+     */
+    public void dispatch(Event event) {
+        dispatch(event, null);
+    }
+
+    /**
+     * @param event event
+     * @param ack   acked once the listeners processed the event. null if the event is not tracked
+     * @throws UncheckedIOException thrown by an event listener on a lane, or an {@link InterruptedIOException}
+     *                              if the parser thread is interrupted before the event is queued or delivered
+     */
+    public void dispatch(Event event, OffsetTracker.Ack ack) {
+        check();
+        int lane = lane(event);
+        if (lane < 0) {
+            await();
+            check();
+            replicator.doEventListener(event, ack);
+            return;
+        }
+        pending.incrementAndGet();
+        try {
+            lanes[lane].queue.put(new Delivery(event, ack));
+        } catch (InterruptedException e) {
+            pending.decrementAndGet();
+            throw interrupted();
+        }
+    }
+
+    /**
+     * @return number of queued events of each lane
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) depths[i] = lanes[i].queue.size();
+        return depths;
+    }
+
+    /**
+     * wait for the queued events and stop the lanes
+     *
+     * @param timeout timeout in millis
+     */
+    public void close(long timeout) {
+        try {
+            await();
+        } finally {
+            executor.shutdownNow();
+            terminateQuietly(executor, timeout, MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param event event
+     * @return lane index. -1 if the event is a barrier
+     */
+    protected int lane(Event event) {
+        int h;
+        if (event instanceof KeyValuePair<?, ?>) {
+            // a lazy value must be consumed before the parser moves on
+            Object value = ((KeyValuePair<?, ?>) event).getValue();
+            if (value instanceof Iterator<?> || value instanceof InputStream) return -1;
+            Object key = ((KeyValuePair<?, ?>) event).getKey();
+            if (key instanceof byte[]) h = Arrays.hashCode((byte[]) key);
+            else if (key != null) h = key.hashCode();
+            else return -1;
+        } else if (event instanceof GenericKeyCommand) {
+            byte[] key = ((GenericKeyCommand) event).getKey();
+            if (key == null) return -1;
+            h = Arrays.hashCode(key);
+        } else if (event instanceof LazyCommand) {
+            CommandFrame frame = ((LazyCommand) event).getFrame();
+            if (frame.size() < 2 || frame.buffer(1) == null || !isKeyed(frame)) return -1;
+            h = hash(frame.buffer(1), frame.offset(1), frame.length(1));
+        } else {
+            return -1;
+        }
+        h ^= (h >>> 16);
+        return (h & 0x7FFFFFFF) % lanes.length;
+    }
+
+    /**
+     * wait until every queued event is delivered
+     *
+     * @throws UncheckedIOException an {@link InterruptedIOException} if the thread is interrupted
+     */
+    public void await() {
+        if (pending.get() == 0) return;
+        synchronized (pending) {
+            while (pending.get() != 0) {
+                try {
+                    pending.wait();
+                } catch (InterruptedException e) {
+                    // the events behind a barrier must not overtake the queued ones
+                    throw interrupted();
+                }
+            }
+        }
+    }
+
+    private static UncheckedIOException interrupted() {
+        Thread.currentThread().interrupt();
+        return new UncheckedIOException(new InterruptedIOException());
+    }
+
+    private void check() {
+        UncheckedIOException e = error;
+        if (e == null) return;
+        error = null;
+        throw e;
+    }
+
+    static boolean isKeyed(CommandFrame frame) {
+        for (byte[] name : KEYED) {
+            if (frame.isEquals(0, name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * same as {@link Arrays#hashCode(byte[])} on the slice so that eager and lazy commands share lanes
+     */
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) h = 31 * h + bytes[i];
+        return h;
+    }
+
+    private static byte[][] upper(String... names) {
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) bytes[i] = names[i].getBytes(UTF_8);
+        return bytes;
+    }
+
+    private class Lane implements Runnable {
+
+        private final BlockingQueue<Delivery> queue;
+
+        private Lane(int queueSize) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Delivery delivery;
+                try {
+                    delivery = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    replicator.doEventListener(delivery.event, delivery.ack);
+                } catch (UncheckedIOException e) {
+                    error = e;
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        synchronized (pending) {
+                            pending.notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Delivery {
+        private final Event event;
+        private final OffsetTracker.Ack ack;
+
+        private Delivery(Event event, OffsetTracker.Ack ack) {
+            this.event = event;
+            this.ack = ack;
+        }
+    }
+}
@@ -17,10 +17,10 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.cmd.Command;
-import com.moilioncircle.redis.replicator.cmd.CommandName;
+import com.moilioncircle.redis.replicator.cmd.CommandFrame;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
-import com.moilioncircle.redis.replicator.cmd.RedisCodec;
 import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
 import com.moilioncircle.redis.replicator.event.PostCommandSyncEvent;
 import com.moilioncircle.redis.replicator.event.PreCommandSyncEvent;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
@@ -30,7 +30,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,6 +37,7 @@ import java.util.Objects;
 
 import static com.moilioncircle.redis.replicator.Status.CONNECTED;
 import static com.moilioncircle.redis.replicator.Status.DISCONNECTED;
+import static com.moilioncircle.redis.replicator.cmd.FastReplyParser.FILTERED;
 import static com.moilioncircle.redis.replicator.util.Strings.format;
 
 /**
@@ -47,10 +47,10 @@ import static com.moilioncircle.redis.replicator.util.Strings.format;
 public class RedisAofReplicator extends AbstractReplicator {
     
     protected static final Logger logger = LoggerFactory.getLogger(RedisAofReplicator.class);
-    protected final ReplyParser replyParser;
+    protected ReplyParser replyParser;
     
     public RedisAofReplicator(File file, Configuration configuration) throws FileNotFoundException {
-        this(new FileInputStream(file), configuration);
+        this(open(file, configuration), configuration);
     }
     
     public RedisAofReplicator(InputStream in, Configuration configuration) {
@@ -59,7 +59,6 @@ public class RedisAofReplicator extends AbstractReplicator {
         this.configuration = configuration;
         this.inputStream = new RedisInputStream(in, this.configuration.getBufferSize());
         this.inputStream.setRawByteListeners(this.rawByteListeners);
-        this.replyParser = new ReplyParser(inputStream, new RedisCodec());
         builtInCommandParserRegister();
         if (configuration.isUseDefaultExceptionListener())
             addExceptionListener(new DefaultExceptionListener());
@@ -80,22 +79,31 @@ public class RedisAofReplicator extends AbstractReplicator {
     
     protected void doOpen() throws IOException {
         submitEvent(new PreCommandSyncEvent());
+        replyParser = newReplyParser(inputStream);
         try {
             while (getStatus() == CONNECTED) {
                 Object obj = replyParser.parse();
-            
-                if (obj instanceof Object[]) {
+                if (obj instanceof CommandFrame) {
+                    CommandFrame frame = (CommandFrame) obj;
+                    if (verbose() && logger.isDebugEnabled())
+                        logger.debug(format(frame.toArray()));
+                    final CommandParser<? extends Command> parser;
+                    if ((parser = commandTable.get(frame.buffer(0), frame.offset(0), frame.length(0))) == null) {
+                        logger.warn("command [{}] not register. raw command:{}", Strings.toString(frame.get(0)), format(frame.toArray()));
+                        continue;
+                    }
+                    submitEvent(new LazyCommand(frame, parser));
+                } else if (obj instanceof Object[]) {
                     if (verbose() && logger.isDebugEnabled())
                         logger.debug(format((Object[]) obj));
                     Object[] raw = (Object[]) obj;
-                    CommandName name = CommandName.name(Strings.toString(raw[0]));
                     final CommandParser<? extends Command> parser;
-                    if ((parser = commands.get(name)) == null) {
-                        logger.warn("command [{}] not register. raw command:{}", name, format(raw));
+                    if ((parser = commandTable.get((byte[]) raw[0])) == null) {
+                        logger.warn("command [{}] not register. raw command:{}", Strings.toString(raw[0]), format(raw));
                         continue;
                     }
                     submitEvent(parser.parse(raw));
-                } else {
+                } else if (obj != FILTERED) {
                     logger.info("unexpected redis reply:{}", obj);
                 }
             }
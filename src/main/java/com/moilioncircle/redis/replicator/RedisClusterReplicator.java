@@ -0,0 +1,363 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.checkpoint.FileCheckpointStore;
+import com.moilioncircle.redis.replicator.cmd.CommandFrame;
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
+import com.moilioncircle.redis.replicator.event.ClusterEventListener;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.net.RedisClusterSlots;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.moilioncircle.redis.replicator.net.RedisClusterSlots.host;
+import static com.moilioncircle.redis.replicator.net.RedisClusterSlots.port;
+import static com.moilioncircle.redis.replicator.util.Concurrents.terminateQuietly;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Replicates every master of a redis cluster in parallel, one PSYNC session per master.
+ * <p>
+ * The masters are discovered with {@code CLUSTER SLOTS} from the seed node and re-discovered every
+ * {@link #setRefreshPeriod(long) refresh period}. A new master gets a new session and the session of a node
+ * that is no longer a master is closed, the other sessions keep running. The sessions are driven by a
+ * {@link NioReplicationEngine}, they share its sync pool, event loops and heartbeat scheduler instead of holding
+ * a thread per master. The engine is created on {@link #open()} and closed with the cluster replicator unless one
+ * is given to the constructor.
+ * <p>
+ * Each event is tagged with the source master and the slot of its key. The listeners are called concurrently by
+ * the sessions of different masters, the events of one master are delivered in stream order.
+ * Override {@link #newReplicator(String, int)} to set up the replicator of a master (rdb visitor, command parsers).
+ *
+ * @author Leon Chen
+ * @see RedisClusterSlots
+ * @since 3.0.0
+ */
+public class RedisClusterReplicator implements Closeable {
+
+    protected static final Logger logger = LoggerFactory.getLogger(RedisClusterReplicator.class);
+
+    private final RedisURI seed;
+    private final Configuration configuration;
+    private final boolean shared;
+    private final ScheduledExecutorService scheduler;
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final Map<String, Replicator> replicators = new ConcurrentHashMap<>();
+    private final Set<Replicator> sessions = Collections.newSetFromMap(new ConcurrentHashMap<Replicator, Boolean>());
+    private volatile NioReplicationEngine engine;
+    private final List<ClusterEventListener> eventListeners = new CopyOnWriteArrayList<>();
+    private volatile String[] slots = new String[CRC16.SLOTS];
+    private volatile boolean closing;
+    private long refreshPeriod = 10000;
+
+    public RedisClusterReplicator(String seed) throws URISyntaxException {
+        this(new RedisURI(seed));
+    }
+
+    /**
+     * @param seed uri of any node of the cluster. the parameters apply to every master
+     */
+    public RedisClusterReplicator(RedisURI seed) {
+        this(seed, null);
+    }
+
+    public RedisClusterReplicator(String seed, NioReplicationEngine engine) throws URISyntaxException {
+        this(new RedisURI(seed), engine);
+    }
+
+    /**
+     * @param seed   uri of any node of the cluster. the parameters apply to every master
+     * @param engine engine of the sessions, not closed on close. null to create one on {@link #open()}
+     */
+    public RedisClusterReplicator(RedisURI seed, NioReplicationEngine engine) {
+        this.seed = seed;
+        this.engine = engine;
+        this.shared = engine != null;
+        this.configuration = Configuration.valueOf(seed);
+        this.scheduler = Executors.newScheduledThreadPool(1, factory("cluster-discovery-"));
+    }
+
+    public boolean addEventListener(ClusterEventListener listener) {
+        return eventListeners.add(listener);
+    }
+
+    public boolean removeEventListener(ClusterEventListener listener) {
+        return eventListeners.remove(listener);
+    }
+
+    public long getRefreshPeriod() {
+        return refreshPeriod;
+    }
+
+    /**
+     * @param refreshPeriod millis between two topology discoveries. 0 to discover only on open
+     * @return this
+     */
+    public RedisClusterReplicator setRefreshPeriod(long refreshPeriod) {
+        this.refreshPeriod = refreshPeriod;
+        return this;
+    }
+
+    /**
+     * @return {@code host:port} of the masters being replicated
+     */
+    public Set<String> getNodes() {
+        return new LinkedHashSet<>(replicators.keySet());
+    }
+
+    /**
+     * @param node {@code host:port}
+     * @return the replicator of the master. null if the node is not replicated
+     */
+    public Replicator getReplicator(String node) {
+        return replicators.get(node);
+    }
+
+    /**
+     * @param slot slot
+     * @return {@code host:port} of the master of the slot in the last discovery
+     */
+    public String getNode(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * discover the masters, start a session per master and block until {@link #close()}
+     *
+     * @throws IOException if no node answers {@code CLUSTER SLOTS}
+     */
+    public void open() throws IOException {
+        if (engine == null) engine = new NioReplicationEngine();
+        try {
+            refresh();
+            if (refreshPeriod > 0) {
+                scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refresh();
+                        } catch (Throwable e) {
+                            logger.warn("discover cluster failed. {}", e.getMessage());
+                        }
+                    }
+                }, refreshPeriod, refreshPeriod, MILLISECONDS);
+            }
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                closing = true;
+                for (Replicator replicator : replicators.values()) closeQuietly(replicator);
+            }
+            scheduler.shutdownNow();
+            long timeout = terminateQuietly(scheduler, configuration.getConnectionTimeout(), MILLISECONDS);
+            awaitSessions(timeout);
+            if (!shared) engine.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        closed.countDown();
+    }
+
+    /**
+     * load the slot map from the seed or a known master, start the sessions of the new masters
+     * and close the sessions of the nodes that are no longer masters
+     *
+     * @throws IOException if no node answers {@code CLUSTER SLOTS}
+     */
+    protected synchronized void refresh() throws IOException {
+        if (closing) return;
+        Set<String> candidates = new LinkedHashSet<>();
+        candidates.add(seed.getHost() + ":" + seed.getPort());
+        candidates.addAll(replicators.keySet());
+        String[] map = null;
+        IOException error = null;
+        for (String candidate : candidates) {
+            try {
+                map = RedisClusterSlots.load(host(candidate), port(candidate), configuration);
+                break;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (map == null) throw error;
+        this.slots = map;
+        Set<String> masters = new LinkedHashSet<>();
+        for (String node : map) if (node != null) masters.add(node);
+        for (Map.Entry<String, Replicator> entry : replicators.entrySet()) {
+            if (masters.contains(entry.getKey())) continue;
+            logger.info("{} is no longer a master, close its session", entry.getKey());
+            replicators.remove(entry.getKey());
+            closeQuietly(entry.getValue());
+        }
+        for (String node : masters) {
+            if (!replicators.containsKey(node)) start(node);
+        }
+    }
+
+    /**
+     * create the replicator of a master on the engine. a replicator that is not driven by the engine runs on
+     * a thread of its own
+     *
+     * @param host host of the master
+     * @param port port of the master
+     * @return replicator
+     * @throws IOException if the replicator can not be created
+     */
+    protected Replicator newReplicator(String host, int port) throws IOException {
+        Configuration configuration = Configuration.valueOf(seed);
+        // the replication position is per master
+        configuration.setReplId("?").setReplOffset(-1);
+        String file = seed.parameters.get("checkpointFile");
+        if (file != null) configuration.setCheckpointStore(new FileCheckpointStore(file + "." + host + "-" + port));
+        return engine.newReplicator(host, port, configuration);
+    }
+
+    /**
+     * @param event event
+     * @return cluster slot of the event key. -1 if the event has no key
+     */
+    protected int slot(Event event) {
+        if (event instanceof KeyValuePair<?, ?>) {
+            Object key = ((KeyValuePair<?, ?>) event).getKey();
+            return key instanceof byte[] ? CRC16.slot((byte[]) key) : -1;
+        } else if (event instanceof GenericKeyCommand) {
+            byte[] key = ((GenericKeyCommand) event).getKey();
+            return key != null ? CRC16.slot(key) : -1;
+        } else if (event instanceof LazyCommand) {
+            CommandFrame frame = ((LazyCommand) event).getFrame();
+            if (frame.size() < 2 || frame.buffer(1) == null || !PartitionedEventDispatcher.isKeyed(frame)) return -1;
+            return CRC16.slot(Arrays.copyOfRange(frame.buffer(1), frame.offset(1), frame.offset(1) + frame.length(1)));
+        }
+        return -1;
+    }
+
+    private void start(final String node) throws IOException {
+        final Replicator replicator = newReplicator(host(node), port(node));
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                // a session closed before it connected
+                if (replicators.get(node) != replicator) {
+                    closeQuietly(replicator);
+                    return;
+                }
+                if (eventListeners.isEmpty()) return;
+                int slot = slot(event);
+                for (ClusterEventListener listener : eventListeners) listener.onEvent(replicator, node, slot, event);
+            }
+        });
+        replicator.addCloseListener(new CloseListener() {
+            @Override
+            public void handle(Replicator replicator) {
+                // restarted by the next discovery if the node is still a master
+                if (replicators.remove(node, replicator) && !closing) logger.warn("session of master {} closed", node);
+                synchronized (sessions) {
+                    sessions.remove(replicator);
+                    sessions.notifyAll();
+                }
+            }
+        });
+        replicators.put(node, replicator);
+        sessions.add(replicator);
+        logger.info("start the session of master {}", node);
+        try {
+            if (replicator instanceof RedisSocketReplicator && ((RedisSocketReplicator) replicator).engine != null) {
+                ((RedisSocketReplicator) replicator).start();
+                return;
+            }
+            engine.spawn(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        replicator.open();
+                    } catch (Throwable e) {
+                        logger.error("session of master {} failed. {}", node, e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            replicators.remove(node, replicator);
+            sessions.remove(replicator);
+            throw e;
+        }
+    }
+
+    private void awaitSessions(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (sessions) {
+            while (!sessions.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return;
+                try {
+                    sessions.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Replicator replicator) {
+        try {
+            replicator.close();
+        } catch (IOException ignore) {
+            /*NOP*/
+        }
+    }
+
+    private static ThreadFactory factory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger idx = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + idx.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
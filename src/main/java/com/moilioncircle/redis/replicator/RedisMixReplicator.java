@@ -17,10 +17,10 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.cmd.Command;
-import com.moilioncircle.redis.replicator.cmd.CommandName;
+import com.moilioncircle.redis.replicator.cmd.CommandFrame;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
-import com.moilioncircle.redis.replicator.cmd.RedisCodec;
 import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
 import com.moilioncircle.redis.replicator.event.PostCommandSyncEvent;
 import com.moilioncircle.redis.replicator.event.PreCommandSyncEvent;
 import com.moilioncircle.redis.replicator.io.PeekableInputStream;
@@ -32,7 +32,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -40,6 +39,7 @@ import java.util.Objects;
 
 import static com.moilioncircle.redis.replicator.Status.CONNECTED;
 import static com.moilioncircle.redis.replicator.Status.DISCONNECTED;
+import static com.moilioncircle.redis.replicator.cmd.FastReplyParser.FILTERED;
 import static com.moilioncircle.redis.replicator.util.Strings.format;
 
 /**
@@ -48,11 +48,11 @@ import static com.moilioncircle.redis.replicator.util.Strings.format;
  */
 public class RedisMixReplicator extends AbstractReplicator {
     protected static final Logger logger = LoggerFactory.getLogger(RedisMixReplicator.class);
-    protected final ReplyParser replyParser;
+    protected ReplyParser replyParser;
     protected final PeekableInputStream peekable;
     
     public RedisMixReplicator(File file, Configuration configuration) throws FileNotFoundException {
-        this(new FileInputStream(file), configuration);
+        this(open(file, configuration), configuration);
     }
     
     public RedisMixReplicator(InputStream in, Configuration configuration) {
@@ -66,7 +66,6 @@ public class RedisMixReplicator extends AbstractReplicator {
         }
         this.inputStream = new RedisInputStream(in, this.configuration.getBufferSize());
         this.inputStream.setRawByteListeners(this.rawByteListeners);
-        this.replyParser = new ReplyParser(inputStream, new RedisCodec());
         builtInCommandParserRegister();
         if (configuration.isUseDefaultExceptionListener())
             addExceptionListener(new DefaultExceptionListener());
@@ -92,21 +91,31 @@ public class RedisMixReplicator extends AbstractReplicator {
         }
         if (getStatus() != CONNECTED) return;
         submitEvent(new PreCommandSyncEvent());
+        replyParser = newReplyParser(inputStream);
         try {
             while (getStatus() == CONNECTED) {
                 Object obj = replyParser.parse();
-                if (obj instanceof Object[]) {
+                if (obj instanceof CommandFrame) {
+                    CommandFrame frame = (CommandFrame) obj;
+                    if (verbose() && logger.isDebugEnabled())
+                        logger.debug(format(frame.toArray()));
+                    final CommandParser<? extends Command> parser;
+                    if ((parser = commandTable.get(frame.buffer(0), frame.offset(0), frame.length(0))) == null) {
+                        logger.warn("command [{}] not register. raw command:{}", Strings.toString(frame.get(0)), format(frame.toArray()));
+                        continue;
+                    }
+                    submitEvent(new LazyCommand(frame, parser));
+                } else if (obj instanceof Object[]) {
                     if (verbose() && logger.isDebugEnabled())
                         logger.debug(format((Object[]) obj));
                     Object[] raw = (Object[]) obj;
-                    CommandName name = CommandName.name(Strings.toString(raw[0]));
                     final CommandParser<? extends Command> parser;
-                    if ((parser = commands.get(name)) == null) {
-                        logger.warn("command [{}] not register. raw command:{}", name, format(raw));
+                    if ((parser = commandTable.get((byte[]) raw[0])) == null) {
+                        logger.warn("command [{}] not register. raw command:{}", Strings.toString(raw[0]), format(raw));
                         continue;
                     }
                     submitEvent(parser.parse(raw));
-                } else {
+                } else if (obj != FILTERED) {
                     logger.info("unexpected redis reply:{}", obj);
                 }
             }
@@ -17,11 +17,15 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.ParallelRdbParser;
 import com.moilioncircle.redis.replicator.rdb.RdbParser;
+import com.moilioncircle.redis.replicator.rdb.RdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.filter.FilterRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor;
 
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,8 +40,11 @@ import static com.moilioncircle.redis.replicator.Status.DISCONNECTED;
  */
 public class RedisRdbReplicator extends AbstractReplicator {
     
+    protected File file;
+    
     public RedisRdbReplicator(File file, Configuration configuration) throws FileNotFoundException {
-        this(new FileInputStream(file), configuration);
+        this(open(file, configuration), configuration);
+        this.file = file;
     }
     
     public RedisRdbReplicator(InputStream in, Configuration configuration) {
@@ -65,8 +72,24 @@ public class RedisRdbReplicator extends AbstractReplicator {
     
     protected void doOpen() throws IOException {
         try {
-            new RdbParser(inputStream, this).parse();
+            if (isParallel()) new ParallelRdbParser(file, this).parse();
+            else new RdbParser(inputStream, this).parse();
         } catch (EOFException ignore) {
         }
     }
+    
+    /**
+     * @return true if the rdb file can be decoded by {@link ParallelRdbParser}
+     * @since 3.0.0
+     */
+    protected boolean isParallel() {
+        if (file == null || configuration.getRdbParallelism() <= 0) return false;
+        RdbVisitor visitor = getRdbVisitor();
+        // the accepted records of a filter are decoded by the wrapped visitor
+        if (visitor instanceof FilterRdbVisitor) visitor = ((FilterRdbVisitor) visitor).getVisitor();
+        if (visitor instanceof ValueIterableRdbVisitor) return false;
+        // the payloads of the workers would interleave in the shared sink
+        if (visitor instanceof DumpRdbVisitor && ((DumpRdbVisitor) visitor).hasSink()) return false;
+        return rawByteListeners.isEmpty() && rawByteTaps.isEmpty();
+    }
 }
@@ -17,11 +17,13 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandFilter;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.event.EventListener;
 import com.moilioncircle.redis.replicator.io.PeekableInputStream;
 import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 import com.moilioncircle.redis.replicator.rdb.RdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.datatype.Module;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleParser;
@@ -134,6 +136,16 @@ public class RedisReplicator implements Replicator {
         return replicator.removeRawByteListener(listener);
     }
 
+    @Override
+    public boolean addRawByteTap(RawByteTap tap) {
+        return replicator.addRawByteTap(tap);
+    }
+
+    @Override
+    public boolean removeRawByteTap(RawByteTap tap) {
+        return replicator.removeRawByteTap(tap);
+    }
+
     @Override
     public void builtInCommandParserRegister() {
         replicator.builtInCommandParserRegister();
@@ -169,6 +181,16 @@ public class RedisReplicator implements Replicator {
         return replicator.removeModuleParser(moduleName, moduleVersion);
     }
 
+    @Override
+    public void setCommandFilter(CommandFilter filter) {
+        replicator.setCommandFilter(filter);
+    }
+
+    @Override
+    public CommandFilter getCommandFilter() {
+        return replicator.getCommandFilter();
+    }
+
     @Override
     public void setRdbVisitor(RdbVisitor rdbVisitor) {
         replicator.setRdbVisitor(rdbVisitor);
@@ -224,6 +246,16 @@ public class RedisReplicator implements Replicator {
         return replicator.getConfiguration();
     }
 
+    @Override
+    public int[] getEventQueueDepths() {
+        return replicator.getEventQueueDepths();
+    }
+
+    @Override
+    public OffsetTracker.Ack deferAck() {
+        return replicator.deferAck();
+    }
+
     @Override
     public void open() throws IOException {
         replicator.open();
@@ -16,32 +16,48 @@
 
 package com.moilioncircle.redis.replicator;
 
+import com.moilioncircle.redis.replicator.checkpoint.Checkpoint;
+import com.moilioncircle.redis.replicator.checkpoint.CheckpointStore;
 import com.moilioncircle.redis.replicator.cmd.BulkReplyHandler;
 import com.moilioncircle.redis.replicator.cmd.Command;
-import com.moilioncircle.redis.replicator.cmd.CommandName;
+import com.moilioncircle.redis.replicator.cmd.CommandFrame;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
+import com.moilioncircle.redis.replicator.cmd.CommandParserTable;
+import com.moilioncircle.redis.replicator.cmd.FastReplyParser;
 import com.moilioncircle.redis.replicator.cmd.OffsetHandler;
-import com.moilioncircle.redis.replicator.cmd.RedisCodec;
 import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
 import com.moilioncircle.redis.replicator.event.PostCommandSyncEvent;
 import com.moilioncircle.redis.replicator.event.PreCommandSyncEvent;
 import com.moilioncircle.redis.replicator.io.AsyncBufferedInputStream;
 import com.moilioncircle.redis.replicator.io.RateLimitInputStream;
+import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.io.RedisOutputStream;
+import com.moilioncircle.redis.replicator.io.SpooledInputStream;
 import com.moilioncircle.redis.replicator.net.RedisSocketFactory;
 import com.moilioncircle.redis.replicator.rdb.RdbParser;
+import com.moilioncircle.redis.replicator.util.Concurrents;
 import com.moilioncircle.redis.replicator.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.moilioncircle.redis.replicator.Constants.DOLLAR;
 import static com.moilioncircle.redis.replicator.Constants.STAR;
@@ -52,9 +68,8 @@ import static com.moilioncircle.redis.replicator.Status.CONNECTED;
 import static com.moilioncircle.redis.replicator.Status.CONNECTING;
 import static com.moilioncircle.redis.replicator.Status.DISCONNECTED;
 import static com.moilioncircle.redis.replicator.Status.DISCONNECTING;
-import static com.moilioncircle.redis.replicator.util.Concurrents.terminateQuietly;
+import static com.moilioncircle.redis.replicator.cmd.FastReplyParser.FILTERED;
 import static com.moilioncircle.redis.replicator.util.Strings.format;
-import static com.moilioncircle.redis.replicator.util.Strings.isEquals;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
@@ -65,6 +80,11 @@ public class RedisSocketReplicator extends AbstractReplicator {
     
     protected static final Logger logger = LoggerFactory.getLogger(RedisSocketReplicator.class);
     
+    private static final byte[] PING = "PING".getBytes();
+    private static final byte[] GETACK = "GETACK".getBytes();
+    private static final byte[] REPLCONF = "REPLCONF".getBytes();
+    private static final byte[] SELECT = "SELECT".getBytes();
+    
     protected final int port;
     protected final String host;
     protected Socket socket;
@@ -72,9 +92,58 @@ public class RedisSocketReplicator extends AbstractReplicator {
     protected ScheduledFuture<?> heartbeat;
     protected RedisOutputStream outputStream;
     protected final RedisSocketFactory socketFactory;
-    protected ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    protected final ScheduledExecutorService executor;
+    protected final NioReplicationEngine engine;
+    protected SocketChannel channel;
+    protected SyncMode mode;
+    private volatile NioSession session;
+    private volatile CountDownLatch terminated;
+    private volatile Throwable failure;
+    
+    private final AtomicBoolean acking = new AtomicBoolean();
+    private final Runnable ack = new Runnable() {
+        @Override
+        public void run() {
+            // the acks queued from now on carry a newer offset
+            acking.set(false);
+            OffsetTracker tracker = RedisSocketReplicator.this.tracker;
+            long offset = tracker != null ? tracker.getOffset() : configuration.getReplOffset();
+            sendQuietly("REPLCONF".getBytes(), "ACK".getBytes(), String.valueOf(offset).getBytes());
+        }
+    };
     
     public RedisSocketReplicator(String host, int port, Configuration configuration) {
+        this(host, port, configuration, null, null);
+    }
+    
+    /**
+     * @param host          host
+     * @param port          port
+     * @param configuration configuration
+     * @param executor      scheduler of the heartbeat, not terminated on close.
+     *                      the process wide {@link Concurrents#sharedScheduler()} if null.
+     *                      the acks of a blocking socket are written on {@link Concurrents#sharedWriter()}
+     * @since 3.0.0
+     */
+    public RedisSocketReplicator(String host, int port, Configuration configuration, ScheduledExecutorService executor) {
+        this(host, port, configuration, executor, null);
+    }
+    
+    /**
+     * the command stream is driven by the event loops of the engine once the rdb is transferred
+     *
+     * @param host          host
+     * @param port          port
+     * @param configuration configuration
+     * @param engine        non-blocking io engine
+     * @see NioReplicationEngine#newReplicator(String, int, Configuration)
+     * @since 3.0.0
+     */
+    public RedisSocketReplicator(String host, int port, Configuration configuration, NioReplicationEngine engine) {
+        this(host, port, configuration, engine.getScheduler(), engine);
+    }
+    
+    private RedisSocketReplicator(String host, int port, Configuration configuration, ScheduledExecutorService executor, NioReplicationEngine engine) {
         Objects.requireNonNull(host);
         if (port <= 0 || port > 65535) throw new IllegalArgumentException("illegal argument port: " + port);
         Objects.requireNonNull(configuration);
@@ -82,6 +151,8 @@ public class RedisSocketReplicator extends AbstractReplicator {
         this.port = port;
         this.configuration = configuration;
         this.socketFactory = new RedisSocketFactory(configuration);
+        this.executor = executor != null ? executor : Concurrents.sharedScheduler();
+        this.engine = engine;
         builtInCommandParserRegister();
         if (configuration.isUseDefaultExceptionListener())
             addExceptionListener(new DefaultExceptionListener());
@@ -95,15 +166,171 @@ public class RedisSocketReplicator extends AbstractReplicator {
      */
     @Override
     public void open() throws IOException {
+        if (engine != null) {
+            start();
+            try {
+                terminated.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+            }
+            Throwable failure = this.failure;
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            return;
+        }
         try {
+            seed();
             new RedisSocketReplicatorRetrier().retry(this);
         } finally {
             doClose();
             doCloseListener(this);
-            terminateQuietly(executor, configuration.getConnectionTimeout(), MILLISECONDS);
         }
     }
     
+    @Override
+    public void close() throws IOException {
+        super.close();
+        NioSession session = this.session;
+        if (session != null) session.wakeup();
+    }
+    
+    /**
+     * start the replication on the sync pool of the engine, or on a thread of its own in blocking mode
+     */
+    void start() {
+        terminated = new CountDownLatch(1);
+        failure = null;
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        });
+    }
+    
+    /**
+     * a replicator in blocking mode would hold a thread of the sync pool as long as it is open, so it runs on a
+     * thread of its own
+     */
+    private void execute(Runnable task) {
+        if (blocking()) engine.spawn(task);
+        else engine.execute(task);
+    }
+    
+    /**
+     * @return true if the command stream is read with blocking io even with an engine. ssl has no channel, and the
+     * command stream is spooled from the socket while the spooled rdb is parsed
+     */
+    private boolean blocking() {
+        return configuration.isSsl() || configuration.getRdbSpoolDirectory() != null;
+    }
+    
+    /**
+     * handshake and rdb transfer in blocking mode, then hand the command stream to an event loop
+     */
+    private void sync() {
+        Throwable failure = null;
+        try {
+            seed();
+            new RedisSocketReplicatorRetrier().retry(this);
+            if (getStatus() == CONNECTED && channel != null) {
+                detach();
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+        terminate(failure);
+    }
+    
+    private void detach() {
+        NioSession session = new NioSession(this, channel, inputStream.drain());
+        this.outputStream = new RedisOutputStream(session.output());
+        this.session = session;
+        if (mode == PSYNC) heartbeat();
+        engine.register(session);
+    }
+    
+    /**
+     * the non-blocking command stream ended
+     *
+     * @param reason null if the replicator is closed
+     */
+    void detachedClose(final Throwable reason) {
+        this.session = null;
+        if (mode == PSYNC) checkpoint(true);
+        boolean retry = getStatus() == CONNECTED && (reason instanceof IOException || reason instanceof UncheckedIOException);
+        if (!retry) {
+            terminate(reason);
+            return;
+        }
+        logger.error("[redis-replicator] socket error. redis-server[{}:{}]", host, port, reason);
+        closeQuietly();
+        logger.info("reconnecting to redis-server[{}:{}]", host, port);
+        try {
+            // the scheduler only times the retry, the blocking handshake runs on the sync pool of the engine
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                sync();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        terminate(reason);
+                    }
+                }
+            }, configuration.getRetryTimeInterval(), MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            terminate(reason);
+        }
+    }
+    
+    private void terminate(Throwable failure) {
+        closeQuietly();
+        doCloseListener(this);
+        this.failure = failure;
+        terminated.countDown();
+    }
+    
+    private void closeQuietly() {
+        try {
+            doClose();
+        } catch (IOException ignore) {
+            /*NOP*/
+        }
+    }
+    
+    /**
+     * hand the raw bytes of the non-blocking command stream to the raw byte listeners and taps
+     */
+    void tap(byte[] bytes, int offset, int length) {
+        for (RawByteTap tap : rawByteTaps) tap.handle(bytes, offset, length);
+        if (rawByteListeners.isEmpty()) return;
+        byte[] copy = Arrays.copyOfRange(bytes, offset, offset + length);
+        for (RawByteListener listener : rawByteListeners) listener.handle(copy);
+    }
+    
+    /**
+     * seed the psync position from the checkpoint store unless it is set explicitly
+     *
+     * @throws IOException when load checkpoint failed
+     */
+    protected void seed() throws IOException {
+        CheckpointStore store = configuration.getCheckpointStore();
+        if (store == null || !"?".equals(configuration.getReplId())) return;
+        Checkpoint checkpoint = store.load();
+        if (checkpoint == null) return;
+        logger.info("resume from {}", checkpoint);
+        configuration.setReplId(checkpoint.getReplId());
+        configuration.setReplOffset(checkpoint.getReplOffset());
+        configuration.setReplStreamDB(checkpoint.getReplStreamDB());
+    }
+    
     protected SyncMode trySync(final String reply) throws IOException {
         logger.info(reply);
         if (reply.startsWith("FULLRESYNC")) {
@@ -129,6 +356,7 @@ public class RedisSocketReplicator extends AbstractReplicator {
     }
     
     protected void parseDump(final AbstractReplicator replicator) throws IOException {
+        final File[] spool = new File[1];
         byte[] rawReply = reply(new BulkReplyHandler() {
             @Override
             public byte[] handle(long len, RedisInputStream in) throws IOException {
@@ -140,6 +368,8 @@ public class RedisSocketReplicator extends AbstractReplicator {
                 if (len != -1 && configuration.isDiscardRdbEvent()) {
                     logger.info("discard {} bytes", len);
                     in.skip(len);
+                } else if (configuration.getRdbSpoolDirectory() != null) {
+                    spool[0] = spool(in, len);
                 } else {
                     new RdbParser(in, replicator).parse();
                     // skip 40 bytes delimiter when disk-less replication
@@ -149,8 +379,60 @@ public class RedisSocketReplicator extends AbstractReplicator {
             }
         });
         String reply = Strings.toString(rawReply);
-        if ("OK".equals(reply)) return;
-        throw new IOException("SYNC failed. reason : [" + reply + "]");
+        if (!"OK".equals(reply)) throw new IOException("SYNC failed. reason : [" + reply + "]");
+        if (spool[0] != null) parseSpool(replicator, spool[0]);
+    }
+    
+    /**
+     * save the rdb payload to the spool directory at wire speed.
+     *
+     * @param in  input stream
+     * @param len rdb size. -1 if disk-less replication
+     * @return spool file
+     * @throws IOException when read timeout
+     */
+    protected File spool(RedisInputStream in, long len) throws IOException {
+        File file = File.createTempFile("replicator-", ".rdb", new File(configuration.getRdbSpoolDirectory()));
+        long st = System.currentTimeMillis();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            FileChannel channel = out.getChannel();
+            if (len != -1) in.transferTo(channel, len);
+            else len = in.transferTo(channel, replyParser.getEofMark());
+        } catch (IOException | RuntimeException e) {
+            if (!file.delete()) logger.warn("failed to delete spool file {}", file);
+            throw e;
+        }
+        logger.info("spooled {} bytes to {} in {} ms", len, file, System.currentTimeMillis() - st);
+        return file;
+    }
+    
+    /**
+     * parse the spooled rdb while the command stream is spooled to disk. the master is not throttled by the event listeners.
+     *
+     * @param replicator replicator
+     * @param file       spooled rdb
+     * @throws IOException when read timeout
+     */
+    protected void parseSpool(AbstractReplicator replicator, File file) throws IOException {
+        SpooledInputStream spooled = null;
+        try {
+            inputStream.setRawByteListeners(null);
+            inputStream.setRawByteTaps(null);
+            spooled = new SpooledInputStream(inputStream, File.createTempFile("replicator-", ".aof", file.getParentFile()));
+            inputStream = new RedisInputStream(spooled, configuration.getBufferSize());
+            inputStream.setRawByteListeners(rawByteListeners);
+            inputStream.setRawByteTaps(rawByteTaps);
+            replyParser = newReplyParser(inputStream);
+            try (RedisInputStream in = new RedisInputStream(new FileInputStream(file), configuration.getBufferSize())) {
+                new RdbParser(in, replicator).parse();
+            }
+        } finally {
+            if (spooled != null) {
+                spooled.stop();
+                logger.info("{} bytes of command stream spooled while parsing rdb", spooled.spooled());
+            }
+            if (!file.delete()) logger.warn("failed to delete spool file {}", file);
+        }
     }
     
     protected void establishConnection() throws IOException {
@@ -225,12 +507,29 @@ public class RedisSocketReplicator extends AbstractReplicator {
         heartbeat = executor.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
-                sendQuietly("REPLCONF".getBytes(), "ACK".getBytes(), String.valueOf(configuration.getReplOffset()).getBytes());
+                ack();
             }
         }, configuration.getHeartbeatPeriod(), configuration.getHeartbeatPeriod(), MILLISECONDS);
         logger.info("heartbeat started.");
     }
     
+    /**
+     * queue a {@code REPLCONF ACK} on the scheduler. the acks that pile up before it is sent go out once with the
+     * latest offset, the parse loop never waits for the socket.
+     */
+    protected void ack() {
+        if (!acking.compareAndSet(false, true)) return;
+        // the output of a session is a non-blocking queue, the ack is written on the scheduler. a blocking socket
+        // may stall on a full send buffer, so that it never holds the scheduler
+        try {
+            if (session != null) executor.execute(ack);
+            else Concurrents.sharedWriter().execute(ack);
+        } catch (RejectedExecutionException e) {
+            // the connection is closing
+            acking.set(false);
+        }
+    }
+    
     protected void send(byte[] command) throws IOException {
         send(command, new byte[0][]);
     }
@@ -275,10 +574,18 @@ public class RedisSocketReplicator extends AbstractReplicator {
     protected void connect() throws IOException {
         if (!connected.compareAndSet(DISCONNECTED, CONNECTING)) return;
         try {
-            socket = socketFactory.createSocket(host, port, configuration.getConnectionTimeout());
+            // the streams of a channel socket share one lock, a blocked read would hold the acks
+            if (engine != null && !blocking()) {
+                socket = socketFactory.createChannelSocket(host, port, configuration.getConnectionTimeout());
+                channel = socket.getChannel();
+            } else {
+                socket = socketFactory.createSocket(host, port, configuration.getConnectionTimeout());
+                channel = null;
+            }
             outputStream = new RedisOutputStream(socket.getOutputStream());
             InputStream inputStream = socket.getInputStream();
-            if (configuration.getAsyncCachedBytes() > 0) {
+            // the event loop reads ahead once the command stream starts
+            if (configuration.getAsyncCachedBytes() > 0 && channel == null) {
                 inputStream = new AsyncBufferedInputStream(inputStream, configuration.getAsyncCachedBytes());
             }
             if (configuration.getRateLimit() > 0) {
@@ -286,7 +593,8 @@ public class RedisSocketReplicator extends AbstractReplicator {
             }
             this.inputStream = new RedisInputStream(inputStream, configuration.getBufferSize());
             this.inputStream.setRawByteListeners(this.rawByteListeners);
-            replyParser = new ReplyParser(this.inputStream, new RedisCodec());
+            this.inputStream.setRawByteTaps(this.rawByteTaps);
+            replyParser = newReplyParser(this.inputStream);
             logger.info("Connected to redis-server[{}:{}]", host, port);
         } finally {
             connected.set(CONNECTED);
@@ -299,13 +607,14 @@ public class RedisSocketReplicator extends AbstractReplicator {
         
         try {
             if (heartbeat != null) {
-                if (!heartbeat.isCancelled()) heartbeat.cancel(true);
+                // the scheduler is shared, do not interrupt it
+                if (!heartbeat.isCancelled()) heartbeat.cancel(false);
                 logger.info("heartbeat canceled.");
             }
-            
             try {
                 if (inputStream != null) {
                     inputStream.setRawByteListeners(null);
+                    inputStream.setRawByteTaps(null);
                     inputStream.close();
                 }
             } catch (IOException e) {
@@ -327,6 +636,103 @@ public class RedisSocketReplicator extends AbstractReplicator {
         }
     }
     
+    /**
+     * submit a command of the stream and advance the offset
+     *
+     * @param obj    reply of the command stream
+     * @param length bytes of the reply
+     */
+    protected void onCommand(Object obj, long length) {
+        OffsetTracker.Ack ack = null;
+        if (obj instanceof CommandFrame) {
+            CommandFrame frame = (CommandFrame) obj;
+            if (verbose() && logger.isDebugEnabled())
+                logger.debug(format(frame.toArray()));
+            final CommandParser<? extends Command> parser;
+            if ((parser = commandTable.get(frame.buffer(0), frame.offset(0), frame.length(0))) == null) {
+                logger.warn("command [{}] not register. raw command:{}", Strings.toString(frame.get(0)), format(frame.toArray()));
+            } else if (frame.isEquals(0, PING)) {
+                // NOP
+            } else if (frame.isEquals(0, REPLCONF) && frame.isEquals(1, GETACK)) {
+                if (mode == PSYNC) ack();
+            } else {
+                if (frame.isEquals(0, SELECT) && frame.size() > 1) select(frame.get(1));
+                submitEvent(new LazyCommand(frame, parser), ack = track(length));
+            }
+        } else if (obj instanceof Object[]) {
+            if (verbose() && logger.isDebugEnabled())
+                logger.debug(format((Object[]) obj));
+            Object[] raw = (Object[]) obj;
+            final CommandParser<? extends Command> parser;
+            if ((parser = commandTable.get((byte[]) raw[0])) == null) {
+                logger.warn("command [{}] not register. raw command:{}", Strings.toString(raw[0]), format(raw));
+            } else if (isEquals(PING, raw[0])) {
+                // NOP
+            } else if (isEquals(REPLCONF, raw[0]) && raw.length > 1 && isEquals(GETACK, raw[1])) {
+                if (mode == PSYNC) ack();
+            } else {
+                if (isEquals(SELECT, raw[0]) && raw.length > 1) select((byte[]) raw[1]);
+                submitEvent(parser.parse(raw), ack = track(length));
+            }
+        } else if (obj != FILTERED) {
+            logger.info("unexpected redis reply:{}", obj);
+        }
+        // the replies without event are processed as soon as they are parsed
+        if (ack == null && (ack = track(length)) != null) ack.ack();
+        configuration.addOffset(length);
+        if (mode == PSYNC) checkpoint(false);
+    }
+    
+    /**
+     * @param length bytes of the reply that is not added to the offset yet
+     * @return ack of the reply. null if listener ack is disabled
+     */
+    private OffsetTracker.Ack track(long length) {
+        OffsetTracker tracker = this.tracker;
+        if (tracker == null || mode != PSYNC) return null;
+        return tracker.track(configuration.getReplOffset() + length, configuration.getReplStreamDB());
+    }
+    
+    /**
+     * continue the listener ack at the offset of the command stream
+     */
+    private void resumeTracking() {
+        if (!configuration.isListenerAck()) return;
+        long offset = configuration.getReplOffset();
+        int db = configuration.getReplStreamDB();
+        if (tracker == null) tracker = new OffsetTracker(configuration.getListenerAckWindow(), offset, db);
+        else tracker.resume(offset, db);
+    }
+    
+    /**
+     * with listener ack, request the command stream again from the watermark. the events after it are not
+     * confirmed, e.g. a listener failed, so they are delivered again instead of lost
+     */
+    private void rewind() {
+        OffsetTracker tracker = this.tracker;
+        if (tracker == null) return;
+        tracker.rewind();
+        Checkpoint checkpoint = tracker.toCheckpoint(configuration.getReplId());
+        configuration.setReplOffset(checkpoint.getReplOffset());
+        configuration.setReplStreamDB(checkpoint.getReplStreamDB());
+    }
+    
+    /**
+     * track the db of the command stream so that the checkpoint can resume in the right db
+     */
+    private void select(byte[] db) {
+        try {
+            configuration.setReplStreamDB(Integer.parseInt(Strings.toString(db)));
+        } catch (NumberFormatException e) {
+            // NOP
+        }
+    }
+    
+    private static boolean isEquals(byte[] upper, Object bytes) {
+        byte[] b = (byte[]) bytes;
+        return b != null && CommandParserTable.equals(upper, b, 0, b.length);
+    }
+    
     protected enum SyncMode {SYNC, PSYNC, SYNC_LATER}
     
     private class RedisSocketReplicatorRetrier extends AbstractReplicatorRetrier {
@@ -349,54 +755,42 @@ public class RedisSocketReplicator extends AbstractReplicator {
         
         @Override
         protected boolean open() throws IOException {
+            rewind();
             logger.info("PSYNC {} {}", configuration.getReplId(), String.valueOf(configuration.getReplOffset()));
             send("PSYNC".getBytes(), configuration.getReplId().getBytes(), String.valueOf(configuration.getReplOffset()).getBytes());
             final String reply = Strings.toString(reply());
             
-            SyncMode mode = trySync(reply);
-            if (mode == PSYNC && getStatus() == CONNECTED) {
+            final SyncMode mode = trySync(reply);
+            RedisSocketReplicator.this.mode = mode;
+            if (mode == PSYNC && getStatus() == CONNECTED && channel == null) {
                 heartbeat();
             } else if (mode == SYNC_LATER && getStatus() == CONNECTED) {
                 return false;
             }
             if (getStatus() != CONNECTED) return true;
+            if (mode == PSYNC) {
+                resumeTracking();
+                checkpoint(true);
+            }
             submitEvent(new PreCommandSyncEvent());
+            if (replyParser instanceof FastReplyParser) {
+                ((FastReplyParser) replyParser).setDb(configuration.getReplStreamDB());
+            }
+            // the event loop of the engine takes over
+            if (channel != null) return true;
             final long[] offset = new long[1];
-            while (getStatus() == CONNECTED) {
-                Object obj = replyParser.parse(new OffsetHandler() {
-                    @Override
-                    public void handle(long len) {
-                        offset[0] = len;
-                    }
-                });
-                if (obj instanceof Object[]) {
-                    if (verbose() && logger.isDebugEnabled())
-                        logger.debug(format((Object[]) obj));
-                    Object[] raw = (Object[]) obj;
-                    CommandName name = CommandName.name(Strings.toString(raw[0]));
-                    final CommandParser<? extends Command> parser;
-                    if ((parser = commands.get(name)) == null) {
-                        logger.warn("command [{}] not register. raw command:{}", name, format(raw));
-                        continue;
-                    }
-                    if (isEquals(Strings.toString(raw[0]), "PING")) {
-                        // NOP
-                    } else if (isEquals(Strings.toString(raw[0]), "REPLCONF") && isEquals(Strings.toString(raw[1]), "GETACK")) {
-                        if (mode == PSYNC) executor.execute(new Runnable() {
-                            @Override
-                            public void run() {
-                                sendQuietly("REPLCONF".getBytes(), "ACK".getBytes(), String.valueOf(configuration.getReplOffset()).getBytes());
-                            }
-                        });
-                    } else {
-                        submitEvent(parser.parse(raw));
-                    }
-                } else {
-                    logger.info("unexpected redis reply:{}", obj);
+            final OffsetHandler offsetHandler = new OffsetHandler() {
+                @Override
+                public void handle(long len) {
+                    offset[0] = len;
                 }
-                configuration.addOffset(offset[0]);
+            };
+            while (getStatus() == CONNECTED) {
+                Object obj = replyParser.parse(offsetHandler);
+                onCommand(obj, offset[0]);
                 offset[0] = 0L;
             }
+            if (mode == PSYNC) checkpoint(true);
             if (getStatus() == CONNECTED)
                 submitEvent(new PostCommandSyncEvent());
             return true;
@@ -17,6 +17,7 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandFilter;
 import com.moilioncircle.redis.replicator.cmd.CommandName;
 import com.moilioncircle.redis.replicator.cmd.CommandParser;
 import com.moilioncircle.redis.replicator.rdb.RdbVisitor;
@@ -42,6 +43,18 @@ public interface Replicator extends Closeable, ReplicatorListener {
 
     CommandParser<? extends Command> removeCommandParser(CommandName command);
 
+    /**
+     * @param filter command filter applied before the command is parsed. null to accept all
+     * @since 3.0.0
+     */
+    void setCommandFilter(CommandFilter filter);
+
+    /**
+     * @return command filter
+     * @since 3.0.0
+     */
+    CommandFilter getCommandFilter();
+
     /*
      * Module
      */
@@ -75,5 +88,22 @@ public interface Replicator extends Closeable, ReplicatorListener {
      */
     Configuration getConfiguration();
 
+    /**
+     * @return number of queued events of each dispatch lane. empty if events are dispatched on the parser thread
+     * @see Configuration#setEventDispatchLanes(int)
+     * @since 3.0.0
+     */
+    int[] getEventQueueDepths();
+
+    /**
+     * called by an event listener that confirms the event later, e.g. after an asynchronous write. the offset of the
+     * event is acked once every deferred ack is acked.
+     *
+     * @return ack of the event being delivered on the current thread. null if the event is not tracked
+     * @see Configuration#setListenerAck(boolean)
+     * @since 3.0.0
+     */
+    OffsetTracker.Ack deferAck();
+
     void open() throws IOException;
 }
@@ -18,6 +18,7 @@ package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.event.EventListener;
 import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 
 /**
  * @author Leon Chen
@@ -38,6 +39,20 @@ public interface ReplicatorListener {
 
     boolean removeRawByteListener(RawByteListener listener);
 
+    /**
+     * @param tap raw byte tap. must be called before open or on the parser thread (e.g. in an event listener)
+     * @return true if added
+     * @since 3.0.0
+     */
+    boolean addRawByteTap(RawByteTap tap);
+
+    /**
+     * @param tap raw byte tap
+     * @return true if removed
+     * @since 3.0.0
+     */
+    boolean removeRawByteTap(RawByteTap tap);
+
     /*
      * Close
      */
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.checkpoint;
+
+import java.io.Serializable;
+
+/**
+ * psync replication position.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class Checkpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String replId;
+    private final long replOffset;
+    private final int replStreamDB;
+
+    public Checkpoint(String replId, long replOffset, int replStreamDB) {
+        this.replId = replId;
+        this.replOffset = replOffset;
+        this.replStreamDB = replStreamDB;
+    }
+
+    public String getReplId() {
+        return replId;
+    }
+
+    public long getReplOffset() {
+        return replOffset;
+    }
+
+    public int getReplStreamDB() {
+        return replStreamDB;
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" +
+                "replId='" + replId + '\'' +
+                ", replOffset=" + replOffset +
+                ", replStreamDB=" + replStreamDB +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.checkpoint;
+
+import java.io.IOException;
+
+/**
+ * Persists the psync position so that a restarted replicator can {@code PSYNC} with {@code CONTINUE}
+ * instead of a full resync.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.Configuration#setCheckpointStore(CheckpointStore)
+ * @since 3.0.0
+ */
+public interface CheckpointStore {
+
+    /**
+     * @return last saved checkpoint. null if none
+     * @throws IOException when read failed
+     */
+    Checkpoint load() throws IOException;
+
+    /**
+     * @param checkpoint position whose events are delivered to the listeners
+     * @throws IOException when write failed
+     */
+    void save(Checkpoint checkpoint) throws IOException;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.checkpoint;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Saves the checkpoint as a properties file. The file is written to a temp file, synced and renamed atomically,
+ * so a crash never leaves a torn checkpoint.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+    private final File file;
+
+    public FileCheckpointStore(String file) {
+        this(new File(file));
+    }
+
+    public FileCheckpointStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public Checkpoint load() throws IOException {
+        if (!file.exists()) return null;
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        String replId = properties.getProperty("replId");
+        String replOffset = properties.getProperty("replOffset");
+        if (replId == null || replOffset == null) return null;
+        String replStreamDB = properties.getProperty("replStreamDB", "-1");
+        return new Checkpoint(replId, Long.parseLong(replOffset), Integer.parseInt(replStreamDB));
+    }
+
+    @Override
+    public void save(Checkpoint checkpoint) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("replId", checkpoint.getReplId());
+        properties.setProperty("replOffset", String.valueOf(checkpoint.getReplOffset()));
+        properties.setProperty("replStreamDB", String.valueOf(checkpoint.getReplStreamDB()));
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            properties.store(out, null);
+            out.getFD().sync();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (!tmp.delete()) tmp.deleteOnExit();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileCheckpointStore{" +
+                "file=" + file +
+                '}';
+    }
+}
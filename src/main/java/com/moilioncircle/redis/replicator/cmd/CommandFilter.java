@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.util.Glob;
+
+import java.util.BitSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Declarative filter of the command stream, evaluated by {@link FastReplyParser} right after
+ * the command name and the key are read. The remaining arguments of a rejected command are skipped
+ * without being allocated.
+ * <p>
+ * <pre>
+ * replicator.setCommandFilter(new CommandFilter().commands("SET", "DEL").dbs(0).keys("user:*"));
+ * </pre>
+ * The db is tracked by the {@code SELECT} commands of the stream. {@code SELECT}, {@code PING} and
+ * {@code REPLCONF} are never filtered, the replicator resumes and checkpoints the stream in the selected db.
+ * The key pattern is matched against the first argument, commands whose first argument is not a key
+ * (e.g. {@code EVAL}, {@code PUBLISH}, {@code FLUSHALL}) are not subject to the key pattern.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class CommandFilter {
+
+    private static final byte[][] KEYLESS = upper(
+            "PING", "SELECT", "SWAPDB", "FLUSHALL", "FLUSHDB", "MULTI", "EXEC",
+            "EVAL", "EVALSHA", "SCRIPT", "PUBLISH", "BITOP", "REPLCONF");
+
+    private BitSet dbs;
+    private byte[][] commands;
+    private byte[][] patterns;
+
+    /**
+     * @param commands accepted command names. case insensitive
+     * @return this
+     */
+    public CommandFilter commands(String... commands) {
+        this.commands = upper(commands);
+        return this;
+    }
+
+    /**
+     * @param dbs accepted db indexes
+     * @return this
+     */
+    public CommandFilter dbs(int... dbs) {
+        this.dbs = new BitSet();
+        for (int db : dbs) this.dbs.set(db);
+        return this;
+    }
+
+    /**
+     * @param patterns accepted key glob patterns. e.g. {@code user:*}
+     * @return this
+     */
+    public CommandFilter keys(String... patterns) {
+        this.patterns = new byte[patterns.length][];
+        for (int i = 0; i < patterns.length; i++) this.patterns[i] = patterns[i].getBytes(UTF_8);
+        return this;
+    }
+
+    public boolean acceptCommand(byte[] bytes, int offset, int length) {
+        return commands == null || contains(commands, bytes, offset, length);
+    }
+
+    /**
+     * @param db current db. -1 if unknown
+     * @return true if accepted
+     */
+    public boolean acceptDb(int db) {
+        return dbs == null || db < 0 || dbs.get(db);
+    }
+
+    public boolean acceptKey(byte[] bytes, int offset, int length) {
+        if (patterns == null) return true;
+        for (byte[] pattern : patterns) {
+            if (Glob.match(pattern, bytes, offset, length)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param bytes  command name
+     * @param offset offset
+     * @param length length
+     * @return true if the key pattern applies to the first argument of this command
+     */
+    public boolean hasKey(byte[] bytes, int offset, int length) {
+        return patterns != null && !contains(KEYLESS, bytes, offset, length);
+    }
+
+    private static boolean contains(byte[][] names, byte[] bytes, int offset, int length) {
+        for (byte[] name : names) {
+            if (CommandParserTable.equals(name, bytes, offset, length)) return true;
+        }
+        return false;
+    }
+
+    private static byte[][] upper(String... names) {
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) bytes[i] = names[i].toUpperCase().getBytes(UTF_8);
+        return bytes;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import java.util.Arrays;
+
+/**
+ * A raw RESP command frame. Every argument is a slice (buffer, offset, length) of a buffer
+ * shared with other frames, and is only copied when {@link #get(int)} or {@link #toArray()} is called.
+ * <p>
+ * The slices are never overwritten, so a frame stays valid after the event listener returns.
+ *
+ * @author Leon Chen
+ * @see FastReplyParser
+ * @since 3.0.0
+ */
+public class CommandFrame {
+
+    private final RedisCodec codec;
+    private final byte[][] buffers;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    public CommandFrame(int size, RedisCodec codec) {
+        this.codec = codec;
+        this.buffers = new byte[size][];
+        this.offsets = new int[size];
+        this.lengths = new int[size];
+    }
+
+    public void set(int idx, byte[] buffer, int offset, int length) {
+        this.buffers[idx] = buffer;
+        this.offsets[idx] = offset;
+        this.lengths[idx] = length;
+    }
+
+    public int size() {
+        return buffers.length;
+    }
+
+    public byte[] buffer(int idx) {
+        return buffers[idx];
+    }
+
+    public int offset(int idx) {
+        return offsets[idx];
+    }
+
+    public int length(int idx) {
+        return lengths[idx];
+    }
+
+    /**
+     * @param idx   argument index. 0 is the command name
+     * @param upper upper case ascii bytes
+     * @return true if the argument equals {@code upper} ignore case
+     */
+    public boolean isEquals(int idx, byte[] upper) {
+        if (idx >= buffers.length || buffers[idx] == null) return false;
+        return CommandParserTable.equals(upper, buffers[idx], offsets[idx], lengths[idx]);
+    }
+
+    /**
+     * @param idx argument index. 0 is the command name
+     * @return a copy of the argument
+     */
+    public byte[] get(int idx) {
+        if (buffers[idx] == null) return null;
+        byte[] bytes = Arrays.copyOfRange(buffers[idx], offsets[idx], offsets[idx] + lengths[idx]);
+        return codec == null ? bytes : codec.decode(bytes);
+    }
+
+    /**
+     * @return the same arguments as {@link ReplyParser#parse()} returns
+     */
+    public Object[] toArray() {
+        Object[] ary = new Object[buffers.length];
+        for (int i = 0; i < ary.length; i++) ary[i] = get(i);
+        return ary;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Case-insensitive lookup of {@link CommandParser} by the raw command bytes.
+ * <p>
+ * The table is an open addressing array that is rebuilt (copy on write) on every registration,
+ * sized to keep probe sequences short. A lookup hashes the raw bytes in place and never allocates.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class CommandParserTable {
+
+    private final Map<String, CommandParser<? extends Command>> parsers = new LinkedHashMap<>();
+    private volatile Entry[] table = new Entry[1];
+
+    public synchronized void put(CommandName command, CommandParser<? extends Command> parser) {
+        parsers.put(command.name.toUpperCase(), parser);
+        rebuild();
+    }
+
+    public synchronized CommandParser<? extends Command> remove(CommandName command) {
+        CommandParser<? extends Command> parser = parsers.remove(command.name.toUpperCase());
+        rebuild();
+        return parser;
+    }
+
+    public CommandParser<? extends Command> get(byte[] command) {
+        if (command == null) return null;
+        return get(command, 0, command.length);
+    }
+
+    public CommandParser<? extends Command> get(byte[] command, int offset, int length) {
+        final Entry[] table = this.table;
+        final int mask = table.length - 1;
+        for (int i = hash(command, offset, length) & mask; ; i = (i + 1) & mask) {
+            Entry entry = table[i];
+            if (entry == null) return null;
+            if (equals(entry.name, command, offset, length)) return entry.parser;
+        }
+    }
+
+    private void rebuild() {
+        int cap = 1;
+        // load factor <= 0.25
+        while (cap < parsers.size() << 2) cap <<= 1;
+        Entry[] table = new Entry[Math.max(cap, 2)];
+        int mask = table.length - 1;
+        for (Map.Entry<String, CommandParser<? extends Command>> e : parsers.entrySet()) {
+            byte[] name = e.getKey().getBytes(UTF_8);
+            int i = hash(name, 0, name.length) & mask;
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = new Entry(name, e.getValue());
+        }
+        this.table = table;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + upper(bytes[i]);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param upper  upper case ascii bytes
+     * @param bytes  raw bytes
+     * @param offset offset of raw bytes
+     * @param length length of raw bytes
+     * @return true if equals ignore case
+     */
+    public static boolean equals(byte[] upper, byte[] bytes, int offset, int length) {
+        if (upper.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (upper[i] != upper(bytes[offset + i])) return false;
+        }
+        return true;
+    }
+
+    private static int upper(byte b) {
+        return b >= 'a' && b <= 'z' ? b - 32 : b;
+    }
+
+    private static class Entry {
+        private final byte[] name;
+        private final CommandParser<? extends Command> parser;
+
+        private Entry(byte[] name, CommandParser<? extends Command> parser) {
+            this.name = name;
+            this.parser = parser;
+        }
+    }
+}
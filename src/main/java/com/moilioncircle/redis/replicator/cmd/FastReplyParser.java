@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.util.ByteBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.moilioncircle.redis.replicator.Constants.COLON;
+import static com.moilioncircle.redis.replicator.Constants.DOLLAR;
+import static com.moilioncircle.redis.replicator.Constants.MINUS;
+import static com.moilioncircle.redis.replicator.Constants.PLUS;
+import static com.moilioncircle.redis.replicator.Constants.STAR;
+
+/**
+ * A {@link ReplyParser} that decodes RESP headers straight from the {@link RedisInputStream} buffer
+ * and reuses one bulk reply handler per connection, so that the command stream
+ * only allocates the resulting {@code Object[]} and {@code byte[]}.
+ * <p>
+ * In lazy mode {@link #parse()} and {@link #parse(OffsetHandler)} return a {@link CommandFrame}
+ * instead of {@code Object[]} for every RESP array. The frame arguments are carved out of a shared slab.
+ * <p>
+ * With a {@link CommandFilter} the command name and the key are read first, and a rejected command
+ * is skipped and returned as {@link #FILTERED}. The skipped bytes still count in the reply length.
+ * {@code SELECT} is never filtered, the replicator tracks the db of the stream by it.
+ *
+ * @author Leon Chen
+ * @see <a href="http://redis.io/topics/protocol">protocol</a>
+ * @since 3.0.0
+ */
+//@NonThreadSafe
+public class FastReplyParser extends ReplyParser {
+
+    /**
+     * returned by {@link #parse(OffsetHandler)} when the command is rejected by the {@link CommandFilter}
+     */
+    public static final Object FILTERED = new Object();
+
+    protected static final int SLAB_SIZE = 64 * 1024;
+    protected static final byte[] PING = "PING".getBytes();
+    protected static final byte[] SELECT = "SELECT".getBytes();
+    protected static final byte[] REPLCONF = "REPLCONF".getBytes();
+
+    protected final boolean lazy;
+    protected final BulkReplyHandler handler;
+
+    protected int slabPos;
+    protected byte[] slab;
+    protected int db = -1;
+    protected CommandFilter filter;
+
+    public FastReplyParser(RedisInputStream in) {
+        this(in, null);
+    }
+
+    public FastReplyParser(RedisInputStream in, RedisCodec codec) {
+        this(in, codec, false);
+    }
+
+    public FastReplyParser(RedisInputStream in, RedisCodec codec, boolean lazy) {
+        super(in, codec);
+        this.lazy = lazy;
+        this.handler = new FastBulkReplyHandler(codec);
+    }
+
+    @Override
+    public Object parse() throws IOException {
+        return parse((OffsetHandler) null);
+    }
+
+    @Override
+    public Object parse(OffsetHandler offsetHandler) throws IOException {
+        if (!lazy && filter == null) return parse(handler, offsetHandler);
+        in.mark();
+        Object rs = parseCommand();
+        long len = in.unmark();
+        if (offsetHandler != null) offsetHandler.handle(len);
+        return rs;
+    }
+
+    /**
+     * @param filter command filter. null to accept all
+     */
+    public void setCommandFilter(CommandFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return current db tracked by {@code SELECT}. only tracked when a command filter is set.
+     */
+    public int getDb() {
+        return db;
+    }
+
+    /**
+     * @param db initial db. -1 if unknown
+     */
+    public void setDb(int db) {
+        this.db = db;
+    }
+
+    /**
+     * @return {@link CommandFrame} in lazy mode or {@code Object[]} if the reply is a RESP array,
+     * {@link #FILTERED} if the command is rejected by the command filter,
+     * otherwise the same as {@link #parse(BulkReplyHandler)}
+     * @throws IOException when read timeout
+     */
+    protected Object parseCommand() throws IOException {
+        int c;
+        while ((c = in.peek()) == '\n') in.read();
+        if (c != STAR) return parse(handler);
+        in.read();
+        long len = in.readLongCrLf();
+        if (len == -1) return null;
+        CommandFrame frame = new CommandFrame((int) len, codec);
+        int i = 0;
+        if (filter != null && len > 0) {
+            readArgument(frame, i++);
+            if (frame.buffer(0) == null) throw new AssertionError("command name is null");
+            if (frame.isEquals(0, SELECT) && len > 1) {
+                readArgument(frame, i++);
+                db = toInt(frame, 1);
+            }
+            // the replication heartbeat and the db of the stream are never filtered
+            boolean control = frame.isEquals(0, PING) || frame.isEquals(0, REPLCONF) || frame.isEquals(0, SELECT);
+            boolean accept = control || filter.acceptCommand(frame.buffer(0), frame.offset(0), frame.length(0)) && filter.acceptDb(db);
+            if (accept && !control && len > 1 && filter.hasKey(frame.buffer(0), frame.offset(0), frame.length(0))) {
+                if (i == 1) readArgument(frame, i++);
+                accept = frame.buffer(1) == null || filter.acceptKey(frame.buffer(1), frame.offset(1), frame.length(1));
+            }
+            if (!accept) {
+                for (; i < len; i++) skipArgument();
+                return FILTERED;
+            }
+        }
+        if (lazy) {
+            for (; i < len; i++) readArgument(frame, i);
+            return frame;
+        }
+        Object[] ary = new Object[(int) len];
+        for (int j = 0; j < i; j++) ary[j] = frame.get(j);
+        for (; i < len; i++) ary[i] = parse(handler);
+        return ary;
+    }
+
+    protected void readArgument(CommandFrame frame, int idx) throws IOException {
+        int c;
+        if ((c = in.read()) != DOLLAR) throw new AssertionError("expect [$] but: " + (char) c);
+        long n = in.readLongCrLf();
+        if (n == -1) return;
+        if (n > Integer.MAX_VALUE) throw new AssertionError("bulk length overflow: " + n);
+        byte[] buffer = allocate((int) n);
+        int offset = buffer == slab ? slabPos - (int) n : 0;
+        in.readFully(buffer, offset, (int) n);
+        frame.set(idx, buffer, offset, (int) n);
+        if ((c = in.read()) != '\r') throw new AssertionError("expect '\\r' but :" + (char) c);
+        if ((c = in.read()) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
+    }
+
+    protected void skipArgument() throws IOException {
+        int c;
+        if ((c = in.read()) != DOLLAR) throw new AssertionError("expect [$] but: " + (char) c);
+        long n = in.readLongCrLf();
+        if (n == -1) return;
+        in.skip(n + 2);
+    }
+
+    private static int toInt(CommandFrame frame, int idx) {
+        byte[] buffer = frame.buffer(idx);
+        if (buffer == null) return -1;
+        int r = 0;
+        for (int i = frame.offset(idx); i < frame.offset(idx) + frame.length(idx); i++) {
+            int c = buffer[i];
+            if (c < '0' || c > '9') return -1;
+            r = r * 10 + (c - '0');
+        }
+        return r;
+    }
+
+    /**
+     * carve {@code len} bytes out of the slab. big arguments get their own array.
+     *
+     * @param len bytes
+     * @return slab or a new array
+     */
+    protected byte[] allocate(int len) {
+        if (len > SLAB_SIZE >> 2) return new byte[len];
+        if (slab == null || slabPos + len > slab.length) {
+            slab = new byte[SLAB_SIZE];
+            slabPos = 0;
+        }
+        slabPos += len;
+        return slab;
+    }
+
+    /**
+     * @param handler bulk reply handler
+     * @return Object[] or byte[] or Long
+     * @throws IOException when read timeout
+     */
+    @Override
+    public Object parse(BulkReplyHandler handler) throws IOException {
+        while (true) {
+            int c = in.read();
+            switch (c) {
+                case DOLLAR:
+                    // RESP Bulk Strings
+                    long len = -1;
+                    // disk-less replication
+                    // $EOF:<40 bytes delimiter>
+                    if (in.peek() != 'E') {
+                        len = in.readLongCrLf();
+                        // $-1\r\n. this is called null string.
+                        // see http://redis.io/topics/protocol
+                        if (len == -1) return null;
+                    } else {
+                        eofMark = readEofMark();
+                        if (handler instanceof BulkReplyHandler.SimpleBulkReplyHandler) {
+                            throw new AssertionError("Parse reply for disk-less replication can not use BulkReplyHandler.SimpleBulkReplyHandler.");
+                        }
+                    }
+                    if (handler != null) return handler.handle(len, in);
+                    throw new AssertionError("Callback is null");
+                case COLON:
+                    // RESP Integers
+                    return in.readLongCrLf();
+                case STAR:
+                    // RESP Arrays
+                    len = in.readLongCrLf();
+                    if (len == -1) return null;
+                    Object[] ary = new Object[(int) len];
+                    for (int i = 0; i < len; i++) {
+                        ary[i] = parse(this.handler);
+                    }
+                    return ary;
+                case PLUS:
+                case MINUS:
+                    // RESP Simple Strings and Errors
+                    ByteBuilder builder = ByteBuilder.allocate(128);
+                    while (true) {
+                        while ((c = in.read()) != '\r') {
+                            builder.put((byte) c);
+                        }
+                        if ((c = in.read()) == '\n') {
+                            return codec == null ? builder.array() : codec.decode(builder.array());
+                        } else {
+                            builder.put((byte) c);
+                        }
+                    }
+                case '\n':
+                    // skip +CONTINUE\r\n[\n]
+                    // skip +FULLRESYNC 8de1787ba490483314a4d30f1c628bc5025eb761 2443808505[\n]$2443808505\r\nxxxxxxxxxxxxxxxx\r\n
+                    // At this stage just a newline works as a PING in order to take the connection live
+                    break;
+                default:
+                    throw new AssertionError("expect [$,:,*,+,-] but: " + (char) c);
+
+            }
+        }
+    }
+
+    /**
+     * @return the 40 bytes delimiter after {@code $EOF:}
+     */
+    private byte[] readEofMark() throws IOException {
+        ByteBuilder builder = ByteBuilder.allocate(64);
+        int c;
+        while (true) {
+            while ((c = in.read()) != '\r') builder.put((byte) c);
+            if ((c = in.read()) == '\n') break;
+            builder.put((byte) '\r');
+            builder.put((byte) c);
+        }
+        byte[] line = builder.array();
+        return Arrays.copyOfRange(line, 4, line.length);
+    }
+
+    protected static class FastBulkReplyHandler extends BulkReplyHandler.SimpleBulkReplyHandler {
+
+        private final RedisCodec codec;
+
+        public FastBulkReplyHandler(RedisCodec codec) {
+            super(codec);
+            this.codec = codec;
+        }
+
+        @Override
+        public byte[] handle(long len, RedisInputStream in) throws IOException {
+            if (len > Integer.MAX_VALUE) return super.handle(len, in);
+            byte[] reply = new byte[(int) len];
+            in.readFully(reply, 0, reply.length);
+            int c;
+            if ((c = in.read()) != '\r') throw new AssertionError("expect '\\r' but :" + (char) c);
+            if ((c = in.read()) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
+            return codec == null ? reply : codec.decode(reply);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.util.Strings;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.moilioncircle.redis.replicator.Constants.COLON;
+import static com.moilioncircle.redis.replicator.Constants.DOLLAR;
+import static com.moilioncircle.redis.replicator.Constants.MINUS;
+import static com.moilioncircle.redis.replicator.Constants.PLUS;
+import static com.moilioncircle.redis.replicator.Constants.STAR;
+
+/**
+ * Incremental counterpart of {@link ReplyParser} for non-blocking io. The bytes are fed as they arrive and
+ * the state is kept between the calls, so a reply may span any number of reads.
+ * <p>
+ * Same replies as {@link ReplyParser} without codec: {@code Object[]}, {@code byte[]}, {@code Long} or null.
+ * Arrays can not be nested, which is enough for the command stream of the replication.
+ *
+ * @author Leon Chen
+ * @see ReplyParser
+ * @since 3.0.0
+ */
+public class ReplyDecoder {
+
+    private static final int TYPE = 0;
+    private static final int LINE = 1;
+    private static final int BULK = 2;
+
+    private int state = TYPE;
+    private byte type;
+    private byte[] line = new byte[64];
+    private int lineLength;
+
+    private Object[] array;
+    private int index;
+    private byte[] bulk;
+    private int filled;
+
+    private long length;
+    private Object reply;
+    private long replyLength;
+
+    /**
+     * @param buffer bytes to decode. the bytes after a complete reply are left in the buffer
+     * @return true if a reply is complete, see {@link #getReply()}. false if more bytes are needed
+     */
+    public boolean decode(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            if (state == BULK) {
+                // the body and the trailing CRLF
+                int n = Math.min(buffer.remaining(), bulk.length + 2 - filled);
+                int body = Math.max(0, Math.min(n, bulk.length - filled));
+                if (body > 0) buffer.get(bulk, filled, body);
+                buffer.position(buffer.position() + n - body);
+                filled += n;
+                length += n;
+                if (filled == bulk.length + 2 && value(bulk)) return true;
+                continue;
+            }
+            byte b = buffer.get();
+            length++;
+            if (state == TYPE) {
+                // a newline works as a ping before the stream starts
+                if (b == '\n') continue;
+                type = b;
+                lineLength = 0;
+                state = LINE;
+            } else if (b == '\n' && lineLength > 0 && line[lineLength - 1] == '\r') {
+                lineLength--;
+                if (line()) return true;
+            } else {
+                if (lineLength == line.length) line = Arrays.copyOf(line, line.length << 1);
+                line[lineLength++] = b;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the last complete reply
+     */
+    public Object getReply() {
+        return reply;
+    }
+
+    /**
+     * @return bytes of the last complete reply on the wire, including the skipped newlines before it
+     */
+    public long getLength() {
+        return replyLength;
+    }
+
+    private boolean line() {
+        switch (type) {
+            case DOLLAR:
+                int len = (int) number();
+                if (len == -1) return value(null);
+                bulk = new byte[len];
+                filled = 0;
+                state = BULK;
+                return false;
+            case COLON:
+                return value(number());
+            case PLUS:
+            case MINUS:
+                return value(Arrays.copyOf(line, lineLength));
+            case STAR:
+                if (array != null) throw new AssertionError("nested array is not supported");
+                int size = (int) number();
+                if (size <= 0) return value(size == 0 ? new Object[0] : null);
+                array = new Object[size];
+                index = 0;
+                state = TYPE;
+                return false;
+            default:
+                throw new AssertionError("expect [$,:,*,+,-] but: " + (char) type);
+        }
+    }
+
+    private boolean value(Object value) {
+        state = TYPE;
+        if (array != null) {
+            array[index++] = value;
+            if (index < array.length) return false;
+            value = array;
+            array = null;
+        }
+        reply = value;
+        replyLength = length;
+        length = 0;
+        return true;
+    }
+
+    private long number() {
+        return Long.parseLong(Strings.toString(Arrays.copyOf(line, lineLength)));
+    }
+}
@@ -33,8 +33,9 @@ import static com.moilioncircle.redis.replicator.Constants.STAR;
  * @since 2.1.0
  */
 public class ReplyParser {
-    private final RedisCodec codec;
-    private final RedisInputStream in;
+    protected final RedisCodec codec;
+    protected final RedisInputStream in;
+    protected byte[] eofMark;
 
     public ReplyParser(RedisInputStream in) {
         this(in, null);
@@ -45,6 +46,14 @@ public class ReplyParser {
         this.codec = codec;
     }
 
+    /**
+     * @return the 40 bytes delimiter of the last disk-less replication reply ({@code $EOF:<delimiter>})
+     * @since 3.0.0
+     */
+    public byte[] getEofMark() {
+        return eofMark;
+    }
+
     public Object parse() throws IOException {
         return parse(new BulkReplyHandler.SimpleBulkReplyHandler(codec), null);
     }
@@ -93,6 +102,7 @@ public class ReplyParser {
                         // see http://redis.io/topics/protocol
                         if (len == -1) return null;
                     } else {
+                        eofMark = payload.substring(4).getBytes();
                         if (handler instanceof BulkReplyHandler.SimpleBulkReplyHandler) {
                             throw new AssertionError("Parse reply for disk-less replication can not use BulkReplyHandler.SimpleBulkReplyHandler.");
                         }
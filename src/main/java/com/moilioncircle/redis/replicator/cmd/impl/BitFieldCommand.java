@@ -16,7 +16,7 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
 
 import java.util.List;
 
@@ -24,7 +24,7 @@ import java.util.List;
  * @author Leon Chen
  * @since 2.1.0
  */
-public class BitFieldCommand implements Command {
+public class BitFieldCommand implements GenericKeyCommand {
 
     private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd.impl;
+
+import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandFrame;
+import com.moilioncircle.redis.replicator.cmd.CommandParser;
+
+import java.io.ObjectStreamException;
+
+/**
+ * A command event that keeps the raw {@link CommandFrame} and only runs the registered
+ * {@link CommandParser} when {@link #decode()} is called.
+ * <p>
+ * Serializing a lazy command writes the decoded command.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.Configuration#setUseLazyCommand(boolean)
+ * @since 3.0.0
+ */
+public class LazyCommand implements Command {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient CommandFrame frame;
+    private final transient CommandParser<? extends Command> parser;
+    private transient Command command;
+
+    public LazyCommand(CommandFrame frame, CommandParser<? extends Command> parser) {
+        this.frame = frame;
+        this.parser = parser;
+    }
+
+    public CommandFrame getFrame() {
+        return frame;
+    }
+
+    public byte[] getName() {
+        return frame.get(0);
+    }
+
+    /**
+     * @return first argument. null if the command has no argument
+     */
+    public byte[] getKey() {
+        return frame.size() > 1 ? frame.get(1) : null;
+    }
+
+    /**
+     * @param upper upper case command name
+     * @return true if this is the named command
+     */
+    public boolean isCommand(byte[] upper) {
+        return frame.isEquals(0, upper);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Command> T decode() {
+        if (command == null) command = parser.parse(frame.toArray());
+        return (T) command;
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return decode();
+    }
+}
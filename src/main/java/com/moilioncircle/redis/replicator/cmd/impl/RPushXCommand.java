@@ -16,14 +16,14 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
 
 /**
  * @author Leon Chen
  * @version 2.1.1
  * @since 2.1.0
  */
-public class RPushXCommand implements Command {
+public class RPushXCommand implements GenericKeyCommand {
 
     private static final long serialVersionUID = 1L;
 
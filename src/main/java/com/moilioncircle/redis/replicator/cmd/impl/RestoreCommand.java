@@ -16,14 +16,14 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
 import com.moilioncircle.redis.replicator.rdb.datatype.EvictType;
 
 /**
  * @author Leon Chen
  * @since 2.1.0
  */
-public class RestoreCommand implements Command {
+public class RestoreCommand implements GenericKeyCommand {
 
     private static final long serialVersionUID = 1L;
 
@@ -16,7 +16,7 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
 
 import java.util.Map;
 
@@ -24,7 +24,7 @@ import java.util.Map;
  * @author Leon Chen
  * @since 2.6.0
  */
-public class XAddCommand implements Command {
+public class XAddCommand implements GenericKeyCommand {
 
     private static final long serialVersionUID = 1L;
 
@@ -16,11 +16,13 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
+
 /**
  * @author Leon Chen
  * @since 2.6.0
  */
-public class XGroupCreateCommand extends XGroupCommand {
+public class XGroupCreateCommand extends XGroupCommand implements GenericKeyCommand {
 
     private static final long serialVersionUID = 1L;
 
@@ -16,13 +16,13 @@
 
 package com.moilioncircle.redis.replicator.cmd.impl;
 
-import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
 
 /**
  * @author Leon Chen
  * @since 2.1.0
  */
-public class ZIncrByCommand implements Command {
+public class ZIncrByCommand implements GenericKeyCommand {
 
     private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.event;
+
+import com.moilioncircle.redis.replicator.Replicator;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public interface ClusterEventListener {
+    /**
+     * @param replicator the replicator of the source master
+     * @param node       {@code host:port} of the source master
+     * @param slot       cluster slot of the event key. -1 if the event has no key
+     * @param event      event
+     */
+    void onEvent(Replicator replicator, String node, int slot, Event event);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.event;
+
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+
+/**
+ * Emitted in place of an rdb record that had already expired, neither its key nor its value is decoded.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.Configuration#setSkipExpiredKeys(boolean)
+ * @since 3.0.0
+ */
+public class ExpiredKeySkippedEvent implements Event {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DB db;
+    private final long expiredMs;
+
+    public ExpiredKeySkippedEvent(DB db, long expiredMs) {
+        this.db = db;
+        this.expiredMs = expiredMs;
+    }
+
+    /**
+     * @return db of the record. null if the rdb has no {@code SELECTDB}
+     */
+    public DB getDb() {
+        return db;
+    }
+
+    /**
+     * @return expiry of the record in millis
+     */
+    public long getExpiredMs() {
+        return expiredMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpiredKeySkippedEvent{" +
+                "db=" + db +
+                ", expiredMs=" + expiredMs +
+                '}';
+    }
+}
@@ -25,6 +25,8 @@ public class PostRdbSyncEvent implements Event {
     private static final long serialVersionUID = 1L;
 
     private long checksum;
+    private long computedChecksum;
+    private boolean verified;
     
     public PostRdbSyncEvent() {
     }
@@ -33,6 +35,16 @@ public class PostRdbSyncEvent implements Event {
         this.checksum = checksum;
     }
 
+    /**
+     * @param checksum         checksum in the rdb
+     * @param computedChecksum checksum computed while parsing
+     */
+    public PostRdbSyncEvent(long checksum, long computedChecksum) {
+        this.checksum = checksum;
+        this.computedChecksum = computedChecksum;
+        this.verified = true;
+    }
+
     public long getChecksum() {
         return checksum;
     }
@@ -40,4 +52,31 @@ public class PostRdbSyncEvent implements Event {
     public void setChecksum(long checksum) {
         this.checksum = checksum;
     }
+
+    public long getComputedChecksum() {
+        return computedChecksum;
+    }
+
+    public void setComputedChecksum(long computedChecksum) {
+        this.computedChecksum = computedChecksum;
+    }
+
+    /**
+     * @return true if the checksum is computed while parsing
+     * @see com.moilioncircle.redis.replicator.Configuration#setVerifyRdbChecksum(boolean)
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public void setVerified(boolean verified) {
+        this.verified = verified;
+    }
+
+    /**
+     * @return true if verified and the checksums differ. a zero checksum means the rdb is saved without checksum
+     */
+    public boolean isChecksumMismatch() {
+        return verified && checksum != 0L && checksum != computedChecksum;
+    }
 }
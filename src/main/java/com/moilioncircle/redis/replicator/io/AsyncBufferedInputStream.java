@@ -25,11 +25,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * Reads the underlying stream on a worker thread into a single-producer/single-consumer ring.
+ * <p>
+ * The ring is lock free: the worker reads the socket straight into the free region of the ring and publishes
+ * the write sequence, the reader consumes and publishes the read sequence. A blocked side spins a while
+ * and then parks until the other side wakes it up.
+ *
  * @author Jingqi Xu
  * @author andyqzb
  * @since 2.1.0
@@ -39,7 +46,9 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
     private static final Logger logger = LoggerFactory.getLogger(AsyncBufferedInputStream.class);
 
     //
+    private static final int SPINS = 256;
     private static final int DEFAULT_CAPACITY = 2 * 1024 * 1024;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
     //
     private final Thread worker;
@@ -47,10 +56,9 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
     private volatile IOException exception;
     private final ByteRingBuffer ringBuffer;
     private final ThreadFactory threadFactory;
-    private final ReentrantLock lock = new ReentrantLock(false);
     private final AtomicBoolean closed = new AtomicBoolean(false);
-    private final Condition bufferNotFull = this.lock.newCondition();
-    private final Condition bufferNotEmpty = this.lock.newCondition();
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
 
 
     /*
@@ -80,19 +88,16 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
      */
     public void run() {
         try {
-            final byte[] buffer = new byte[512 * 1024];
             while (!this.closed.get()) {
                 //
-                int r = this.is.read(buffer, 0, buffer.length);
-                if (r < 0) throw new EOFException();
+                awaitNotFull();
 
-                //
-                int offset = 0;
-                while (r > 0) {
-                    final int w = write(buffer, offset, r);
-                    r -= w;
-                    offset += w;
-                }
+                // read the socket straight into the ring
+                final ByteRingBuffer rb = this.ringBuffer;
+                final int r = this.is.read(rb.buffer, rb.writeIndex(), rb.writable());
+                if (r < 0) throw new EOFException();
+                rb.publishWrite(r);
+                signal(this.waitingReader);
             }
         } catch (IOException e) {
             this.exception = e;
@@ -106,6 +111,7 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
                     logger.error("failed to close is", e);
                 }
             }
+            signal(this.waitingReader);
         }
     }
 
@@ -126,83 +132,76 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
         try {
             this.is.close();
         } finally {
-            this.lock.lock();
-            try {
-                this.bufferNotFull.signalAll();
-                this.bufferNotEmpty.signalAll();
-            } finally {
-                this.lock.unlock();
-            }
+            signal(this.waitingReader);
+            signal(this.waitingWriter);
         }
     }
 
     @Override
     public int read() throws IOException {
-        this.lock.lock();
-        try {
-            //
-            while (this.ringBuffer.isEmpty()) {
-                if (this.exception != null) throw this.exception;
-                this.bufferNotEmpty.awaitUninterruptibly();
-                if (this.closed.get()) throw new EOFException();
-            }
-
-            //
-            final int r = this.ringBuffer.read();
-            this.bufferNotFull.signal();
-            return r;
-        } finally {
-            this.lock.unlock();
-        }
+        awaitNotEmpty();
+        final int r = this.ringBuffer.read();
+        signal(this.waitingWriter);
+        return r;
     }
 
     @Override
     public int read(byte b[], int off, int len) throws IOException {
-        this.lock.lock();
-        try {
-            //
-            while (this.ringBuffer.isEmpty()) {
-                if (this.exception != null) throw this.exception;
-                this.bufferNotEmpty.awaitUninterruptibly();
-                if (this.closed.get()) throw new EOFException();
-            }
-
-            //
-            final int r = this.ringBuffer.read(b, off, len);
-            this.bufferNotFull.signal();
-            return r;
-        } finally {
-            this.lock.unlock();
-        }
+        if (len == 0) return 0;
+        awaitNotEmpty();
+        final int r = this.ringBuffer.read(b, off, len);
+        signal(this.waitingWriter);
+        return r;
     }
 
     public int write(byte b[], int off, int len) throws IOException {
-        this.lock.lock();
-        try {
-            //
-            while (this.ringBuffer.isFull()) {
-                this.bufferNotFull.awaitUninterruptibly();
-                if (this.closed.get()) throw new EOFException();
+        awaitNotFull();
+        final int w = this.ringBuffer.write(b, off, len);
+        signal(this.waitingReader);
+        return w;
+    }
+
+    /*
+     *
+     */
+    private void awaitNotEmpty() throws IOException {
+        for (int i = 0; this.ringBuffer.isEmpty(); i++) {
+            if (this.exception != null) throw this.exception;
+            if (this.closed.get()) {
+                // the worker may have published the last bytes right before closing
+                if (!this.ringBuffer.isEmpty()) return;
+                throw new EOFException();
             }
+            if (i < SPINS) continue;
+            this.waitingReader = Thread.currentThread();
+            if (this.ringBuffer.isEmpty()) LockSupport.parkNanos(this, PARK_NANOS);
+            this.waitingReader = null;
+        }
+    }
 
-            //
-            final int w = this.ringBuffer.write(b, off, len);
-            this.bufferNotEmpty.signal();
-            return w;
-        } finally {
-            this.lock.unlock();
+    private void awaitNotFull() throws IOException {
+        for (int i = 0; this.ringBuffer.isFull(); i++) {
+            if (this.closed.get()) throw new EOFException();
+            if (i < SPINS) continue;
+            this.waitingWriter = Thread.currentThread();
+            if (this.ringBuffer.isFull()) LockSupport.parkNanos(this, PARK_NANOS);
+            this.waitingWriter = null;
         }
     }
 
+    private static void signal(Thread thread) {
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
     /*
-     *
+     * single producer single consumer ring. each sequence is only written by its owner thread,
+     * the volatile store orders the publish before the check of the waiting thread on the other side.
      */
-    private final class ByteRingBuffer {
+    private static final class ByteRingBuffer {
         //
-        private int size;
-        private int head; // Write
-        private int tail; // Read
         private final byte[] buffer;
+        private final AtomicLong head = new AtomicLong(); // Write
+        private final AtomicLong tail = new AtomicLong(); // Read
 
         /*
          *
@@ -215,62 +214,71 @@ public final class AsyncBufferedInputStream extends InputStream implements Runna
          *
          */
         public int size() {
-            return this.size;
+            return (int) (this.head.get() - this.tail.get());
         }
 
         public boolean isEmpty() {
-            return this.size == 0;
+            return this.head.get() == this.tail.get();
         }
 
         public boolean isFull() {
-            return this.size == this.buffer.length;
+            return size() == this.buffer.length;
         }
 
         /*
-         *
+         * producer side
          */
-        public int read() {
+        public int writeIndex() {
+            return (int) (this.head.get() % this.buffer.length);
+        }
+
+        public int writable() {
+            final int index = writeIndex();
+            return Math.min(this.buffer.length - size(), this.buffer.length - index);
+        }
+
+        public void publishWrite(int w) {
+            this.head.set(this.head.get() + w);
+        }
+
+        public int write(byte b[], int off, int len) {
             //
-            final int r = this.buffer[this.tail] & 0xFF;
+            final int w = Math.min(this.buffer.length - size(), len);
+            final int index = writeIndex();
+            final int w1 = Math.min(this.buffer.length - index, w);
+            System.arraycopy(b, off, this.buffer, index, w1);
+            if (w1 < w) System.arraycopy(b, off + w1, this.buffer, 0, w - w1);
 
             //
-            this.tail = (this.tail + 1) % this.buffer.length;
-            this.size -= 1;
-            return r;
+            publishWrite(w);
+            return w;
         }
 
-        public int read(byte b[], int off, int len) {
+        /*
+         * consumer side
+         */
+        public int read() {
             //
-            final int r = Math.min(this.size, len);
-            if (this.head > this.tail) {
-                System.arraycopy(this.buffer, this.tail, b, off, r);
-            } else {
-                final int r1 = Math.min(this.buffer.length - this.tail, r);
-                System.arraycopy(this.buffer, this.tail, b, off, r1);
-                if (r1 < r) System.arraycopy(this.buffer, 0, b, off + r1, r - r1);
-            }
+            final long t = this.tail.get();
+            final int r = this.buffer[(int) (t % this.buffer.length)] & 0xFF;
 
             //
-            this.tail = (this.tail + r) % this.buffer.length;
-            this.size -= r;
+            this.tail.set(t + 1);
             return r;
         }
 
-        public int write(byte b[], int off, int len) {
+        public int read(byte b[], int off, int len) {
             //
-            final int w = Math.min(this.buffer.length - this.size, len);
-            if (this.head < this.tail) {
-                System.arraycopy(b, off, this.buffer, this.head, w);
-            } else {
-                final int w1 = Math.min(this.buffer.length - this.head, w);
-                System.arraycopy(b, off, this.buffer, this.head, w1);
-                if (w1 < w) System.arraycopy(b, off + w1, this.buffer, 0, w - w1);
-            }
+            final long t = this.tail.get();
+            final int r = Math.min(size(), len);
+            final int index = (int) (t % this.buffer.length);
+            final int r1 = Math.min(this.buffer.length - index, r);
+            System.arraycopy(this.buffer, index, b, off, r1);
+            if (r1 < r) System.arraycopy(this.buffer, 0, b, off + r1, r - r1);
 
             //
-            this.head = (this.head + w) % this.buffer.length;
-            this.size += w;
-            return w;
+            this.tail.set(t + r);
+            return r;
         }
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses a lzf string of the rdb while it is read. A back reference of lzf reaches at most 8KB back,
+ * so the decoded bytes are kept in a ring of 64KB instead of a buffer of the whole value.
+ * <p>
+ * The stream reads exactly the compressed bytes of the string from the underlying stream. {@link #close()}
+ * skips the bytes that are not read yet, the underlying stream is not closed.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.util.Lzf
+ * @since 3.0.0
+ */
+public class LzfInputStream extends InputStream {
+
+    /**
+     * longest output of one lzf token, a back reference of 7 + 255 + 2 bytes
+     */
+    private static final int MAX_TOKEN = 264;
+
+    private final RedisInputStream in;
+    private final long len;
+    private final byte[] ring = new byte[1 << 16];
+    private final int mask = ring.length - 1;
+    private final byte[] input = new byte[8192];
+    private int inPos;
+    private int inLimit;
+    private long compressed;
+    private long produced;
+    private long consumed;
+
+    /**
+     * @param in  rdb stream, positioned at the compressed bytes
+     * @param clen compressed length
+     * @param len  decompressed length
+     */
+    public LzfInputStream(RedisInputStream in, long clen, long len) {
+        this.in = in;
+        this.len = len;
+        this.compressed = clen;
+    }
+
+    /**
+     * @return decompressed length
+     */
+    public long length() {
+        return len;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (consumed == len) return -1;
+        if (produced == consumed) fill();
+        return ring[(int) consumed++ & mask] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int n) throws IOException {
+        if (off < 0 || n < 0 || n > b.length - off) throw new IndexOutOfBoundsException();
+        if (consumed == len) return -1;
+        if (n == 0) return 0;
+        if (produced == consumed) fill();
+        n = (int) Math.min(n, produced - consumed);
+        int pos = (int) consumed & mask;
+        int first = Math.min(n, ring.length - pos);
+        System.arraycopy(ring, pos, b, off, first);
+        if (first < n) System.arraycopy(ring, 0, b, off + first, n - first);
+        consumed += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return (int) (produced - consumed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.skip(compressed);
+        this.compressed = 0;
+        this.inPos = this.inLimit = 0;
+        this.produced = this.consumed = len;
+    }
+
+    /**
+     * decode tokens until the ring has no room for the next one
+     */
+    private void fill() throws IOException {
+        while (produced < len && produced - consumed + MAX_TOKEN <= ring.length) {
+            int ctrl = next();
+            if (ctrl < 1 << 5) {
+                // literal run of ctrl + 1 bytes
+                int n = ctrl + 1;
+                if (produced + n > len) throw corrupt();
+                while (n > 0) {
+                    if (inPos == inLimit) load();
+                    int pos = (int) produced & mask;
+                    int m = Math.min(Math.min(n, inLimit - inPos), ring.length - pos);
+                    System.arraycopy(input, inPos, ring, pos, m);
+                    inPos += m;
+                    produced += m;
+                    n -= m;
+                }
+                continue;
+            }
+            // back reference of n + 2 bytes
+            int n = ctrl >> 5;
+            if (n == 7) n += next();
+            n += 2;
+            long ref = produced - ((ctrl & 0x1F) << 8) - 1 - next();
+            if (ref < 0 || produced + n > len) throw corrupt();
+            for (int i = 0; i < n; i++) {
+                ring[(int) produced++ & mask] = ring[(int) ref++ & mask];
+            }
+        }
+        if (produced == len && compressed > 0) {
+            // trailing garbage, keep the rdb stream aligned
+            in.skip(compressed);
+            this.compressed = 0;
+        }
+    }
+
+    private int next() throws IOException {
+        if (inPos == inLimit) load();
+        return input[inPos++] & 0xff;
+    }
+
+    private void load() throws IOException {
+        if (compressed == 0) throw corrupt();
+        int n = (int) Math.min(compressed, input.length);
+        in.readFully(input, 0, n);
+        this.compressed -= n;
+        this.inPos = 0;
+        this.inLimit = n;
+    }
+
+    private AssertionError corrupt() {
+        return new AssertionError("corrupt data: output offset " + produced + ", length " + len);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * Reads a file through {@link MappedByteBuffer} windows, so that a read is a memory copy instead of a syscall
+ * and a skip is free. The window is remapped when the position leaves it, so files over 2GB are supported.
+ * <p>
+ * {@link #slice(long, int)} returns a read only view of the file without copying.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class MappedFileInputStream extends InputStream {
+
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    protected final int windowSize;
+    protected final RandomAccessFile raf;
+    protected final FileChannel channel;
+
+    protected long size = -1;
+    protected long position;
+    protected long windowStart;
+    protected MappedByteBuffer window;
+
+    public MappedFileInputStream(File file) throws FileNotFoundException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileInputStream(File file, int windowSize) throws FileNotFoundException {
+        this.windowSize = windowSize;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * @return current position in the file
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @param position new position in the file
+     */
+    public void position(long position) {
+        this.position = position;
+    }
+
+    /**
+     * @return file length
+     * @throws IOException if an I/O error occurs
+     */
+    public long size() throws IOException {
+        if (size < 0) size = channel.size();
+        return size;
+    }
+
+    /**
+     * zero copy view of the file. the position is not changed.
+     *
+     * @param position start position in the file
+     * @param len      bytes
+     * @return read only buffer
+     * @throws IOException if the range is beyond the end of file
+     */
+    public ByteBuffer slice(long position, int len) throws IOException {
+        if (position + len > size()) throw new EOFException("end of file or end of stream.");
+        if (window != null && position >= windowStart && position + len <= windowStart + window.limit()) {
+            ByteBuffer view = window.duplicate();
+            view.position((int) (position - windowStart));
+            view.limit((int) (position - windowStart) + len);
+            return view.slice();
+        }
+        // crossing the window. map the range alone
+        return channel.map(READ_ONLY, position, len);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!remap()) return -1;
+        return window.get((int) (position++ - windowStart)) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!remap()) return -1;
+        int idx = (int) (position - windowStart);
+        int n = Math.min(len, window.limit() - idx);
+        ByteBuffer view = window.duplicate();
+        view.position(idx);
+        view.get(b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        long r = Math.min(n, size() - position);
+        position += r;
+        return r;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(size() - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping is released when the buffer is collected
+        window = null;
+        raf.close();
+    }
+
+    /**
+     * @return false if end of file
+     */
+    protected boolean remap() throws IOException {
+        if (window != null && position >= windowStart && position < windowStart + window.limit()) return true;
+        // the file may be appended. e.g. an aof file
+        if (position >= size() && position >= (size = channel.size())) return false;
+        windowStart = position;
+        window = channel.map(READ_ONLY, windowStart, Math.min(windowSize, size() - windowStart));
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+/**
+ * Chunk oriented replacement of {@link RawByteListener}. The consumed bytes are handed over
+ * as slices of the stream buffer, once per buffer refill or per read that bypasses the buffer.
+ * <p>
+ * The slice is only valid during the call, copy it if needed.
+ *
+ * @author Leon Chen
+ * @see RedisInputStream#startCapture(RawByteTap)
+ * @see RedisInputStream#stopCapture(RawByteTap)
+ * @since 3.0.0
+ */
+public interface RawByteTap {
+    void handle(byte[] bytes, int offset, int length);
+}
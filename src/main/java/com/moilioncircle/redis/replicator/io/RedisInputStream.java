@@ -17,12 +17,18 @@
 package com.moilioncircle.redis.replicator.io;
 
 import com.moilioncircle.redis.replicator.util.ByteArray;
+import com.moilioncircle.redis.replicator.util.CRC64;
 import com.moilioncircle.redis.replicator.util.Strings;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -40,6 +46,12 @@ public class RedisInputStream extends InputStream {
     protected final InputStream in;
     protected List<RawByteListener> rawByteListeners;
 
+    protected boolean crc;
+    protected long checksum;
+    protected int tapHead;
+    protected boolean muted;
+    protected List<RawByteTap> taps;
+
     public RedisInputStream(ByteArray array) {
         this(new ByteArrayInputStream(array));
     }
@@ -61,6 +73,10 @@ public class RedisInputStream extends InputStream {
         this.rawByteListeners = rawByteListeners;
     }
 
+    protected boolean hasRawByteListener() {
+        return rawByteListeners != null && !rawByteListeners.isEmpty();
+    }
+
     protected void notify(byte... bytes) {
         if (rawByteListeners == null || rawByteListeners.isEmpty()) return;
         for (RawByteListener listener : rawByteListeners) {
@@ -68,6 +84,86 @@ public class RedisInputStream extends InputStream {
         }
     }
 
+    /**
+     * start handing the consumed bytes to the tap until {@link #stopCapture(RawByteTap)}
+     *
+     * @param tap raw byte tap
+     * @since 3.0.0
+     */
+    public void startCapture(RawByteTap tap) {
+        publish();
+        if (taps == null) taps = new ArrayList<>(2);
+        taps.add(tap);
+    }
+
+    /**
+     * @param tap raw byte tap
+     * @since 3.0.0
+     */
+    public void stopCapture(RawByteTap tap) {
+        publish();
+        if (taps != null) taps.remove(tap);
+    }
+
+    /**
+     * hand the bytes consumed so far to the taps. called before an event is submitted, so that the bytes
+     * of a record reach the taps before its event.
+     *
+     * @since 3.0.0
+     */
+    public void flushCapture() {
+        publish();
+    }
+
+    /**
+     * replace all the taps
+     *
+     * @param taps raw byte taps. null to remove all
+     * @since 3.0.0
+     */
+    public void setRawByteTaps(List<RawByteTap> taps) {
+        publish();
+        this.taps = taps == null ? null : new ArrayList<>(taps);
+    }
+
+    /**
+     * @return true if the consumed bytes are observed by a tap or the checksum
+     */
+    protected boolean tapped() {
+        return crc || (taps != null && !taps.isEmpty());
+    }
+
+    /**
+     * hand the bytes consumed from the buffer since the last call to the checksum and the taps
+     */
+    protected void publish() {
+        if (head > tapHead && !muted) publish(buf, tapHead, head - tapHead);
+        tapHead = head;
+    }
+
+    /**
+     * hand the bytes that bypass the buffer to the checksum and the taps
+     */
+    protected void publish(byte[] bytes, int offset, int length) {
+        if (crc) checksum = CRC64.crc64(bytes, offset, length, checksum);
+        if (taps == null) return;
+        for (int i = 0; i < taps.size(); i++) taps.get(i).handle(bytes, offset, length);
+    }
+
+    /**
+     * take the buffered bytes that are not consumed yet, e.g. to go on reading the connection with non-blocking io
+     *
+     * @return the unconsumed bytes
+     * @since 3.0.0
+     */
+    public byte[] drain() {
+        publish();
+        byte[] bytes = Arrays.copyOfRange(buf, head, tail);
+        head = tail;
+        tapHead = tail;
+        return bytes;
+    }
+
     public int head() {
         return head;
     }
@@ -102,6 +198,35 @@ public class RedisInputStream extends InputStream {
         return total;
     }
 
+    /**
+     * @return consumed bytes. unlike {@link #total()} the buffered bytes are not counted
+     * @since 3.0.0
+     */
+    public long position() {
+        return total - (tail - head);
+    }
+
+    /**
+     * start computing the crc64 of the consumed bytes
+     *
+     * @since 3.0.0
+     */
+    public void startChecksum() {
+        publish();
+        this.crc = true;
+        this.checksum = 0L;
+    }
+
+    /**
+     * @return crc64 of the bytes consumed since {@link #startChecksum()}
+     * @since 3.0.0
+     */
+    public long stopChecksum() {
+        publish();
+        this.crc = false;
+        return checksum;
+    }
+
     public ByteArray readBytes(long len) throws IOException {
         ByteArray bytes = new ByteArray(len);
         this.read(bytes, 0, len);
@@ -171,6 +296,204 @@ public class RedisInputStream extends InputStream {
         return r;
     }
 
+    /**
+     * read exactly {@code len} bytes into {@code b} straight from the buffer.
+     *
+     * @param b   destination
+     * @param off destination offset
+     * @param len bytes to read
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        int index = off, remaining = len;
+        while (remaining > 0) {
+            if (head >= tail && remaining >= buf.length) {
+                // big read. bypass the buffer
+                publish();
+                int n = in.read(b, index, remaining);
+                if (n < 0) throw new EOFException("end of file or end of stream.");
+                if (tapped()) publish(b, index, n);
+                if (hasRawByteListener()) notify(Arrays.copyOfRange(b, index, index + n));
+                total += n;
+                index += n;
+                remaining -= n;
+                continue;
+            }
+            if (head >= tail) fill();
+            int n = Math.min(tail - head, remaining);
+            System.arraycopy(buf, head, b, index, n);
+            if (hasRawByteListener()) notify(Arrays.copyOfRange(buf, head, head + n));
+            head += n;
+            index += n;
+            remaining -= n;
+        }
+        if (mark) markLen += len;
+    }
+
+    /**
+     * read at most {@code len} bytes: the buffered bytes, or else the bytes of one read of the underlying
+     * stream. unlike {@link #read(byte[], int, int)} it returns what is available instead of waiting for
+     * {@code len} bytes.
+     *
+     * @param b   destination
+     * @param off destination offset
+     * @param len max bytes to read
+     * @return bytes read, -1 at the end of the stream
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public int readSome(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        int n;
+        if (head >= tail) {
+            publish();
+            n = in.read(b, off, len);
+            if (n < 0) return -1;
+            if (tapped()) publish(b, off, n);
+            if (hasRawByteListener()) notify(Arrays.copyOfRange(b, off, off + n));
+            total += n;
+        } else {
+            n = Math.min(tail - head, len);
+            System.arraycopy(buf, head, b, off, n);
+            if (hasRawByteListener()) notify(Arrays.copyOfRange(buf, head, head + n));
+            head += n;
+        }
+        if (mark) markLen += n;
+        return n;
+    }
+
+    /**
+     * peek next byte without consuming it.
+     *
+     * @return next byte
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public int peek() throws IOException {
+        if (head >= tail) fill();
+        return buf[head] & 0xff;
+    }
+
+    /**
+     * decode a CRLF terminated decimal (e.g. RESP length header) directly from the buffer.
+     *
+     * @return the decimal value
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public long readLongCrLf() throws IOException {
+        if (head >= tail) fill();
+        if (!hasRawByteListener()) {
+            // fast path. the whole line is already in buffer.
+            int i = head;
+            long r = 0L;
+            boolean negative = buf[i] == '-';
+            if (negative) i++;
+            for (; i < tail; i++) {
+                int c = buf[i];
+                if (c == '\r') {
+                    if (i + 1 >= tail) break;
+                    if ((c = buf[i + 1]) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
+                    if (mark) markLen += i + 2 - head;
+                    head = i + 2;
+                    return negative ? -r : r;
+                }
+                if (c < '0' || c > '9') throw new NumberFormatException("expect [0-9] but :" + (char) c);
+                r = r * 10 + (c - '0');
+            }
+        }
+        // slow path. crossing the buffer boundary.
+        long r = 0L;
+        int c = read();
+        boolean negative = c == '-';
+        if (negative) c = read();
+        while (c != '\r') {
+            if (c < '0' || c > '9') throw new NumberFormatException("expect [0-9] but :" + (char) c);
+            r = r * 10 + (c - '0');
+            c = read();
+        }
+        if ((c = read()) != '\n') throw new AssertionError("expect '\\n' but :" + (char) c);
+        return negative ? -r : r;
+    }
+
+    /**
+     * transfer {@code len} bytes to the channel. bytes beyond the buffer are moved by
+     * {@link FileChannel#transferFrom} unless a raw byte listener needs to see them.
+     *
+     * @param channel target channel
+     * @param len     bytes
+     * @return len
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public long transferTo(FileChannel channel, long len) throws IOException {
+        long remaining = len;
+        int n = (int) Math.min(tail - head, remaining);
+        if (n > 0) remaining -= transfer(channel, n);
+        if (hasRawByteListener() || tapped()) {
+            while (remaining > 0) {
+                fill();
+                remaining -= transfer(channel, (int) Math.min(tail - head, remaining));
+            }
+        } else if (remaining > 0) {
+            ReadableByteChannel src = Channels.newChannel(in);
+            while (remaining > 0) {
+                long t = channel.transferFrom(src, channel.position(), remaining);
+                if (t <= 0) throw new EOFException("end of file or end of stream.");
+                channel.position(channel.position() + t);
+                remaining -= t;
+                total += t;
+            }
+        }
+        if (mark) markLen += len;
+        return len;
+    }
+
+    /**
+     * transfer bytes to the channel until the delimiter. the delimiter is consumed but not transferred.
+     *
+     * @param channel   target channel
+     * @param delimiter delimiter. e.g. the 40 bytes mark of the disk-less replication
+     * @return transferred bytes
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public long transferTo(FileChannel channel, byte[] delimiter) throws IOException {
+        // KMP so that a partial match can continue across buffer refills
+        int[] next = new int[delimiter.length];
+        for (int i = 1, k = 0; i < delimiter.length; i++) {
+            while (k > 0 && delimiter[i] != delimiter[k]) k = next[k - 1];
+            if (delimiter[i] == delimiter[k]) k++;
+            next[i] = k;
+        }
+        long len = 0;
+        int matched = 0;
+        while (matched < delimiter.length) {
+            if (head >= tail) fill();
+            int i = head;
+            while (i < tail && matched < delimiter.length) {
+                while (matched > 0 && buf[i] != delimiter[matched]) matched = next[matched - 1];
+                if (buf[i] == delimiter[matched]) matched++;
+                i++;
+            }
+            len += transfer(channel, i - head);
+        }
+        long end = channel.position() - delimiter.length;
+        channel.truncate(end);
+        channel.position(end);
+        if (mark) markLen += len;
+        return len - delimiter.length;
+    }
+
+    protected int transfer(FileChannel channel, int len) throws IOException {
+        if (hasRawByteListener()) notify(Arrays.copyOfRange(buf, head, head + len));
+        ByteBuffer buffer = ByteBuffer.wrap(buf, head, len);
+        while (buffer.hasRemaining()) channel.write(buffer);
+        head += len;
+        return len;
+    }
+
     public String readString(int len) throws IOException {
         return Strings.toString(readBytes(len).first());
     }
@@ -184,7 +507,7 @@ public class RedisInputStream extends InputStream {
         if (head >= tail) fill();
         if (mark) markLen += 1;
         byte b = buf[head++];
-        notify(b);
+        if (hasRawByteListener()) notify(b);
         return b & 0xff;
     }
 
@@ -201,6 +524,18 @@ public class RedisInputStream extends InputStream {
                 ByteArray.arraycopy(new ByteArray(buf), head, bytes, index, available);
                 index += available;
                 total -= available;
+                head = tail;
+                if (total >= buf.length && index + total <= bytes.first().length) {
+                    // big read. bypass the buffer
+                    publish();
+                    int n = in.read(bytes.first(), (int) index, (int) total);
+                    if (n < 0) throw new EOFException("end of file or end of stream.");
+                    if (tapped()) publish(bytes.first(), (int) index, n);
+                    this.total += n;
+                    index += n;
+                    total -= n;
+                    continue;
+                }
                 fill();
             }
         }
@@ -225,7 +560,26 @@ public class RedisInputStream extends InputStream {
         return tail - head + in.available();
     }
 
+    /**
+     * @param len    bytes
+     * @param notify false to hide the skipped bytes from the raw byte listeners, the taps and the checksum
+     * @return len
+     * @throws IOException when read timeout
+     */
     public long skip(long len, boolean notify) throws IOException {
+        if (notify || !tapped()) return doSkip(len, notify);
+        publish();
+        muted = true;
+        try {
+            return doSkip(len, false);
+        } finally {
+            muted = false;
+            tapHead = head;
+        }
+    }
+
+    protected long doSkip(long len, boolean notify) throws IOException {
+        if (mark) markLen += len;
         long total = len;
         while (total > 0) {
             int available = tail - head;
@@ -236,12 +590,49 @@ public class RedisInputStream extends InputStream {
             } else {
                 if (notify) notify(Arrays.copyOfRange(buf, head, tail));
                 total -= available;
+                head = tail;
+                if (in instanceof MappedFileInputStream && !tapped() && (!notify || !hasRawByteListener())) {
+                    // seek instead of reading
+                    long n = in.skip(total);
+                    this.total += n;
+                    total -= n;
+                    if (total == 0) break;
+                }
                 fill();
             }
         }
         return len;
     }
 
+    /**
+     * @return true if {@link #slice(int)} returns a view of the file instead of a copy
+     * @since 3.0.0
+     */
+    public boolean isMapped() {
+        return in instanceof MappedFileInputStream && !hasRawByteListener();
+    }
+
+    /**
+     * read {@code len} bytes as a read only buffer. the buffer is a zero copy view of the file
+     * if the underlying stream is a {@link MappedFileInputStream}, otherwise a copy.
+     *
+     * @param len bytes
+     * @return read only buffer
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public ByteBuffer slice(int len) throws IOException {
+        if (isMapped()) {
+            MappedFileInputStream mapped = (MappedFileInputStream) in;
+            ByteBuffer slice = mapped.slice(mapped.position() - (tail - head), len);
+            skip(len, true);
+            return slice;
+        }
+        byte[] bytes = new byte[len];
+        readFully(bytes, 0, len);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
     @Override
     public long skip(long len) throws IOException {
         return skip(len, true);
@@ -253,6 +644,8 @@ public class RedisInputStream extends InputStream {
     }
 
     protected void fill() throws IOException {
+        publish();
+        tapHead = 0;
         tail = in.read(buf, 0, buf.length);
         if (tail == -1) throw new EOFException("end of file or end of stream.");
         total += tail;
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the underlying stream into a spool file on a worker thread, so that the producer is never
+ * throttled by the consumer. After {@link #stop()} the worker exits, and once the spool file is consumed
+ * the stream reads the underlying stream directly and deletes the spool file.
+ * <p>
+ * The worker blocks in a read of the underlying stream, so it notices {@link #stop()} only when the
+ * next bytes arrive or the read times out.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class SpooledInputStream extends InputStream implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpooledInputStream.class);
+
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File file;
+    private final Thread worker;
+    private final InputStream is;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    private long position;
+    private boolean direct;
+    private volatile long written;
+    private volatile boolean done;
+    private volatile boolean stopped;
+    private volatile boolean closed;
+    private volatile Thread waiting;
+    private volatile IOException exception;
+
+    public SpooledInputStream(InputStream is, File file) throws IOException {
+        this.is = is;
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.worker = new Thread(this, "spool-" + file.getName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            final byte[] buffer = new byte[64 * 1024];
+            while (!stopped) {
+                int r = readSome(buffer, 0, buffer.length);
+                if (r < 0) throw new EOFException();
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, r);
+                long p = written;
+                while (bb.hasRemaining()) p += channel.write(bb, p);
+                written = p;
+                signal();
+            }
+        } catch (IOException e) {
+            if (!closed) exception = e;
+        } catch (Exception e) {
+            logger.error("failed to spool data", e);
+        } finally {
+            done = true;
+            signal();
+        }
+    }
+
+    /**
+     * stop spooling. the bytes already spooled are still read before the underlying stream.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * @return spooled bytes that are not read yet
+     */
+    public long spooled() {
+        return direct ? 0 : written - position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int r;
+        while ((r = read(b, 0, 1)) == 0) ;
+        return r < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (direct) return readSome(b, off, len);
+        while (true) {
+            if (closed) throw new EOFException();
+            long available = written - position;
+            if (available > 0) {
+                int r = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(available, len)), position);
+                position += r;
+                return r;
+            }
+            if (done) {
+                if (exception != null) throw exception;
+                direct = true;
+                release();
+                return readSome(b, off, len);
+            }
+            waiting = Thread.currentThread();
+            if (written == position && !done) LockSupport.parkNanos(this, PARK_NANOS);
+            waiting = null;
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return direct ? is.available() : (int) Math.min(written - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        stopped = true;
+        try {
+            is.close();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * a {@link RedisInputStream} reads fully, that would hold the bytes already received until the
+     * buffer is full. read what is available instead.
+     */
+    private int readSome(byte[] b, int off, int len) throws IOException {
+        if (is instanceof RedisInputStream) return ((RedisInputStream) is).readSome(b, off, len);
+        return is.read(b, off, len);
+    }
+
+    private void signal() {
+        Thread thread = waiting;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    private void release() {
+        try {
+            raf.close();
+        } catch (IOException e) {
+            // NOP
+        }
+        if (file.exists() && !file.delete()) logger.warn("failed to delete spool file {}", file);
+    }
+}
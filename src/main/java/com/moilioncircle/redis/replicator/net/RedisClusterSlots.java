@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.net;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.cmd.ReplyParser;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.io.RedisOutputStream;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import com.moilioncircle.redis.replicator.util.Strings;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import static com.moilioncircle.redis.replicator.Constants.DOLLAR;
+import static com.moilioncircle.redis.replicator.Constants.STAR;
+
+/**
+ * Loads the slot map of a redis cluster with {@code CLUSTER SLOTS}.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class RedisClusterSlots {
+
+    private static final byte[] AUTH = "AUTH".getBytes();
+    private static final byte[] CLUSTER = "CLUSTER".getBytes();
+    private static final byte[] SLOTS = "SLOTS".getBytes();
+
+    /**
+     * @param host          host of a node
+     * @param port          port of a node
+     * @param configuration connection settings
+     * @return {@code host:port} of the master of each slot. {@code null} if the slot is not covered
+     * @throws IOException if an I/O error occurs or the node is not in cluster mode
+     */
+    public static String[] load(String host, int port, Configuration configuration) throws IOException {
+        String[] slots = new String[CRC16.SLOTS];
+        try (Socket socket = new RedisSocketFactory(configuration).createSocket(host, port, configuration.getConnectionTimeout())) {
+            RedisOutputStream out = new RedisOutputStream(socket.getOutputStream());
+            ReplyParser parser = new ReplyParser(new RedisInputStream(socket.getInputStream()), null);
+            if (configuration.getAuthPassword() != null) {
+                write(out, AUTH, configuration.getAuthPassword().getBytes());
+                parser.parse();
+            }
+            write(out, CLUSTER, SLOTS);
+            Object reply = parser.parse();
+            if (!(reply instanceof Object[])) {
+                throw new IOException("[CLUSTER SLOTS] failed. " + (reply instanceof byte[] ? Strings.toString(reply) : reply));
+            }
+            for (Object o : (Object[]) reply) {
+                Object[] range = (Object[]) o;
+                Object[] master = (Object[]) range[2];
+                String h = Strings.toString(master[0]);
+                // an empty host means the node that replied
+                if (h == null || h.isEmpty()) h = host;
+                String node = h + ":" + master[1];
+                for (int i = ((Long) range[0]).intValue(); i <= ((Long) range[1]).intValue(); i++) slots[i] = node;
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * @param address {@code host:port}
+     * @return host
+     */
+    public static String host(String address) {
+        return address.substring(0, address.lastIndexOf(':'));
+    }
+
+    /**
+     * @param address {@code host:port}
+     * @return port
+     */
+    public static int port(String address) {
+        return Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+    }
+
+    private static void write(RedisOutputStream out, byte[] command, byte[]... args) throws IOException {
+        out.write(STAR);
+        out.write(String.valueOf(args.length + 1).getBytes());
+        out.writeCrLf();
+        for (byte[] arg : concat(command, args)) {
+            out.write(DOLLAR);
+            out.write(String.valueOf(arg.length).getBytes());
+            out.writeCrLf();
+            out.write(arg);
+            out.writeCrLf();
+        }
+        out.flush();
+    }
+
+    private static byte[][] concat(byte[] command, byte[][] args) {
+        byte[][] all = new byte[args.length + 1][];
+        all[0] = command;
+        System.arraycopy(args, 0, all, 1, args.length);
+        return all;
+    }
+}
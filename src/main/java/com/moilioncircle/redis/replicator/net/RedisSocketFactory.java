@@ -25,6 +25,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.SocketChannel;
 
 /**
  * @author Leon Chen
@@ -86,6 +87,20 @@ public class RedisSocketFactory extends SocketFactory {
         }
     }
 
+    /**
+     * @param host    host
+     * @param port    port
+     * @param timeout connect timeout
+     * @return a connected socket backed by a {@link SocketChannel}. ssl is not supported
+     * @throws IOException if an I/O error occurs
+     * @since 3.0.0
+     */
+    public Socket createChannelSocket(String host, int port, int timeout) throws IOException {
+        Socket socket = build(SocketChannel.open().socket());
+        socket.connect(new InetSocketAddress(host, port), timeout);
+        return socket;
+    }
+
     private Socket build(Socket socket) throws SocketException {
         socket.setReuseAddress(true);
         socket.setKeepAlive(true);
@@ -16,8 +16,10 @@
 
 package com.moilioncircle.redis.replicator.rdb;
 
+import com.moilioncircle.redis.replicator.Configuration;
 import com.moilioncircle.redis.replicator.Replicator;
 import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.ExpiredKeySkippedEvent;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.rdb.datatype.AuxField;
 import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
@@ -37,6 +39,7 @@ import com.moilioncircle.redis.replicator.rdb.datatype.Stream;
 import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleParser;
 import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbParser;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbVisitor;
 import com.moilioncircle.redis.replicator.util.ByteArrayList;
 import com.moilioncircle.redis.replicator.util.ByteArrayMap;
 import com.moilioncircle.redis.replicator.util.ByteArraySet;
@@ -89,6 +92,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
     protected static final Logger logger = LoggerFactory.getLogger(DefaultRdbVisitor.class);
 
     protected final Replicator replicator;
+    private SkipRdbVisitor skipVisitor;
 
     public DefaultRdbVisitor(final Replicator replicator) {
         this.replicator = replicator;
@@ -198,6 +202,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         context.setExpiredType(ExpiredType.SECOND);
         context.setExpiredValue(expiredSec);
         context.setValueRdbType(type);
+        if (isExpired(context)) return applyExpired(in, version, context);
         KeyValuePair<?, ?> kv;
         if (type == RDB_OPCODE_FREQ) {
             kv = (KeyValuePair<?, ?>) applyFreq(in, version, context);
@@ -225,6 +230,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         context.setExpiredType(ExpiredType.MS);
         context.setExpiredValue(expiredMs);
         context.setValueRdbType(type);
+        if (isExpired(context)) return applyExpired(in, version, context);
         KeyValuePair<?, ?> kv;
         if (type == RDB_OPCODE_FREQ) {
             kv = (KeyValuePair<?, ?>) applyFreq(in, version, context);
@@ -267,7 +273,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], byte[]> o0 = new KeyStringValueString();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         byte[] val = parser.rdbLoadEncodedStringObject().first();
         o0.setValueRdbType(RDB_TYPE_STRING);
         o0.setValue(val);
@@ -283,7 +289,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], List<byte[]>> o1 = new KeyStringValueList();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         List<byte[]> list = new ByteArrayList();
         while (len > 0) {
@@ -305,7 +311,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Set<byte[]>> o2 = new KeyStringValueSet();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         Set<byte[]> set = new ByteArraySet();
         while (len > 0) {
@@ -327,7 +333,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Set<ZSetEntry>> o3 = new KeyStringValueZSet();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         Set<ZSetEntry> zset = new LinkedHashSet<>();
         while (len > 0) {
@@ -350,7 +356,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Set<ZSetEntry>> o5 = new KeyStringValueZSet();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         /* rdb version 8*/
         long len = parser.rdbLoadLen().len;
         Set<ZSetEntry> zset = new LinkedHashSet<>();
@@ -374,7 +380,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Map<byte[], byte[]>> o4 = new KeyStringValueHash();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         ByteArrayMap map = new ByteArrayMap();
         while (len > 0) {
@@ -397,7 +403,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Map<byte[], byte[]>> o9 = new KeyStringValueHash();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
         ByteArrayMap map = new ByteArrayMap();
         BaseRdbParser.LenHelper.zmlen(stream); // zmlen
@@ -434,7 +440,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], List<byte[]>> o10 = new KeyStringValueList();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         List<byte[]> list = new ByteArrayList();
@@ -463,7 +469,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Set<byte[]>> o11 = new KeyStringValueSet();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         Set<byte[]> set = new ByteArraySet();
@@ -501,7 +507,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Set<ZSetEntry>> o12 = new KeyStringValueZSet();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         Set<ZSetEntry> zset = new LinkedHashSet<>();
@@ -533,7 +539,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Map<byte[], byte[]>> o13 = new KeyStringValueHash();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         ByteArrayMap map = new ByteArrayMap();
@@ -561,7 +567,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
     public Event applyListQuickList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], List<byte[]>> o14 = new KeyStringValueList();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         List<byte[]> list = new ByteArrayList();
         for (long i = 0; i < len; i++) {
@@ -590,7 +596,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         //|6|6|6|6|6|6|6|6|6|10|
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Module> o6 = new KeyStringValueModule();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         char[] c = new char[9];
         long moduleid = parser.rdbLoadLen().len;
         for (int i = 0; i < c.length; i++) {
@@ -613,7 +619,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
         //|6|6|6|6|6|6|6|6|6|10|
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Module> o7 = new KeyStringValueModule();
-        byte[] rawKey = parser.rdbLoadEncodedStringObject().first();
+        byte[] rawKey = rdbLoadKey(parser, context);
         char[] c = new char[9];
         long moduleid = parser.rdbLoadLen().len;
         for (int i = 0; i < c.length; i++) {
@@ -649,7 +655,7 @@ public class DefaultRdbVisitor extends RdbVisitor {
     public Event applyStreamListPacks(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Stream> o15 = new KeyStringValueStream();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
 
         Stream stream = new Stream();
 
@@ -790,6 +796,89 @@ public class DefaultRdbVisitor extends RdbVisitor {
         return context.valueOf(o15);
     }
 
+    /**
+     * @param context key value context with the expiry
+     * @return true if expired records are skipped and this one has expired
+     * @see Configuration#setSkipExpiredKeys(boolean)
+     * @since 3.0.0
+     */
+    protected boolean isExpired(ContextKeyValuePair context) {
+        return isExpired(replicator.getConfiguration(), context);
+    }
+
+    /**
+     * the expiry check of every rdb visitor that skips expired records
+     *
+     * @param configuration configuration with the skip flag and the clock
+     * @param context       key value context with the expiry
+     * @return true if expired records are skipped and this one has expired
+     * @see Configuration#setSkipExpiredKeys(boolean)
+     * @since 3.0.0
+     */
+    public static boolean isExpired(Configuration configuration, ContextKeyValuePair context) {
+        if (!configuration.isSkipExpiredKeys()) return false;
+        long expiredAt = context.getExpiredAt();
+        return expiredAt >= 0 && expiredAt < configuration.getClock().currentTimeMillis();
+    }
+
+    /**
+     * skip the key and the value of an expired record
+     *
+     * @param skipVisitor   visitor that skips the record
+     * @param configuration configuration with the notify flag
+     * @param in            input stream
+     * @param version       rdb version
+     * @param context       key value context with the expiry and the value rdb type
+     * @return {@link ExpiredKeySkippedEvent} if notified. otherwise null
+     * @throws IOException when read timeout
+     * @see Configuration#setNotifySkippedExpiredKeys(boolean)
+     * @since 3.0.0
+     */
+    public static Event skipExpired(RdbVisitor skipVisitor, Configuration configuration, RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        RdbParser.applyRecord(skipVisitor, in, version, context.getValueRdbType(), context);
+        if (!configuration.isNotifySkippedExpiredKeys()) return null;
+        return new ExpiredKeySkippedEvent(context.getDb(), context.getExpiredAt());
+    }
+
+    /**
+     * skip the rest of an expired record, the freq or idle prefix, the key and the value
+     *
+     * @param in      input stream
+     * @param version rdb version
+     * @param context key value context with the expiry and the type that follows it
+     * @return {@link ExpiredKeySkippedEvent} if notified. otherwise null
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    protected Event applyExpired(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        int type = context.getValueRdbType();
+        if (type == RDB_OPCODE_FREQ) {
+            in.read();
+            type = applyType(in);
+        } else if (type == RDB_OPCODE_IDLE) {
+            new SkipRdbParser(in).rdbLoadLen();
+            type = applyType(in);
+        }
+        context.setValueRdbType(type);
+        SkipRdbVisitor skipVisitor = this.skipVisitor;
+        if (skipVisitor == null) this.skipVisitor = skipVisitor = new SkipRdbVisitor(replicator);
+        return skipExpired(skipVisitor, replicator.getConfiguration(), in, version, context);
+    }
+
+    /**
+     * @param parser  parser
+     * @param context key value context
+     * @return the key of the record, unless it was already read into the context
+     * @throws IOException when read timeout
+     * @see ContextKeyValuePair#getRawKey()
+     * @since 3.0.0
+     */
+    protected byte[] rdbLoadKey(BaseRdbParser parser, ContextKeyValuePair context) throws IOException {
+        byte[] key = context.getRawKey();
+        if (key != null) return key;
+        return parser.rdbLoadEncodedStringObject().first();
+    }
+
     protected KeyValuePair<?, ?> rdbLoadObject(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         /*
          * ----------------------------
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.AbstractReplicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.PostRdbSyncEvent;
+import com.moilioncircle.redis.replicator.event.PreRdbSyncEvent;
+import com.moilioncircle.redis.replicator.io.MappedFileInputStream;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_AUX;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_EOF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_MODULE_AUX;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_RESIZEDB;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_SELECTDB;
+import static com.moilioncircle.redis.replicator.Status.CONNECTED;
+
+/**
+ * Decodes an rdb file in two phases.
+ * <p>
+ * The index phase walks the file with a {@link SkipRdbVisitor} and splits the records into ranges
+ * of about {@link #RANGE_SIZE} bytes that never cross a {@code SELECTDB}. The aux fields and the db context
+ * are decoded on the way. The decode phase decodes the ranges on a {@link ForkJoinPool}, each worker
+ * reads its own range of the file with the rdb visitor of the replicator.
+ * <p>
+ * The events are always submitted on the calling thread, either in file order or in the order the ranges
+ * complete. The rdb visitor is shared by the workers, so it must be stateless, must not read the
+ * stream lazily (e.g. {@code ValueIterableRdbVisitor}) and must not write to a shared sink (e.g. a
+ * {@code DumpRdbVisitor} with an {@code OutputStream}).
+ *
+ * @author Leon Chen
+ * @see RdbParser
+ * @since 3.0.0
+ */
+public class ParallelRdbParser {
+
+    protected static final Logger logger = LoggerFactory.getLogger(ParallelRdbParser.class);
+
+    protected static final long RANGE_SIZE = 4 * 1024 * 1024;
+
+    protected final File file;
+    protected final boolean mapped;
+    protected final boolean verify;
+    protected final boolean ordered;
+    protected final int bufferSize;
+    protected final int parallelism;
+    protected final RdbVisitor rdbVisitor;
+    protected final AbstractReplicator replicator;
+
+    protected int version;
+    protected long checksum;
+    protected long computedChecksum;
+
+    public ParallelRdbParser(File file, AbstractReplicator replicator) {
+        this.file = file;
+        this.replicator = replicator;
+        this.rdbVisitor = replicator.getRdbVisitor();
+        this.mapped = replicator.getConfiguration().isUseMappedFile();
+        this.verify = replicator.getConfiguration().isVerifyRdbChecksum();
+        this.ordered = replicator.getConfiguration().isRdbParallelOrdered();
+        this.bufferSize = replicator.getConfiguration().getBufferSize();
+        this.parallelism = Math.max(1, replicator.getConfiguration().getRdbParallelism());
+    }
+
+    /**
+     * @return read bytes
+     * @throws IOException when read timeout
+     */
+    public long parse() throws IOException {
+        this.replicator.submitEvent(new PreRdbSyncEvent());
+        List<Object> segments = index();
+        if (segments == null) return file.length();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            if (ordered) decodeOrdered(pool, segments);
+            else decodeUnordered(pool, segments);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (this.replicator.getStatus() == CONNECTED) {
+            if (verify) this.replicator.submitEvent(new PostRdbSyncEvent(checksum, computedChecksum));
+            else this.replicator.submitEvent(new PostRdbSyncEvent(checksum));
+        }
+        return file.length();
+    }
+
+    /**
+     * @return aux events and record ranges in file order. null if the replicator is closed
+     * @throws IOException when read timeout
+     */
+    protected List<Object> index() throws IOException {
+        List<Object> segments = new ArrayList<>();
+        RdbVisitor skip = new SkipRdbVisitor(replicator);
+        try (RedisInputStream in = new RedisInputStream(open(0), bufferSize)) {
+            if (verify) in.startChecksum();
+            rdbVisitor.applyMagic(in);
+            this.version = rdbVisitor.applyVersion(in);
+            DB db = null;
+            Range range = null;
+            while (this.replicator.getStatus() == CONNECTED) {
+                long position = in.position();
+                int type = rdbVisitor.applyType(in);
+                ContextKeyValuePair kv = new ContextKeyValuePair();
+                kv.setDb(db);
+                switch (type) {
+                    case RDB_OPCODE_AUX:
+                        add(segments, rdbVisitor.applyAux(in, version));
+                        range = null;
+                        break;
+                    case RDB_OPCODE_MODULE_AUX:
+                        add(segments, rdbVisitor.applyModuleAux(in, version));
+                        range = null;
+                        break;
+                    case RDB_OPCODE_RESIZEDB:
+                        rdbVisitor.applyResizeDB(in, version, kv);
+                        break;
+                    case RDB_OPCODE_SELECTDB:
+                        db = rdbVisitor.applySelectDB(in, version);
+                        range = null;
+                        break;
+                    case RDB_OPCODE_EOF:
+                        if (verify) this.computedChecksum = in.stopChecksum();
+                        this.checksum = rdbVisitor.applyEof(in, version);
+                        if (verify && checksum != 0L && checksum != computedChecksum) {
+                            logger.warn("rdb checksum mismatch, expected {} but computed {}", checksum, computedChecksum);
+                        }
+                        return segments;
+                    default:
+                        RdbParser.applyRecord(skip, in, version, type, kv);
+                        if (range == null || range.end - range.start >= RANGE_SIZE) {
+                            segments.add(range = new Range(db, position));
+                        }
+                        range.end = in.position();
+                        range.count++;
+                        break;
+                }
+            }
+        }
+        return null;
+    }
+
+    protected void decodeOrdered(ForkJoinPool pool, List<Object> segments) throws IOException {
+        int window = parallelism << 1;
+        Deque<Object> pending = new ArrayDeque<>();
+        for (Object segment : segments) {
+            if (segment instanceof Range) segment = pool.submit(new Decoder((Range) segment));
+            pending.addLast(segment);
+            while (pending.size() > window) {
+                if (!emit(pending.removeFirst())) return;
+            }
+        }
+        while (!pending.isEmpty()) {
+            if (!emit(pending.removeFirst())) return;
+        }
+    }
+
+    protected void decodeUnordered(ForkJoinPool pool, List<Object> segments) throws IOException {
+        int window = parallelism << 1, running = 0;
+        CompletionService<List<Event>> service = new ExecutorCompletionService<>(pool);
+        for (Object segment : segments) {
+            if (segment instanceof Range) {
+                service.submit(new Decoder((Range) segment));
+                if (++running <= window) continue;
+                running--;
+                segment = take(service);
+            }
+            if (!emit(segment)) return;
+        }
+        for (; running > 0; running--) {
+            if (!emit(take(service))) return;
+        }
+    }
+
+    /**
+     * @param segment event or future of the decoded range
+     * @return false if the replicator is closed
+     * @throws IOException when read timeout
+     */
+    @SuppressWarnings("unchecked")
+    protected boolean emit(Object segment) throws IOException {
+        if (segment instanceof Event) return submit((Event) segment);
+        for (Event event : get((Future<List<Event>>) segment)) {
+            if (!submit(event)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param position start position in the file
+     * @return input stream of the file
+     * @throws IOException if an I/O error occurs
+     */
+    protected InputStream open(long position) throws IOException {
+        if (mapped) {
+            MappedFileInputStream in = new MappedFileInputStream(file);
+            in.position(position);
+            return in;
+        }
+        FileInputStream in = new FileInputStream(file);
+        in.getChannel().position(position);
+        return in;
+    }
+
+    private boolean submit(Event event) {
+        if (this.replicator.getStatus() != CONNECTED) return false;
+        if (replicator.verbose() && logger.isDebugEnabled()) logger.debug("{}", event);
+        this.replicator.submitEvent(event);
+        return true;
+    }
+
+    private static void add(List<Object> segments, Event event) {
+        if (event != null) segments.add(event);
+    }
+
+    private static Future<List<Event>> take(CompletionService<List<Event>> service) throws IOException {
+        try {
+            return service.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static List<Event> get(Future<List<Event>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof UncheckedIOException) throw (UncheckedIOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * consecutive records of one db
+     */
+    protected static class Range {
+        protected final DB db;
+        protected final long start;
+        protected long end;
+        protected int count;
+
+        protected Range(DB db, long start) {
+            this.db = db;
+            this.start = start;
+        }
+    }
+
+    protected class Decoder implements Callable<List<Event>> {
+
+        private final Range range;
+
+        protected Decoder(Range range) {
+            this.range = range;
+        }
+
+        @Override
+        public List<Event> call() throws IOException {
+            List<Event> events = new ArrayList<>(range.count);
+            try (RedisInputStream in = new RedisInputStream(open(range.start), bufferSize)) {
+                long length = range.end - range.start;
+                while (in.position() < length && replicator.getStatus() == CONNECTED) {
+                    int type = rdbVisitor.applyType(in);
+                    ContextKeyValuePair kv = new ContextKeyValuePair();
+                    kv.setDb(range.db);
+                    Event event = RdbParser.applyRecord(rdbVisitor, in, version, type, kv);
+                    if (event != null) events.add(event);
+                }
+            }
+            return events;
+        }
+    }
+}
@@ -141,6 +141,8 @@ public class RdbParser {
          * ----------------------------
          */
         this.replicator.submitEvent(new PreRdbSyncEvent());
+        boolean verify = replicator.getConfiguration().isVerifyRdbChecksum();
+        if (verify) in.startChecksum();
         rdbVisitor.applyMagic(in);
         int version = rdbVisitor.applyVersion(in);
         DB db = null;
@@ -154,18 +156,6 @@ public class RdbParser {
             ContextKeyValuePair kv = new ContextKeyValuePair();
             kv.setDb(db);
             switch (type) {
-                case RDB_OPCODE_EXPIRETIME:
-                    event = rdbVisitor.applyExpireTime(in, version, kv);
-                    break;
-                case RDB_OPCODE_EXPIRETIME_MS:
-                    event = rdbVisitor.applyExpireTimeMs(in, version, kv);
-                    break;
-                case RDB_OPCODE_FREQ:
-                    event = rdbVisitor.applyFreq(in, version, kv);
-                    break;
-                case RDB_OPCODE_IDLE:
-                    event = rdbVisitor.applyIdle(in, version, kv);
-                    break;
                 case RDB_OPCODE_AUX:
                     event = rdbVisitor.applyAux(in, version);
                     break;
@@ -179,56 +169,21 @@ public class RdbParser {
                     db = rdbVisitor.applySelectDB(in, version);
                     break;
                 case RDB_OPCODE_EOF:
-                    long checksum = rdbVisitor.applyEof(in, version);
-                    this.replicator.submitEvent(new PostRdbSyncEvent(checksum));
+                    if (verify) {
+                        long computed = in.stopChecksum();
+                        long checksum = rdbVisitor.applyEof(in, version);
+                        if (checksum != 0L && checksum != computed) {
+                            logger.warn("rdb checksum mismatch, expected {} but computed {}", checksum, computed);
+                        }
+                        this.replicator.submitEvent(new PostRdbSyncEvent(checksum, computed));
+                    } else {
+                        long checksum = rdbVisitor.applyEof(in, version);
+                        this.replicator.submitEvent(new PostRdbSyncEvent(checksum));
+                    }
                     break loop;
-                case RDB_TYPE_STRING:
-                    event = rdbVisitor.applyString(in, version, kv);
-                    break;
-                case RDB_TYPE_LIST:
-                    event = rdbVisitor.applyList(in, version, kv);
-                    break;
-                case RDB_TYPE_SET:
-                    event = rdbVisitor.applySet(in, version, kv);
-                    break;
-                case RDB_TYPE_ZSET:
-                    event = rdbVisitor.applyZSet(in, version, kv);
-                    break;
-                case RDB_TYPE_ZSET_2:
-                    event = rdbVisitor.applyZSet2(in, version, kv);
-                    break;
-                case RDB_TYPE_HASH:
-                    event = rdbVisitor.applyHash(in, version, kv);
-                    break;
-                case RDB_TYPE_HASH_ZIPMAP:
-                    event = rdbVisitor.applyHashZipMap(in, version, kv);
-                    break;
-                case RDB_TYPE_LIST_ZIPLIST:
-                    event = rdbVisitor.applyListZipList(in, version, kv);
-                    break;
-                case RDB_TYPE_SET_INTSET:
-                    event = rdbVisitor.applySetIntSet(in, version, kv);
-                    break;
-                case RDB_TYPE_ZSET_ZIPLIST:
-                    event = rdbVisitor.applyZSetZipList(in, version, kv);
-                    break;
-                case RDB_TYPE_HASH_ZIPLIST:
-                    event = rdbVisitor.applyHashZipList(in, version, kv);
-                    break;
-                case RDB_TYPE_LIST_QUICKLIST:
-                    event = rdbVisitor.applyListQuickList(in, version, kv);
-                    break;
-                case RDB_TYPE_MODULE:
-                    event = rdbVisitor.applyModule(in, version, kv);
-                    break;
-                case RDB_TYPE_MODULE_2:
-                    event = rdbVisitor.applyModule2(in, version, kv);
-                    break;
-                case RDB_TYPE_STREAM_LISTPACKS:
-                    event = rdbVisitor.applyStreamListPacks(in, version, kv);
-                    break;
                 default:
-                    throw new AssertionError("unexpected value type:" + type + ", check your ModuleParser or ValueIterableRdbVisitor.");
+                    event = applyRecord(rdbVisitor, in, version, type, kv);
+                    break;
             }
             if (event == null) continue;
             if (replicator.verbose() && logger.isDebugEnabled()) logger.debug("{}", event);
@@ -236,5 +191,59 @@ public class RdbParser {
         }
         return in.total();
     }
-}
 
+    /**
+     * @param rdbVisitor rdb visitor
+     * @param in         input stream
+     * @param version    rdb version
+     * @param type       value type or the expire, freq and idle prefix of a record
+     * @param kv         key value context
+     * @return event
+     * @throws IOException when read timeout
+     * @since 3.0.0
+     */
+    public static Event applyRecord(RdbVisitor rdbVisitor, RedisInputStream in, int version, int type, ContextKeyValuePair kv) throws IOException {
+        switch (type) {
+            case RDB_OPCODE_EXPIRETIME:
+                return rdbVisitor.applyExpireTime(in, version, kv);
+            case RDB_OPCODE_EXPIRETIME_MS:
+                return rdbVisitor.applyExpireTimeMs(in, version, kv);
+            case RDB_OPCODE_FREQ:
+                return rdbVisitor.applyFreq(in, version, kv);
+            case RDB_OPCODE_IDLE:
+                return rdbVisitor.applyIdle(in, version, kv);
+            case RDB_TYPE_STRING:
+                return rdbVisitor.applyString(in, version, kv);
+            case RDB_TYPE_LIST:
+                return rdbVisitor.applyList(in, version, kv);
+            case RDB_TYPE_SET:
+                return rdbVisitor.applySet(in, version, kv);
+            case RDB_TYPE_ZSET:
+                return rdbVisitor.applyZSet(in, version, kv);
+            case RDB_TYPE_ZSET_2:
+                return rdbVisitor.applyZSet2(in, version, kv);
+            case RDB_TYPE_HASH:
+                return rdbVisitor.applyHash(in, version, kv);
+            case RDB_TYPE_HASH_ZIPMAP:
+                return rdbVisitor.applyHashZipMap(in, version, kv);
+            case RDB_TYPE_LIST_ZIPLIST:
+                return rdbVisitor.applyListZipList(in, version, kv);
+            case RDB_TYPE_SET_INTSET:
+                return rdbVisitor.applySetIntSet(in, version, kv);
+            case RDB_TYPE_ZSET_ZIPLIST:
+                return rdbVisitor.applyZSetZipList(in, version, kv);
+            case RDB_TYPE_HASH_ZIPLIST:
+                return rdbVisitor.applyHashZipList(in, version, kv);
+            case RDB_TYPE_LIST_QUICKLIST:
+                return rdbVisitor.applyListQuickList(in, version, kv);
+            case RDB_TYPE_MODULE:
+                return rdbVisitor.applyModule(in, version, kv);
+            case RDB_TYPE_MODULE_2:
+                return rdbVisitor.applyModule2(in, version, kv);
+            case RDB_TYPE_STREAM_LISTPACKS:
+                return rdbVisitor.applyStreamListPacks(in, version, kv);
+            default:
+                throw new AssertionError("unexpected value type:" + type + ", check your ModuleParser or ValueIterableRdbVisitor.");
+        }
+    }
+}
@@ -24,6 +24,27 @@ public class ContextKeyValuePair extends KeyValuePair<Void, Void> {
     
     private static final long serialVersionUID = 1L;
     
+    private byte[] rawKey;
+    
+    /**
+     * @return key of the record if it was read before the value, e.g. by a filter. null if not read yet
+     */
+    public byte[] getRawKey() {
+        return rawKey;
+    }
+    
+    public void setRawKey(byte[] rawKey) {
+        this.rawKey = rawKey;
+    }
+    
+    /**
+     * @return expiry in millis. -1 if the record has no expiry
+     */
+    public long getExpiredAt() {
+        if (expiredValue == null || expiredType == ExpiredType.NONE) return -1L;
+        return expiredType == ExpiredType.SECOND ? expiredValue * 1000L : expiredValue;
+    }
+    
     public <K, V> KeyValuePair<K, V> valueOf(KeyValuePair<K, V> kv) {
         kv.setDb(this.getDb());
         kv.setEvictType(this.getEvictType());
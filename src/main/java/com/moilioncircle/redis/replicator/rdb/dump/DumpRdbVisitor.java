@@ -17,23 +17,28 @@
 package com.moilioncircle.redis.replicator.rdb.dump;
 
 import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
 import com.moilioncircle.redis.replicator.event.Event;
-import com.moilioncircle.redis.replicator.io.RawByteListener;
+import com.moilioncircle.redis.replicator.io.RawByteTap;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.rdb.BaseRdbParser;
 import com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
-import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.datatype.Module;
 import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.module.ModuleParser;
 import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbParser;
-import com.moilioncircle.redis.replicator.util.ByteBuilder;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 import static com.moilioncircle.redis.replicator.Constants.MODULE_SET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT16;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT32;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_INT8;
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_LZF;
 import static com.moilioncircle.redis.replicator.Constants.RDB_MODULE_OPCODE_EOF;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPLIST;
@@ -59,36 +64,80 @@ import static com.moilioncircle.redis.replicator.util.CRC64.longToByteArray;
  */
 public class DumpRdbVisitor extends DefaultRdbVisitor {
     
-    private class DefaultRawByteListener implements RawByteListener {
+    /**
+     * captures the value bytes straight from the stream buffer into a single array (or the sink)
+     * and computes the crc64 on the way. the array is sized from the length header of a string or
+     * blob value before its payload, so such a dump payload is copied once.
+     */
+    private class ValueCapture implements RawByteTap {
         private final int version;
-        private final ByteBuilder builder;
+        private final OutputStream out;
+        private byte[] buf;
+        private int count;
+        private long length;
+        private long crc;
         
-        private DefaultRawByteListener(byte type, int version) {
-            this.builder = ByteBuilder.allocate(DumpRdbVisitor.this.size);
-            this.builder.put(type);
+        private ValueCapture(byte type, int version) {
             int ver = DumpRdbVisitor.this.version;
             this.version = ver == -1 ? version : ver;
+            this.out = DumpRdbVisitor.this.out;
+            if (out == null) this.buf = new byte[DumpRdbVisitor.this.size];
+            put(new byte[]{type}, 0, 1);
         }
         
         @Override
-        public void handle(byte... rawBytes) {
-            for (byte b : rawBytes) this.builder.put(b);
+        public void handle(byte[] bytes, int offset, int length) {
+            put(bytes, offset, length);
         }
         
-        public byte[] getBytes() {
-            this.builder.put((byte) version);
-            this.builder.put((byte) 0x00);
-            byte[] bytes = this.builder.array();
-            byte[] crc = longToByteArray(crc64(bytes));
-            for (byte b : crc) {
-                this.builder.put(b);
+        /**
+         * @param length length of the next payload, the version and the crc64 follow it
+         */
+        private void reserve(long length) {
+            if (out == null) grow(count + length + 10);
+        }
+        
+        private void grow(long size) {
+            if (size <= buf.length) return;
+            if (size > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("dump payload too large: " + size);
+            buf = Arrays.copyOf(buf, (int) Math.max(buf.length << 1, size));
+        }
+        
+        private void put(byte[] bytes, int offset, int length) {
+            this.crc = crc64(bytes, offset, length, crc);
+            this.length += length;
+            if (out != null) {
+                try {
+                    out.write(bytes, offset, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
             }
-            return this.builder.array();
+            grow(count + length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+        
+        /**
+         * @return dump payload. null if written to the sink
+         */
+        public byte[] getBytes() {
+            put(new byte[]{(byte) version, 0x00}, 0, 2);
+            byte[] crc = longToByteArray(this.crc);
+            put(crc, 0, crc.length);
+            if (out != null) return null;
+            return count == buf.length ? buf : Arrays.copyOf(buf, count);
+        }
+        
+        public long getLength() {
+            return length;
         }
     }
     
     private final int size;
     private final int version;
+    private final OutputStream out;
     
     public DumpRdbVisitor(Replicator replicator) {
         this(replicator, -1);
@@ -104,22 +153,73 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     }
     
     public DumpRdbVisitor(Replicator replicator, int version, int size) {
+        this(replicator, version, size, null);
+    }
+    
+    /**
+     * @param replicator the replicator
+     * @param version    dumped version, -1 means dumped version = rdb version
+     * @param out        the dump payload of each value is written to the sink instead of {@link DumpKeyValuePair#getValue()}.
+     *                   the payload is complete when the event of the key is submitted.
+     * @since 3.0.0
+     */
+    public DumpRdbVisitor(Replicator replicator, int version, OutputStream out) {
+        this(replicator, version, 8192, out);
+    }
+    
+    private DumpRdbVisitor(Replicator replicator, int version, int size, OutputStream out) {
         super(replicator);
         this.version = version;
         this.size = size;
+        this.out = out;
+    }
+    
+    /**
+     * @return true if the dump payloads are written to a sink. the keys must be visited one by one then
+     * @since 3.0.0
+     */
+    public boolean hasSink() {
+        return out != null;
+    }
+    
+    /**
+     * skip a string object, the capture is grown to its payload once the length header is read
+     */
+    private static void skipString(RedisInputStream in, ValueCapture listener) throws IOException {
+        SkipRdbParser skipParser = new SkipRdbParser(in);
+        BaseRdbParser.Len lenObj = skipParser.rdbLoadLen();
+        long len = lenObj.len;
+        if (lenObj.encoded) {
+            switch ((int) len) {
+                case RDB_ENC_INT8:
+                case RDB_ENC_INT16:
+                case RDB_ENC_INT32:
+                    skipParser.rdbLoadIntegerObject((int) len);
+                    return;
+                case RDB_ENC_LZF:
+                    len = skipParser.rdbLoadLen().len;
+                    skipParser.rdbLoadLen();
+                    break;
+                default:
+                    throw new AssertionError("unknown RdbParser encoding type:" + len);
+            }
+        }
+        listener.reserve(len);
+        in.skip(len);
     }
     
     @Override
     public Event applyString(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o0 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_STRING, version);
-        replicator.addRawByteListener(listener);
-        new SkipRdbParser(in).rdbLoadEncodedStringObject();
-        replicator.removeRawByteListener(listener);
+        DumpKeyValuePair o0 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_STRING, version);
+        in.startCapture(listener);
+        skipString(in, listener);
+        in.stopCapture(listener);
         o0.setValueRdbType(RDB_TYPE_STRING);
         o0.setValue(listener.getBytes());
+        o0.setLength(listener.getLength());
         o0.setKey(key);
         return context.valueOf(o0);
     }
@@ -127,19 +227,20 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o1 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_LIST, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o1 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_LIST, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
         while (len > 0) {
             skipParser.rdbLoadEncodedStringObject();
             len--;
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o1.setValueRdbType(RDB_TYPE_LIST);
         o1.setValue(listener.getBytes());
+        o1.setLength(listener.getLength());
         o1.setKey(key);
         return context.valueOf(o1);
     }
@@ -147,19 +248,20 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applySet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o2 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_SET, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o2 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_SET, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
         while (len > 0) {
             skipParser.rdbLoadEncodedStringObject();
             len--;
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o2.setValueRdbType(RDB_TYPE_SET);
         o2.setValue(listener.getBytes());
+        o2.setLength(listener.getLength());
         o2.setKey(key);
         return context.valueOf(o2);
     }
@@ -167,10 +269,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyZSet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o3 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_ZSET, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o3 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_ZSET, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
         while (len > 0) {
@@ -178,9 +280,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
             skipParser.rdbLoadDoubleValue();
             len--;
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o3.setValueRdbType(RDB_TYPE_ZSET);
         o3.setValue(listener.getBytes());
+        o3.setLength(listener.getLength());
         o3.setKey(key);
         return context.valueOf(o3);
     }
@@ -188,10 +291,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyZSet2(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o5 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_ZSET_2, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o5 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_ZSET_2, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
         while (len > 0) {
@@ -199,9 +302,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
             skipParser.rdbLoadBinaryDoubleValue();
             len--;
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o5.setValueRdbType(RDB_TYPE_ZSET_2);
         o5.setValue(listener.getBytes());
+        o5.setLength(listener.getLength());
         o5.setKey(key);
         return context.valueOf(o5);
     }
@@ -209,10 +313,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyHash(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o4 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_HASH, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o4 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_HASH, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
         while (len > 0) {
@@ -220,9 +324,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
             skipParser.rdbLoadEncodedStringObject();
             len--;
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o4.setValueRdbType(RDB_TYPE_HASH);
         o4.setValue(listener.getBytes());
+        o4.setLength(listener.getLength());
         o4.setKey(key);
         return context.valueOf(o4);
     }
@@ -230,14 +335,15 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyHashZipMap(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o9 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_HASH_ZIPMAP, version);
-        replicator.addRawByteListener(listener);
-        new SkipRdbParser(in).rdbLoadPlainStringObject();
-        replicator.removeRawByteListener(listener);
+        DumpKeyValuePair o9 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_HASH_ZIPMAP, version);
+        in.startCapture(listener);
+        skipString(in, listener);
+        in.stopCapture(listener);
         o9.setValueRdbType(RDB_TYPE_HASH_ZIPMAP);
         o9.setValue(listener.getBytes());
+        o9.setLength(listener.getLength());
         o9.setKey(key);
         return context.valueOf(o9);
     }
@@ -245,14 +351,15 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyListZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o10 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_LIST_ZIPLIST, version);
-        replicator.addRawByteListener(listener);
-        new SkipRdbParser(in).rdbLoadPlainStringObject();
-        replicator.removeRawByteListener(listener);
+        DumpKeyValuePair o10 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_LIST_ZIPLIST, version);
+        in.startCapture(listener);
+        skipString(in, listener);
+        in.stopCapture(listener);
         o10.setValueRdbType(RDB_TYPE_LIST_ZIPLIST);
         o10.setValue(listener.getBytes());
+        o10.setLength(listener.getLength());
         o10.setKey(key);
         return context.valueOf(o10);
     }
@@ -260,14 +367,15 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applySetIntSet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o11 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_SET_INTSET, version);
-        replicator.addRawByteListener(listener);
-        new SkipRdbParser(in).rdbLoadPlainStringObject();
-        replicator.removeRawByteListener(listener);
+        DumpKeyValuePair o11 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_SET_INTSET, version);
+        in.startCapture(listener);
+        skipString(in, listener);
+        in.stopCapture(listener);
         o11.setValueRdbType(RDB_TYPE_SET_INTSET);
         o11.setValue(listener.getBytes());
+        o11.setLength(listener.getLength());
         o11.setKey(key);
         return context.valueOf(o11);
     }
@@ -275,14 +383,15 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyZSetZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o12 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_ZSET_ZIPLIST, version);
-        replicator.addRawByteListener(listener);
-        new SkipRdbParser(in).rdbLoadPlainStringObject();
-        replicator.removeRawByteListener(listener);
+        DumpKeyValuePair o12 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_ZSET_ZIPLIST, version);
+        in.startCapture(listener);
+        skipString(in, listener);
+        in.stopCapture(listener);
         o12.setValueRdbType(RDB_TYPE_ZSET_ZIPLIST);
         o12.setValue(listener.getBytes());
+        o12.setLength(listener.getLength());
         o12.setKey(key);
         return context.valueOf(o12);
     }
@@ -290,14 +399,15 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyHashZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o13 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_HASH_ZIPLIST, version);
-        replicator.addRawByteListener(listener);
-        new SkipRdbParser(in).rdbLoadPlainStringObject();
-        replicator.removeRawByteListener(listener);
+        DumpKeyValuePair o13 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_HASH_ZIPLIST, version);
+        in.startCapture(listener);
+        skipString(in, listener);
+        in.stopCapture(listener);
         o13.setValueRdbType(RDB_TYPE_HASH_ZIPLIST);
         o13.setValue(listener.getBytes());
+        o13.setLength(listener.getLength());
         o13.setKey(key);
         return context.valueOf(o13);
     }
@@ -305,18 +415,19 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyListQuickList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o14 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_LIST_QUICKLIST, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o14 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_LIST_QUICKLIST, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long len = skipParser.rdbLoadLen().len;
         for (long i = 0; i < len; i++) {
-            skipParser.rdbGenericLoadStringObject();
+            skipString(in, listener);
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o14.setValueRdbType(RDB_TYPE_LIST_QUICKLIST);
         o14.setValue(listener.getBytes());
+        o14.setLength(listener.getLength());
         o14.setKey(key);
         return context.valueOf(o14);
     }
@@ -324,10 +435,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyModule(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o6 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_MODULE, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o6 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_MODULE, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         char[] c = new char[9];
         long moduleid = skipParser.rdbLoadLen().len;
@@ -341,9 +452,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
             throw new NoSuchElementException("module parser[" + moduleName + ", " + moduleVersion + "] not register. rdb type: [RDB_TYPE_MODULE]");
         }
         moduleParser.parse(in, 1);
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o6.setValueRdbType(RDB_TYPE_MODULE);
         o6.setValue(listener.getBytes());
+        o6.setLength(listener.getLength());
         o6.setKey(key);
         return context.valueOf(o6);
     }
@@ -351,10 +463,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyModule2(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o7 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_MODULE_2, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o7 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_MODULE_2, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         char[] c = new char[9];
         long moduleid = skipParser.rdbLoadLen().len;
@@ -374,9 +486,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
                 throw new UnsupportedOperationException("The RDB file contains module data for the module '" + moduleName + "' that is not terminated by the proper module value EOF marker");
             }
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o7.setValueRdbType(RDB_TYPE_MODULE_2);
         o7.setValue(listener.getBytes());
+        o7.setLength(listener.getLength());
         o7.setKey(key);
         return context.valueOf(o7);
     }
@@ -384,15 +497,15 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyStreamListPacks(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
-        KeyValuePair<byte[], byte[]> o15 = new DumpKeyValuePair();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
-        DefaultRawByteListener listener = new DefaultRawByteListener((byte) RDB_TYPE_STREAM_LISTPACKS, version);
-        replicator.addRawByteListener(listener);
+        DumpKeyValuePair o15 = new DumpKeyValuePair();
+        byte[] key = rdbLoadKey(parser, context);
+        ValueCapture listener = new ValueCapture((byte) RDB_TYPE_STREAM_LISTPACKS, version);
+        in.startCapture(listener);
         SkipRdbParser skipParser = new SkipRdbParser(in);
         long listPacks = skipParser.rdbLoadLen().len;
         while (listPacks-- > 0) {
             skipParser.rdbLoadPlainStringObject();
-            skipParser.rdbLoadPlainStringObject();
+            skipString(in, listener);
         }
         skipParser.rdbLoadLen();
         skipParser.rdbLoadLen();
@@ -418,9 +531,10 @@ public class DumpRdbVisitor extends DefaultRdbVisitor {
                 }
             }
         }
-        replicator.removeRawByteListener(listener);
+        in.stopCapture(listener);
         o15.setValueRdbType(RDB_TYPE_STREAM_LISTPACKS);
         o15.setValue(listener.getBytes());
+        o15.setLength(listener.getLength());
         o15.setKey(key);
         return context.valueOf(o15);
     }
@@ -24,4 +24,18 @@ import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
  */
 public class DumpKeyValuePair extends KeyValuePair<byte[], byte[]> {
     private static final long serialVersionUID = 1L;
+
+    private long length;
+
+    /**
+     * @return length of the dump payload
+     * @since 3.0.0
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
 }
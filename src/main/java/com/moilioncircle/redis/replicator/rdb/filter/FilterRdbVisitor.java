@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.filter;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.ExpiredKeySkippedEvent;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.BaseRdbParser;
+import com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.RdbParser;
+import com.moilioncircle.redis.replicator.rdb.RdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.EvictType;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.skip.SkipRdbVisitor;
+
+import java.io.IOException;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_FREQ;
+import static com.moilioncircle.redis.replicator.Constants.RDB_OPCODE_IDLE;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPMAP;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_QUICKLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_ZIPLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_MODULE;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_MODULE_2;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET_INTSET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STREAM_LISTPACKS;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STRING;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_2;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_ZIPLIST;
+
+/**
+ * Wraps an rdb visitor with a {@link RdbFilter}. The expiry and eviction prefix and the key of a record are read
+ * first. An accepted record is handed to the wrapped visitor with the key in the context, a rejected record is
+ * skipped by a {@link SkipRdbVisitor}. The records of a rejected db are skipped without reading their keys.
+ * <p>
+ * The wrapped visitor must read the keys with {@code rdbLoadKey}, as {@link DefaultRdbVisitor} and its subclasses do.
+ * The visitor keeps no state, so it works with every rdb replicator and the full sync of the socket replicator.
+ * It works with {@link com.moilioncircle.redis.replicator.rdb.ParallelRdbParser} if the wrapped visitor does.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class FilterRdbVisitor extends RdbVisitor {
+
+    protected final RdbFilter filter;
+    protected final Replicator replicator;
+    protected final RdbVisitor visitor;
+    protected final RdbVisitor skipVisitor;
+
+    public FilterRdbVisitor(Replicator replicator, RdbFilter filter) {
+        this(replicator, new DefaultRdbVisitor(replicator), filter);
+    }
+
+    public FilterRdbVisitor(Replicator replicator, DefaultRdbVisitor visitor, RdbFilter filter) {
+        this.filter = filter;
+        this.replicator = replicator;
+        this.visitor = visitor;
+        this.skipVisitor = new SkipRdbVisitor(replicator);
+    }
+
+    /**
+     * @return the visitor of the accepted records
+     * @since 3.0.0
+     */
+    public RdbVisitor getVisitor() {
+        return visitor;
+    }
+
+    @Override
+    public String applyMagic(RedisInputStream in) throws IOException {
+        return visitor.applyMagic(in);
+    }
+
+    @Override
+    public int applyVersion(RedisInputStream in) throws IOException {
+        return visitor.applyVersion(in);
+    }
+
+    @Override
+    public int applyType(RedisInputStream in) throws IOException {
+        return visitor.applyType(in);
+    }
+
+    @Override
+    public DB applySelectDB(RedisInputStream in, int version) throws IOException {
+        return visitor.applySelectDB(in, version);
+    }
+
+    @Override
+    public DB applyResizeDB(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return visitor.applyResizeDB(in, version, context);
+    }
+
+    @Override
+    public long applyEof(RedisInputStream in, int version) throws IOException {
+        return visitor.applyEof(in, version);
+    }
+
+    @Override
+    public Event applyAux(RedisInputStream in, int version) throws IOException {
+        return visitor.applyAux(in, version);
+    }
+
+    @Override
+    public Event applyModuleAux(RedisInputStream in, int version) throws IOException {
+        return visitor.applyModuleAux(in, version);
+    }
+
+    @Override
+    public Event applyExpireTime(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        long expiredSec = parser.rdbLoadTime();
+        context.setExpiredType(ExpiredType.SECOND);
+        context.setExpiredValue(expiredSec);
+        return applyPrefixed(in, version, context);
+    }
+
+    @Override
+    public Event applyExpireTimeMs(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        context.setExpiredType(ExpiredType.MS);
+        context.setExpiredValue(parser.rdbLoadMillisecondTime());
+        return applyPrefixed(in, version, context);
+    }
+
+    @Override
+    public Event applyFreq(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        long lfuFreq = in.read();
+        context.setEvictType(EvictType.LFU);
+        context.setEvictValue(lfuFreq);
+        context.setValueRdbType(applyType(in));
+        return applyValue(in, version, context);
+    }
+
+    @Override
+    public Event applyIdle(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        context.setEvictType(EvictType.LRU);
+        context.setEvictValue(parser.rdbLoadLen().len);
+        context.setValueRdbType(applyType(in));
+        return applyValue(in, version, context);
+    }
+
+    @Override
+    public Event applyString(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_STRING, context);
+    }
+
+    @Override
+    public Event applyList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_LIST, context);
+    }
+
+    @Override
+    public Event applySet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_SET, context);
+    }
+
+    @Override
+    public Event applyZSet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_ZSET, context);
+    }
+
+    @Override
+    public Event applyZSet2(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_ZSET_2, context);
+    }
+
+    @Override
+    public Event applyHash(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_HASH, context);
+    }
+
+    @Override
+    public Event applyHashZipMap(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_HASH_ZIPMAP, context);
+    }
+
+    @Override
+    public Event applyListZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_LIST_ZIPLIST, context);
+    }
+
+    @Override
+    public Event applySetIntSet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_SET_INTSET, context);
+    }
+
+    @Override
+    public Event applyZSetZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_ZSET_ZIPLIST, context);
+    }
+
+    @Override
+    public Event applyHashZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_HASH_ZIPLIST, context);
+    }
+
+    @Override
+    public Event applyListQuickList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_LIST_QUICKLIST, context);
+    }
+
+    @Override
+    public Event applyModule(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_MODULE, context);
+    }
+
+    @Override
+    public Event applyModule2(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_MODULE_2, context);
+    }
+
+    @Override
+    public Event applyStreamListPacks(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        return applyValue(in, version, RDB_TYPE_STREAM_LISTPACKS, context);
+    }
+
+    /**
+     * the value type after an expiry, it may be followed by a freq or idle prefix
+     */
+    protected Event applyPrefixed(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        int type = applyType(in);
+        if (type == RDB_OPCODE_FREQ) return applyFreq(in, version, context);
+        if (type == RDB_OPCODE_IDLE) return applyIdle(in, version, context);
+        context.setValueRdbType(type);
+        return applyValue(in, version, context);
+    }
+
+    protected Event applyValue(RedisInputStream in, int version, int type, ContextKeyValuePair context) throws IOException {
+        context.setValueRdbType(type);
+        return applyValue(in, version, context);
+    }
+
+    /**
+     * @param in      input stream
+     * @param version rdb version
+     * @param context the prefix of the record and its value rdb type
+     * @return event of the wrapped visitor, or an {@link ExpiredKeySkippedEvent}. null if the record is rejected
+     * @throws IOException when read timeout
+     */
+    protected Event applyValue(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        int type = context.getValueRdbType();
+        Configuration configuration = replicator.getConfiguration();
+        if (DefaultRdbVisitor.isExpired(configuration, context)) {
+            return DefaultRdbVisitor.skipExpired(skipVisitor, configuration, in, version, context);
+        }
+        if (!filter.acceptDb(context.getDb())) {
+            RdbParser.applyRecord(skipVisitor, in, version, type, context);
+            return null;
+        }
+        BaseRdbParser parser = new BaseRdbParser(in);
+        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        context.setRawKey(key);
+        if (!filter.accept(key, context)) {
+            RdbParser.applyRecord(skipVisitor, in, version, type, context);
+            return null;
+        }
+        return RdbParser.applyRecord(visitor, in, version, type, context);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.filter;
+
+import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.util.Glob;
+
+import java.util.BitSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Declarative filter of the rdb records, evaluated by {@link FilterRdbVisitor} right after the key is read.
+ * The value of a rejected record is skipped without being allocated.
+ * <p>
+ * <pre>
+ * replicator.setRdbVisitor(new FilterRdbVisitor(replicator, new RdbFilter().dbs(0).keys("user:*")));
+ * </pre>
+ * Override {@link #accept(byte[], ContextKeyValuePair)} for other predicates, the context carries the db,
+ * the value rdb type, the expiry and the eviction info of the record.
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.cmd.CommandFilter
+ * @since 3.0.0
+ */
+public class RdbFilter {
+
+    private BitSet dbs;
+    private BitSet types;
+    private byte[][] patterns;
+
+    /**
+     * @param dbs accepted db indexes
+     * @return this
+     */
+    public RdbFilter dbs(int... dbs) {
+        this.dbs = new BitSet();
+        for (int db : dbs) this.dbs.set(db);
+        return this;
+    }
+
+    /**
+     * @param types accepted value rdb types, e.g. {@code Constants.RDB_TYPE_STRING}
+     * @return this
+     */
+    public RdbFilter types(int... types) {
+        this.types = new BitSet();
+        for (int type : types) this.types.set(type);
+        return this;
+    }
+
+    /**
+     * @param patterns accepted key glob patterns. e.g. {@code user:*}
+     * @return this
+     */
+    public RdbFilter keys(String... patterns) {
+        this.patterns = new byte[patterns.length][];
+        for (int i = 0; i < patterns.length; i++) this.patterns[i] = patterns[i].getBytes(UTF_8);
+        return this;
+    }
+
+    /**
+     * the records of a rejected db are skipped without reading their keys
+     *
+     * @param db current db. null if the rdb has no {@code SELECTDB}
+     * @return true if accepted
+     */
+    public boolean acceptDb(DB db) {
+        return dbs == null || db == null || dbs.get((int) db.getDbNumber());
+    }
+
+    /**
+     * @param key     key of the record
+     * @param context db, value rdb type, expiry and eviction info of the record
+     * @return true if accepted
+     */
+    public boolean accept(byte[] key, ContextKeyValuePair context) {
+        if (types != null && !types.get(context.getValueRdbType())) return false;
+        if (patterns == null) return true;
+        for (byte[] pattern : patterns) {
+            if (Glob.match(pattern, key)) return true;
+        }
+        return false;
+    }
+}
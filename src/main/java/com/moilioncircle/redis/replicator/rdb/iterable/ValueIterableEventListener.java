@@ -17,6 +17,7 @@
 package com.moilioncircle.redis.replicator.rdb.iterable;
 
 import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
 import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.EventListener;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueModule;
@@ -34,18 +35,25 @@ import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyString
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueString;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueZSet;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueByteArrayIterator;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueInputStream;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueMapEntryIterator;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueStreamIterator;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueZSetEntryIterator;
 import com.moilioncircle.redis.replicator.util.ByteArrayList;
 import com.moilioncircle.redis.replicator.util.ByteArrayMap;
 import com.moilioncircle.redis.replicator.util.ByteArraySet;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET_INTSET;
@@ -56,7 +64,13 @@ import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET_INTSET;
  */
 public class ValueIterableEventListener implements EventListener {
     
+    /**
+     * bytes of a streamed string per event
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
     private final int batchSize;
+    private final int chunkSize;
     private final boolean order;
     private final EventListener listener;
     
@@ -69,9 +83,22 @@ public class ValueIterableEventListener implements EventListener {
     }
     
     public ValueIterableEventListener(boolean order, int batchSize, EventListener listener) {
+        this(order, batchSize, DEFAULT_CHUNK_SIZE, listener);
+    }
+    
+    /**
+     * @param order     keep the order of set and hash elements
+     * @param batchSize elements per event
+     * @param chunkSize bytes per event of a {@link KeyStringValueInputStream}
+     * @param listener  listener of the batched events
+     * @since 3.0.0
+     */
+    public ValueIterableEventListener(boolean order, int batchSize, int chunkSize, EventListener listener) {
         if (batchSize <= 0) throw new IllegalArgumentException(String.valueOf(batchSize));
+        if (chunkSize <= 0) throw new IllegalArgumentException(String.valueOf(chunkSize));
         this.order = order;
         this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
         this.listener = listener;
     }
     
@@ -90,6 +117,18 @@ public class ValueIterableEventListener implements EventListener {
         if (kv instanceof KeyStringValueString) {
             KeyStringValueString ksvs = (KeyStringValueString) kv;
             listener.onEvent(replicator, string(ksvs, ksvs.getValue(), batch, true));
+        } else if (kv instanceof KeyStringValueInputStream) {
+            KeyStringValueInputStream skv = (KeyStringValueInputStream) kv;
+            try (InputStream in = skv.getValue()) {
+                byte[] prev = null, next;
+                while ((next = chunk(in)) != null) {
+                    if (prev != null) listener.onEvent(replicator, string(skv, prev, batch++, false));
+                    prev = next;
+                }
+                listener.onEvent(replicator, string(skv, prev == null ? new byte[0] : prev, batch++, true));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         } else if (kv instanceof KeyStringValueByteArrayIterator) {
             if (type == RDB_TYPE_SET || type == RDB_TYPE_SET_INTSET) {
                 KeyStringValueByteArrayIterator skv = (KeyStringValueByteArrayIterator) kv;
@@ -163,11 +202,64 @@ public class ValueIterableEventListener implements EventListener {
             if (!last) listener.onEvent(replicator, zset(zkv, next, batch++, true));
         } else if (kv instanceof KeyStringValueModule) {
             listener.onEvent(replicator, module((KeyStringValueModule) kv, (Module) kv.getValue(), batch, true));
+        } else if (kv instanceof KeyStringValueStreamIterator) {
+            // entries and then groups, batchSize of them per event
+            KeyStringValueStreamIterator skv = (KeyStringValueStreamIterator) kv;
+            Iterator<Stream.Entry> it = skv.getValue();
+            Stream prev = null, next = create();
+            int size = 0;
+            while (it.hasNext()) {
+                Stream.Entry entry = it.next();
+                next.getEntries().put(entry.getId(), entry);
+                if (++size == batchSize) {
+                    if (prev != null)
+                        listener.onEvent(replicator, stream(skv, prev, batch++, false));
+                    prev = next;
+                    next = create();
+                    size = 0;
+                }
+            }
+            Iterator<Stream.Group> groups = skv.getGroups();
+            while (groups.hasNext()) {
+                next.getGroups().add(groups.next());
+                if (++size == batchSize) {
+                    if (prev != null)
+                        listener.onEvent(replicator, stream(skv, prev, batch++, false));
+                    prev = next;
+                    next = create();
+                    size = 0;
+                }
+            }
+            final boolean last = size == 0;
+            if (prev != null) listener.onEvent(replicator, stream(skv, prev, batch++, last));
+            if (!last || prev == null) listener.onEvent(replicator, stream(skv, next, batch++, true));
         } else if (kv instanceof KeyStringValueStream) {
             listener.onEvent(replicator, stream((KeyStringValueStream) kv, (Stream) kv.getValue(), batch, true));
         }
     }
     
+    /**
+     * @return next chunk of the stream. null at the end of the stream
+     */
+    private byte[] chunk(InputStream in) throws IOException {
+        byte[] chunk = new byte[chunkSize];
+        int len = 0;
+        while (len < chunkSize) {
+            int n = in.read(chunk, len, chunkSize - len);
+            if (n < 0) break;
+            len += n;
+        }
+        if (len == 0) return null;
+        return len == chunkSize ? chunk : Arrays.copyOf(chunk, len);
+    }
+    
+    /**
+     * @return an empty part of a stream
+     */
+    private Stream create() {
+        return new Stream(null, new TreeMap<Stream.ID, Stream.Entry>(Stream.ID.COMPARATOR), 0, new ArrayList<Stream.Group>());
+    }
+    
     private <T> Set<T> create(boolean order, int batchSize) {
         return order ? new LinkedHashSet<T>(batchSize) : new HashSet<T>(batchSize);
     }
@@ -262,6 +354,13 @@ public class ValueIterableEventListener implements EventListener {
         return kv;
     }
     
+    private BatchedKeyStringValueStream stream(KeyStringValueStreamIterator raw, Stream value, int batch, boolean last) {
+        // the last id and the length follow the entries in the rdb
+        value.setLastId(raw.getLastId());
+        value.setLength(raw.getLength());
+        return stream((KeyValuePair<byte[], ?>) raw, value, batch, last);
+    }
+    
     private BatchedKeyStringValueStream stream(KeyValuePair<byte[], ?> raw, Stream value, int batch, boolean last) {
         BatchedKeyStringValueStream kv = new BatchedKeyStringValueStream();
         kv.setDb(raw.getDb());
@@ -19,22 +19,38 @@ package com.moilioncircle.redis.replicator.rdb.iterable;
 import com.moilioncircle.redis.replicator.Replicator;
 import com.moilioncircle.redis.replicator.UncheckedIOException;
 import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.io.LzfInputStream;
 import com.moilioncircle.redis.replicator.io.RedisInputStream;
 import com.moilioncircle.redis.replicator.rdb.BaseRdbParser;
 import com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor;
 import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
 import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.Stream;
 import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueString;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueByteArrayIterator;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueInputStream;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueMapEntryIterator;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueStreamIterator;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueZSetEntryIterator;
+import com.moilioncircle.redis.replicator.util.ByteArrayMap;
+import com.moilioncircle.redis.replicator.util.Lzf;
 import com.moilioncircle.redis.replicator.util.Strings;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
+import static com.moilioncircle.redis.replicator.Constants.RDB_ENC_LZF;
+import static com.moilioncircle.redis.replicator.Constants.RDB_LOAD_ENC;
 import static com.moilioncircle.redis.replicator.Constants.RDB_LOAD_NONE;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPLIST;
@@ -44,9 +60,14 @@ import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_QUICKLI
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_ZIPLIST;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET_INTSET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STREAM_LISTPACKS;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STRING;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_2;
 import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_ZIPLIST;
+import static com.moilioncircle.redis.replicator.Constants.STREAM_ITEM_FLAG_DELETED;
+import static com.moilioncircle.redis.replicator.Constants.STREAM_ITEM_FLAG_SAMEFIELDS;
+import static com.moilioncircle.redis.replicator.rdb.BaseRdbParser.StringHelper.listPackEntry;
 
 /**
  * @author Leon Chen
@@ -54,8 +75,70 @@ import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_ZIPLIST
  */
 public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
 
+    /**
+     * strings are not streamed by default, a {@link KeyStringValueInputStream} has to be consumed or closed
+     * by a listener before the next record is parsed
+     */
+    public static final long DEFAULT_STRING_STREAM_THRESHOLD = Long.MAX_VALUE;
+
+    protected final long stringStreamThreshold;
+
     public ValueIterableRdbVisitor(Replicator replicator) {
+        this(replicator, DEFAULT_STRING_STREAM_THRESHOLD);
+    }
+
+    /**
+     * @param replicator            replicator
+     * @param stringStreamThreshold strings longer than this are emitted as {@link KeyStringValueInputStream}
+     *                              without being allocated, e.g. {@code 1L << 20}. a listener must consume or
+     *                              close the stream. {@code Long.MAX_VALUE} to disable
+     * @since 3.0.0
+     */
+    public ValueIterableRdbVisitor(Replicator replicator, long stringStreamThreshold) {
         super(replicator);
+        this.stringStreamThreshold = stringStreamThreshold;
+    }
+
+    @Override
+    public Event applyString(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        /*
+         * |       <content>       |
+         * |    string contents    |
+         */
+        BaseRdbParser parser = new BaseRdbParser(in);
+        byte[] key = rdbLoadKey(parser, context);
+        BaseRdbParser.Len lenObj = parser.rdbLoadLen();
+        long len = lenObj.len;
+        InputStream stream = null;
+        byte[] val;
+        if (lenObj.encoded && len == RDB_ENC_LZF) {
+            long clen = parser.rdbLoadLen().len;
+            len = parser.rdbLoadLen().len;
+            if (len > stringStreamThreshold) stream = new LzfInputStream(in, clen, len);
+            val = stream != null ? null : Lzf.decode(in.readBytes(clen), len).first();
+        } else if (lenObj.encoded) {
+            val = parser.rdbLoadIntegerObject((int) len, RDB_LOAD_ENC).first();
+        } else {
+            if (len > stringStreamThreshold) {
+                // a view of a mapped file is neither copied nor read through the rdb stream
+                if (in.isMapped() && len <= Integer.MAX_VALUE) stream = new BufferInputStream(in.slice((int) len));
+                else stream = new StringInputStream(in, len);
+            }
+            val = stream != null ? null : in.readBytes(len).first();
+        }
+        if (stream == null) {
+            KeyValuePair<byte[], byte[]> o0 = new KeyStringValueString();
+            o0.setValueRdbType(RDB_TYPE_STRING);
+            o0.setValue(val);
+            o0.setKey(key);
+            return context.valueOf(o0);
+        }
+        KeyStringValueInputStream o0 = new KeyStringValueInputStream();
+        o0.setValueRdbType(RDB_TYPE_STRING);
+        o0.setValue(stream);
+        o0.setLength(len);
+        o0.setKey(key);
+        return context.valueOf(o0);
     }
 
     @Override
@@ -66,7 +149,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<byte[]>> o1 = new KeyStringValueByteArrayIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         o1.setValue(new Iter<byte[]>(len, parser) {
             @Override
@@ -98,7 +181,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<byte[]>> o2 = new KeyStringValueByteArrayIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         o2.setValue(new Iter<byte[]>(len, parser) {
             @Override
@@ -130,7 +213,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<ZSetEntry>> o3 = new KeyStringValueZSetEntryIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         o3.setValue(new Iter<ZSetEntry>(len, parser) {
             @Override
@@ -163,7 +246,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<ZSetEntry>> o5 = new KeyStringValueZSetEntryIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         /* rdb version 8*/
         long len = parser.rdbLoadLen().len;
         o5.setValue(new Iter<ZSetEntry>(len, parser) {
@@ -197,7 +280,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<Map.Entry<byte[], byte[]>>> o4 = new KeyStringValueMapEntryIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         o4.setValue(new Iter<Map.Entry<byte[], byte[]>>(len, parser) {
             @Override
@@ -230,7 +313,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<Map.Entry<byte[], byte[]>>> o9 = new KeyStringValueMapEntryIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
         BaseRdbParser.LenHelper.zmlen(stream); // zmlen
         o9.setValue(new HashZipMapIter(stream));
@@ -247,7 +330,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<byte[]>> o10 = new KeyStringValueByteArrayIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         final RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
@@ -292,7 +375,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<byte[]>> o11 = new KeyStringValueByteArrayIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         final RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         final int encoding = BaseRdbParser.LenHelper.encoding(stream);
@@ -340,7 +423,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<ZSetEntry>> o12 = new KeyStringValueZSetEntryIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         final RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
@@ -387,7 +470,7 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
          */
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<Map.Entry<byte[], byte[]>>> o13 = new KeyStringValueMapEntryIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         final RedisInputStream stream = new RedisInputStream(parser.rdbLoadPlainStringObject());
 
         BaseRdbParser.LenHelper.zlbytes(stream); // zlbytes
@@ -426,11 +509,25 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         return context.valueOf(o13);
     }
 
+    @Override
+    public Event applyStreamListPacks(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        KeyStringValueStreamIterator o15 = new KeyStringValueStreamIterator();
+        byte[] key = rdbLoadKey(parser, context);
+        long listPacks = parser.rdbLoadLen().len;
+        StreamIter entries = new StreamIter(listPacks, parser, o15);
+        o15.setValue(entries);
+        o15.setGroups(new GroupIter(in, parser, entries));
+        o15.setValueRdbType(RDB_TYPE_STREAM_LISTPACKS);
+        o15.setKey(key);
+        return context.valueOf(o15);
+    }
+
     @Override
     public Event applyListQuickList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         BaseRdbParser parser = new BaseRdbParser(in);
         KeyValuePair<byte[], Iterator<byte[]>> o14 = new KeyStringValueByteArrayIterator();
-        byte[] key = parser.rdbLoadEncodedStringObject().first();
+        byte[] key = rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         o14.setValue(new QuickListIter(len, parser));
         o14.setValueRdbType(RDB_TYPE_LIST_QUICKLIST);
@@ -438,6 +535,245 @@ public class ValueIterableRdbVisitor extends DefaultRdbVisitor {
         return context.valueOf(o14);
     }
 
+    /**
+     * entries of the listpacks, one listpack in memory at a time
+     */
+    private static class StreamIter extends Iter<Stream.Entry> {
+
+        protected boolean done;
+        protected long entries;
+        protected Stream.ID baseId;
+        protected byte[][] masterFields;
+        protected RedisInputStream listPack;
+        protected final KeyStringValueStreamIterator kv;
+
+        private StreamIter(long condition, BaseRdbParser parser, KeyStringValueStreamIterator kv) {
+            super(condition, parser);
+            this.kv = kv;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (entries == 0) {
+                    if (listPack != null) {
+                        int lpend = listPack.read(); // lp-end
+                        if (lpend != 255) {
+                            throw new AssertionError("listpack expect 255 but " + lpend);
+                        }
+                        listPack = null;
+                    }
+                    if (condition == 0) {
+                        if (!done) {
+                            kv.setLength(parser.rdbLoadLen().len);
+                            kv.setLastId(new Stream.ID(parser.rdbLoadLen().len, parser.rdbLoadLen().len));
+                            done = true;
+                        }
+                        return false;
+                    }
+                    RedisInputStream rawId = new RedisInputStream(parser.rdbLoadPlainStringObject());
+                    this.baseId = new Stream.ID(rawId.readLong(8, false), rawId.readLong(8, false));
+                    this.listPack = new RedisInputStream(parser.rdbLoadPlainStringObject());
+                    listPack.skip(4); // total-bytes
+                    listPack.skip(2); // num-elements
+                    long count = Long.parseLong(Strings.toString(listPackEntry(listPack))); // count
+                    long deleted = Long.parseLong(Strings.toString(listPackEntry(listPack))); // deleted
+                    int numFields = Integer.parseInt(Strings.toString(listPackEntry(listPack))); // num-fields
+                    this.masterFields = new byte[numFields][];
+                    for (int i = 0; i < numFields; i++) {
+                        masterFields[i] = listPackEntry(listPack);
+                    }
+                    listPackEntry(listPack); // 0
+                    this.entries = count + deleted;
+                    condition--;
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Stream.Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                Map<byte[], byte[]> fields = new ByteArrayMap();
+                int flag = Integer.parseInt(Strings.toString(listPackEntry(listPack)));
+                long ms = Long.parseLong(Strings.toString(listPackEntry(listPack)));
+                long seq = Long.parseLong(Strings.toString(listPackEntry(listPack)));
+                Stream.ID id = baseId.delta(ms, seq);
+                boolean delete = (flag & STREAM_ITEM_FLAG_DELETED) != 0;
+                if ((flag & STREAM_ITEM_FLAG_SAMEFIELDS) != 0) {
+                    for (byte[] field : masterFields) {
+                        fields.put(field, listPackEntry(listPack));
+                    }
+                } else {
+                    int numFields = Integer.parseInt(Strings.toString(listPackEntry(listPack)));
+                    for (int i = 0; i < numFields; i++) {
+                        byte[] field = listPackEntry(listPack);
+                        byte[] value = listPackEntry(listPack);
+                        fields.put(field, value);
+                    }
+                }
+                listPackEntry(listPack); // lp-count
+                entries--;
+                return new Stream.Entry(id, delete, fields);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * consumer groups that follow the entries, one group with its pending entries in memory at a time
+     */
+    private static class GroupIter extends Iter<Stream.Group> {
+
+        protected final RedisInputStream in;
+        protected final StreamIter entries;
+
+        private GroupIter(RedisInputStream in, BaseRdbParser parser, StreamIter entries) {
+            super(-1, parser);
+            this.in = in;
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!entries.done) throw new IllegalStateException("stream entries are not consumed");
+            try {
+                if (condition == -1) condition = parser.rdbLoadLen().len;
+                return condition > 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Stream.Group next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                Stream.Group group = new Stream.Group();
+                byte[] groupName = parser.rdbLoadPlainStringObject().first();
+                Stream.ID groupLastId = new Stream.ID(parser.rdbLoadLen().len, parser.rdbLoadLen().len);
+
+                // Group PEL
+                NavigableMap<Stream.ID, Stream.Nack> groupPendingEntries = new TreeMap<>(Stream.ID.COMPARATOR);
+                long globalPel = parser.rdbLoadLen().len;
+                while (globalPel-- > 0) {
+                    Stream.ID rawId = new Stream.ID(in.readLong(8, false), in.readLong(8, false));
+                    long deliveryTime = parser.rdbLoadMillisecondTime();
+                    long deliveryCount = parser.rdbLoadLen().len;
+                    groupPendingEntries.put(rawId, new Stream.Nack(rawId, null, deliveryTime, deliveryCount));
+                }
+
+                // Consumer
+                List<Stream.Consumer> consumers = new ArrayList<>();
+                long consumerCount = parser.rdbLoadLen().len;
+                while (consumerCount-- > 0) {
+                    Stream.Consumer consumer = new Stream.Consumer();
+                    byte[] consumerName = parser.rdbLoadPlainStringObject().first();
+                    long seenTime = parser.rdbLoadMillisecondTime();
+
+                    // Consumer PEL
+                    NavigableMap<Stream.ID, Stream.Nack> consumerPendingEntries = new TreeMap<>(Stream.ID.COMPARATOR);
+                    long pel = parser.rdbLoadLen().len;
+                    while (pel-- > 0) {
+                        Stream.ID rawId = new Stream.ID(in.readLong(8, false), in.readLong(8, false));
+                        Stream.Nack nack = groupPendingEntries.get(rawId);
+                        nack.setConsumer(consumer);
+                        consumerPendingEntries.put(rawId, nack);
+                    }
+
+                    consumer.setName(consumerName);
+                    consumer.setSeenTime(seenTime);
+                    consumer.setPendingEntries(consumerPendingEntries);
+                    consumers.add(consumer);
+                }
+
+                group.setName(groupName);
+                group.setLastId(groupLastId);
+                group.setPendingEntries(groupPendingEntries);
+                group.setConsumers(consumers);
+                condition--;
+                return group;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * the raw bytes of a string that is not compressed
+     */
+    private static class StringInputStream extends InputStream {
+
+        protected long remaining;
+        protected final RedisInputStream in;
+
+        private StringInputStream(RedisInputStream in, long len) {
+            this.in = in;
+            this.remaining = len;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) return -1;
+            remaining--;
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+            if (remaining == 0) return -1;
+            len = (int) Math.min(len, remaining);
+            in.readFully(b, off, len);
+            remaining -= len;
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.skip(remaining);
+            remaining = 0;
+        }
+    }
+
+    private static class BufferInputStream extends InputStream {
+
+        protected final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
     private static abstract class Iter<T> implements Iterator<T> {
 
         protected long condition;
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.iterable.datatype;
+
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+
+import java.io.InputStream;
+
+/**
+ * A string value that is read from the rdb while the stream is consumed.
+ * The stream MUST be consumed or closed before the listener returns.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class KeyStringValueInputStream extends KeyValuePair<byte[], InputStream> {
+    private static final long serialVersionUID = 1L;
+
+    private long length;
+
+    /**
+     * @return length of the string in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+}
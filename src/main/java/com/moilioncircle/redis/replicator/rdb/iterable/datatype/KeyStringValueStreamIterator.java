@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.iterable.datatype;
+
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.Stream;
+
+import java.util.Iterator;
+
+/**
+ * A stream that is read from the rdb while it is iterated. The value iterates the entries. The last id and
+ * the length follow the entries in the rdb, they are set once the entries are consumed. Then the groups
+ * MUST be consumed.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class KeyStringValueStreamIterator extends KeyValuePair<byte[], Iterator<Stream.Entry>> {
+    private static final long serialVersionUID = 1L;
+
+    private Stream.ID lastId;
+    private long length;
+    private Iterator<Stream.Group> groups;
+
+    /**
+     * @return last id of the stream. null before the entries are consumed
+     */
+    public Stream.ID getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(Stream.ID lastId) {
+        this.lastId = lastId;
+    }
+
+    /**
+     * @return length of the stream. 0 before the entries are consumed
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    /**
+     * @return consumer groups, iterable once the entries are consumed
+     */
+    public Iterator<Stream.Group> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(Iterator<Stream.Group> groups) {
+        this.groups = groups;
+    }
+}
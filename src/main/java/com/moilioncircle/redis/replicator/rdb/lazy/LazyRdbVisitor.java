@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.lazy;
+
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.rdb.BaseRdbParser;
+import com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueHash;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueList;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueZSet;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.IntSet;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.QuickList;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.ZipList;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.ZipListHash;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.ZipListZSet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_LOAD_NONE;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_HASH_ZIPLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_QUICKLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_LIST_ZIPLIST;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_SET_INTSET;
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_ZSET_ZIPLIST;
+
+/**
+ * Emits the ziplist, quicklist and intset encoded values as read-only views over the loaded blob instead of
+ * decoding every entry. The events are the same as {@link DefaultRdbVisitor}, the values are a {@link ZipList},
+ * {@link QuickList}, {@link ZipListHash}, {@link ZipListZSet} or {@link IntSet} with typed accessors.
+ * <p>
+ * <pre>
+ * replicator.setRdbVisitor(new LazyRdbVisitor(replicator));
+ * </pre>
+ * The views keep the blob, a listener that holds a value keeps the whole blob.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class LazyRdbVisitor extends DefaultRdbVisitor {
+
+    public LazyRdbVisitor(Replicator replicator) {
+        super(replicator);
+    }
+
+    @Override
+    public Event applyListZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        KeyValuePair<byte[], List<byte[]>> o10 = new KeyStringValueList();
+        byte[] key = rdbLoadKey(parser, context);
+        o10.setValueRdbType(RDB_TYPE_LIST_ZIPLIST);
+        o10.setValue(new ZipList(parser.rdbLoadPlainStringObject().first()));
+        o10.setKey(key);
+        return context.valueOf(o10);
+    }
+
+    @Override
+    public Event applySetIntSet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        KeyValuePair<byte[], Set<byte[]>> o11 = new KeyStringValueSet();
+        byte[] key = rdbLoadKey(parser, context);
+        o11.setValueRdbType(RDB_TYPE_SET_INTSET);
+        o11.setValue(new IntSet(parser.rdbLoadPlainStringObject().first()));
+        o11.setKey(key);
+        return context.valueOf(o11);
+    }
+
+    @Override
+    public Event applyZSetZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        KeyValuePair<byte[], Set<ZSetEntry>> o12 = new KeyStringValueZSet();
+        byte[] key = rdbLoadKey(parser, context);
+        o12.setValueRdbType(RDB_TYPE_ZSET_ZIPLIST);
+        o12.setValue(new ZipListZSet(new ZipList(parser.rdbLoadPlainStringObject().first())));
+        o12.setKey(key);
+        return context.valueOf(o12);
+    }
+
+    @Override
+    public Event applyHashZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        KeyValuePair<byte[], Map<byte[], byte[]>> o13 = new KeyStringValueHash();
+        byte[] key = rdbLoadKey(parser, context);
+        o13.setValueRdbType(RDB_TYPE_HASH_ZIPLIST);
+        o13.setValue(new ZipListHash(new ZipList(parser.rdbLoadPlainStringObject().first())));
+        o13.setKey(key);
+        return context.valueOf(o13);
+    }
+
+    @Override
+    public Event applyListQuickList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
+        BaseRdbParser parser = new BaseRdbParser(in);
+        KeyValuePair<byte[], List<byte[]>> o14 = new KeyStringValueList();
+        byte[] key = rdbLoadKey(parser, context);
+        int len = (int) parser.rdbLoadLen().len;
+        ZipList[] zipLists = new ZipList[len];
+        for (int i = 0; i < len; i++) {
+            zipLists[i] = new ZipList(parser.rdbGenericLoadStringObject(RDB_LOAD_NONE).first());
+        }
+        o14.setValueRdbType(RDB_TYPE_LIST_QUICKLIST);
+        o14.setValue(new QuickList(zipLists));
+        o14.setKey(key);
+        return context.valueOf(o14);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.lazy.datatype;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only set view over an intset blob. The elements are the decimal strings of the integers like
+ * {@link com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor} emits, {@link #getLong(int)} reads an
+ * integer without the conversion.
+ * <p>
+ * <pre>
+ * |<encoding>| <length-of-contents>|              <contents>                            |
+ * | 4 bytes  |            4 bytes  | 2 bytes element| 4 bytes element | 8 bytes element |
+ * </pre>
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class IntSet extends AbstractSet<byte[]> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int HEADER = 8;
+
+    private final byte[] blob;
+    private final int encoding;
+    private final int size;
+
+    /**
+     * @param blob intset blob, not copied
+     */
+    public IntSet(byte[] blob) {
+        this.blob = blob;
+        this.encoding = (int) read(0, 4);
+        this.size = (int) read(4, 4);
+        if (encoding != 2 && encoding != 4 && encoding != 8) {
+            throw new AssertionError("expect encoding [2,4,8] but:" + encoding);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of the integer, the integers are sorted
+     * @return the integer
+     */
+    public long getLong(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        return read(HEADER + index * encoding, encoding);
+    }
+
+    /**
+     * @param value integer
+     * @return true if the set contains the integer
+     */
+    public boolean containsLong(long value) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long v = getLong(mid);
+            if (v < value) lo = mid + 1;
+            else if (v > value) hi = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof byte[])) return false;
+        byte[] bytes = (byte[]) o;
+        try {
+            long value = Long.parseLong(new String(bytes));
+            // 007 and +7 are not members
+            return containsLong(value) && String.valueOf(value).length() == bytes.length;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Iterator<byte[]> iterator() {
+        return new Iterator<byte[]>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return String.valueOf(getLong(index++)).getBytes();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * little endian, sign extended
+     */
+    private long read(int p, int width) {
+        long v = 0;
+        for (int i = width - 1; i >= 0; i--) {
+            v = v << 8 | (blob[p + i] & 0xFF);
+        }
+        int shift = 64 - (width << 3);
+        return v << shift >> shift;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.lazy.datatype;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list view over the ziplists of a quicklist.
+ *
+ * @author Leon Chen
+ * @see ZipList
+ * @since 3.0.0
+ */
+public class QuickList extends AbstractList<byte[]> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final ZipList[] zipLists;
+    private final int[] starts;
+
+    public QuickList(ZipList[] zipLists) {
+        this.zipLists = zipLists;
+        this.starts = new int[zipLists.length + 1];
+        for (int i = 0; i < zipLists.length; i++) {
+            starts[i + 1] = starts[i] + zipLists[i].size();
+        }
+    }
+
+    @Override
+    public int size() {
+        return starts[zipLists.length];
+    }
+
+    @Override
+    public byte[] get(int index) {
+        int i = zipList(index);
+        return zipLists[i].get(index - starts[i]);
+    }
+
+    /**
+     * @param index index of the entry
+     * @return true if the entry is integer encoded
+     * @see ZipList#isInteger(int)
+     */
+    public boolean isInteger(int index) {
+        int i = zipList(index);
+        return zipLists[i].isInteger(index - starts[i]);
+    }
+
+    /**
+     * @param index index of the entry
+     * @return value of the entry
+     * @see ZipList#getLong(int)
+     */
+    public long getLong(int index) {
+        int i = zipList(index);
+        return zipLists[i].getLong(index - starts[i]);
+    }
+
+    /**
+     * @return index of the ziplist that holds the entry
+     */
+    private int zipList(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+        int lo = 0, hi = zipLists.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= index) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.lazy.datatype;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_16B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_24B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_32B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_64B;
+import static com.moilioncircle.redis.replicator.Constants.ZIP_INT_8B;
+
+/**
+ * Read-only list view over a ziplist blob. The entries are decoded on access, the offsets of the entries
+ * are indexed on the first access.
+ * <p>
+ * {@link #get(int)} returns the bytes of an entry, an integer entry as its decimal string like
+ * {@link com.moilioncircle.redis.replicator.rdb.DefaultRdbVisitor} does. {@link #isInteger(int)} and
+ * {@link #getLong(int)} read an integer entry without the conversion.
+ * <p>
+ * <pre>
+ * |<zlbytes>| <zltail>| <zllen>| <entry> ...<entry> | <zlend>|
+ * | 4 bytes | 4 bytes | 2bytes | zipListEntry ...   | 1byte  |
+ * </pre>
+ *
+ * @author Leon Chen
+ * @see com.moilioncircle.redis.replicator.rdb.BaseRdbParser.StringHelper#zipListEntry
+ * @since 3.0.0
+ */
+public class ZipList extends AbstractList<byte[]> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int HEADER = 10;
+
+    private final byte[] blob;
+    private int[] offsets;
+
+    /**
+     * @param blob ziplist blob, not copied
+     */
+    public ZipList(byte[] blob) {
+        if (blob.length < HEADER + 1 || (blob[blob.length - 1] & 0xFF) != 255) {
+            throw new AssertionError("zlend expect 255 but " + (blob.length == 0 ? -1 : blob[blob.length - 1] & 0xFF));
+        }
+        this.blob = blob;
+    }
+
+    @Override
+    public int size() {
+        int zllen = (blob[8] & 0xFF) | (blob[9] & 0xFF) << 8;
+        // 65535 means the length does not fit in zllen
+        return zllen < 65535 ? zllen : offsets().length;
+    }
+
+    @Override
+    public byte[] get(int index) {
+        int p = entry(index);
+        int special = blob[p] & 0xFF;
+        if (special >> 6 == 3) return String.valueOf(integer(p, special)).getBytes();
+        int off = data(p, special);
+        return Arrays.copyOfRange(blob, off, off + length(p, special));
+    }
+
+    /**
+     * @param index index of the entry
+     * @return true if the entry is integer encoded
+     */
+    public boolean isInteger(int index) {
+        return (blob[entry(index)] & 0xFF) >> 6 == 3;
+    }
+
+    /**
+     * @param index index of the entry
+     * @return value of an integer entry, or a string entry parsed as a decimal
+     * @throws NumberFormatException if a string entry is not a decimal
+     */
+    public long getLong(int index) {
+        int p = entry(index);
+        int special = blob[p] & 0xFF;
+        if (special >> 6 == 3) return integer(p, special);
+        int off = data(p, special);
+        return Long.parseLong(new String(blob, off, length(p, special)));
+    }
+
+    /**
+     * compare an entry with bytes without decoding it
+     *
+     * @param index index of the entry
+     * @param bytes bytes to compare
+     * @return true if the bytes of the entry are equal to the bytes
+     */
+    public boolean matches(int index, byte[] bytes) {
+        int p = entry(index);
+        int special = blob[p] & 0xFF;
+        if (special >> 6 == 3) return Arrays.equals(String.valueOf(integer(p, special)).getBytes(), bytes);
+        int off = data(p, special), len = length(p, special);
+        if (len != bytes.length) return false;
+        for (int i = 0; i < len; i++) {
+            if (blob[off + i] != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param index index of the entry
+     * @return offset of the encoding byte of the entry
+     */
+    private int entry(int index) {
+        int[] offsets = offsets();
+        if (index < 0 || index >= offsets.length) throw new IndexOutOfBoundsException("index: " + index + ", size: " + offsets.length);
+        return offsets[index];
+    }
+
+    private int[] offsets() {
+        if (offsets != null) return offsets;
+        int[] offsets = new int[16];
+        int n = 0;
+        for (int p = HEADER; (blob[p] & 0xFF) != 255; n++) {
+            // <length-prev-entry>
+            p += (blob[p] & 0xFF) >= 254 ? 5 : 1;
+            if (n == offsets.length) offsets = Arrays.copyOf(offsets, n << 1);
+            offsets[n] = p;
+            int special = blob[p] & 0xFF;
+            p = special >> 6 == 3 ? p + 1 + width(special) : data(p, special) + length(p, special);
+        }
+        return this.offsets = Arrays.copyOf(offsets, n);
+    }
+
+    private int data(int p, int special) {
+        switch (special >> 6) {
+            case 0:
+                return p + 1;
+            case 1:
+                return p + 2;
+            default:
+                return p + 5;
+        }
+    }
+
+    private int length(int p, int special) {
+        switch (special >> 6) {
+            case 0:
+                return special & 0x3F;
+            case 1:
+                return ((special & 0x3F) << 8) | (blob[p + 1] & 0xFF);
+            default:
+                //bigEndian
+                return (blob[p + 1] & 0xFF) << 24 | (blob[p + 2] & 0xFF) << 16 | (blob[p + 3] & 0xFF) << 8 | (blob[p + 4] & 0xFF);
+        }
+    }
+
+    private static int width(int special) {
+        switch (special) {
+            case ZIP_INT_8B:
+                return 1;
+            case ZIP_INT_16B:
+                return 2;
+            case ZIP_INT_24B:
+                return 3;
+            case ZIP_INT_32B:
+                return 4;
+            case ZIP_INT_64B:
+                return 8;
+            default:
+                //4BIT
+                return 0;
+        }
+    }
+
+    private long integer(int p, int special) {
+        int width = width(special);
+        if (width == 0) return special - 0xF1;
+        // little endian, sign extended
+        long v = 0;
+        for (int i = width; i > 0; i--) {
+            v = v << 8 | (blob[p + i] & 0xFF);
+        }
+        int shift = 64 - (width << 3);
+        return v << shift >> shift;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.lazy.datatype;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only map view over a ziplist of fields and values. The keys are compared by content like
+ * {@link com.moilioncircle.redis.replicator.util.ByteArrayMap}, a lookup scans the fields without decoding them.
+ *
+ * @author Leon Chen
+ * @see ZipList
+ * @since 3.0.0
+ */
+public class ZipListHash extends AbstractMap<byte[], byte[]> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final ZipList zipList;
+
+    public ZipListHash(ZipList zipList) {
+        this.zipList = zipList;
+    }
+
+    /**
+     * @return the ziplist, field {@code i} at {@code 2 * i} and its value at {@code 2 * i + 1}
+     */
+    public ZipList getZipList() {
+        return zipList;
+    }
+
+    @Override
+    public int size() {
+        return zipList.size() >> 1;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public byte[] get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : zipList.get(index + 1);
+    }
+
+    /**
+     * @param field field
+     * @return value of the field, read as {@link ZipList#getLong(int)}
+     * @throws NullPointerException if the field does not exist
+     */
+    public long getLong(byte[] field) {
+        int index = indexOf(field);
+        if (index < 0) throw new NullPointerException();
+        return zipList.getLong(index + 1);
+    }
+
+    @Override
+    public Set<Map.Entry<byte[], byte[]>> entrySet() {
+        return new AbstractSet<Map.Entry<byte[], byte[]>>() {
+            @Override
+            public int size() {
+                return ZipListHash.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<byte[], byte[]>> iterator() {
+                return new Iterator<Map.Entry<byte[], byte[]>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size();
+                    }
+
+                    @Override
+                    public Map.Entry<byte[], byte[]> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        int i = index++ << 1;
+                        return new SimpleImmutableEntry<>(zipList.get(i), zipList.get(i + 1));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return index of the field in the ziplist. -1 if absent
+     */
+    private int indexOf(Object key) {
+        if (!(key instanceof byte[])) return -1;
+        byte[] field = (byte[]) key;
+        for (int i = 0, n = size() << 1; i < n; i += 2) {
+            if (zipList.matches(i, field)) return i;
+        }
+        return -1;
+    }
+}
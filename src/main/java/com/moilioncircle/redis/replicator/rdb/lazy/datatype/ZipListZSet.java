@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.lazy.datatype;
+
+import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
+import com.moilioncircle.redis.replicator.util.Strings;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only set view over a ziplist of elements and scores, in the order of the ziplist.
+ *
+ * @author Leon Chen
+ * @see ZipList
+ * @since 3.0.0
+ */
+public class ZipListZSet extends AbstractSet<ZSetEntry> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final ZipList zipList;
+
+    public ZipListZSet(ZipList zipList) {
+        this.zipList = zipList;
+    }
+
+    /**
+     * @return the ziplist, element {@code i} at {@code 2 * i} and its score at {@code 2 * i + 1}
+     */
+    public ZipList getZipList() {
+        return zipList;
+    }
+
+    @Override
+    public int size() {
+        return zipList.size() >> 1;
+    }
+
+    /**
+     * @param index index of the element
+     * @return the element
+     */
+    public byte[] getElement(int index) {
+        return zipList.get(index << 1);
+    }
+
+    /**
+     * @param index index of the element
+     * @return score of the element
+     */
+    public double getScore(int index) {
+        int i = (index << 1) + 1;
+        if (zipList.isInteger(i)) return zipList.getLong(i);
+        return Double.valueOf(Strings.toString(zipList.get(i)));
+    }
+
+    @Override
+    public Iterator<ZSetEntry> iterator() {
+        return new Iterator<ZSetEntry>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public ZSetEntry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int i = index++;
+                return new ZSetEntry(getElement(i), getScore(i));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -125,7 +125,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyString(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         parser.rdbLoadEncodedStringObject();
         return null;
     }
@@ -133,7 +133,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         while (len > 0) {
             parser.rdbLoadEncodedStringObject();
@@ -145,7 +145,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applySet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         while (len > 0) {
             parser.rdbLoadEncodedStringObject();
@@ -157,7 +157,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyZSet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         while (len > 0) {
             parser.rdbLoadEncodedStringObject();
@@ -170,7 +170,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyZSet2(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         while (len > 0) {
             parser.rdbLoadEncodedStringObject();
@@ -183,7 +183,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyHash(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         while (len > 0) {
             parser.rdbLoadEncodedStringObject();
@@ -196,7 +196,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyHashZipMap(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         parser.rdbLoadPlainStringObject();
         return null;
     }
@@ -204,7 +204,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyListZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         parser.rdbLoadPlainStringObject();
         return null;
     }
@@ -212,7 +212,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applySetIntSet(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         parser.rdbLoadPlainStringObject();
         return null;
     }
@@ -220,7 +220,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyZSetZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         parser.rdbLoadPlainStringObject();
         return null;
     }
@@ -228,7 +228,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyHashZipList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         parser.rdbLoadPlainStringObject();
         return null;
     }
@@ -236,7 +236,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyListQuickList(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         long len = parser.rdbLoadLen().len;
         for (long i = 0; i < len; i++) {
             parser.rdbGenericLoadStringObject();
@@ -247,7 +247,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyModule(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         char[] c = new char[9];
         long moduleid = parser.rdbLoadLen().len;
         for (int i = 0; i < c.length; i++) {
@@ -266,7 +266,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyModule2(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         char[] c = new char[9];
         long moduleid = parser.rdbLoadLen().len;
         for (int i = 0; i < c.length; i++) {
@@ -291,7 +291,7 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
     @Override
     public Event applyStreamListPacks(RedisInputStream in, int version, ContextKeyValuePair context) throws IOException {
         SkipRdbParser parser = new SkipRdbParser(in);
-        parser.rdbLoadEncodedStringObject();
+        rdbLoadKey(parser, context);
         long listPacks = parser.rdbLoadLen().len;
         while (listPacks-- > 0) {
             parser.rdbLoadPlainStringObject();
@@ -323,4 +323,15 @@ public class SkipRdbVisitor extends DefaultRdbVisitor {
         }
         return null;
     }
+
+    /**
+     * @param parser  parser
+     * @param context key value context
+     * @throws IOException when read timeout
+     * @see ContextKeyValuePair#getRawKey()
+     * @since 3.0.0
+     */
+    protected void rdbLoadKey(SkipRdbParser parser, ContextKeyValuePair context) throws IOException {
+        if (context.getRawKey() == null) parser.rdbLoadEncodedStringObject();
+    }
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.sink;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisURI;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.event.PostCommandSyncEvent;
+import com.moilioncircle.redis.replicator.event.PostRdbSyncEvent;
+import com.moilioncircle.redis.replicator.net.RedisClusterSlots;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.moilioncircle.redis.replicator.net.RedisClusterSlots.host;
+import static com.moilioncircle.redis.replicator.net.RedisClusterSlots.port;
+import static com.moilioncircle.redis.replicator.sink.RedisSink.NONE;
+import static com.moilioncircle.redis.replicator.sink.RedisSink.RESTORE;
+import static com.moilioncircle.redis.replicator.util.CRC16.slot;
+
+/**
+ * Writes the events of a replicator to a redis cluster, one pipelined {@link RedisSink} per master.
+ * <p>
+ * The slot map is loaded with {@code CLUSTER SLOTS} from the seed node. Every {@link DumpKeyValuePair} and key
+ * bearing {@link DefaultCommand} goes to the master of its slot (see {@link CRC16#slot(byte[])}).
+ * {@code DEL}, {@code UNLINK} and {@code MSET} are split by slot. {@code FLUSHALL}, {@code FLUSHDB} and
+ * {@code SCRIPT} go to every master. {@code SELECT}, {@code MULTI} and {@code EXEC} are dropped, a cluster has
+ * only db 0 and a transaction can not span the masters.
+ * <p>
+ * A {@code MOVED} reply updates the slot map and a {@code ASK} reply is retried with {@code ASKING} on the
+ * given node. The redirected commands are resent on the event thread, before the next event. The window of the
+ * node that replied {@code MOVED} is drained first, so the commands of the slot that are still in flight there
+ * are resent in order, before the newer ones reach the new master.
+ * <p>
+ * {@link #onEvent(Replicator, Event)} and {@link #flush()} are synchronized like {@link RedisSink}, so the sink can
+ * listen to a replicator with event lanes. Every master is written on the event thread. A master with a full window blocks the caller, so one slow
+ * master holds back the commands of the others too. A queue per master would only defer the stall by its
+ * size, since the events are consumed in stream order. Size the window for the slowest master and watch
+ * {@link #getInflight()}.
+ *
+ * @author Leon Chen
+ * @see RedisSink
+ * @since 3.0.0
+ */
+public class RedisClusterSink implements EventListener, Closeable {
+
+    protected static final Logger logger = LoggerFactory.getLogger(RedisClusterSink.class);
+
+    private static final byte[] ASKING = "ASKING".getBytes();
+
+    private final int window;
+    private final Configuration configuration;
+    private final String[] slots = new String[CRC16.SLOTS];
+    private final Map<String, RedisSink> nodes = new ConcurrentHashMap<>();
+    private final Queue<Redirect> redirects = new ConcurrentLinkedQueue<>();
+    private final List<SinkErrorListener> errorListeners = new CopyOnWriteArrayList<>();
+
+    private final SinkErrorListener redirector = new SinkErrorListener() {
+        @Override
+        public void handle(RedisSink sink, Event event, String error) {
+            if (error.startsWith("MOVED ") || error.startsWith("ASK ")) {
+                redirects.offer(new Redirect(sink, event, error));
+                return;
+            }
+            for (SinkErrorListener listener : errorListeners) {
+                listener.handle(sink, event, error);
+            }
+        }
+    };
+
+    public RedisClusterSink(RedisURI seed) throws IOException {
+        this(seed, RedisSink.DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param seed   any node of the cluster. the auth, ssl and timeout settings of the uri are used for every node
+     * @param window max number of commands in flight per node
+     * @throws IOException if the slot map can not be loaded
+     */
+    public RedisClusterSink(RedisURI seed, int window) throws IOException {
+        this.window = window;
+        this.configuration = Configuration.valueOf(seed);
+        refresh(seed.getHost() + ":" + seed.getPort());
+    }
+
+    public boolean addErrorListener(SinkErrorListener listener) {
+        return errorListeners.add(listener);
+    }
+
+    public boolean removeErrorListener(SinkErrorListener listener) {
+        return errorListeners.remove(listener);
+    }
+
+    /**
+     * @return number of received replies of each node. sample it to get the throughput of each node
+     */
+    public Map<String, Long> getReplies() {
+        Map<String, Long> replies = new HashMap<>();
+        for (Map.Entry<String, RedisSink> entry : nodes.entrySet()) {
+            replies.put(entry.getKey(), entry.getValue().getReplies());
+        }
+        return replies;
+    }
+
+    /**
+     * @return number of commands waiting for a reply of each node
+     */
+    public Map<String, Integer> getInflight() {
+        Map<String, Integer> inflight = new HashMap<>();
+        for (Map.Entry<String, RedisSink> entry : nodes.entrySet()) {
+            inflight.put(entry.getKey(), entry.getValue().getInflight());
+        }
+        return inflight;
+    }
+
+    /**
+     * @param slot slot
+     * @return {@code host:port} of the master. null if not covered
+     */
+    public String getNode(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * @throws UncheckedIOException if a connection is broken or a slot is not covered
+     */
+    @Override
+    public synchronized void onEvent(Replicator replicator, Event event) {
+        try {
+            redirect();
+            if (event instanceof DumpKeyValuePair) {
+                DumpKeyValuePair kv = (DumpKeyValuePair) event;
+                byte[][] args = RedisSink.restoreArgs(kv, configuration.getClock().currentTimeMillis());
+                if (args != null) node(slot(kv.getKey())).send(kv, RESTORE, args);
+            } else if (event instanceof DefaultCommand) {
+                route((DefaultCommand) event);
+            } else if (event instanceof PostRdbSyncEvent || event instanceof PostCommandSyncEvent) {
+                for (RedisSink node : nodes.values()) node.flushOutput();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * send the buffered commands and wait for their replies, including the redirected ones
+     *
+     * @throws IOException if a connection is broken
+     */
+    public synchronized void flush() throws IOException {
+        do {
+            redirect();
+            for (RedisSink node : nodes.values()) node.flush();
+        } while (!redirects.isEmpty());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.warn("flush failed before close. {}", e.getMessage());
+        } finally {
+            for (RedisSink node : nodes.values()) node.close();
+        }
+    }
+
+    protected void route(DefaultCommand command) throws IOException {
+        byte[][] args = command.getArgs();
+        String name = Strings.toString(command.getCommand()).toUpperCase();
+        switch (name) {
+            case "SELECT":
+            case "MULTI":
+            case "EXEC":
+                return;
+            case "FLUSHALL":
+            case "FLUSHDB":
+            case "SCRIPT":
+                for (String address : new LinkedHashSet<>(Arrays.asList(slots))) {
+                    if (address == null) continue;
+                    send(node(address), command);
+                }
+                return;
+            case "DEL":
+            case "UNLINK":
+                split(command, 1);
+                return;
+            case "MSET":
+                split(command, 2);
+                return;
+            case "EVAL":
+            case "EVALSHA":
+                if (args.length > 2 && Long.parseLong(Strings.toString(args[1])) > 0) {
+                    send(node(slot(args[2])), command);
+                } else {
+                    send(node(0), command);
+                }
+                return;
+            default:
+                send(node(args.length > 0 ? slot(args[0]) : 0), command);
+        }
+    }
+
+    /**
+     * @param step number of arguments of each key
+     */
+    protected void split(DefaultCommand command, int step) throws IOException {
+        byte[][] args = command.getArgs();
+        Map<Integer, List<byte[]>> groups = new LinkedHashMap<>();
+        for (int i = 0; i + step <= args.length; i += step) {
+            int slot = slot(args[i]);
+            List<byte[]> group = groups.get(slot);
+            if (group == null) groups.put(slot, group = new ArrayList<>());
+            for (int j = 0; j < step; j++) group.add(args[i + j]);
+        }
+        if (groups.size() <= 1) {
+            send(node(args.length > 0 ? slot(args[0]) : 0), command);
+            return;
+        }
+        for (Map.Entry<Integer, List<byte[]>> entry : groups.entrySet()) {
+            byte[][] part = entry.getValue().toArray(new byte[0][]);
+            send(node(entry.getKey()), new DefaultCommand(command.getCommand(), part));
+        }
+    }
+
+    protected void redirect() throws IOException {
+        String moved = null;
+        while (!redirects.isEmpty()) {
+            // the older commands of a moved slot may still be in flight on the old master. wait for their
+            // replies, so that they are resent in order and before any newer command of the slot
+            for (Redirect redirect : redirects) {
+                if (redirect.moved) redirect.sink.flush();
+            }
+            List<Redirect> batch = new ArrayList<>();
+            Redirect redirect;
+            while ((redirect = redirects.poll()) != null) batch.add(redirect);
+            for (Redirect r : batch) {
+                // MOVED 3999 127.0.0.1:6381 or ASK 3999 127.0.0.1:6381
+                String[] parts = r.error.split(" ");
+                RedisSink node = node(parts[2]);
+                if (r.moved) {
+                    slots[Integer.parseInt(parts[1])] = parts[2];
+                    moved = parts[2];
+                } else {
+                    node.send(NONE, ASKING);
+                }
+                if (r.event instanceof DumpKeyValuePair) {
+                    DumpKeyValuePair kv = (DumpKeyValuePair) r.event;
+                    byte[][] args = RedisSink.restoreArgs(kv, configuration.getClock().currentTimeMillis());
+                    if (args != null) node.send(kv, RESTORE, args);
+                } else if (r.event instanceof DefaultCommand) {
+                    send(node, (DefaultCommand) r.event);
+                }
+                node.flushOutput();
+            }
+        }
+        // the slots are usually moved in bulk
+        if (moved != null) refresh(moved);
+    }
+
+    /**
+     * load the slot map with {@code CLUSTER SLOTS}
+     *
+     * @param address {@code host:port} of a node
+     * @throws IOException if an I/O error occurs
+     */
+    protected void refresh(String address) throws IOException {
+        String[] map = RedisClusterSlots.load(host(address), port(address), configuration);
+        for (int i = 0; i < map.length; i++) {
+            if (map[i] != null) slots[i] = map[i];
+        }
+    }
+
+    protected RedisSink node(int slot) throws IOException {
+        String address = slots[slot];
+        if (address == null) throw new IOException("slot " + slot + " is not covered.");
+        return node(address);
+    }
+
+    protected RedisSink node(String address) throws IOException {
+        RedisSink node = nodes.get(address);
+        if (node != null) return node;
+        node = new RedisSink(host(address), port(address), configuration, window);
+        node.addErrorListener(redirector);
+        nodes.put(address, node);
+        return node;
+    }
+
+    private static void send(RedisSink node, DefaultCommand command) throws IOException {
+        node.send(command, command.getCommand(), command.getArgs());
+        // the stream is live, do not hold the command in the buffer
+        node.flushOutput();
+    }
+
+    private static class Redirect {
+        private final RedisSink sink;
+        private final Event event;
+        private final String error;
+        private final boolean moved;
+
+        private Redirect(RedisSink sink, Event event, String error) {
+            this.sink = sink;
+            this.event = event;
+            this.error = error;
+            this.moved = error.startsWith("MOVED ");
+        }
+    }
+}
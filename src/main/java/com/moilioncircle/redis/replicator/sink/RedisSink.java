@@ -0,0 +1,403 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.sink;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.RedisURI;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.UncheckedIOException;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.event.PostCommandSyncEvent;
+import com.moilioncircle.redis.replicator.event.PostRdbSyncEvent;
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.io.RedisOutputStream;
+import com.moilioncircle.redis.replicator.net.RedisSocketFactory;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import com.moilioncircle.redis.replicator.util.Clock;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.moilioncircle.redis.replicator.Constants.COLON;
+import static com.moilioncircle.redis.replicator.Constants.DOLLAR;
+import static com.moilioncircle.redis.replicator.Constants.MINUS;
+import static com.moilioncircle.redis.replicator.Constants.PLUS;
+import static com.moilioncircle.redis.replicator.Constants.STAR;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Writes the events of a replicator to a target redis over one pipelined connection.
+ * <p>
+ * A {@link DumpKeyValuePair} (see {@link DumpRdbVisitor}) is restored with {@code RESTORE key ttl payload REPLACE}.
+ * The absolute expiry is converted to a relative ttl and keys that are already expired are dropped.
+ * A {@link DefaultCommand} is replayed as is. A {@code SELECT} is sent when the db of the next key changes,
+ * and the {@code SELECT} commands of the stream are tracked.
+ * <p>
+ * Up to {@code window} commands are in flight, a full window blocks the caller, and with it the replicator
+ * that calls this listener. The replies are read on a worker thread and an error reply is reported to the
+ * {@link SinkErrorListener}s with its event.
+ * <p>
+ * {@link #onEvent(Replicator, Event)} and {@link #flush()} are synchronized, so the sink can listen to a replicator
+ * with {@link Configuration#setEventDispatchLanes(int)}. The events of the lanes are interleaved, the events of
+ * one key keep their order. The expiry is converted with {@link Configuration#getClock()}.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class RedisSink implements EventListener, Closeable {
+
+    protected static final Logger logger = LoggerFactory.getLogger(RedisSink.class);
+
+    public static final int DEFAULT_WINDOW = 1024;
+
+    private static final byte[] AUTH = "AUTH".getBytes();
+    private static final byte[] SELECT = "SELECT".getBytes();
+    static final byte[] RESTORE = "RESTORE".getBytes();
+    private static final byte[] REPLACE = "REPLACE".getBytes();
+
+    /**
+     * placeholder of the commands that are sent by the sink itself
+     */
+    static final Object NONE = new Object();
+
+    private final Clock clock;
+    private final int timeout;
+    private final int windowSize;
+    private final Socket socket;
+    private final Thread reader;
+    private final Semaphore window;
+    private final RedisInputStream in;
+    private final RedisOutputStream out;
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong replies = new AtomicLong();
+    private final Queue<Object> inflight = new ConcurrentLinkedQueue<>();
+    private final List<SinkErrorListener> errorListeners = new CopyOnWriteArrayList<>();
+
+    private long db = -1;
+    private volatile boolean closed;
+    private volatile IOException exception;
+
+    public RedisSink(RedisURI uri) throws IOException {
+        this(uri, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param uri    target redis. the auth, ssl and timeout settings of the uri are used
+     * @param window max number of commands in flight
+     * @throws IOException if the connection or the auth failed
+     */
+    public RedisSink(RedisURI uri, int window) throws IOException {
+        this(uri.getHost(), uri.getPort(), Configuration.valueOf(uri), window);
+    }
+
+    /**
+     * @param host          target host
+     * @param port          target port
+     * @param configuration the auth, ssl and timeout settings
+     * @param window        max number of commands in flight
+     * @throws IOException if the connection or the auth failed
+     */
+    public RedisSink(String host, int port, Configuration configuration, int window) throws IOException {
+        this.clock = configuration.getClock();
+        this.timeout = configuration.getReadTimeout();
+        this.windowSize = window;
+        this.window = new Semaphore(window);
+        this.socket = new RedisSocketFactory(configuration).createSocket(host, port, configuration.getConnectionTimeout());
+        this.in = new RedisInputStream(socket.getInputStream(), configuration.getBufferSize());
+        this.out = new RedisOutputStream(socket.getOutputStream());
+        if (configuration.getAuthPassword() != null) {
+            write(AUTH, configuration.getAuthPassword().getBytes());
+            out.flush();
+            String error = reply();
+            if (error != null) {
+                socket.close();
+                throw new IOException("[AUTH] failed. " + error);
+            }
+        }
+        // the reader waits for replies as long as the stream is idle
+        this.socket.setSoTimeout(0);
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        }, "redis-sink-" + host + ":" + port);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public boolean addErrorListener(SinkErrorListener listener) {
+        return errorListeners.add(listener);
+    }
+
+    public boolean removeErrorListener(SinkErrorListener listener) {
+        return errorListeners.remove(listener);
+    }
+
+    /**
+     * @return number of received replies
+     */
+    public long getReplies() {
+        return replies.get();
+    }
+
+    /**
+     * @return number of received error replies
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return number of commands waiting for a reply
+     */
+    public int getInflight() {
+        return windowSize - window.availablePermits();
+    }
+
+    /**
+     * @throws UncheckedIOException if the connection is broken
+     */
+    @Override
+    public synchronized void onEvent(Replicator replicator, Event event) {
+        try {
+            if (event instanceof DumpKeyValuePair) {
+                restore((DumpKeyValuePair) event);
+            } else if (event instanceof DefaultCommand) {
+                replay((DefaultCommand) event);
+                // the stream is live, do not hold the command in the buffer
+                out.flush();
+            } else if (event instanceof PostRdbSyncEvent || event instanceof PostCommandSyncEvent) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * send the buffered commands and wait for their replies
+     *
+     * @throws IOException if the connection is broken
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+        acquire(windowSize);
+        window.release(windowSize);
+    }
+
+    /**
+     * wait for the replies up to the read timeout and close the connection
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            out.flush();
+            if (!window.tryAcquire(windowSize, timeout, MILLISECONDS)) {
+                logger.warn("{} replies are not received before close", getInflight());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // NOP
+        } finally {
+            closed = true;
+            socket.close();
+        }
+    }
+
+    protected void restore(DumpKeyValuePair kv) throws IOException {
+        byte[][] args = restoreArgs(kv, clock.currentTimeMillis());
+        if (args == null) return;
+        select(kv.getDb());
+        send(kv, RESTORE, args);
+    }
+
+    protected void replay(DefaultCommand command) throws IOException {
+        byte[][] args = command.getArgs();
+        if (Strings.toString(command.getCommand()).equalsIgnoreCase("SELECT") && args.length > 0) {
+            db = Long.parseLong(Strings.toString(args[0]));
+        }
+        send(command, command.getCommand(), args);
+    }
+
+    protected void select(DB db) throws IOException {
+        if (db == null || db.getDbNumber() == this.db) return;
+        send(NONE, SELECT, String.valueOf(db.getDbNumber()).getBytes());
+        this.db = db.getDbNumber();
+    }
+
+    /**
+     * @param pending event of the command. reported with its error reply
+     */
+    protected void send(Object pending, byte[] command, byte[]... args) throws IOException {
+        if (!window.tryAcquire()) {
+            out.flush();
+            acquire(1);
+        }
+        check();
+        inflight.offer(pending);
+        write(command, args);
+    }
+
+    /**
+     * @param kv  dumped key value pair
+     * @param now current time in millis
+     * @return arguments of {@code RESTORE} with a relative ttl. null if the key is already expired
+     * or the payload is written to the sink of the dump visitor
+     */
+    static byte[][] restoreArgs(DumpKeyValuePair kv, long now) {
+        if (kv.getValue() == null) return null;
+        long ttl = 0;
+        if (kv.getExpiredType() != null && kv.getExpiredType() != ExpiredType.NONE) {
+            long ms = kv.getExpiredMs();
+            if (kv.getExpiredType() == ExpiredType.SECOND) ms *= 1000;
+            ttl = ms - now;
+            if (ttl <= 0) return null;
+        }
+        return new byte[][]{kv.getKey(), String.valueOf(ttl).getBytes(), kv.getValue(), REPLACE};
+    }
+
+    /**
+     * send the buffered commands without waiting for the replies
+     */
+    void flushOutput() throws IOException {
+        out.flush();
+    }
+
+    private void write(byte[] command, byte[]... args) throws IOException {
+        write(out, command, args);
+    }
+
+    static void write(RedisOutputStream out, byte[] command, byte[]... args) throws IOException {
+        out.write(STAR);
+        out.write(String.valueOf(args.length + 1).getBytes());
+        out.writeCrLf();
+        out.write(DOLLAR);
+        out.write(String.valueOf(command.length).getBytes());
+        out.writeCrLf();
+        out.write(command);
+        out.writeCrLf();
+        for (final byte[] arg : args) {
+            out.write(DOLLAR);
+            out.write(String.valueOf(arg.length).getBytes());
+            out.writeCrLf();
+            out.write(arg);
+            out.writeCrLf();
+        }
+    }
+
+    private void acquire(int permits) throws IOException {
+        try {
+            while (!window.tryAcquire(permits, 100, MILLISECONDS)) check();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void check() throws IOException {
+        IOException e = exception;
+        if (e != null) throw e;
+        if (closed) throw new IOException("sink closed.");
+    }
+
+    private void read() {
+        try {
+            while (!closed) {
+                String error = reply();
+                Object pending = inflight.poll();
+                try {
+                    if (error == null) continue;
+                    errors.incrementAndGet();
+                    if (pending == NONE) {
+                        logger.error("sink command failed. {}", error);
+                        continue;
+                    }
+                    for (SinkErrorListener listener : errorListeners) {
+                        listener.handle(this, (Event) pending, error);
+                    }
+                } finally {
+                    // the error is reported before the command leaves the window, see flush()
+                    replies.incrementAndGet();
+                    window.release();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.error("sink connection broken. {}", e.getMessage());
+                exception = e;
+            }
+        }
+    }
+
+    /**
+     * @return error message if the reply is an error, otherwise null
+     */
+    private String reply() throws IOException {
+        int c = in.read();
+        switch (c) {
+            case MINUS:
+                return line();
+            case PLUS:
+            case COLON:
+                line();
+                return null;
+            case DOLLAR:
+                long len = Long.parseLong(line());
+                if (len >= 0) in.skip(len + 2);
+                return null;
+            case STAR:
+                len = Long.parseLong(line());
+                String error = null;
+                for (long i = 0; i < len; i++) {
+                    String e = reply();
+                    if (error == null) error = e;
+                }
+                return error;
+            default:
+                throw new IOException("expect [$,:,*,+,-] but: " + (char) c);
+        }
+    }
+
+    private String line() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') builder.append((char) c);
+        in.read();
+        return builder.toString();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.sink;
+
+import com.moilioncircle.redis.replicator.event.Event;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public interface SinkErrorListener {
+    /**
+     * called on the reply reader thread of the sink
+     *
+     * @param sink  the sink
+     * @param event the event that was written. e.g. {@code DumpKeyValuePair} or {@code DefaultCommand}
+     * @param error error reply of the target redis
+     */
+    void handle(RedisSink sink, Event event, String error);
+}
@@ -52,6 +52,26 @@ public class ByteBuilder {
         }
     }
 
+    /**
+     * @param bytes  bytes
+     * @param offset offset
+     * @param length length
+     * @since 3.0.0
+     */
+    public void put(byte[] bytes, int offset, int length) {
+        total += length;
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                list.add(buffer.array().clone());
+                buffer.clear();
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
     public int length() {
         return total;
     }
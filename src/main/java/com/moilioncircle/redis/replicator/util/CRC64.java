@@ -100,13 +100,105 @@ public class CRC64 {
         return crc64(bytes, start, length, 0L);
     }
 
+    /**
+     * slicing-by-8 tables. {@code TABLES[k][b]} is the crc of byte {@code b} followed by {@code k} zero bytes
+     */
+    private static final long[][] TABLES = new long[8][];
+
+    /**
+     * reflected jones polynomial
+     */
+    private static final long POLY = LOOKUP_TABLE[128];
+
+    static {
+        TABLES[0] = LOOKUP_TABLE;
+        for (int k = 1; k < 8; k++) {
+            TABLES[k] = new long[256];
+            for (int i = 0; i < 256; i++) {
+                long v = TABLES[k - 1][i];
+                TABLES[k][i] = (v >>> 8) ^ LOOKUP_TABLE[(int) v & 0xFF];
+            }
+        }
+    }
+
     public static long crc64(byte[] bytes, int start, int length, long sum) {
-        for (int i = start; i < start + length; i++) {
-            sum = (sum >>> 8) ^ LOOKUP_TABLE[((int) sum ^ bytes[i]) & 0xFF];
+        final long[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        final long[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        int i = start, end = start + length;
+        for (; i + 8 <= end; i += 8) {
+            sum ^= (bytes[i] & 0xFFL)
+                    | (bytes[i + 1] & 0xFFL) << 8
+                    | (bytes[i + 2] & 0xFFL) << 16
+                    | (bytes[i + 3] & 0xFFL) << 24
+                    | (bytes[i + 4] & 0xFFL) << 32
+                    | (bytes[i + 5] & 0xFFL) << 40
+                    | (bytes[i + 6] & 0xFFL) << 48
+                    | (bytes[i + 7] & 0xFFL) << 56;
+            sum = t7[(int) sum & 0xFF]
+                    ^ t6[(int) (sum >>> 8) & 0xFF]
+                    ^ t5[(int) (sum >>> 16) & 0xFF]
+                    ^ t4[(int) (sum >>> 24) & 0xFF]
+                    ^ t3[(int) (sum >>> 32) & 0xFF]
+                    ^ t2[(int) (sum >>> 40) & 0xFF]
+                    ^ t1[(int) (sum >>> 48) & 0xFF]
+                    ^ t0[(int) (sum >>> 56) & 0xFF];
+        }
+        for (; i < end; i++) {
+            sum = (sum >>> 8) ^ t0[((int) sum ^ bytes[i]) & 0xFF];
         }
         return sum;
     }
 
+    public static long crc64(int b, long sum) {
+        return (sum >>> 8) ^ LOOKUP_TABLE[((int) sum ^ b) & 0xFF];
+    }
+
+    /**
+     * @param crc1 crc of the first block
+     * @param crc2 crc of the second block
+     * @param len2 length of the second block
+     * @return crc of the two blocks concatenated
+     * @since 3.0.0
+     */
+    public static long combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) return crc1 ^ crc2;
+        long[] even = new long[64];
+        long[] odd = new long[64];
+        // operator of one zero bit
+        odd[0] = POLY;
+        long row = 1;
+        for (int n = 1; n < 64; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // two and four zero bits
+        square(even, odd);
+        square(odd, even);
+        // apply len2 zero bytes to crc1
+        do {
+            square(even, odd);
+            if ((len2 & 1) != 0) crc1 = times(even, crc1);
+            len2 >>>= 1;
+            if (len2 == 0) break;
+            square(odd, even);
+            if ((len2 & 1) != 0) crc1 = times(odd, crc1);
+            len2 >>>= 1;
+        } while (len2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] mat, long vec) {
+        long sum = 0;
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0) sum ^= mat[i];
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] mat) {
+        for (int n = 0; n < 64; n++) square[n] = times(mat, mat[n]);
+    }
+
     public static byte[] longToByteArray(long value) {
         return new byte[]{
                 (byte) value,
@@ -17,7 +17,13 @@
 package com.moilioncircle.redis.replicator.util;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.max;
 
@@ -27,6 +33,29 @@ import static java.lang.Math.max;
  */
 public class Concurrents {
 
+    /**
+     * one daemon timer thread for the light periodic tasks of all the replicators in the process, e.g. the
+     * heartbeats. the tasks must not block, do not terminate it.
+     *
+     * @return the process wide scheduler
+     * @since 3.0.0
+     */
+    public static ScheduledExecutorService sharedScheduler() {
+        return SharedScheduler.INSTANCE;
+    }
+
+    /**
+     * a few daemon threads for the socket writes of all the replicators in the process that may block, e.g. the
+     * acks of a blocking socket on a full send buffer. a stalled write holds one thread until its socket is closed,
+     * the idle threads exit. do not terminate it.
+     *
+     * @return the process wide writer pool
+     * @since 3.0.0
+     */
+    public static ExecutorService sharedWriter() {
+        return SharedWriter.INSTANCE;
+    }
+
     public static long sub(long v1, long v2) {
         return max(max(v1, 0) - max(v2, 0), 0);
     }
@@ -52,4 +81,35 @@ public class Concurrents {
             return sub(timeout, unit.convert(elapsedTime, TimeUnit.NANOSECONDS));
         }
     }
+
+    private static class SharedWriter {
+        private static final ExecutorService INSTANCE;
+
+        static {
+            int threads = max(Runtime.getRuntime().availableProcessors(), 2);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger idx = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "replicator-writer-" + idx.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            INSTANCE = executor;
+        }
+    }
+
+    private static class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "replicator-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+/**
+ * Redis {@code KEYS} style glob matching on raw bytes. supports {@code *}, {@code ?}, {@code [a-z]}, {@code [^a]} and {@code \}.
+ *
+ * @author Leon Chen
+ * @see <a href="https://redis.io/commands/keys">keys</a>
+ * @since 3.0.0
+ */
+public class Glob {
+
+    private Glob() {
+    }
+
+    public static boolean match(byte[] pattern, byte[] bytes) {
+        return match(pattern, bytes, 0, bytes.length);
+    }
+
+    public static boolean match(byte[] pattern, byte[] bytes, int offset, int length) {
+        int p = 0, s = offset, end = offset + length;
+        int starP = -1, starS = -1;
+        while (s < end) {
+            if (p < pattern.length) {
+                byte c = pattern[p];
+                if (c == '*') {
+                    starP = ++p;
+                    starS = s;
+                    continue;
+                }
+                if (c == '?') {
+                    p++;
+                    s++;
+                    continue;
+                }
+                if (c == '[') {
+                    int next = matchClass(pattern, p, bytes[s]);
+                    if (next > 0) {
+                        p = next;
+                        s++;
+                        continue;
+                    }
+                } else {
+                    if (c == '\\' && p + 1 < pattern.length) c = pattern[++p];
+                    if (c == bytes[s]) {
+                        p++;
+                        s++;
+                        continue;
+                    }
+                }
+            }
+            // backtrack to the last star
+            if (starP < 0) return false;
+            p = starP;
+            s = ++starS;
+        }
+        while (p < pattern.length && pattern[p] == '*') p++;
+        return p == pattern.length;
+    }
+
+    /**
+     * @return index after the class if matched. otherwise -1
+     */
+    private static int matchClass(byte[] pattern, int p, byte b) {
+        p++;
+        boolean not = p < pattern.length && pattern[p] == '^';
+        if (not) p++;
+        boolean match = false;
+        while (p < pattern.length && pattern[p] != ']') {
+            if (pattern[p] == '\\' && p + 1 < pattern.length) {
+                p++;
+                if (pattern[p] == b) match = true;
+            } else if (p + 2 < pattern.length && pattern[p + 1] == '-' && pattern[p + 2] != ']') {
+                int start = pattern[p] & 0xFF, stop = pattern[p + 2] & 0xFF, v = b & 0xFF;
+                if (start > stop) {
+                    int t = start;
+                    start = stop;
+                    stop = t;
+                }
+                if (v >= start && v <= stop) match = true;
+                p += 2;
+            } else if (pattern[p] == b) {
+                match = true;
+            }
+            p++;
+        }
+        if (not) match = !match;
+        // unterminated class is treated as end of pattern like redis does
+        return match ? Math.min(p + 1, pattern.length) : -1;
+    }
+}
@@ -22,12 +22,73 @@ package com.moilioncircle.redis.replicator.util;
  */
 public class Lzf {
 
+    /**
+     * values up to 1GB are decoded on plain byte[]
+     */
+    private static final long FAST_LIMIT = 1L << 30;
+
     public static ByteArray decode(ByteArray bytes, long len) {
+        if (len <= FAST_LIMIT && bytes.length() <= FAST_LIMIT) {
+            return new ByteArray(decode(bytes.first(), (int) len));
+        }
         ByteArray out = new ByteArray(len);
         decode(bytes, 0, out, 0, len);
         return out;
     }
 
+    /**
+     * @param bytes compressed bytes
+     * @param len   decompressed length
+     * @return decompressed bytes
+     * @since 3.0.0
+     */
+    public static byte[] decode(byte[] bytes, int len) {
+        byte[] out = new byte[len];
+        try {
+            decode(bytes, 0, out, 0, len);
+        } catch (IndexOutOfBoundsException e) {
+            throw new AssertionError("corrupt data: " + e.getMessage());
+        }
+        return out;
+    }
+
+    private static void decode(byte[] in, int inPos, byte[] out, int outPos, int outEnd) {
+        while (outPos < outEnd) {
+            int ctrl = in[inPos++] & 255;
+            if (ctrl < 1 << 5) {
+                // literal run of ctrl + 1 bytes
+                int len = ctrl + 1;
+                System.arraycopy(in, inPos, out, outPos, len);
+                inPos += len;
+                outPos += len;
+                continue;
+            }
+            // back reference of len + 2 bytes
+            int len = ctrl >> 5;
+            if (len == 7) len += in[inPos++] & 255;
+            len += 2;
+            int ref = outPos - ((ctrl & 0x1F) << 8) - 1 - (in[inPos++] & 255);
+            if (ref < 0) throw new AssertionError("corrupt data: back reference before output start, output offset " + outPos);
+            int distance = outPos - ref;
+            if (distance >= len) {
+                System.arraycopy(out, ref, out, outPos, len);
+                outPos += len;
+                continue;
+            }
+            // overlapping. the copied bytes repeat with period of distance, so the copy doubles each round
+            while (len > 0) {
+                int n = Math.min(distance, len);
+                System.arraycopy(out, ref, out, outPos, n);
+                outPos += n;
+                len -= n;
+                distance += n;
+            }
+        }
+        if (outPos != outEnd) {
+            throw new AssertionError("corrupt data: overrun in decompress, input offset " + inPos + ", output offset " + outPos);
+        }
+    }
+
     private static void decode(ByteArray in, long inPos, ByteArray out, long outPos, long outEnd) {
         do {
             int ctrl = in.get(inPos++) & 255;
@@ -4,6 +4,7 @@
  */
 module com.moilioncircle.redis.replicator {
     exports com.moilioncircle.redis.replicator;
+    exports com.moilioncircle.redis.replicator.checkpoint;
     exports com.moilioncircle.redis.replicator.cmd;
     exports com.moilioncircle.redis.replicator.cmd.impl;
     exports com.moilioncircle.redis.replicator.cmd.parser;
@@ -14,10 +15,14 @@ module com.moilioncircle.redis.replicator {
     exports com.moilioncircle.redis.replicator.rdb.datatype;
     exports com.moilioncircle.redis.replicator.rdb.dump;
     exports com.moilioncircle.redis.replicator.rdb.dump.datatype;
+    exports com.moilioncircle.redis.replicator.rdb.filter;
     exports com.moilioncircle.redis.replicator.rdb.iterable;
     exports com.moilioncircle.redis.replicator.rdb.iterable.datatype;
+    exports com.moilioncircle.redis.replicator.rdb.lazy;
+    exports com.moilioncircle.redis.replicator.rdb.lazy.datatype;
     exports com.moilioncircle.redis.replicator.rdb.module;
     exports com.moilioncircle.redis.replicator.rdb.skip;
+    exports com.moilioncircle.redis.replicator.sink;
     exports com.moilioncircle.redis.replicator.util;
     requires org.slf4j;
 }
\ No newline at end of file
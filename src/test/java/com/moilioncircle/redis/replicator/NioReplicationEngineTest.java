@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.CommandFilter;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SetCommand;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.event.PreCommandSyncEvent;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class NioReplicationEngineTest {
+
+    private static final int MASTERS = 8;
+    private static final int COMMANDS = 20;
+
+    @Test
+    public void testEngine() throws Exception {
+        NioReplicationEngine engine = new NioReplicationEngine(2, 2);
+        StubMaster[] masters = new StubMaster[MASTERS];
+        final RedisSocketReplicator[] replicators = new RedisSocketReplicator[MASTERS];
+        final List<List<String>> keys = new ArrayList<>();
+        final AtomicInteger closed = new AtomicInteger();
+        final List<String> syncs = new CopyOnWriteArrayList<>();
+        try {
+            for (int i = 0; i < MASTERS; i++) {
+                masters[i] = new StubMaster();
+                Configuration configuration = Configuration.defaultSetting()
+                        .setReplId("stub").setReplOffset(100).setHeartbeatPeriod(100).setRetryTimeInterval(100);
+                replicators[i] = engine.newReplicator("127.0.0.1", masters[i].port(), configuration);
+                final List<String> list = new CopyOnWriteArrayList<>();
+                keys.add(list);
+                replicators[i].addEventListener(new EventListener() {
+                    @Override
+                    public void onEvent(Replicator replicator, Event event) {
+                        if (event instanceof SetCommand) list.add(Strings.toString(((SetCommand) event).getKey()));
+                        else if (event instanceof PreCommandSyncEvent) syncs.add(Thread.currentThread().getName());
+                    }
+                });
+                replicators[i].addCloseListener(new CloseListener() {
+                    @Override
+                    public void handle(Replicator replicator) {
+                        closed.incrementAndGet();
+                    }
+                });
+                engine.start(replicators[i]);
+            }
+
+            for (int i = 0; i < MASTERS; i++) {
+                List<String> list = keys.get(i);
+                for (int j = 0; j < 200 && list.size() < COMMANDS * 2; j++) Thread.sleep(50);
+                // the first connection is broken by the master and resumed from the offset
+                assertEquals(COMMANDS * 2, list.size());
+                for (int j = 0; j < COMMANDS * 2; j++) assertEquals("k" + (j % COMMANDS), list.get(j));
+                StubMaster master = masters[i];
+                assertEquals(2, master.psyncs.size());
+                assertEquals("PSYNC stub 100", master.psyncs.get(0));
+                assertEquals("PSYNC stub " + (100 + master.bytes), master.psyncs.get(1));
+                assertEquals(100 + master.bytes * 2, replicators[i].getConfiguration().getReplOffset());
+            }
+            // the reconnect runs the handshake on the sync pool, not on the heartbeat scheduler
+            assertEquals(MASTERS * 2, syncs.size());
+            for (String name : syncs) assertTrue(name, name.startsWith("replication-sync-"));
+            Thread.sleep(300);
+            for (StubMaster master : masters) assertTrue(master.acks.get() > 0);
+
+            replicators[0].close();
+            for (int j = 0; j < 100 && closed.get() == 0; j++) Thread.sleep(50);
+            assertEquals(1, closed.get());
+            assertEquals(Status.DISCONNECTED, replicators[0].getStatus());
+            assertEquals(Status.CONNECTED, replicators[1].getStatus());
+        } finally {
+            engine.close();
+            for (StubMaster master : masters) if (master != null) master.close();
+        }
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        NioReplicationEngine engine = new NioReplicationEngine(1, 1);
+        StubMaster master = new StubMaster();
+        try {
+            Configuration configuration = Configuration.defaultSetting().setReplId("stub").setReplOffset(100)
+                    .setHeartbeatPeriod(100).setRetryTimeInterval(100).setUseLazyCommand(true);
+            RedisSocketReplicator replicator = engine.newReplicator("127.0.0.1", master.port(), configuration);
+            replicator.setCommandFilter(new CommandFilter().keys("k1*"));
+            final List<String> keys = new CopyOnWriteArrayList<>();
+            replicator.addEventListener(new EventListener() {
+                @Override
+                public void onEvent(Replicator replicator, Event event) {
+                    if (event instanceof LazyCommand) keys.add(Strings.toString(((LazyCommand) event).getKey()));
+                }
+            });
+            engine.start(replicator);
+            // k1 and k10 to k19 of both connections
+            for (int j = 0; j < 200 && keys.size() < 22; j++) Thread.sleep(50);
+            assertEquals(22, keys.size());
+            for (String key : keys) assertTrue(key, key.startsWith("k1"));
+            assertEquals("PSYNC stub " + (100 + master.bytes), master.psyncs.get(1));
+            assertEquals(100 + master.bytes * 2, replicator.getConfiguration().getReplOffset());
+        } finally {
+            engine.close();
+            master.close();
+        }
+    }
+
+    @Test
+    public void testFilteredSelect() throws Exception {
+        // the master breaks the first connection in db 1, the second one continues in db 1 without a select
+        String[] streams = {"+CONTINUE\r\n*2\r\n$6\r\nSELECT\r\n$1\r\n1\r\n" + set("a"),
+                "+CONTINUE\r\n" + set("b") + "*2\r\n$6\r\nSELECT\r\n$1\r\n0\r\n" + set("c")};
+        for (boolean nio : new boolean[]{false, true}) {
+            NioReplicationEngine engine = new NioReplicationEngine(1, 1);
+            StubStreams master = new StubStreams(streams);
+            Replicator replicator = null;
+            try {
+                Configuration configuration = Configuration.defaultSetting().setReplId("stub").setReplOffset(100)
+                        .setHeartbeatPeriod(100).setRetryTimeInterval(100);
+                if (nio) replicator = engine.newReplicator("127.0.0.1", master.port(), configuration);
+                else replicator = new RedisReplicator("127.0.0.1", master.port(), configuration);
+                replicator.setCommandFilter(new CommandFilter().dbs(0));
+                final List<String> keys = new CopyOnWriteArrayList<>();
+                replicator.addEventListener(new EventListener() {
+                    @Override
+                    public void onEvent(Replicator replicator, Event event) {
+                        if (event instanceof SetCommand) keys.add(Strings.toString(((SetCommand) event).getKey()));
+                    }
+                });
+                if (nio) engine.start((RedisSocketReplicator) replicator);
+                else startDaemon(replicator);
+                for (int j = 0; j < 200 && keys.isEmpty(); j++) Thread.sleep(50);
+                // the filtered select of db 1 is still tracked across the reconnect
+                assertEquals(Arrays.asList("c"), keys);
+                assertEquals(2, master.psyncs.size());
+                assertEquals(0, configuration.getReplStreamDB());
+            } finally {
+                if (replicator != null) replicator.close();
+                engine.close();
+                master.close();
+            }
+        }
+    }
+
+    @Test
+    public void testBlocking() throws Exception {
+        // the spooled rdb keeps the command stream in blocking mode
+        String rdb = "REDIS0006\u00ff\0\0\0\0\0\0\0\0";
+        String[] streams = {"+FULLRESYNC stub 100\r\n$" + rdb.length() + "\r\n" + rdb + set("k")};
+        NioReplicationEngine engine = new NioReplicationEngine(1, 1);
+        StubStreams[] masters = new StubStreams[2];
+        Replicator[] replicators = new Replicator[2];
+        final List<String> keys = new CopyOnWriteArrayList<>();
+        final List<String> writers = new CopyOnWriteArrayList<>();
+        try {
+            for (int i = 0; i < masters.length; i++) {
+                masters[i] = new StubStreams(streams);
+                Configuration configuration = Configuration.defaultSetting().setReplId("stub").setReplOffset(100)
+                        .setHeartbeatPeriod(100).setRetryTimeInterval(100)
+                        .setRdbSpoolDirectory(System.getProperty("java.io.tmpdir"));
+                replicators[i] = new RedisSocketReplicator("127.0.0.1", masters[i].port(), configuration, engine) {
+                    @Override
+                    protected void sendQuietly(byte[] command, byte[]... args) {
+                        writers.add(Thread.currentThread().getName());
+                        super.sendQuietly(command, args);
+                    }
+                };
+                replicators[i].addEventListener(new EventListener() {
+                    @Override
+                    public void onEvent(Replicator replicator, Event event) {
+                        if (event instanceof SetCommand) keys.add(Thread.currentThread().getName());
+                    }
+                });
+                engine.start((RedisSocketReplicator) replicators[i]);
+            }
+            // both run their command stream although the sync pool has one thread
+            for (int j = 0; j < 200 && keys.size() < 2; j++) Thread.sleep(50);
+            assertEquals(2, keys.size());
+            for (String name : keys) assertTrue(name, name.startsWith("replication-blocking-"));
+            // the acks of the blocking socket are not written on the heartbeat scheduler
+            for (int j = 0; j < 100 && writers.isEmpty(); j++) Thread.sleep(50);
+            assertTrue(writers.size() > 0);
+            for (String name : writers) assertTrue(name, name.startsWith("replicator-writer-"));
+        } finally {
+            for (Replicator replicator : replicators) if (replicator != null) replicator.close();
+            engine.close();
+            for (StubStreams master : masters) if (master != null) master.close();
+        }
+    }
+
+    private static String set(String key) {
+        return "*3\r\n$3\r\nSET\r\n$" + key.length() + "\r\n" + key + "\r\n$1\r\nv\r\n";
+    }
+
+    private static void startDaemon(final Replicator replicator) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replicator.open();
+                } catch (IOException e) {
+                    // NOP
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * a master that replies {@code PSYNC} with the n-th stream on the n-th connection. all but the last
+     * connection are closed after the stream.
+     */
+    private static class StubStreams extends StubServer {
+        private final String[] streams;
+        private final List<String> psyncs = new CopyOnWriteArrayList<>();
+
+        private StubStreams(String[] streams) throws IOException {
+            this.streams = streams;
+            start();
+        }
+
+        @Override
+        protected void serve(Socket client) throws IOException {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            while (true) {
+                List<String> args = command(in);
+                if (args == null) return;
+                String name = args.get(0);
+                if (name.equals("PSYNC")) {
+                    psyncs.add(args.get(2));
+                    break;
+                }
+                out.write(name.equals("PING") ? "+PONG\r\n".getBytes() : "+OK\r\n".getBytes());
+                out.flush();
+            }
+            int n = Math.min(psyncs.size(), streams.length) - 1;
+            out.write(streams[n].getBytes(ISO_8859_1));
+            out.flush();
+            if (n < streams.length - 1) return;
+            while (command(in) != null) ;
+        }
+    }
+
+    /**
+     * a master that continues the replication and streams {@code SET k<n> v} in split writes. the first
+     * connection is closed after the stream, the second one stays open and counts the acks.
+     */
+    private static class StubMaster extends StubServer {
+        private final List<String> psyncs = new CopyOnWriteArrayList<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger acks = new AtomicInteger();
+        private volatile long bytes;
+
+        private StubMaster() throws IOException {
+            start();
+        }
+
+        @Override
+        protected void serve(Socket client) throws IOException, InterruptedException {
+            boolean first = connections.getAndIncrement() == 0;
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            while (true) {
+                List<String> args = command(in);
+                if (args == null) return;
+                String name = args.get(0);
+                if (name.equals("PING")) {
+                    out.write("+PONG\r\n".getBytes());
+                } else if (name.equals("PSYNC")) {
+                    psyncs.add(name + " " + args.get(1) + " " + args.get(2));
+                    break;
+                } else {
+                    out.write("+OK\r\n".getBytes());
+                }
+                out.flush();
+            }
+            StringBuilder stream = new StringBuilder();
+            for (int i = 0; i < COMMANDS; i++) {
+                String key = "k" + i;
+                stream.append("*3\r\n$3\r\nSET\r\n$").append(key.length()).append("\r\n").append(key).append("\r\n$1\r\nv\r\n");
+            }
+            byte[] bytes = stream.toString().getBytes();
+            this.bytes = bytes.length;
+            // the first command comes with the reply of PSYNC
+            out.write("+CONTINUE\r\n".getBytes());
+            for (int i = 0; i < bytes.length; i += 13) {
+                out.write(bytes, i, Math.min(13, bytes.length - i));
+                out.flush();
+                if (i > 40) Thread.sleep(1);
+            }
+            if (first) return;
+            while (true) {
+                List<String> args = command(in);
+                if (args == null) return;
+                if (args.get(0).equals("REPLCONF") && args.get(1).equals("ACK")) acks.incrementAndGet();
+            }
+        }
+    }
+}
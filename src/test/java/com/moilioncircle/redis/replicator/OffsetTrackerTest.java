@@ -0,0 +1,363 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.checkpoint.Checkpoint;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SetCommand;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class OffsetTrackerTest {
+
+    @Test
+    public void testOutOfOrder() {
+        OffsetTracker tracker = new OffsetTracker(4, 100, 0);
+        OffsetTracker.Ack a = tracker.track(110, 0);
+        OffsetTracker.Ack b = tracker.track(120, 1);
+        OffsetTracker.Ack c = tracker.track(130, 1);
+        assertEquals(100, tracker.getOffset());
+        c.ack();
+        b.ack();
+        assertEquals(100, tracker.getOffset());
+        a.ack();
+        Checkpoint checkpoint = tracker.toCheckpoint("id");
+        assertEquals(130, checkpoint.getReplOffset());
+        assertEquals(1, checkpoint.getReplStreamDB());
+        assertEquals(0, tracker.getPending());
+
+        // two holders
+        OffsetTracker.Ack d = tracker.track(140, 1);
+        d.retain();
+        d.ack();
+        assertEquals(130, tracker.getOffset());
+        d.ack();
+        d.ack();
+        assertEquals(140, tracker.getOffset());
+    }
+
+    @Test
+    public void testResume() {
+        OffsetTracker tracker = new OffsetTracker(2, 0, 0);
+        OffsetTracker.Ack a = tracker.track(10, 0);
+        tracker.resume(10, 0);
+        assertEquals(1, tracker.getPending());
+
+        // a full resync drops the pending events, their late acks are ignored
+        tracker.resume(1000, 2);
+        assertEquals(1000, tracker.getOffset());
+        OffsetTracker.Ack b = tracker.track(1010, 2);
+        OffsetTracker.Ack c = tracker.track(1020, 2);
+        a.ack();
+        assertEquals(1000, tracker.getOffset());
+        c.ack();
+        assertEquals(1000, tracker.getOffset());
+        b.ack();
+        assertEquals(1020, tracker.getOffset());
+        assertEquals(2, tracker.toCheckpoint("id").getReplStreamDB());
+
+        // a reconnect continues at the watermark, the pending event is dropped
+        OffsetTracker.Ack d = tracker.track(1030, 3);
+        tracker.rewind();
+        assertEquals(0, tracker.getPending());
+        d.ack();
+        assertEquals(1020, tracker.getOffset());
+        tracker.resume(1020, 2);
+        tracker.track(1030, 3).ack();
+        assertEquals(1030, tracker.getOffset());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final OffsetTracker tracker = new OffsetTracker(64, 0, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final Random random = new Random(7);
+        try {
+            for (int i = 1; i <= 10000; i++) {
+                final OffsetTracker.Ack ack = tracker.track(i, 0);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (random.nextInt(8) == 0) Thread.yield();
+                        ack.ack();
+                    }
+                });
+                // never ahead of an unacked event
+                assertTrue(tracker.getOffset() < i || tracker.getPending() == 0);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(10000, tracker.getOffset());
+    }
+
+    @Test
+    public void testListenerAck() throws Exception {
+        StubMaster master = new StubMaster();
+        Configuration configuration = Configuration.defaultSetting().setReplId("stub").setReplOffset(100)
+                .setHeartbeatPeriod(50).setListenerAck(true).setEventDispatchLanes(2);
+        final Replicator replicator = new RedisReplicator("127.0.0.1", master.port(), configuration);
+        final List<OffsetTracker.Ack> deferred = new CopyOnWriteArrayList<>();
+        final List<String> keys = new CopyOnWriteArrayList<>();
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                byte[] raw;
+                if (event instanceof LazyCommand) raw = ((LazyCommand) event).getKey();
+                else if (event instanceof SetCommand) raw = ((SetCommand) event).getKey();
+                else return;
+                String key = Strings.toString(raw);
+                if (key.equals("k1")) deferred.add(replicator.deferAck());
+                keys.add(key);
+            }
+        });
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replicator.open();
+                } catch (IOException ignore) {
+                }
+            }
+        });
+        thread.start();
+        try {
+            for (int i = 0; i < 100 && keys.size() < 3; i++) Thread.sleep(50);
+            assertEquals(3, keys.size());
+            assertEquals(1, deferred.size());
+            assertNotNull(deferred.get(0));
+            // k0 and the ping are processed, k1 is not
+            long k0 = 100 + master.lengths.get(0);
+            assertEquals(k0, master.awaitAck(k0));
+            Thread.sleep(200);
+            assertEquals(k0, master.lastAck());
+
+            deferred.get(0).ack();
+            long end = 100 + master.total;
+            assertEquals(end, master.awaitAck(end));
+            assertEquals(end, replicator.getConfiguration().getReplOffset());
+        } finally {
+            replicator.close();
+            master.close();
+        }
+    }
+
+    @Test
+    public void testListenerFailure() throws Exception {
+        StubMaster master = new StubMaster();
+        Configuration configuration = Configuration.defaultSetting().setReplId("stub").setReplOffset(100)
+                .setHeartbeatPeriod(50).setRetryTimeInterval(10).setListenerAck(true).setEventDispatchLanes(2);
+        final Replicator replicator = new RedisReplicator("127.0.0.1", master.port(), configuration);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<String> keys = new CopyOnWriteArrayList<>();
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                byte[] raw;
+                if (event instanceof LazyCommand) raw = ((LazyCommand) event).getKey();
+                else if (event instanceof SetCommand) raw = ((SetCommand) event).getKey();
+                else return;
+                String key = Strings.toString(raw);
+                // the first delivery of k1 fails on its lane, the parser goes on with k2
+                if (key.equals("k1") && failed.compareAndSet(false, true)) throw new UncheckedIOException(new IOException("k1"));
+                keys.add(key);
+            }
+        });
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replicator.open();
+                } catch (IOException ignore) {
+                }
+            }
+        });
+        thread.start();
+        try {
+            for (int i = 0; i < 100 && !keys.contains("k1"); i++) Thread.sleep(50);
+            // the failure is raised by the dispatch of k2 or the trailing select. the reconnect continues at the watermark before k1,
+            // not after k2, so k1 is delivered again
+            assertTrue(keys.contains("k1"));
+            assertEquals(Arrays.asList(100L, 100 + master.lengths.get(0)), master.psyncs);
+            long end = 100 + master.total;
+            assertEquals(end, master.awaitAck(end));
+            assertEquals(end, replicator.getConfiguration().getReplOffset());
+        } finally {
+            replicator.close();
+            master.close();
+        }
+    }
+
+    @Test
+    public void testBlockedAck() throws Exception {
+        StubMaster master = new StubMaster();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> writers = new CopyOnWriteArrayList<>();
+        Configuration configuration = Configuration.defaultSetting().setReplId("stub").setReplOffset(100).setHeartbeatPeriod(10);
+        final Replicator replicator = new RedisSocketReplicator("127.0.0.1", master.port(), configuration, scheduler) {
+            @Override
+            protected void sendQuietly(byte[] command, byte[]... args) {
+                // the send buffer is full
+                writers.add(Thread.currentThread().getName());
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.sendQuietly(command, args);
+            }
+        };
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replicator.open();
+                } catch (IOException ignore) {
+                }
+            }
+        });
+        thread.start();
+        try {
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            // the blocked ack does not hold the scheduler
+            scheduler.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get(1, TimeUnit.SECONDS);
+            release.countDown();
+            long end = 100 + master.total;
+            assertEquals(end, master.awaitAck(end));
+            // no thread of its own
+            for (String name : writers) assertTrue(name, name.startsWith("replicator-writer-"));
+        } finally {
+            release.countDown();
+            replicator.close();
+            master.close();
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * a master that continues the replication at the offset of {@code PSYNC} with {@code SET k0}, {@code SET k1},
+     * {@code SET k2} and {@code SELECT 0} from offset 100, and records the offsets of {@code PSYNC} and
+     * {@code REPLCONF ACK}.
+     */
+    private static class StubMaster extends StubServer {
+        private final List<Long> lengths = new ArrayList<>();
+        private final List<Long> acks = Collections.synchronizedList(new ArrayList<Long>());
+        private final List<Long> psyncs = new CopyOnWriteArrayList<>();
+        private final String stream;
+        private final long total;
+        private volatile Socket client;
+
+        private StubMaster() throws IOException {
+            String[] commands = {"*3\r\n$3\r\nSET\r\n$2\r\nk0\r\n$1\r\nv\r\n", "*1\r\n$4\r\nPING\r\n",
+                    "*3\r\n$3\r\nSET\r\n$2\r\nk1\r\n$1\r\nv\r\n", "*3\r\n$3\r\nSET\r\n$2\r\nk2\r\n$1\r\nv\r\n",
+                    "*2\r\n$6\r\nSELECT\r\n$1\r\n0\r\n"};
+            StringBuilder stream = new StringBuilder();
+            long sum = 0;
+            for (String command : commands) {
+                stream.append(command);
+                sum += command.length();
+                lengths.add(sum);
+            }
+            // k0 and the ping end at lengths[1]
+            lengths.set(0, lengths.get(1));
+            this.stream = stream.toString();
+            this.total = sum;
+            start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+            Socket client = this.client;
+            if (client != null) client.close();
+        }
+
+        private long lastAck() {
+            synchronized (acks) {
+                return acks.isEmpty() ? -1 : acks.get(acks.size() - 1);
+            }
+        }
+
+        private long awaitAck(long offset) throws InterruptedException {
+            for (int i = 0; i < 100 && lastAck() != offset; i++) Thread.sleep(50);
+            return lastAck();
+        }
+
+        @Override
+        protected void serve(Socket client) throws IOException {
+            this.client = client;
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            while (true) {
+                List<String> args = command(in);
+                if (args == null) return;
+                String name = args.get(0);
+                if (name.equals("PSYNC")) {
+                    long offset = Long.parseLong(args.get(2));
+                    psyncs.add(offset);
+                    break;
+                }
+                out.write(name.equals("PING") ? "+PONG\r\n".getBytes() : "+OK\r\n".getBytes());
+                out.flush();
+            }
+            // the stream starts at offset 100
+            out.write(("+CONTINUE\r\n" + stream.substring((int) (psyncs.get(psyncs.size() - 1) - 100))).getBytes());
+            out.flush();
+            while (true) {
+                List<String> args = command(in);
+                if (args == null) return;
+                if (args.get(0).equals("REPLCONF") && args.get(1).equals("ACK")) acks.add(Long.parseLong(args.get(2)));
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.impl.FlushAllCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SetCommand;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableEventListener;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyValuePair;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+@SuppressWarnings("resource")
+public class PartitionedEventDispatcherTest {
+
+    @Test
+    public void testDispatch() throws Exception {
+        testDispatch(false);
+        testDispatch(true);
+    }
+
+    private void testDispatch(boolean lazy) throws Exception {
+        StringBuilder aof = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            String key = "key" + (i % 10);
+            String value = String.valueOf(i);
+            aof.append("*3\r\n$3\r\nSET\r\n$").append(key.length()).append("\r\n").append(key).append("\r\n$")
+                    .append(value.length()).append("\r\n").append(value).append("\r\n");
+            if (i % 500 == 499) aof.append("*1\r\n$8\r\nFLUSHALL\r\n");
+        }
+        Replicator replicator = new RedisReplicator(new ByteArrayInputStream(aof.toString().getBytes()), FileType.AOF,
+                Configuration.defaultSetting().setUseLazyCommand(lazy).setEventDispatchLanes(4).setEventDispatchQueueSize(16));
+        final Map<String, Integer> last = new ConcurrentHashMap<>();
+        final AtomicInteger acc = new AtomicInteger(0);
+        final AtomicInteger outOfOrder = new AtomicInteger(0);
+        final AtomicInteger barrier = new AtomicInteger(0);
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof LazyCommand) event = ((LazyCommand) event).decode();
+                if (event instanceof SetCommand) {
+                    SetCommand set = (SetCommand) event;
+                    int value = Integer.parseInt(Strings.toString(set.getValue()));
+                    Integer prev = last.put(Strings.toString(set.getKey()), value);
+                    if (prev != null && prev > value) outOfOrder.incrementAndGet();
+                    acc.incrementAndGet();
+                } else if (event instanceof FlushAllCommand) {
+                    // every SET before the barrier is delivered
+                    if (acc.get() != (barrier.incrementAndGet() * 500)) outOfOrder.incrementAndGet();
+                }
+            }
+        });
+        replicator.open();
+        assertEquals(2000, acc.get());
+        assertEquals(4, barrier.get());
+        assertEquals(0, outOfOrder.get());
+        assertEquals(0, replicator.getEventQueueDepths().length);
+    }
+
+    @Test
+    public void testLazyValues() throws Exception {
+        // the lazy values of the iterable visitor are consumed on the parser thread
+        int[] expected = iterate(0);
+        int[] actual = iterate(4);
+        assertTrue(expected[0] > 0);
+        assertEquals(expected[0], actual[0]);
+        assertEquals(expected[1], actual[1]);
+    }
+
+    /**
+     * @return number of batches and number of elements
+     */
+    private int[] iterate(int lanes) throws Exception {
+        final AtomicInteger batches = new AtomicInteger(0);
+        final AtomicInteger elements = new AtomicInteger(0);
+        Replicator replicator = new RedisReplicator(PartitionedEventDispatcherTest.class.getClassLoader().getResourceAsStream("dump-huge-kv.rdb"),
+                FileType.RDB, Configuration.defaultSetting().setEventDispatchLanes(lanes).setEventDispatchQueueSize(2));
+        replicator.setRdbVisitor(new ValueIterableRdbVisitor(replicator, 0));
+        replicator.addEventListener(new ValueIterableEventListener(true, 3, 5, new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (!(event instanceof BatchedKeyValuePair<?, ?>)) return;
+                batches.incrementAndGet();
+                Object value = ((BatchedKeyValuePair<?, ?>) event).getValue();
+                if (value instanceof Collection<?>) elements.addAndGet(((Collection<?>) value).size());
+                else if (value instanceof Map<?, ?>) elements.addAndGet(((Map<?, ?>) value).size());
+                else if (value instanceof byte[]) elements.addAndGet(((byte[]) value).length);
+            }
+        }));
+        replicator.open();
+        return new int[]{batches.get(), elements.get()};
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger sets = new AtomicInteger(0);
+        final AtomicInteger flushes = new AtomicInteger(0);
+        AbstractReplicator replicator = new RedisAofReplicator(new ByteArrayInputStream(new byte[0]), Configuration.defaultSetting());
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof FlushAllCommand) {
+                    flushes.incrementAndGet();
+                    return;
+                }
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sets.incrementAndGet();
+            }
+        });
+        PartitionedEventDispatcher dispatcher = new PartitionedEventDispatcher(replicator, 1, 1);
+        try {
+            // the lane blocks on the first event and the second one fills the queue
+            dispatcher.dispatch(set("a"));
+            dispatcher.dispatch(set("b"));
+            while (dispatcher.getQueueDepths()[0] < 1) Thread.sleep(1);
+
+            // the event is not dropped silently
+            Thread.currentThread().interrupt();
+            try {
+                dispatcher.dispatch(set("c"));
+                fail();
+            } catch (UncheckedIOException e) {
+                assertTrue(e.getCause() instanceof InterruptedIOException);
+            }
+            assertTrue(Thread.interrupted());
+
+            // the barrier does not overtake the queued events
+            Thread.currentThread().interrupt();
+            try {
+                dispatcher.dispatch(new FlushAllCommand());
+                fail();
+            } catch (UncheckedIOException e) {
+                assertTrue(e.getCause() instanceof InterruptedIOException);
+            }
+            assertTrue(Thread.interrupted());
+            assertEquals(0, flushes.get());
+        } finally {
+            release.countDown();
+        }
+        dispatcher.await();
+        dispatcher.close(1000);
+        assertFalse(Thread.interrupted());
+        assertEquals(2, sets.get());
+        assertEquals(0, flushes.get());
+    }
+
+    private static SetCommand set(String key) {
+        return new SetCommand(key.getBytes(), key.getBytes(), null, null, null);
+    }
+}
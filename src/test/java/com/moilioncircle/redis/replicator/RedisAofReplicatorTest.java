@@ -17,6 +17,9 @@
 package com.moilioncircle.redis.replicator;
 
 import com.moilioncircle.redis.replicator.cmd.Command;
+import com.moilioncircle.redis.replicator.cmd.CommandFilter;
+import com.moilioncircle.redis.replicator.cmd.impl.LazyCommand;
+import com.moilioncircle.redis.replicator.cmd.impl.SelectCommand;
 import com.moilioncircle.redis.replicator.cmd.impl.SetCommand;
 import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.EventListener;
@@ -107,4 +110,68 @@ public class RedisAofReplicatorTest {
         assertEquals(71, acc.get());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void openWithFastReplyParser() throws Exception {
+        Replicator replicator = new RedisReplicator(
+                new RateLimitInputStream(RedisSocketReplicatorTest.class.getClassLoader().getResourceAsStream("appendonly2.aof"), 1024 * 1000), FileType.AOF,
+                Configuration.defaultSetting().setUseFastReplyParser(true).setBufferSize(64));
+        final AtomicInteger acc = new AtomicInteger(0);
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof SetCommand && Strings.toString(((SetCommand) event).getKey()).startsWith("test_")) {
+                    acc.incrementAndGet();
+                }
+            }
+        });
+        replicator.open();
+        assertEquals(48000, acc.get());
+    }
+
+    @Test
+    public void openWithLazyCommand() throws Exception {
+        Replicator replicator = new RedisReplicator(
+                new RateLimitInputStream(RedisSocketReplicatorTest.class.getClassLoader().getResourceAsStream("appendonly2.aof"), 1024 * 1000), FileType.AOF,
+                Configuration.defaultSetting().setUseLazyCommand(true));
+        final AtomicInteger acc = new AtomicInteger(0);
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof LazyCommand) {
+                    LazyCommand command = (LazyCommand) event;
+                    if (command.isCommand("SET".getBytes()) && Strings.toString(command.getKey()).startsWith("test_")) {
+                        SetCommand set = command.decode();
+                        assertEquals(Strings.toString(command.getKey()), Strings.toString(set.getKey()));
+                        acc.incrementAndGet();
+                    }
+                }
+            }
+        });
+        replicator.open();
+        assertEquals(48000, acc.get());
+    }
+
+    @Test
+    public void openWithCommandFilter() throws Exception {
+        Replicator replicator = new RedisReplicator(
+                new RateLimitInputStream(RedisSocketReplicatorTest.class.getClassLoader().getResourceAsStream("appendonly2.aof"), 1024 * 1000), FileType.AOF,
+                Configuration.defaultSetting());
+        replicator.setCommandFilter(new CommandFilter().commands("set").keys("test_*"));
+        final AtomicInteger acc = new AtomicInteger(0);
+        final AtomicInteger other = new AtomicInteger(0);
+        replicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof SetCommand && Strings.toString(((SetCommand) event).getKey()).startsWith("test_")) {
+                    acc.incrementAndGet();
+                } else if (event instanceof Command && !(event instanceof SelectCommand)) {
+                    other.incrementAndGet();
+                }
+            }
+        });
+        replicator.open();
+        assertEquals(48000, acc.get());
+        assertEquals(0, other.get());
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.cmd.GenericKeyCommand;
+import com.moilioncircle.redis.replicator.event.ClusterEventListener;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class RedisClusterReplicatorTest {
+
+    @Test
+    public void testOpen() throws Exception {
+        testOpen(null);
+        // the sessions do not hold the only sync thread
+        try (NioReplicationEngine engine = new NioReplicationEngine(1, 1)) {
+            testOpen(engine);
+        }
+    }
+
+    private void testOpen(NioReplicationEngine engine) throws Exception {
+        StubNode a = new StubNode("a"), b = new StubNode("b");
+        try {
+            a.reported = b.reported = new StubNode[]{a, b};
+            final RedisClusterReplicator replicator = new RedisClusterReplicator("redis://127.0.0.1:" + a.port() + "?retries=1&retryTimeInterval=100", engine);
+            replicator.setRefreshPeriod(100);
+            final List<String> events = new CopyOnWriteArrayList<>();
+            final List<String> threads = new CopyOnWriteArrayList<>();
+            replicator.addEventListener(new ClusterEventListener() {
+                @Override
+                public void onEvent(Replicator r, String node, int slot, Event event) {
+                    if (!(event instanceof GenericKeyCommand)) return;
+                    byte[] key = ((GenericKeyCommand) event).getKey();
+                    assertEquals(CRC16.slot(key), slot);
+                    events.add(node + " " + Strings.toString(key));
+                    threads.add(Thread.currentThread().getName());
+                }
+            });
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        replicator.open();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            thread.start();
+
+            await(events, 2);
+            assertTrue(events.contains(a.address() + " a"));
+            assertTrue(events.contains(b.address() + " b"));
+            assertEquals(a.address(), replicator.getNode(0));
+            assertEquals(b.address(), replicator.getNode(CRC16.SLOTS - 1));
+
+            // b leaves, a keeps its session
+            a.reported = b.reported = new StubNode[]{a};
+            for (int i = 0; i < 100 && replicator.getNodes().size() != 1; i++) Thread.sleep(50);
+            assertEquals(Collections.singleton(a.address()), replicator.getNodes());
+            assertEquals(a.address(), replicator.getNode(CRC16.SLOTS - 1));
+
+            // b joins again and gets a new session
+            a.reported = b.reported = new StubNode[]{a, b};
+            await(events, 3);
+            assertEquals(b.address() + " b", events.get(2));
+            assertEquals(1, a.psyncs.get());
+            assertEquals(2, b.psyncs.get());
+
+            replicator.close();
+            thread.join(10000);
+            assertTrue(!thread.isAlive());
+            // the command streams are read by the event loops, no thread per master
+            for (String name : threads) assertTrue(name, name.startsWith("replication-loop-"));
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    private static void await(List<String> events, int size) throws InterruptedException {
+        for (int i = 0; i < 200 && events.size() < size; i++) Thread.sleep(50);
+        assertEquals(size, events.size());
+    }
+
+    /**
+     * a cluster master that sends {@code SET <key> v} once a replica is in sync and a {@code PING} on every ack
+     */
+    private static class StubNode extends StubServer {
+        private final String key;
+        private final AtomicInteger psyncs = new AtomicInteger();
+        private volatile StubNode[] reported;
+
+        private StubNode(String key) throws IOException {
+            this.key = key;
+            start();
+        }
+
+        @Override
+        protected void serve(Socket client) throws IOException {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            boolean sync = false;
+            while (true) {
+                List<String> args = command(in);
+                if (args == null) return;
+                String name = args.get(0);
+                if (sync) {
+                    // ping the replica like a master does, a closed replicator quits on the next command
+                    out.write("*1\r\n$4\r\nPING\r\n".getBytes());
+                } else if (name.equals("CLUSTER")) {
+                    out.write(slots(reported).getBytes());
+                } else if (name.equals("PING")) {
+                    out.write("+PONG\r\n".getBytes());
+                } else if (name.equals("PSYNC")) {
+                    sync = true;
+                    psyncs.incrementAndGet();
+                    String set = "*3\r\n$3\r\nSET\r\n$" + key.length() + "\r\n" + key + "\r\n$1\r\nv\r\n";
+                    out.write(("+CONTINUE\r\n" + set).getBytes());
+                } else {
+                    out.write("+OK\r\n".getBytes());
+                }
+                out.flush();
+            }
+        }
+    }
+}
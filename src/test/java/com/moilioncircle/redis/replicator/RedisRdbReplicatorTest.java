@@ -25,13 +25,18 @@ import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
 import com.moilioncircle.redis.replicator.util.Strings;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Leon Chen
@@ -193,4 +198,81 @@ public class RedisRdbReplicatorTest {
         assertEquals(7, acc1.get());
     }
     
-}
\ No newline at end of file
+    
+    @Test
+    public void testParallel() throws IOException {
+        for (String name : new String[]{"dumpV6.rdb", "dumpV7.rdb", "multiple_databases.rdb", "dump-stream.rdb", "keys_with_expiry.rdb"}) {
+            List<String> expected = parse(name, Configuration.defaultSetting());
+            List<String> ordered = parse(name, Configuration.defaultSetting().setRdbParallelism(4));
+            assertEquals(expected, ordered);
+            assertEquals(expected, parse(name, Configuration.defaultSetting().setUseMappedFile(true)));
+            assertEquals(expected, parse(name, Configuration.defaultSetting().setUseMappedFile(true).setRdbParallelism(4)));
+            List<String> unordered = parse(name, Configuration.defaultSetting().setRdbParallelism(4).setRdbParallelOrdered(false));
+            Collections.sort(expected);
+            Collections.sort(unordered);
+            assertEquals(expected, unordered);
+        }
+    }
+    
+    private static List<String> parse(String name, Configuration configuration) throws IOException {
+        File file = new File(RedisRdbReplicatorTest.class.getClassLoader().getResource(name).getFile());
+        Replicator redisReplicator = new RedisReplicator(file, FileType.RDB, configuration);
+        final List<String> list = new ArrayList<>();
+        redisReplicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof KeyValuePair<?, ?>) {
+                    KeyValuePair<?, ?> kv = (KeyValuePair<?, ?>) event;
+                    list.add(kv.getDb().getDbNumber() + ":" + Strings.toString(kv.getKey()) + ":" + kv.getExpiredValue());
+                }
+                if (event instanceof PostRdbSyncEvent) {
+                    list.add("checksum:" + ((PostRdbSyncEvent) event).getChecksum());
+                }
+            }
+        });
+        redisReplicator.open();
+        return list;
+    }
+    
+    @Test
+    public void testVerifyChecksum() throws IOException {
+        for (Configuration configuration : new Configuration[]{
+                Configuration.defaultSetting().setVerifyRdbChecksum(true),
+                Configuration.defaultSetting().setVerifyRdbChecksum(true).setBufferSize(64),
+                Configuration.defaultSetting().setVerifyRdbChecksum(true).setUseMappedFile(true),
+                Configuration.defaultSetting().setVerifyRdbChecksum(true).setRdbParallelism(2)}) {
+            PostRdbSyncEvent event = verify(new File(RedisRdbReplicatorTest.class.getClassLoader().getResource("dumpV7.rdb").getFile()), configuration);
+            assertTrue(event.isVerified());
+            assertEquals(6576517133597126869L, event.getChecksum());
+            assertEquals(6576517133597126869L, event.getComputedChecksum());
+            assertFalse(event.isChecksumMismatch());
+        }
+        
+        // corrupt the stored checksum
+        byte[] bytes = Files.readAllBytes(new File(RedisRdbReplicatorTest.class.getClassLoader().getResource("dumpV7.rdb").getFile()).toPath());
+        bytes[bytes.length - 1] ^= 1;
+        File file = File.createTempFile("replicator-", ".rdb");
+        try {
+            Files.write(file.toPath(), bytes);
+            PostRdbSyncEvent event = verify(file, Configuration.defaultSetting().setVerifyRdbChecksum(true));
+            assertTrue(event.isChecksumMismatch());
+            assertEquals(6576517133597126869L, event.getComputedChecksum());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+    
+    private static PostRdbSyncEvent verify(File file, Configuration configuration) throws IOException {
+        Replicator redisReplicator = new RedisReplicator(file, FileType.RDB, configuration);
+        final List<PostRdbSyncEvent> list = new ArrayList<>();
+        redisReplicator.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof PostRdbSyncEvent) list.add((PostRdbSyncEvent) event);
+            }
+        });
+        redisReplicator.open();
+        assertEquals(1, list.size());
+        return list.get(0);
+    }
+}
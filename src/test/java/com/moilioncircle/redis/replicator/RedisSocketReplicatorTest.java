@@ -35,11 +35,13 @@ import redis.clients.jedis.params.sortedset.ZAddParams;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 /**
@@ -328,4 +330,45 @@ public class RedisSocketReplicatorTest {
         redisReplicator.open();
         assertEquals(8000, acc.get());
     }
+
+    @Test
+    public void testAck() throws Exception {
+        final AtomicInteger acks = new AtomicInteger();
+        RedisSocketReplicator r1 = new RedisSocketReplicator("localhost", 6379, Configuration.defaultSetting()) {
+            @Override
+            protected void send(byte[] command, byte[]... args) {
+                acks.incrementAndGet();
+            }
+        };
+        RedisSocketReplicator r2 = new RedisSocketReplicator("localhost", 6380, Configuration.defaultSetting());
+        assertSame(r1.executor, r2.executor);
+
+        // the acks queued while the timer is busy are sent once
+        final CountDownLatch gate = new CountDownLatch(1);
+        r1.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 10; i++) r1.ack();
+        gate.countDown();
+        r1.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+        assertEquals(1, acks.get());
+        r1.ack();
+        r1.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+        assertEquals(2, acks.get());
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator;
+
+import com.moilioncircle.redis.replicator.util.CRC16;
+import com.moilioncircle.redis.replicator.util.Strings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A RESP server on a random local port for the tests. Every connection is served by {@link #serve(Socket)}
+ * on its own daemon thread and closed when it returns.
+ *
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public abstract class StubServer implements Runnable, Closeable {
+
+    protected final ServerSocket socket;
+
+    protected StubServer() throws IOException {
+        this.socket = new ServerSocket(0);
+    }
+
+    /**
+     * start accepting on a daemon thread
+     */
+    public void start() {
+        Thread thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    public String address() {
+        return "127.0.0.1:" + port();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (Socket c = client) {
+                        serve(c);
+                    } catch (IOException | InterruptedException e) {
+                        // NOP
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    protected abstract void serve(Socket client) throws IOException, InterruptedException;
+
+    /**
+     * @param in stream of the client
+     * @return arguments of the next command. null at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static List<String> command(InputStream in) throws IOException {
+        String line = line(in);
+        if (line == null) return null;
+        int len = Integer.parseInt(line.substring(1));
+        List<String> args = new ArrayList<>(len);
+        for (int i = 0; i < len; i++) {
+            byte[] arg = new byte[Integer.parseInt(line(in).substring(1))];
+            for (int j = 0; j < arg.length; j++) arg[j] = (byte) in.read();
+            in.read();
+            in.read();
+            args.add(Strings.toString(arg));
+        }
+        return args;
+    }
+
+    /**
+     * @param in stream of the client
+     * @return next line without the CRLF. null at the end of the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static String line(InputStream in) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) return null;
+            builder.append((char) c);
+        }
+        in.read();
+        return builder.toString();
+    }
+
+    public static String join(List<String> args) {
+        StringBuilder builder = new StringBuilder();
+        for (String arg : args) {
+            if (builder.length() > 0) builder.append(' ');
+            builder.append(arg);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param servers masters of the slots, each one owns an equal range
+     * @return reply of {@code CLUSTER SLOTS}
+     */
+    public static String slots(StubServer... servers) {
+        StringBuilder builder = new StringBuilder("*" + servers.length + "\r\n");
+        int step = CRC16.SLOTS / servers.length;
+        for (int i = 0; i < servers.length; i++) {
+            builder.append("*3\r\n:").append(i * step).append("\r\n:").append((i + 1) * step - 1).append("\r\n");
+            builder.append("*2\r\n$9\r\n127.0.0.1\r\n:").append(servers[i].port()).append("\r\n");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.checkpoint;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class FileCheckpointStoreTest {
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("replicator-", ".checkpoint");
+        assertTrue(file.delete());
+        try {
+            FileCheckpointStore store = new FileCheckpointStore(file);
+            assertNull(store.load());
+            store.save(new Checkpoint("8de1787ba490483314a4d30f1c628bc5025eb761", 2443808505L, 0));
+            store.save(new Checkpoint("8de1787ba490483314a4d30f1c628bc5025eb761", 2443808600L, 3));
+            Checkpoint checkpoint = new FileCheckpointStore(file.getPath()).load();
+            assertEquals("8de1787ba490483314a4d30f1c628bc5025eb761", checkpoint.getReplId());
+            assertEquals(2443808600L, checkpoint.getReplOffset());
+            assertEquals(3, checkpoint.getReplStreamDB());
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.cmd.parser.DelParser;
+import com.moilioncircle.redis.replicator.cmd.parser.LRemParser;
+import com.moilioncircle.redis.replicator.cmd.parser.SetParser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class CommandParserTableTest {
+
+    @Test
+    public void testGet() {
+        CommandParserTable table = new CommandParserTable();
+        assertNull(table.get("SET".getBytes()));
+
+        SetParser set = new SetParser();
+        DelParser del = new DelParser();
+        LRemParser lrem = new LRemParser();
+        table.put(CommandName.name("SET"), set);
+        table.put(CommandName.name("del"), del);
+        table.put(CommandName.name("LRem"), lrem);
+
+        assertSame(set, table.get("SET".getBytes()));
+        assertSame(set, table.get("set".getBytes()));
+        assertSame(set, table.get("sEt".getBytes()));
+        assertSame(del, table.get("DEL".getBytes()));
+        assertSame(lrem, table.get("lrem".getBytes()));
+        assertSame(lrem, table.get("xxLREMxx".getBytes(), 2, 4));
+        assertNull(table.get("SETX".getBytes()));
+        assertNull(table.get("SE".getBytes()));
+        assertNull(table.get(new byte[0]));
+
+        assertSame(del, table.remove(CommandName.name("DEL")));
+        assertNull(table.get("del".getBytes()));
+        assertSame(set, table.get("set".getBytes()));
+
+        for (int i = 0; i < 1000; i++) {
+            table.put(CommandName.name("CMD" + i), set);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertSame(set, table.get(("cmd" + i).getBytes()));
+        }
+        assertSame(lrem, table.get("LREM".getBytes()));
+    }
+}
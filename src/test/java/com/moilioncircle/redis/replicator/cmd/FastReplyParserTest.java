@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.io.RedisInputStream;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class FastReplyParserTest {
+
+    @Test
+    public void testParse() throws Exception {
+        {
+            RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(":56789\r\n:-12\r\n".getBytes()));
+            ReplyParser replyParser = new FastReplyParser(in, new RedisCodec());
+            assertEquals(56789L, ((Long) replyParser.parse()).longValue());
+            assertEquals(-12L, ((Long) replyParser.parse()).longValue());
+        }
+        {
+            RedisInputStream in = new RedisInputStream(new ByteArrayInputStream("$-1\r\n*-1\r\n+OK\r\n".getBytes()));
+            ReplyParser replyParser = new FastReplyParser(in, new RedisCodec());
+            assertNull(replyParser.parse());
+            assertNull(replyParser.parse());
+            assertEquals("OK", Strings.toString(replyParser.parse()));
+        }
+        {
+            // buffer boundary
+            String raw = "*3\r\n$3\r\nset\r\n$10\r\nkey1234567\r\n$0\r\n\r\n";
+            for (int size = 1; size < raw.length(); size++) {
+                RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(raw.getBytes()), size);
+                ReplyParser replyParser = new FastReplyParser(in, new RedisCodec());
+                final long[] offset = new long[1];
+                Object[] ary = (Object[]) replyParser.parse(new OffsetHandler() {
+                    @Override
+                    public void handle(long len) {
+                        offset[0] = len;
+                    }
+                });
+                assertEquals(3, ary.length);
+                assertEquals("set", Strings.toString(ary[0]));
+                assertEquals("key1234567", Strings.toString(ary[1]));
+                assertEquals("", Strings.toString(ary[2]));
+                assertEquals(raw.length(), offset[0]);
+            }
+        }
+        {
+            // disk-less replication
+            String raw = "$EOF:0123456789012345678901234567890123456789\r\nREDIS";
+            RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(raw.getBytes()));
+            ReplyParser replyParser = new FastReplyParser(in, new RedisCodec());
+            Object r = replyParser.parse(new BulkReplyHandler() {
+                @Override
+                public byte[] handle(long len, RedisInputStream in) throws IOException {
+                    assertEquals(-1L, len);
+                    return in.readBytes(5).first();
+                }
+            });
+            assertEquals("REDIS", Strings.toString(r));
+        }
+    }
+
+    @Test
+    public void testParseFrame() throws Exception {
+        String raw = "*3\r\n$3\r\nset\r\n$10\r\nkey1234567\r\n$0\r\n\r\n:1\r\n";
+        for (int size = 1; size < raw.length(); size++) {
+            RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(raw.getBytes()), size);
+            ReplyParser replyParser = new FastReplyParser(in, new RedisCodec(), true);
+            final long[] offset = new long[1];
+            CommandFrame frame = (CommandFrame) replyParser.parse(new OffsetHandler() {
+                @Override
+                public void handle(long len) {
+                    offset[0] = len;
+                }
+            });
+            assertEquals(3, frame.size());
+            assertTrue(frame.isEquals(0, "SET".getBytes()));
+            assertFalse(frame.isEquals(0, "SETEX".getBytes()));
+            assertEquals("set", Strings.toString(frame.get(0)));
+            assertEquals("key1234567", Strings.toString(frame.get(1)));
+            assertEquals("", Strings.toString(frame.get(2)));
+            assertEquals("key1234567", Strings.toString(frame.toArray()[1]));
+            assertEquals(raw.length() - 4, offset[0]);
+            assertEquals(1L, ((Long) replyParser.parse()).longValue());
+        }
+    }
+
+    @Test
+    public void testParseFiltered() throws Exception {
+        String raw = "*2\r\n$6\r\nselect\r\n$1\r\n1\r\n" +
+                "*3\r\n$3\r\nset\r\n$4\r\nk:01\r\n$2\r\nv1\r\n" +
+                "*2\r\n$6\r\nselect\r\n$1\r\n0\r\n" +
+                "*3\r\n$3\r\nset\r\n$4\r\nk:02\r\n$2\r\nv2\r\n" +
+                "*3\r\n$3\r\nset\r\n$4\r\nx:03\r\n$2\r\nv3\r\n" +
+                "*2\r\n$3\r\ndel\r\n$4\r\nk:04\r\n" +
+                "*1\r\n$4\r\nPING\r\n";
+        for (int size = 1; size < raw.length(); size++) {
+            for (boolean lazy : new boolean[]{false, true}) {
+                RedisInputStream in = new RedisInputStream(new ByteArrayInputStream(raw.getBytes()), size);
+                FastReplyParser replyParser = new FastReplyParser(in, new RedisCodec(), lazy);
+                replyParser.setCommandFilter(new CommandFilter().commands("SET").dbs(0).keys("k:*"));
+                final long[] offset = new long[1];
+                OffsetHandler handler = new OffsetHandler() {
+                    @Override
+                    public void handle(long len) {
+                        offset[0] += len;
+                    }
+                };
+                // select is never filtered, even of a rejected db
+                Object select = replyParser.parse(handler);
+                assertEquals("1", Strings.toString(lazy ? ((CommandFrame) select).get(1) : ((Object[]) select)[1]));
+                assertEquals(1, replyParser.getDb());
+                assertSame(FastReplyParser.FILTERED, replyParser.parse(handler));
+                select = replyParser.parse(handler);
+                assertEquals("0", Strings.toString(lazy ? ((CommandFrame) select).get(1) : ((Object[]) select)[1]));
+                Object set = replyParser.parse(handler);
+                Object[] ary = lazy ? ((CommandFrame) set).toArray() : (Object[]) set;
+                assertEquals(3, ary.length);
+                assertEquals("k:02", Strings.toString(ary[1]));
+                assertEquals("v2", Strings.toString(ary[2]));
+                assertSame(FastReplyParser.FILTERED, replyParser.parse(handler));
+                assertSame(FastReplyParser.FILTERED, replyParser.parse(handler));
+                assertNotSame(FastReplyParser.FILTERED, replyParser.parse(handler));
+                assertEquals(raw.length(), offset[0]);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.cmd;
+
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class ReplyDecoderTest {
+
+    private static final String STREAM = "\n*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$4\r\nv\r\nv\r\n" +
+            ":56789\r\n+OK\r\n$-1\r\n*0\r\n*2\r\n$6\r\nSELECT\r\n$1\r\n0\r\n";
+
+    @Test
+    public void testDecode() {
+        // whole stream, then one byte at a time
+        for (int chunk : new int[]{STREAM.length(), 1, 7}) {
+            ReplyDecoder decoder = new ReplyDecoder();
+            List<Object> replies = new ArrayList<>();
+            List<Long> lengths = new ArrayList<>();
+            byte[] bytes = STREAM.getBytes();
+            for (int i = 0; i < bytes.length; i += chunk) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i));
+                while (decoder.decode(buffer)) {
+                    replies.add(decoder.getReply());
+                    lengths.add(decoder.getLength());
+                }
+                assertFalse(buffer.hasRemaining());
+            }
+            assertEquals(6, replies.size());
+            Object[] set = (Object[]) replies.get(0);
+            assertEquals("SET", Strings.toString(set[0]));
+            assertEquals("k", Strings.toString(set[1]));
+            assertEquals("v\r\nv", Strings.toString(set[2]));
+            assertEquals(56789L, replies.get(1));
+            assertEquals("OK", Strings.toString(replies.get(2)));
+            assertNull(replies.get(3));
+            assertArrayEquals(new Object[0], (Object[]) replies.get(4));
+            assertEquals("0", Strings.toString(((Object[]) replies.get(5))[1]));
+
+            long total = 0;
+            for (long length : lengths) total += length;
+            assertEquals(bytes.length, total);
+            // the leading newline belongs to the first reply
+            assertEquals(1 + "*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$4\r\nv\r\nv\r\n".length(), (long) lengths.get(0));
+        }
+    }
+}
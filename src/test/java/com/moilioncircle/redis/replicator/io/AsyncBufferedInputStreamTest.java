@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class AsyncBufferedInputStreamTest {
+
+    @Test
+    public void read() throws Exception {
+        final Random random = new Random(0);
+        final byte[] bytes = new byte[4 * 1024 * 1024];
+        random.nextBytes(bytes);
+        // chunked source and a ring size that is not a power of 2
+        InputStream source = new java.io.ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1 + random.nextInt(4096)));
+            }
+        };
+        AsyncBufferedInputStream in = new AsyncBufferedInputStream(source, 1000);
+        byte[] actual = new byte[bytes.length];
+        Random reads = new Random(1);
+        int off = 0;
+        while (off < actual.length) {
+            if (reads.nextInt(10) == 0) {
+                actual[off++] = (byte) in.read();
+            } else {
+                off += in.read(actual, off, Math.min(actual.length - off, 1 + reads.nextInt(3000)));
+            }
+        }
+        assertArrayEquals(bytes, actual);
+        try {
+            in.read();
+            fail();
+        } catch (EOFException e) {
+        }
+        in.close();
+    }
+
+    @Test
+    public void close() throws Exception {
+        InputStream source = new InputStream() {
+            private volatile boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                while (!closed) Thread.yield();
+                return -1;
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+        AsyncBufferedInputStream in = new AsyncBufferedInputStream(source, 1000);
+        in.close();
+        try {
+            in.read();
+            fail();
+        } catch (EOFException e) {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import com.moilioncircle.redis.replicator.util.CompressLZF;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class LzfInputStreamTest {
+
+    @Test
+    public void testRead() throws IOException {
+        Random random = new Random(0);
+        for (int size : new int[]{31, 33, 8192, 70000, 300000}) {
+            // random, runs of one byte and short repeated patterns
+            byte[][] inputs = new byte[3][size];
+            random.nextBytes(inputs[0]);
+            Arrays.fill(inputs[1], (byte) 'a');
+            for (int i = 0; i < size; i++) inputs[2][i] = (byte) (i % 3 == 0 ? random.nextInt(4) : 'x' + i % 7);
+            for (byte[] bytes : inputs) {
+                byte[] compressed = compress(bytes);
+                for (int chunk : new int[]{1, 7, 4096, 100000}) {
+                    RedisInputStream in = stream(compressed);
+                    LzfInputStream lzf = new LzfInputStream(in, compressed.length, bytes.length);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buf = new byte[chunk];
+                    int n;
+                    while ((n = chunk == 1 ? single(lzf, buf) : lzf.read(buf, 0, chunk)) != -1) out.write(buf, 0, n);
+                    assertArrayEquals(bytes, out.toByteArray());
+                    // the trailing byte is left to the rdb parser
+                    assertEquals(0xFF, in.read());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        byte[] bytes = new byte[100000];
+        new Random(1).nextBytes(bytes);
+        byte[] compressed = compress(bytes);
+        RedisInputStream in = stream(compressed);
+        LzfInputStream lzf = new LzfInputStream(in, compressed.length, bytes.length);
+        assertEquals(bytes[0] & 0xff, lzf.read());
+        lzf.close();
+        assertEquals(-1, lzf.read());
+        assertEquals(0xFF, in.read());
+    }
+
+    private static int single(LzfInputStream in, byte[] buf) throws IOException {
+        int b = in.read();
+        if (b == -1) return -1;
+        buf[0] = (byte) b;
+        return 1;
+    }
+
+    private static RedisInputStream stream(byte[] compressed) {
+        byte[] bytes = Arrays.copyOf(compressed, compressed.length + 1);
+        bytes[compressed.length] = (byte) 0xFF;
+        return new RedisInputStream(new java.io.ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] compress(byte[] in) {
+        CompressLZF lzf = new CompressLZF();
+        byte[] out = new byte[in.length * 2 + 64];
+        int len = lzf.compress(in, in.length, out, 0);
+        return Arrays.copyOf(out, len);
+    }
+}
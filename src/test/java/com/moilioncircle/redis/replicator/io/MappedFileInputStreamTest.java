@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import com.moilioncircle.redis.replicator.util.ByteArray;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class MappedFileInputStreamTest {
+
+    @Test
+    public void testRead() throws Exception {
+        byte[] payload = new byte[100000];
+        new Random(0).nextBytes(payload);
+        File file = File.createTempFile("replicator-", ".rdb");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(payload);
+            }
+            // windows smaller and bigger than the buffer
+            for (int window : new int[]{1000, 3001, 1 << 20}) {
+                try (RedisInputStream in = new RedisInputStream(new MappedFileInputStream(file, window), 512)) {
+                    int position = 0;
+                    assertEquals(payload[position++] & 0xFF, in.read());
+
+                    byte[] bytes = new byte[5000];
+                    in.readFully(bytes, 0, bytes.length);
+                    assertArrayEquals(Arrays.copyOfRange(payload, position, position += bytes.length), bytes);
+
+                    ByteArray array = in.readBytes(2500);
+                    assertArrayEquals(Arrays.copyOfRange(payload, position, position += 2500), array.first());
+
+                    in.skip(7000);
+                    position += 7000;
+                    assertEquals(position, in.position());
+
+                    // crossing a window
+                    ByteBuffer slice = in.slice(4000);
+                    assertTrue(slice.isReadOnly());
+                    bytes = new byte[4000];
+                    slice.get(bytes);
+                    assertArrayEquals(Arrays.copyOfRange(payload, position, position += 4000), bytes);
+
+                    // inside the buffer
+                    in.peek();
+                    slice = in.slice(10);
+                    bytes = new byte[10];
+                    slice.get(bytes);
+                    assertArrayEquals(Arrays.copyOfRange(payload, position, position += 10), bytes);
+
+                    in.skip(payload.length - position - 1);
+                    assertEquals(payload[payload.length - 1] & 0xFF, in.read());
+                    try {
+                        in.read();
+                        fail();
+                    } catch (EOFException e) {
+                    }
+                }
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import com.moilioncircle.redis.replicator.util.ByteBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class RedisInputStreamTest {
+
+    @Test
+    public void testCapture() throws Exception {
+        byte[] payload = new byte[20000];
+        new Random(0).nextBytes(payload);
+        final ByteBuilder captured = ByteBuilder.allocate(128);
+        final int[] calls = new int[1];
+        RawByteTap tap = new RawByteTap() {
+            @Override
+            public void handle(byte[] bytes, int offset, int length) {
+                captured.put(bytes, offset, length);
+                calls[0]++;
+            }
+        };
+        try (RedisInputStream in = new RedisInputStream(new java.io.ByteArrayInputStream(payload), 256)) {
+            in.read();
+            in.startCapture(tap);
+            int position = 1;
+            // inside the buffer and across refills
+            for (int i = 0; i < 1000; i++) in.read();
+            // bypasses the buffer
+            byte[] bytes = new byte[5000];
+            in.readFully(bytes, 0, bytes.length);
+            in.readBytes(3000);
+            // a skip without notify is not captured
+            in.skip(100, false);
+            in.skip(2000, false);
+            in.stopCapture(tap);
+            in.read();
+
+            byte[] expected = new byte[1000 + 5000 + 3000];
+            System.arraycopy(payload, position, expected, 0, expected.length);
+            assertArrayEquals(expected, captured.array());
+            assertEquals(11102, in.position());
+            // chunks instead of bytes
+            assertEquals(true, calls[0] < 100);
+
+            // a skip with notify is captured
+            in.startCapture(tap);
+            in.skip(700);
+            in.flushCapture();
+            assertArrayEquals(Arrays.copyOfRange(payload, 11102, 11802), Arrays.copyOfRange(captured.array(), expected.length, expected.length + 700));
+            in.stopCapture(tap);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class SpooledInputStreamTest {
+
+    @Test
+    public void testTransferTo() throws Exception {
+        byte[] payload = new byte[100000];
+        new Random(0).nextBytes(payload);
+        byte[] mark = "0123456789012345678901234567890123456789".getBytes();
+        byte[] tail = "*1\r\n$4\r\nPING\r\n".getBytes();
+        for (int size : new int[]{7, 4096, 200000}) {
+            // with length
+            {
+                RedisInputStream in = new RedisInputStream(new java.io.ByteArrayInputStream(concat(payload, tail)), size);
+                File file = File.createTempFile("replicator-", ".rdb");
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    FileChannel channel = raf.getChannel();
+                    assertEquals(payload.length, in.transferTo(channel, payload.length));
+                }
+                assertArrayEquals(payload, read(file));
+                assertEquals('*', in.read());
+                assertTrue(file.delete());
+            }
+            // with delimiter. the partial match "0123" must not end the transfer
+            {
+                byte[] body = concat("0123".getBytes(), payload);
+                RedisInputStream in = new RedisInputStream(new java.io.ByteArrayInputStream(concat(body, mark, tail)), size);
+                File file = File.createTempFile("replicator-", ".rdb");
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    FileChannel channel = raf.getChannel();
+                    assertEquals(body.length, in.transferTo(channel, mark));
+                }
+                assertArrayEquals(body, read(file));
+                assertEquals('*', in.read());
+                assertTrue(file.delete());
+            }
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        byte[] bytes = new byte[1024 * 1024];
+        new Random(0).nextBytes(bytes);
+        File file = File.createTempFile("replicator-", ".aof");
+        SpooledInputStream in = new SpooledInputStream(new java.io.ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        }, file);
+        byte[] actual = new byte[bytes.length];
+        int off = 0;
+        while (off < actual.length / 2) off += in.read(actual, off, Math.min(333, actual.length - off));
+        in.stop();
+        while (off < actual.length) off += in.read(actual, off, actual.length - off);
+        assertArrayEquals(bytes, actual);
+        assertEquals(0, in.spooled());
+        in.close();
+        assertFalse(file.exists());
+    }
+
+    @Test(timeout = 10000)
+    public void testQuietSource() throws Exception {
+        // the master sends a command and then nothing, the spool must not wait for a full buffer
+        final BlockingQueue<byte[]> socket = new LinkedBlockingQueue<>();
+        RedisInputStream source = new RedisInputStream(new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    // one packet per read, like a socket
+                    byte[] packet = socket.take();
+                    System.arraycopy(packet, 0, b, off, packet.length);
+                    return packet.length;
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }, 8);
+        byte[] ping = "*1\r\n$4\r\nPING\r\n".getBytes();
+        socket.add(ping);
+        File file = File.createTempFile("replicator-", ".aof");
+        SpooledInputStream in = new SpooledInputStream(source, file);
+        byte[] actual = new byte[ping.length];
+        int off = 0;
+        while (off < actual.length) off += in.read(actual, off, actual.length - off);
+        assertArrayEquals(ping, actual);
+        assertEquals(ping.length, source.position());
+
+        // after stop the worker exits with the next bytes, then the stream reads the source directly
+        in.stop();
+        socket.add(ping);
+        off = 0;
+        while (off < actual.length) off += in.read(actual, off, actual.length - off);
+        assertArrayEquals(ping, actual);
+        socket.add(ping);
+        off = 0;
+        while (off < actual.length) off += in.read(actual, off, actual.length - off);
+        assertArrayEquals(ping, actual);
+        assertEquals(0, in.spooled());
+        in.close();
+        assertFalse(file.exists());
+    }
+
+    private static byte[] read(File file) throws Exception {
+        byte[] bytes = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int off = 0;
+            while (off < bytes.length) off += in.read(bytes, off, bytes.length - off);
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        int len = 0;
+        for (byte[] array : arrays) len += array.length;
+        byte[] r = Arrays.copyOf(arrays[0], len);
+        int off = arrays[0].length;
+        for (int i = 1; i < arrays.length; i++) {
+            System.arraycopy(arrays[i], 0, r, off, arrays[i].length);
+            off += arrays[i].length;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.event.ExpiredKeySkippedEvent;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.filter.FilterRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.filter.RdbFilter;
+import com.moilioncircle.redis.replicator.util.Clock;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class SkipExpiredKeysTest {
+
+    private static final String[] RESOURCES = {"keys_with_expiry.rdb", "dump-lru.rdb", "dump-lfu.rdb", "dictionary.rdb"};
+
+    @Test
+    public void testSkip() throws IOException {
+        for (String file : RESOURCES) {
+            for (boolean filter : new boolean[]{false, true}) {
+                List<Event> all = parse(file, Configuration.defaultSetting(), filter);
+                int expiring = 0;
+                for (Event event : all) {
+                    if (((KeyValuePair<?, ?>) event).getExpiredType() != ExpiredType.NONE) expiring++;
+                }
+
+                // every key has expired
+                Configuration configuration = Configuration.defaultSetting().setSkipExpiredKeys(true)
+                        .setNotifySkippedExpiredKeys(true).setClock(clock(Long.MAX_VALUE));
+                List<Event> events = parse(file, configuration, filter);
+                assertEquals(file, all.size(), events.size());
+                int skipped = 0;
+                for (Event event : events) {
+                    if (event instanceof ExpiredKeySkippedEvent) skipped++;
+                    else assertEquals(file, ExpiredType.NONE, ((KeyValuePair<?, ?>) event).getExpiredType());
+                }
+                assertEquals(file, expiring, skipped);
+
+                // without notification
+                configuration.setNotifySkippedExpiredKeys(false);
+                assertEquals(file, all.size() - expiring, parse(file, configuration, filter).size());
+
+                // no key has expired
+                configuration.setClock(clock(0L));
+                assertEquals(file, all.size(), parse(file, configuration, filter).size());
+            }
+        }
+    }
+
+    @Test
+    public void testEvent() throws IOException {
+        Configuration configuration = Configuration.defaultSetting().setSkipExpiredKeys(true)
+                .setNotifySkippedExpiredKeys(true).setClock(clock(1528592665232L));
+        for (boolean filter : new boolean[]{false, true}) {
+            List<Event> events = parse("dump-lru.rdb", configuration, filter);
+            ExpiredKeySkippedEvent skipped = null;
+            for (Event event : events) {
+                if (event instanceof ExpiredKeySkippedEvent) skipped = (ExpiredKeySkippedEvent) event;
+            }
+            assertTrue(skipped != null);
+            assertEquals(1528592665231L, skipped.getExpiredMs());
+            assertEquals(0L, skipped.getDb().getDbNumber());
+        }
+    }
+
+    private static Clock clock(final long now) {
+        return new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    private static List<Event> parse(String file, Configuration configuration, boolean filter) throws IOException {
+        final List<Event> events = new ArrayList<>();
+        Replicator r = new RedisReplicator(SkipExpiredKeysTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, configuration);
+        if (filter) r.setRdbVisitor(new FilterRdbVisitor(r, new RdbFilter()));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof KeyValuePair<?, ?> || event instanceof ExpiredKeySkippedEvent) events.add(event);
+            }
+        });
+        r.open();
+        return events;
+    }
+}
@@ -10,9 +10,19 @@ import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
 import com.moilioncircle.redis.replicator.util.Strings;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.moilioncircle.redis.replicator.util.CRC64.crc64;
+import static com.moilioncircle.redis.replicator.util.CRC64.longToByteArray;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class DumpRdbVisitorTest {
@@ -60,4 +70,85 @@ public class DumpRdbVisitorTest {
         assertArrayEquals(list, alist.get());
         assertArrayEquals(map, amap.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSink() throws Exception {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Replicator r = new RedisReplicator(DumpRdbVisitorTest.class.getClassLoader().getResourceAsStream("dump-huge-kv.rdb"), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new DumpRdbVisitor(r));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof DumpKeyValuePair) {
+                    DumpKeyValuePair dkv = (DumpKeyValuePair) event;
+                    assertEquals(dkv.getValue().length, dkv.getLength());
+                    expected.write(dkv.getValue(), 0, dkv.getValue().length);
+                }
+            }
+        });
+        r.open();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final AtomicLong length = new AtomicLong();
+        r = new RedisReplicator(DumpRdbVisitorTest.class.getClassLoader().getResourceAsStream("dump-huge-kv.rdb"), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new DumpRdbVisitor(r, -1, out));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof DumpKeyValuePair) {
+                    DumpKeyValuePair dkv = (DumpKeyValuePair) event;
+                    assertNull(dkv.getValue());
+                    // the payload of the key is complete
+                    assertEquals(length.addAndGet(dkv.getLength()), out.size());
+                }
+            }
+        });
+        r.open();
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+
+        // the sink is shared by the keys, a parallel rdb file is parsed sequentially
+        final Thread thread = Thread.currentThread();
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                assertSame(thread, Thread.currentThread());
+                super.write(b, off, len);
+            }
+        };
+        File file = new File(DumpRdbVisitorTest.class.getClassLoader().getResource("dump-huge-kv.rdb").getFile());
+        r = new RedisReplicator(file, FileType.RDB, Configuration.defaultSetting().setRdbParallelism(4));
+        r.setRdbVisitor(new DumpRdbVisitor(r, -1, sink));
+        r.open();
+        assertArrayEquals(expected.toByteArray(), sink.toByteArray());
+    }
+
+    @Test
+    public void testLargeString() throws Exception {
+        // a string of 2MB behind a 32 bit length header, checksum 0 is not verified
+        byte[] value = new byte[2 << 20];
+        Arrays.fill(value, (byte) 'v');
+        ByteArrayOutputStream rdb = new ByteArrayOutputStream();
+        rdb.write("REDIS0006".getBytes());
+        rdb.write(new byte[]{(byte) 0xFE, 0, 0, 3, 'b', 'i', 'g', (byte) 0x80, 0, 0x20, 0, 0});
+        rdb.write(value);
+        rdb.write(new byte[]{(byte) 0xFF, 0, 0, 0, 0, 0, 0, 0, 0});
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(new byte[]{0, (byte) 0x80, 0, 0x20, 0, 0});
+        expected.write(value);
+        expected.write(new byte[]{6, 0});
+        expected.write(longToByteArray(crc64(expected.toByteArray())));
+
+        final AtomicReference<byte[]> actual = new AtomicReference<>();
+        Replicator r = new RedisReplicator(new ByteArrayInputStream(rdb.toByteArray()), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new DumpRdbVisitor(r, -1, 16));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof DumpKeyValuePair) actual.set(((DumpKeyValuePair) event).getValue());
+            }
+        });
+        r.open();
+        assertArrayEquals(expected.toByteArray(), actual.get());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.filter;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.rdb.ModuleTest;
+import com.moilioncircle.redis.replicator.rdb.datatype.ContextKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.iterable.ValueIterableRdbVisitor;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.moilioncircle.redis.replicator.Constants.RDB_TYPE_STRING;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class FilterRdbVisitorTest {
+
+    private static final String[] RESOURCES = {"dictionary.rdb",
+            "easily_compressible_string_key.rdb", "empty_database.rdb",
+            "hash_as_ziplist.rdb", "integer_keys.rdb", "intset_16.rdb",
+            "intset_32.rdb", "intset_64.rdb", "keys_with_expiry.rdb",
+            "linkedlist.rdb", "multiple_databases.rdb",
+            "parser_filters.rdb", "rdb_version_5_with_checksum.rdb", "regular_set.rdb",
+            "regular_sorted_set.rdb", "sorted_set_as_ziplist.rdb", "uncompressible_string_keys.rdb",
+            "ziplist_that_compresses_easily.rdb", "ziplist_that_doesnt_compress.rdb",
+            "ziplist_with_integers.rdb", "zipmap_that_compresses_easily.rdb",
+            "zipmap_that_doesnt_compress.rdb", "zipmap_with_big_values.rdb", "rdb_version_8_with_64b_length_and_scores.rdb",
+            "non_ascii_values.rdb", "binarydump.rdb", "module.rdb", "dump-stream.rdb", "dump-lfu.rdb", "dump-lru.rdb"};
+
+    @Test
+    public void testAcceptAll() throws IOException {
+        for (String file : RESOURCES) {
+            List<KeyValuePair<?, ?>> expected = parse(file, null);
+            List<KeyValuePair<?, ?>> actual = parse(file, new RdbFilter());
+            assertEquals(file, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                KeyValuePair<?, ?> e = expected.get(i), a = actual.get(i);
+                assertArrayEquals(file, (byte[]) e.getKey(), (byte[]) a.getKey());
+                assertEquals(file, e.getValueRdbType(), a.getValueRdbType());
+                assertEquals(file, e.getExpiredValue(), a.getExpiredValue());
+                assertEquals(file, e.getEvictValue(), a.getEvictValue());
+                assertEquals(file, e.getDb().getDbNumber(), a.getDb().getDbNumber());
+            }
+        }
+    }
+
+    @Test
+    public void testRejectAll() throws IOException {
+        RdbFilter none = new RdbFilter() {
+            @Override
+            public boolean accept(byte[] key, ContextKeyValuePair context) {
+                return false;
+            }
+        };
+        for (String file : RESOURCES) {
+            assertEquals(file, 0, parse(file, none).size());
+            assertEquals(file, 0, parse(file, new RdbFilter().dbs(99)).size());
+        }
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        // db 0 and db 2
+        List<KeyValuePair<?, ?>> kvs = parse("multiple_databases.rdb", new RdbFilter().dbs(2));
+        assertEquals(1, kvs.size());
+        assertEquals("key_in_second_database", Strings.toString(kvs.get(0).getKey()));
+
+        List<KeyValuePair<?, ?>> all = parse("keys_with_expiry.rdb", null);
+        kvs = parse("keys_with_expiry.rdb", new RdbFilter().keys("expires_ms_precision*"));
+        int n = 0;
+        for (KeyValuePair<?, ?> kv : all) {
+            if (Strings.toString(kv.getKey()).startsWith("expires_ms_precision")) n++;
+        }
+        assertTrue(n > 0);
+        assertEquals(n, kvs.size());
+        assertEquals(all.get(0).getExpiredValue(), kvs.get(0).getExpiredValue());
+
+        kvs = parse("hash_as_ziplist.rdb", new RdbFilter().types(RDB_TYPE_STRING));
+        assertEquals(0, kvs.size());
+    }
+
+    @Test
+    public void testDump() throws IOException {
+        final List<DumpKeyValuePair> dumps = new ArrayList<>();
+        Replicator r = new RedisReplicator(FilterRdbVisitorTest.class.getClassLoader().getResourceAsStream("dictionary.rdb"), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new FilterRdbVisitor(r, new DumpRdbVisitor(r), new RdbFilter()));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof DumpKeyValuePair) dumps.add((DumpKeyValuePair) event);
+            }
+        });
+        r.open();
+        assertEquals(1, dumps.size());
+        assertEquals("force_dictionary", Strings.toString(dumps.get(0).getKey()));
+        assertTrue(dumps.get(0).getValue().length > 0);
+    }
+
+    @Test
+    public void testValueIterable() throws IOException {
+        // the wrapped visitor reads the values lazily, a parallel rdb file is parsed sequentially
+        assertEquals(iterate(0), iterate(4));
+    }
+
+    private static List<String> iterate(int parallelism) throws IOException {
+        final List<String> values = new ArrayList<>();
+        File file = new File(FilterRdbVisitorTest.class.getClassLoader().getResource("dump-huge-kv.rdb").getFile());
+        Replicator r = new RedisReplicator(file, FileType.RDB, Configuration.defaultSetting().setRdbParallelism(parallelism));
+        r.setRdbVisitor(new FilterRdbVisitor(r, new ValueIterableRdbVisitor(r), new RdbFilter()));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (!(event instanceof KeyValuePair<?, ?>)) return;
+                KeyValuePair<?, ?> kv = (KeyValuePair<?, ?>) event;
+                int n = 0;
+                if (kv.getValue() instanceof Iterator<?>) {
+                    for (Iterator<?> it = (Iterator<?>) kv.getValue(); it.hasNext(); it.next()) n++;
+                }
+                values.add(Strings.toString(kv.getKey()) + ":" + n);
+            }
+        });
+        r.open();
+        return values;
+    }
+
+    private static List<KeyValuePair<?, ?>> parse(String file, RdbFilter filter) throws IOException {
+        final List<KeyValuePair<?, ?>> kvs = new ArrayList<>();
+        Replicator r = new RedisReplicator(FilterRdbVisitorTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, Configuration.defaultSetting());
+        r.addModuleParser("hellotype", 0, new ModuleTest.HelloTypeModuleParser());
+        if (filter != null) {
+            r.setRdbVisitor(new FilterRdbVisitor(r, filter));
+        }
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof KeyValuePair<?, ?>) kvs.add((KeyValuePair<?, ?>) event);
+            }
+        });
+        r.open();
+        return kvs;
+    }
+}
@@ -6,17 +6,29 @@ import com.moilioncircle.redis.replicator.RedisReplicator;
 import com.moilioncircle.redis.replicator.Replicator;
 import com.moilioncircle.redis.replicator.event.Event;
 import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueStream;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyStringValueString;
+import com.moilioncircle.redis.replicator.rdb.datatype.Stream;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueHash;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueList;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueSet;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueStream;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueString;
 import com.moilioncircle.redis.replicator.rdb.iterable.datatype.BatchedKeyStringValueZSet;
+import com.moilioncircle.redis.replicator.rdb.iterable.datatype.KeyStringValueInputStream;
+import com.moilioncircle.redis.replicator.util.Strings;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.fail;
 
 public class ValueIterableRdbListenerTest {
@@ -114,6 +126,164 @@ public class ValueIterableRdbListenerTest {
         } catch (Exception e) {
             fail();
         }
-        assertEquals(5, stream.get());
+        // 5 streams, 2 of them with more than 128 entries and groups in 3 batches of 64
+        assertEquals(9, stream.get());
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testStringStream() throws Exception {
+        String[] files = {"easily_compressible_string_key.rdb", "uncompressible_string_keys.rdb", "non_ascii_values.rdb",
+                "integer_keys.rdb", "dump-huge-kv.rdb", "multiple_databases.rdb"};
+        final AtomicInteger sliced = new AtomicInteger(0);
+        for (String file : files) {
+            final Map<String, byte[]> expected = new LinkedHashMap<>();
+            Replicator r = new RedisReplicator(ValueIterableRdbListenerTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, Configuration.defaultSetting());
+            r.addEventListener(new EventListener() {
+                @Override
+                public void onEvent(Replicator replicator, Event event) {
+                    if (event instanceof KeyStringValueString) {
+                        KeyStringValueString kv = (KeyStringValueString) event;
+                        expected.put(Strings.toString(kv.getKey()), kv.getValue());
+                    }
+                }
+            });
+            r.open();
+            
+            // stream every string in chunks of 3 bytes, from a mapped file as well
+            for (boolean mapped : new boolean[]{false, true}) {
+                final Map<String, ByteArrayOutputStream> actual = new LinkedHashMap<>();
+                final AtomicInteger streamed = new AtomicInteger(0);
+                if (mapped) {
+                    File rdb = new File(ValueIterableRdbListenerTest.class.getClassLoader().getResource(file).getFile());
+                    r = new RedisReplicator(rdb, FileType.RDB, Configuration.defaultSetting().setUseMappedFile(true));
+                } else {
+                    r = new RedisReplicator(ValueIterableRdbListenerTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, Configuration.defaultSetting());
+                }
+                r.setRdbVisitor(new ValueIterableRdbVisitor(r, 0));
+                r.addEventListener(new EventListener() {
+                    @Override
+                    public void onEvent(Replicator replicator, Event event) {
+                        if (!(event instanceof KeyStringValueInputStream)) return;
+                        streamed.incrementAndGet();
+                        String type = ((KeyStringValueInputStream) event).getValue().getClass().getSimpleName();
+                        if (type.equals("BufferInputStream")) sliced.incrementAndGet();
+                    }
+                });
+                r.addEventListener(new ValueIterableEventListener(true, 64, 3, new EventListener() {
+                    @Override
+                    public void onEvent(Replicator replicator, Event event) {
+                        if (event instanceof BatchedKeyStringValueString) {
+                            BatchedKeyStringValueString kv = (BatchedKeyStringValueString) event;
+                            String key = Strings.toString(kv.getKey());
+                            if (kv.getBatch() == 0) actual.put(key, new ByteArrayOutputStream());
+                            assertTrue(kv.isLast() || kv.getValue().length == 3);
+                            actual.get(key).write(kv.getValue(), 0, kv.getValue().length);
+                        }
+                    }
+                }));
+                r.open();
+                assertEquals(file, expected.size(), actual.size());
+                for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                    assertArrayEquals(file, entry.getValue(), actual.get(entry.getKey()).toByteArray());
+                }
+                if (!file.equals("integer_keys.rdb")) assertTrue(file, streamed.get() > 0);
+            }
+        }
+        // plain strings of a mapped file are streamed from a slice of the file
+        assertTrue(sliced.get() > 0);
+    }
+    
+    @Test
+    public void testStringNotStreamedByDefault() throws Exception {
+        // a string of 2MB and a small one, checksum 0 is not verified
+        ByteArrayOutputStream rdb = new ByteArrayOutputStream();
+        rdb.write("REDIS0006".getBytes());
+        rdb.write(new byte[]{(byte) 0xFE, 0, 0, 3, 'b', 'i', 'g', (byte) 0x80, 0, 0x20, 0, 0});
+        rdb.write(new byte[2 << 20]);
+        rdb.write(new byte[]{0, 2, 'k', '2', 1, 'v', (byte) 0xFF, 0, 0, 0, 0, 0, 0, 0, 0});
+        Replicator r = new RedisReplicator(new ByteArrayInputStream(rdb.toByteArray()), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new ValueIterableRdbVisitor(r));
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof KeyStringValueInputStream) fail();
+                if (event instanceof KeyStringValueString) {
+                    KeyStringValueString kv = (KeyStringValueString) event;
+                    strings.put(Strings.toString(kv.getKey()), kv.getValue().length);
+                }
+            }
+        });
+        r.open();
+        assertEquals(2, strings.size());
+        assertEquals(2 << 20, (int) strings.get("big"));
+        assertEquals(1, (int) strings.get("k2"));
+    }
+
+    @Test
+    public void testStreamIterator() throws Exception {
+        final Map<String, Stream> expected = new LinkedHashMap<>();
+        Replicator r = new RedisReplicator(ValueIterableRdbListenerTest.class.getClassLoader().getResourceAsStream("dump-stream.rdb"), FileType.RDB, Configuration.defaultSetting());
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof KeyStringValueStream) {
+                    KeyStringValueStream kv = (KeyStringValueStream) event;
+                    expected.put(Strings.toString(kv.getKey()), kv.getValue());
+                }
+            }
+        });
+        r.open();
+        
+        for (final int batchSize : new int[]{1, 2, 64}) {
+            final Map<String, Stream> actual = new LinkedHashMap<>();
+            r = new RedisReplicator(ValueIterableRdbListenerTest.class.getClassLoader().getResourceAsStream("dump-stream.rdb"), FileType.RDB, Configuration.defaultSetting());
+            r.setRdbVisitor(new ValueIterableRdbVisitor(r));
+            r.addEventListener(new ValueIterableEventListener(batchSize, new EventListener() {
+                @Override
+                public void onEvent(Replicator replicator, Event event) {
+                    if (event instanceof BatchedKeyStringValueStream) {
+                        BatchedKeyStringValueStream kv = (BatchedKeyStringValueStream) event;
+                        Stream part = kv.getValue();
+                        assertTrue(part.getEntries().size() + part.getGroups().size() <= batchSize);
+                        String key = Strings.toString(kv.getKey());
+                        if (kv.getBatch() == 0) actual.put(key, part);
+                        else {
+                            Stream stream = actual.get(key);
+                            stream.getEntries().putAll(part.getEntries());
+                            stream.getGroups().addAll(part.getGroups());
+                        }
+                        if (kv.isLast()) {
+                            actual.get(key).setLastId(part.getLastId());
+                            actual.get(key).setLength(part.getLength());
+                        }
+                    }
+                }
+            }));
+            r.open();
+            assertEquals(expected.size(), actual.size());
+            for (Map.Entry<String, Stream> entry : expected.entrySet()) {
+                Stream e = entry.getValue(), a = actual.get(entry.getKey());
+                assertEquals(e.getLastId(), a.getLastId());
+                assertEquals(e.getLength(), a.getLength());
+                assertEquals(e.getEntries().keySet(), a.getEntries().keySet());
+                for (Stream.Entry ee : e.getEntries().values()) {
+                    Stream.Entry ae = a.getEntries().get(ee.getId());
+                    assertEquals(ee.isDeleted(), ae.isDeleted());
+                    assertEquals(ee.getFields().size(), ae.getFields().size());
+                    for (Map.Entry<byte[], byte[]> field : ee.getFields().entrySet()) {
+                        assertArrayEquals(field.getValue(), ae.getFields().get(field.getKey()));
+                    }
+                }
+                assertEquals(e.getGroups().size(), a.getGroups().size());
+                for (int i = 0; i < e.getGroups().size(); i++) {
+                    Stream.Group eg = e.getGroups().get(i), ag = a.getGroups().get(i);
+                    assertArrayEquals(eg.getName(), ag.getName());
+                    assertEquals(eg.getLastId(), ag.getLastId());
+                    assertEquals(eg.getPendingEntries().keySet(), ag.getPendingEntries().keySet());
+                    assertEquals(eg.getConsumers().size(), ag.getConsumers().size());
+                }
+            }
+        }
+    }
+}
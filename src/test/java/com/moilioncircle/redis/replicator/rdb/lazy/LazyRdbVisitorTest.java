@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.rdb.lazy;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.rdb.ModuleTest;
+import com.moilioncircle.redis.replicator.rdb.datatype.KeyValuePair;
+import com.moilioncircle.redis.replicator.rdb.datatype.ZSetEntry;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.IntSet;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.ZipList;
+import com.moilioncircle.redis.replicator.rdb.lazy.datatype.ZipListHash;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class LazyRdbVisitorTest {
+
+    private static final String[] RESOURCES = {"dictionary.rdb",
+            "easily_compressible_string_key.rdb", "hash_as_ziplist.rdb", "integer_keys.rdb", "intset_16.rdb",
+            "intset_32.rdb", "intset_64.rdb", "keys_with_expiry.rdb", "linkedlist.rdb", "multiple_databases.rdb",
+            "parser_filters.rdb", "rdb_version_5_with_checksum.rdb", "regular_set.rdb", "regular_sorted_set.rdb",
+            "sorted_set_as_ziplist.rdb", "uncompressible_string_keys.rdb", "ziplist_that_compresses_easily.rdb",
+            "ziplist_that_doesnt_compress.rdb", "ziplist_with_integers.rdb", "zipmap_that_compresses_easily.rdb",
+            "zipmap_that_doesnt_compress.rdb", "zipmap_with_big_values.rdb", "rdb_version_8_with_64b_length_and_scores.rdb",
+            "non_ascii_values.rdb", "binarydump.rdb", "module.rdb", "dump-lfu.rdb", "dump-lru.rdb", "dump-huge-kv.rdb"};
+
+    @Test
+    public void testSameValues() throws IOException {
+        for (String file : RESOURCES) {
+            List<KeyValuePair<?, ?>> expected = parse(file, false);
+            List<KeyValuePair<?, ?>> actual = parse(file, true);
+            assertEquals(file, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                KeyValuePair<?, ?> e = expected.get(i), a = actual.get(i);
+                assertArrayEquals(file, (byte[]) e.getKey(), (byte[]) a.getKey());
+                assertEquals(file, e.getValueRdbType(), a.getValueRdbType());
+                assertEquals(file, e.getClass(), a.getClass());
+                Object ev = e.getValue(), av = a.getValue();
+                if (ev instanceof Map) {
+                    Map<?, ?> em = (Map<?, ?>) ev, am = (Map<?, ?>) av;
+                    assertEquals(file, em.size(), am.size());
+                    for (Map.Entry<?, ?> entry : em.entrySet()) {
+                        assertTrue(file, am.containsKey(entry.getKey()));
+                        assertArrayEquals(file, (byte[]) entry.getValue(), (byte[]) am.get(entry.getKey()));
+                    }
+                } else if (ev instanceof Collection) {
+                    Collection<?> ec = (Collection<?>) ev, ac = (Collection<?>) av;
+                    assertEquals(file, ec.size(), ac.size());
+                    Iterator<?> eit = ec.iterator(), ait = ac.iterator();
+                    while (eit.hasNext()) {
+                        Object eo = eit.next(), ao = ait.next();
+                        if (eo instanceof ZSetEntry) assertEquals(file, eo, ao);
+                        else if (ac instanceof IntSet) assertTrue(file, ac.contains(eo));
+                        else assertArrayEquals(file, (byte[]) eo, (byte[]) ao);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTypedAccessors() throws IOException {
+        for (KeyValuePair<?, ?> kv : parse("ziplist_with_integers.rdb", true)) {
+            ZipList list = (ZipList) kv.getValue();
+            for (int i = 0; i < list.size(); i++) {
+                assertTrue(list.isInteger(i));
+                assertEquals(Strings.toString(list.get(i)), String.valueOf(list.getLong(i)));
+            }
+        }
+        for (String file : new String[]{"intset_16.rdb", "intset_32.rdb", "intset_64.rdb"}) {
+            for (KeyValuePair<?, ?> kv : parse(file, true)) {
+                IntSet set = (IntSet) kv.getValue();
+                for (int i = 1; i < set.size(); i++) assertTrue(set.getLong(i - 1) < set.getLong(i));
+                assertTrue(set.containsLong(set.getLong(0)));
+                assertTrue(set.contains(String.valueOf(set.getLong(0)).getBytes()));
+                assertFalse(set.contains("x".getBytes()));
+            }
+        }
+        for (KeyValuePair<?, ?> kv : parse("hash_as_ziplist.rdb", true)) {
+            ZipListHash hash = (ZipListHash) kv.getValue();
+            assertNull(hash.get("no such field".getBytes()));
+            for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+                assertArrayEquals(entry.getValue(), hash.get(entry.getKey()));
+            }
+        }
+    }
+
+    private static List<KeyValuePair<?, ?>> parse(String file, boolean lazy) throws IOException {
+        final List<KeyValuePair<?, ?>> kvs = new ArrayList<>();
+        Replicator r = new RedisReplicator(LazyRdbVisitorTest.class.getClassLoader().getResourceAsStream(file), FileType.RDB, Configuration.defaultSetting());
+        r.addModuleParser("hellotype", 0, new ModuleTest.HelloTypeModuleParser());
+        if (lazy) r.setRdbVisitor(new LazyRdbVisitor(r));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof KeyValuePair<?, ?>) kvs.add((KeyValuePair<?, ?>) event);
+            }
+        });
+        r.open();
+        return kvs;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.sink;
+
+import com.moilioncircle.redis.replicator.RedisURI;
+import com.moilioncircle.redis.replicator.StubServer;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import com.moilioncircle.redis.replicator.util.CRC16;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class RedisClusterSinkTest {
+
+    @Test
+    public void testRoute() throws Exception {
+        StubNode a = new StubNode(), b = new StubNode();
+        try {
+            // a owns 0-8191 and b owns 8192-16383, but the first slot map says a owns all
+            a.peer = b;
+            b.peer = a;
+            a.low = true;
+            a.reported = b.reported = new StubNode[]{a};
+            RedisClusterSink sink = new RedisClusterSink(new RedisURI("redis://127.0.0.1:" + a.port()), 16);
+            assertEquals(a.address(), sink.getNode(16000));
+            a.reported = b.reported = new StubNode[]{a, b};
+
+            for (int i = 0; i < 100; i++) {
+                sink.onEvent(null, command("SET", "key" + i, "v"));
+            }
+            DumpKeyValuePair kv = new DumpKeyValuePair();
+            kv.setKey("dumped".getBytes());
+            kv.setValue(new byte[]{0});
+            sink.onEvent(null, kv);
+            String ka = key(true), kb = key(false);
+            sink.onEvent(null, command("DEL", ka, kb));
+            sink.onEvent(null, command("MSET", ka, "1", kb, "2"));
+            sink.onEvent(null, command("SELECT", "1"));
+            sink.onEvent(null, command("FLUSHALL"));
+            sink.onEvent(null, command("SET", "ask", "v"));
+            sink.flush();
+
+            // the slot map is refreshed on MOVED
+            assertEquals(b.address(), sink.getNode(16000));
+            for (int i = 0; i < 100; i++) {
+                String key = "key" + i;
+                StubNode owner = CRC16.slot(key.getBytes()) < 8192 ? a : b;
+                assertTrue(owner.commands.contains("SET " + key + " v"));
+                assertFalse(owner.peer.commands.contains("SET " + key + " v"));
+            }
+            assertTrue((CRC16.slot("dumped".getBytes()) < 8192 ? a : b).commands.contains("RESTORE dumped"));
+            assertTrue(a.commands.contains("DEL " + ka));
+            assertTrue(b.commands.contains("DEL " + kb));
+            assertTrue(a.commands.contains("MSET " + ka + " 1"));
+            assertTrue(b.commands.contains("MSET " + kb + " 2"));
+            assertTrue(a.commands.contains("FLUSHALL"));
+            assertTrue(b.commands.contains("FLUSHALL"));
+            // ask is migrating from its owner to the peer
+            assertTrue((CRC16.slot("ask".getBytes()) < 8192 ? b : a).commands.contains("SET ask v"));
+            for (String command : a.commands) assertFalse(command.startsWith("SELECT"));
+            for (String command : b.commands) assertFalse(command.startsWith("SELECT"));
+            assertTrue(sink.getReplies().get(a.address()) > 0);
+            assertTrue(sink.getReplies().get(b.address()) > 0);
+            assertEquals(0, (int) sink.getInflight().get(b.address()));
+            sink.close();
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    @Test
+    public void testMovedInFlight() throws Exception {
+        StubNode a = new StubNode(), b = new StubNode();
+        try {
+            a.peer = b;
+            b.peer = a;
+            a.low = true;
+            a.slow = true;
+            a.reported = b.reported = new StubNode[]{a};
+            RedisClusterSink sink = new RedisClusterSink(new RedisURI("redis://" + a.address()), 16);
+            a.reported = b.reported = new StubNode[]{a, b};
+
+            // the slot of the key has moved to b
+            String key = key(false);
+            sink.onEvent(null, command("SET", key, "1"));
+            sink.onEvent(null, command("SET", key, "2"));
+            // the MOVED of the first command arrives while the second one is still in flight on a
+            for (int i = 0; i < 100 && sink.getReplies().get(a.address()) == 0; i++) Thread.sleep(10);
+            assertEquals(1, (int) sink.getInflight().get(a.address()));
+            sink.onEvent(null, command("SET", key, "3"));
+            sink.flush();
+
+            assertEquals(b.address(), sink.getNode(CRC16.slot(key.getBytes())));
+            assertEquals(Arrays.asList("SET " + key + " 1", "SET " + key + " 2", "SET " + key + " 3"), b.commands);
+            sink.close();
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    private static String key(boolean low) {
+        for (int i = 0; ; i++) {
+            String key = "k" + i;
+            if (CRC16.slot(key.getBytes()) < 8192 == low) return key;
+        }
+    }
+
+    private static DefaultCommand command(String name, String... args) {
+        byte[][] bytes = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) bytes[i] = args[i].getBytes();
+        return new DefaultCommand(name.getBytes(), bytes);
+    }
+
+    /**
+     * a cluster node that owns either the low or the high half of the slots. the key {@code ask} is migrating
+     * from its owner to the peer. a slow node delays the replies after the first one of a connection.
+     */
+    private static class StubNode extends StubServer {
+        private final List<String> commands = new CopyOnWriteArrayList<>();
+        private volatile boolean low;
+        private volatile boolean slow;
+        private volatile StubNode peer;
+        private volatile StubNode[] reported;
+
+        private StubNode() throws IOException {
+            start();
+        }
+
+        @Override
+        protected void serve(Socket client) throws IOException, InterruptedException {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            boolean asking = false;
+            for (int n = 0; ; n++) {
+                List<String> args = command(in);
+                if (args == null) return;
+                // a slow node answers the first command at once and the others later
+                if (slow && n > 0) Thread.sleep(300);
+                String reply = reply(args, asking);
+                asking = args.get(0).equals("ASKING");
+                out.write(reply.getBytes());
+                out.flush();
+            }
+        }
+
+        private String reply(List<String> args, boolean asking) {
+            String name = args.get(0);
+            if (name.equals("CLUSTER")) return slots(reported);
+            if (name.equals("ASKING")) return "+OK\r\n";
+            if (args.size() > 1) {
+                String key = args.get(1);
+                int slot = CRC16.slot(key.getBytes());
+                boolean owner = slot < 8192 == low;
+                if (key.equals("ask")) {
+                    if (owner) return "-ASK " + slot + " " + peer.address() + "\r\n";
+                    if (!asking) return "-MOVED " + slot + " " + peer.address() + "\r\n";
+                } else if (!owner) {
+                    return "-MOVED " + slot + " " + peer.address() + "\r\n";
+                }
+            }
+            if (name.equals("RESTORE")) commands.add(name + " " + args.get(1));
+            else commands.add(join(args));
+            return "+OK\r\n";
+        }
+    }
+}
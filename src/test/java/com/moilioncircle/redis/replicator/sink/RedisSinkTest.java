@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.sink;
+
+import com.moilioncircle.redis.replicator.Configuration;
+import com.moilioncircle.redis.replicator.FileType;
+import com.moilioncircle.redis.replicator.RedisReplicator;
+import com.moilioncircle.redis.replicator.RedisURI;
+import com.moilioncircle.redis.replicator.Replicator;
+import com.moilioncircle.redis.replicator.StubServer;
+import com.moilioncircle.redis.replicator.cmd.impl.DefaultCommand;
+import com.moilioncircle.redis.replicator.event.Event;
+import com.moilioncircle.redis.replicator.event.EventListener;
+import com.moilioncircle.redis.replicator.rdb.datatype.DB;
+import com.moilioncircle.redis.replicator.rdb.datatype.ExpiredType;
+import com.moilioncircle.redis.replicator.rdb.dump.DumpRdbVisitor;
+import com.moilioncircle.redis.replicator.rdb.dump.datatype.DumpKeyValuePair;
+import com.moilioncircle.redis.replicator.util.Clock;
+import com.moilioncircle.redis.replicator.util.Strings;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class RedisSinkTest {
+
+    @Test
+    public void testSink() throws Exception {
+        StubTarget server = new StubTarget();
+        final int window = 8;
+        final RedisSink sink = new RedisSink(new RedisURI("redis://" + server.address()), window);
+        final List<String> failed = new CopyOnWriteArrayList<>();
+        sink.addErrorListener(new SinkErrorListener() {
+            @Override
+            public void handle(RedisSink sink, Event event, String error) {
+                failed.add(Strings.toString(((DefaultCommand) event).getArgs()[0]) + " " + error);
+            }
+        });
+
+        final AtomicInteger restores = new AtomicInteger();
+        Replicator r = new RedisReplicator(RedisSinkTest.class.getClassLoader().getResourceAsStream("dump-huge-kv.rdb"), FileType.RDB, Configuration.defaultSetting());
+        r.setRdbVisitor(new DumpRdbVisitor(r));
+        r.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(Replicator replicator, Event event) {
+                if (event instanceof DumpKeyValuePair && ((DumpKeyValuePair) event).getExpiredType() == ExpiredType.NONE) {
+                    restores.incrementAndGet();
+                }
+            }
+        });
+        r.addEventListener(sink);
+        r.open();
+
+        long now = System.currentTimeMillis();
+        sink.onEvent(null, expire("expired", 5, now - 1000));
+        sink.onEvent(null, expire("live", 5, now + 60000));
+        sink.onEvent(null, new DefaultCommand("SELECT".getBytes(), new byte[][]{"3".getBytes()}));
+        sink.onEvent(null, new DefaultCommand("SET".getBytes(), new byte[][]{"bad".getBytes(), "v".getBytes()}));
+        sink.onEvent(null, expire("db3", 3, now + 60000));
+        sink.flush();
+
+        List<String> commands = server.commands;
+        int restored = 0;
+        for (String command : commands) {
+            if (command.startsWith("RESTORE")) restored++;
+        }
+        assertTrue(commands.get(0).startsWith("SELECT"));
+        assertEquals(restores.get() + 2, restored);
+        // db 3 is selected by the command
+        int size = commands.size();
+        assertEquals("SELECT 3", commands.get(size - 3));
+        assertEquals("SET bad v", commands.get(size - 2));
+        assertTrue(commands.get(size - 1).startsWith("RESTORE db3"));
+        assertEquals(commands.size(), sink.getReplies());
+        assertEquals(1, sink.getErrors());
+        assertEquals("bad ERR wrong key", failed.get(0));
+        assertEquals(0, sink.getInflight());
+        assertTrue(server.batch > 1 && server.batch <= window);
+
+        String live = null;
+        for (String command : commands) {
+            if (command.startsWith("RESTORE live")) live = command;
+            assertTrue(!command.startsWith("RESTORE expired"));
+        }
+        long ttl = Long.parseLong(live.split(" ")[2]);
+        assertTrue(ttl > 0 && ttl <= 60000);
+        assertTrue(commands.indexOf("SELECT 5") < commands.indexOf(live));
+        sink.close();
+        server.close();
+    }
+
+    @Test
+    public void testLanes() throws Exception {
+        StubTarget server = new StubTarget();
+        final RedisSink sink = new RedisSink(new RedisURI("redis://" + server.address()), 16);
+        // the lanes of a replicator call the sink at the same time, each one with the keys of its db
+        Thread[] lanes = new Thread[4];
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < lanes.length; i++) {
+            final int lane = i;
+            lanes[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 500; j++) {
+                            DumpKeyValuePair kv = new DumpKeyValuePair();
+                            kv.setKey(("k" + lane + "-" + j).getBytes());
+                            kv.setValue(new byte[64]);
+                            kv.setDb(new DB(lane));
+                            sink.onEvent(null, kv);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            lanes[i].start();
+        }
+        for (Thread lane : lanes) lane.join();
+        sink.flush();
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        // every frame is intact and restored in the db of its lane
+        int restored = 0;
+        String db = null;
+        for (String command : server.commands) {
+            if (command.startsWith("SELECT ")) {
+                db = command.substring(7);
+            } else {
+                assertTrue(command, command.startsWith("RESTORE k" + db + "-"));
+                restored++;
+            }
+        }
+        assertEquals(lanes.length * 500, restored);
+        assertEquals(0, sink.getErrors());
+        sink.close();
+        server.close();
+    }
+
+    @Test
+    public void testClock() throws Exception {
+        StubTarget server = new StubTarget();
+        Configuration configuration = Configuration.defaultSetting().setClock(new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return 1000000L;
+            }
+        });
+        RedisSink sink = new RedisSink("127.0.0.1", server.port(), configuration, 8);
+        sink.onEvent(null, expire("expired", 0, 999999L));
+        sink.onEvent(null, expire("live", 0, 1060000L));
+        sink.flush();
+        assertEquals(Arrays.asList("SELECT 0", "RESTORE live 60000"), server.commands);
+        sink.close();
+        server.close();
+    }
+
+    private static DumpKeyValuePair expire(String key, int db, long ms) {
+        DumpKeyValuePair kv = new DumpKeyValuePair();
+        kv.setKey(key.getBytes());
+        kv.setValue(new byte[]{0});
+        kv.setDb(new DB(db));
+        kv.setExpiredType(ExpiredType.MS);
+        kv.setExpiredValue(ms);
+        return kv;
+    }
+
+    /**
+     * replies +OK to every command except the ones on key "bad". the replies are written once
+     * the received bytes are consumed, so a pipelined batch is answered in one write.
+     */
+    private static class StubTarget extends StubServer {
+        private final List<String> commands = new CopyOnWriteArrayList<>();
+        private volatile int batch;
+
+        private StubTarget() throws IOException {
+            start();
+        }
+
+        @Override
+        protected void serve(Socket client) throws IOException {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            ByteArrayOutputStream replies = new ByteArrayOutputStream();
+            int n = 0;
+            while (true) {
+                List<String> args = command(in);
+                if (args == null) return;
+                commands.add(args.size() > 1 && args.get(0).equals("RESTORE") ? args.get(0) + " " + args.get(1) + " " + args.get(2) : join(args));
+                replies.write(args.contains("bad") ? "-ERR wrong key\r\n".getBytes() : "+OK\r\n".getBytes());
+                n++;
+                if (in.available() == 0) {
+                    batch = Math.max(batch, n);
+                    out.write(replies.toByteArray());
+                    out.flush();
+                    replies.reset();
+                    n = 0;
+                }
+            }
+        }
+    }
+}
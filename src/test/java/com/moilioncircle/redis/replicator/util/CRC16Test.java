@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class CRC16Test {
+
+    @Test
+    public void testSlot() {
+        // test vector of redis crc16.c
+        assertEquals(0x31C3, CRC16.crc16("123456789".getBytes()));
+        assertEquals(12182, CRC16.slot("foo".getBytes()));
+        assertEquals(CRC16.slot("user1000".getBytes()), CRC16.slot("{user1000}.following".getBytes()));
+        assertEquals(CRC16.slot("{user1000}.followers".getBytes()), CRC16.slot("{user1000}.following".getBytes()));
+        // empty or unclosed tag hashes the whole key
+        assertEquals(CRC16.crc16("foo{}{bar}".getBytes()) & 16383, CRC16.slot("foo{}{bar}".getBytes()));
+        assertEquals(CRC16.crc16("foo{bar".getBytes()) & 16383, CRC16.slot("foo{bar".getBytes()));
+        assertEquals(CRC16.slot("bar".getBytes()), CRC16.slot("foo{bar}{zap}".getBytes()));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class CRC64Test {
+
+    @Test
+    public void testCrc64() {
+        // test vector of redis crc64.c
+        assertEquals(0xe9c6d914c4b8d9caL, CRC64.crc64("123456789".getBytes()));
+        Random random = new Random(0);
+        for (int len : new int[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 4099}) {
+            byte[] bytes = new byte[len + 3];
+            random.nextBytes(bytes);
+            assertEquals(slow(bytes, 3, len, 0L), CRC64.crc64(bytes, 3, len, 0L));
+            assertEquals(slow(bytes, 3, len, 12345L), CRC64.crc64(bytes, 3, len, 12345L));
+        }
+    }
+
+    @Test
+    public void testCombine() {
+        Random random = new Random(0);
+        byte[] bytes = new byte[10000];
+        random.nextBytes(bytes);
+        for (int split : new int[]{0, 1, 8, 999, 5000, 9999, 10000}) {
+            long crc1 = CRC64.crc64(Arrays.copyOfRange(bytes, 0, split));
+            long crc2 = CRC64.crc64(Arrays.copyOfRange(bytes, split, bytes.length));
+            assertEquals(CRC64.crc64(bytes), CRC64.combine(crc1, crc2, bytes.length - split));
+        }
+    }
+
+    private static long slow(byte[] bytes, int start, int length, long sum) {
+        for (int i = start; i < start + length; i++) {
+            sum = CRC64.crc64(bytes[i], sum);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016-2018 Leon Chen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.moilioncircle.redis.replicator.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Leon Chen
+ * @since 3.0.0
+ */
+public class GlobTest {
+
+    @Test
+    public void testMatch() {
+        assertTrue(match("*", ""));
+        assertTrue(match("*", "abc"));
+        assertTrue(match("user:*", "user:1"));
+        assertFalse(match("user:*", "order:1"));
+        assertTrue(match("h?llo", "hello"));
+        assertFalse(match("h?llo", "hllo"));
+        assertTrue(match("h*llo", "heeeello"));
+        assertTrue(match("h[ae]llo", "hallo"));
+        assertFalse(match("h[ae]llo", "hillo"));
+        assertTrue(match("h[^e]llo", "hallo"));
+        assertFalse(match("h[^e]llo", "hello"));
+        assertTrue(match("h[a-b]llo", "hbllo"));
+        assertFalse(match("h[a-b]llo", "hcllo"));
+        assertTrue(match("a\\*b", "a*b"));
+        assertFalse(match("a\\*b", "axb"));
+        assertTrue(match("*a*b", "xxaxxab"));
+        assertFalse(match("*a*b", "xxaxxa"));
+        assertTrue(Glob.match("k*".getBytes(), "xxkey".getBytes(), 2, 3));
+    }
+
+    private static boolean match(String pattern, String str) {
+        return Glob.match(pattern.getBytes(), str.getBytes());
+    }
+}
@@ -19,7 +19,10 @@ package com.moilioncircle.redis.replicator.util;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -62,9 +65,32 @@ public class LzfTest {
 
     }
 
+    @Test
+    public void decodeBytes() throws Exception {
+        Random random = new Random(0);
+        for (int size : new int[]{31, 32, 33, 100, 4096, 100000}) {
+            // random, runs of one byte and short repeated patterns
+            byte[][] inputs = new byte[3][size];
+            random.nextBytes(inputs[0]);
+            Arrays.fill(inputs[1], (byte) 'a');
+            for (int i = 0; i < size; i++) inputs[2][i] = (byte) (i % 3 == 0 ? random.nextInt(4) : 'x' + i % 7);
+            for (byte[] bytes : inputs) {
+                byte[] out = compress(bytes);
+                assertArrayEquals(bytes, Lzf.decode(out, bytes.length));
+                assertArrayEquals(bytes, Lzf.decode(new ByteArray(out), bytes.length).first());
+            }
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void decodeCorrupt() throws Exception {
+        byte[] out = compress("abcabcabcabcabcabcabcabcabcabcabcabc".getBytes());
+        Lzf.decode(out, 100);
+    }
+
     private byte[] compress(byte[] in) {
         CompressLZF c = new CompressLZF();
-        byte[] compressed = new byte[in.length];
+        byte[] compressed = new byte[in.length + in.length / 32 + 16];
         int idx = c.compress(in, in.length, compressed, 0);
         byte[] out = new byte[idx];
         System.arraycopy(compressed, 0, out, 0, out.length);